@@ -0,0 +1,123 @@
+package de.fhg.ivi.crowdsimulation.simulation.forcemodel;
+
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ExpLookupTable;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A {@link PedestrianInteractionKernel} using the Java Vector API ({@code jdk.incubator.vector}),
+ * which computes the interaction of the {@link HelbingModel} with as many other
+ * {@link Pedestrian}s at once as fit into a SIMD register of the processor (e.g. 8 with AVX-512).
+ * <p>
+ * The distances, the exponential repulsion and the anisotropy are computed for all lanes, the lanes
+ * of {@link Pedestrian}s outside the maximum interaction distance are masked out before summing up.
+ * The remaining {@link Pedestrian}s, which do not fill a whole vector, are computed by
+ * {@link HelbingModel#interactPedestrian(double, double, double, double, double, double, double[])}.
+ * <p>
+ * The results differ slightly from the {@link ScalarPedestrianInteractionKernel}, since the forces
+ * are summed up in a different order and the anisotropy is computed from the cosine directly
+ * instead of {@code cos(acos(x))}. {@link Pedestrian}s lying exactly on top of the current
+ * {@link Pedestrian} are ignored, since they have no direction of repulsion.
+ * <p>
+ * Hence, this kernel implements only the fast math mode (cf.
+ * {@link ForceModel#setFastMath(boolean)}): The {@link HelbingModel} uses it only, if the fast
+ * math mode is switched on, and falls back to the {@link ScalarPedestrianInteractionKernel} in
+ * strict mode. The exponential function is computed by the vector operation
+ * {@link VectorOperators#EXP} instead of the {@link ExpLookupTable}, which cannot be vectorized
+ * without gather instructions.
+ * <p>
+ * This class is compiled only by the {@code vector} profile of the build and is loaded by
+ * {@link PedestrianInteractionKernel#getVectorKernel()}.
+ *
+ * @author hahmann/meinert
+ */
+public class VectorPedestrianInteractionKernel extends PedestrianInteractionKernel
+{
+    /**
+     * The preferred {@link VectorSpecies} of the processor, i.e. the widest vectors supported.
+     */
+    private static final VectorSpecies<Double> species = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Computes the interaction with {@code species.length()} other {@link Pedestrian}s at once.
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.forcemodel.PedestrianInteractionKernel#interact(HelbingModel,
+     *      double, double, double, double, double[], double[], int, double[])
+     */
+    @Override
+    public void interact(HelbingModel model, double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, double[] otherPositionsX,
+        double[] otherPositionsY, int count, double[] force)
+    {
+        float maxDistance = model.getMaxPedestrianInteractionDistance();
+        double maxDistanceSquared = maxDistance * maxDistance;
+        double interactionRadius = model.getPedestrianRadius() * 2;
+        double parameterA1 = model.getParameterPedestrianA1();
+        double parameterB1 = model.getParameterPedestrianB1();
+        double parameterA2 = model.getParameterPedestrianA2();
+        double parameterB2 = model.getParameterPedestrianB2();
+        double lambda = model.getLambda();
+
+        DoubleVector currentX = DoubleVector.broadcast(species, currentPositionX);
+        DoubleVector currentY = DoubleVector.broadcast(species, currentPositionY);
+        DoubleVector sumX = DoubleVector.zero(species);
+        DoubleVector sumY = DoubleVector.zero(species);
+
+        int upperBound = species.loopBound(count);
+        int i = 0;
+        for (; i < upperBound; i += species.length())
+        {
+            DoubleVector dx = currentX.sub(DoubleVector.fromArray(species, otherPositionsX, i));
+            DoubleVector dy = currentY.sub(DoubleVector.fromArray(species, otherPositionsY, i));
+            DoubleVector distanceSquared = dx.mul(dx).add(dy.mul(dy));
+
+            // only pedestrians within the interaction distance, but not on top of each other
+            VectorMask<Double> isInteracting = distanceSquared.lt(maxDistanceSquared)
+                .and(distanceSquared.compare(VectorOperators.GT, 0));
+            if ( !isInteracting.anyTrue())
+                continue;
+
+            DoubleVector distance = distanceSquared.lanewise(VectorOperators.SQRT);
+            DoubleVector nX = dx.div(distance);
+            DoubleVector nY = dy.div(distance);
+
+            DoubleVector exponent = distance.neg().add(interactionRadius);
+            DoubleVector strength = exponent.div(parameterB2).lanewise(VectorOperators.EXP)
+                .mul(parameterA2);
+            if (parameterA1 != 0)
+            {
+                // cos(phi), where phi is the angle between the direction and the other pedestrian
+                DoubleVector cos = nX.mul( -normalizedDirectionX)
+                    .add(nY.mul( -normalizedDirectionY))
+                    .max(-1)
+                    .min(1);
+                DoubleVector anisotropy = cos.add(1).mul((1 - lambda) / 2).add(lambda);
+                strength = exponent.div(parameterB1)
+                    .lanewise(VectorOperators.EXP)
+                    .mul(parameterA1)
+                    .mul(anisotropy)
+                    .add(strength);
+            }
+            sumX = sumX.add(nX.mul(strength), isInteracting);
+            sumY = sumY.add(nY.mul(strength), isInteracting);
+        }
+        force[0] += sumX.reduceLanes(VectorOperators.ADD);
+        force[1] += sumY.reduceLanes(VectorOperators.ADD);
+
+        // remaining pedestrians, which do not fill a whole vector
+        for (; i < count; i++ )
+        {
+            model.interactPedestrian(currentPositionX, currentPositionY, normalizedDirectionX,
+                normalizedDirectionY, otherPositionsX[i], otherPositionsY[i], force);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "VectorPedestrianInteractionKernel[" + species + "]";
+    }
+}
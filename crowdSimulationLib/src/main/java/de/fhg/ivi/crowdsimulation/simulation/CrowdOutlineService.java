@@ -0,0 +1,356 @@
+package de.fhg.ivi.crowdsimulation.simulation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Crowd;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+
+/**
+ * A {@link CrowdOutlineService} computes the outlines of {@link Crowd}s (cf.
+ * {@link Crowd#getCrowdOutlines()}) on a background thread, so that the clustering and the hull
+ * computation do not delay the simulation steps.
+ * <p>
+ * When a {@link Crowd} has finished a simulation step, it calls {@link #requestUpdate(Crowd)},
+ * which copies the positions of its {@link Pedestrian}s on the calling thread into a buffer
+ * reused for each {@link Crowd}. The outlines are computed from the latest copy on the background
+ * thread, at most once per {@link #updateInterval} for each {@link Crowd}: the first request after
+ * a pause is computed immediately, further requests within the {@link #updateInterval} are
+ * computed once it has elapsed. Hence, the outlines always catch up with the last simulation step,
+ * even if the simulation is paused or stopped.
+ * <p>
+ * The result is published by {@link Crowd#setCrowdOutlines(List, int)} as a whole, so that
+ * readers (e.g. the Graphical User Interface or {@link Crowd#getCrowdDensity()}) always see a
+ * complete set of outlines. Results of positions copied before the outlines of the {@link Crowd}
+ * have been cleared or computed synchronously (cf. {@link Crowd#getCrowdOutlineGeneration()}) are
+ * discarded.
+ *
+ * @author hahmann/meinert
+ */
+public class CrowdOutlineService
+{
+    /**
+     * Uses the object logger for printing specific messages in the console.
+     */
+    private static final Logger         logger                = LoggerFactory
+        .getLogger(CrowdOutlineService.class);
+
+    /**
+     * The default value of {@link #updateInterval}. Given in milliseconds.
+     */
+    public static final long            defaultUpdateInterval = 200;
+
+    /**
+     * The minimum time between the starts of two computations of the outlines of the same
+     * {@link Crowd}. Given in milliseconds of real time.
+     */
+    private volatile long               updateInterval;
+
+    /**
+     * The background thread computing the outlines.
+     */
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * The {@link UpdateState} of each {@link Crowd}, which has requested an update.
+     */
+    private Map<Crowd, UpdateState>     updateStates;
+
+    /**
+     * Creates a new {@link CrowdOutlineService} with an {@link #updateInterval} of
+     * {@link #defaultUpdateInterval}.
+     */
+    public CrowdOutlineService()
+    {
+        this(defaultUpdateInterval);
+    }
+
+    /**
+     * Creates a new {@link CrowdOutlineService}.
+     *
+     * @param updateInterval the minimum time between the starts of two computations of the
+     *            outlines of the same {@link Crowd}. Given in milliseconds.
+     */
+    public CrowdOutlineService(long updateInterval)
+    {
+        this.updateInterval = updateInterval;
+        this.updateStates = new ConcurrentHashMap<>();
+        this.executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "CrowdOutlineService");
+                    // must not keep the application alive
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        // pending updates are useless after shutdown
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Gets the minimum time between the starts of two computations of the outlines of the same
+     * {@link Crowd}. Given in milliseconds.
+     *
+     * @return the minimum time between two computations of the outlines
+     */
+    public long getUpdateInterval()
+    {
+        return updateInterval;
+    }
+
+    /**
+     * Sets the minimum time between the starts of two computations of the outlines of the same
+     * {@link Crowd}. Given in milliseconds. If {@code 0}, the outlines are computed again as soon
+     * as the last computation has finished.
+     *
+     * @param updateInterval the minimum time between two computations of the outlines
+     */
+    public void setUpdateInterval(long updateInterval)
+    {
+        this.updateInterval = updateInterval;
+    }
+
+    /**
+     * Requests the outlines of {@code crowd} to be computed from the current positions of its
+     * {@link Pedestrian}s. Returns immediately, if {@code crowd} is not updating its outlines (cf.
+     * {@link Crowd#setUpdatingCrowdOutline(boolean)}). Otherwise, the positions are copied and the
+     * computation is scheduled, unless it is already scheduled. Must not be called while the
+     * {@link Pedestrian}s of {@code crowd} are moved.
+     *
+     * @param crowd the {@link Crowd}, whose outlines should be computed
+     */
+    public void requestUpdate(Crowd crowd)
+    {
+        if ( !crowd.isUpdatingCrowdOutline())
+            return;
+        UpdateState updateState = updateStates.get(crowd);
+        if (updateState == null)
+        {
+            updateState = new UpdateState(crowd);
+            UpdateState existingState = updateStates.putIfAbsent(crowd, updateState);
+            if (existingState != null)
+                updateState = existingState;
+        }
+        updateState.request();
+    }
+
+    /**
+     * Forgets the state of {@code crowd}, e.g. after it has been removed from the simulation. A
+     * computation currently running for {@code crowd} is finished nevertheless, but a scheduled
+     * computation is skipped.
+     *
+     * @param crowd the {@link Crowd} to be forgotten
+     */
+    public void remove(Crowd crowd)
+    {
+        UpdateState updateState = updateStates.remove(crowd);
+        if (updateState != null)
+            updateState.cancel();
+    }
+
+    /**
+     * Stops the background thread. Computations, which are currently running, are finished, all
+     * scheduled computations and further requests are ignored.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    /**
+     * The state of the updates of the outlines of a single {@link Crowd}. All fields are guarded
+     * by the {@link UpdateState} itself.
+     */
+    private class UpdateState implements Runnable
+    {
+        /**
+         * The {@link Crowd}, whose outlines are computed.
+         */
+        private final Crowd crowd;
+
+        /**
+         * The x components of the positions copied at the last request.
+         */
+        private double[]    positionsX;
+
+        /**
+         * The y components of the positions copied at the last request.
+         */
+        private double[]    positionsY;
+
+        /**
+         * The number of valid elements of {@link #positionsX} and {@link #positionsY}.
+         */
+        private int         positionCount;
+
+        /**
+         * The union of all {@link Boundary}s at the last request.
+         */
+        private Geometry    allBoundaries;
+
+        /**
+         * The {@link Crowd#getCrowdOutlineGeneration()} at the last request.
+         */
+        private int         generation;
+
+        /**
+         * Indicates, if the positions have been copied since the start of the last computation.
+         */
+        private boolean     isRequested;
+
+        /**
+         * Indicates, if a computation is scheduled or running.
+         */
+        private boolean     isScheduled;
+
+        /**
+         * Indicates, if the {@link Crowd} has been removed from this {@link CrowdOutlineService}.
+         */
+        private boolean     isCancelled;
+
+        /**
+         * The start time of the last computation given as {@link System#nanoTime()}.
+         */
+        private long        lastUpdateTime;
+
+        /**
+         * Indicates, if any computation has been started yet.
+         */
+        private boolean     isUpdated;
+
+        /**
+         * Creates a new {@link UpdateState}.
+         *
+         * @param crowd the {@link Crowd}, whose outlines are computed
+         */
+        private UpdateState(Crowd crowd)
+        {
+            this.crowd = crowd;
+            this.positionsX = new double[0];
+            this.positionsY = new double[0];
+        }
+
+        /**
+         * Copies the current positions of the {@link Pedestrian}s of the {@link #crowd} and
+         * schedules a computation, if none is scheduled or running.
+         */
+        private synchronized void request()
+        {
+            if (isCancelled)
+                return;
+            List<Pedestrian> pedestrians = crowd.getPedestrians();
+            int size = pedestrians.size();
+            if (positionsX.length < size)
+            {
+                positionsX = new double[size];
+                positionsY = new double[size];
+            }
+            for (int i = 0; i < size; i++ )
+            {
+                Pedestrian pedestrian = pedestrians.get(i);
+                positionsX[i] = pedestrian.getCurrentPositionX();
+                positionsY[i] = pedestrian.getCurrentPositionY();
+            }
+            positionCount = size;
+            allBoundaries = crowd.getUnionOfAllBoundaries();
+            generation = crowd.getCrowdOutlineGeneration();
+            isRequested = true;
+            if ( !isScheduled)
+                schedule();
+        }
+
+        /**
+         * Schedules a computation as soon as the {@link #updateInterval} since the start of the
+         * last computation has elapsed.
+         */
+        private void schedule()
+        {
+            long delay = 0;
+            if (isUpdated)
+                delay = Math.max(0, lastUpdateTime + TimeUnit.MILLISECONDS.toNanos(updateInterval)
+                    - System.nanoTime());
+            try
+            {
+                executor.schedule(this, delay, TimeUnit.NANOSECONDS);
+                isScheduled = true;
+            }
+            catch (RejectedExecutionException e)
+            {
+                logger.debug("CrowdOutlineService.schedule(), shut down", e);
+            }
+        }
+
+        /**
+         * Skips all further computations.
+         */
+        private synchronized void cancel()
+        {
+            isCancelled = true;
+        }
+
+        /**
+         * Computes the outlines from the positions copied at the last request and schedules
+         * another computation, if the positions have been copied again in the meantime.
+         */
+        @Override
+        public void run()
+        {
+            Coordinate[] positions;
+            Geometry currentBoundaries;
+            int currentGeneration;
+            synchronized (this)
+            {
+                if (isCancelled || !isRequested)
+                {
+                    isScheduled = false;
+                    return;
+                }
+                positions = new Coordinate[positionCount];
+                for (int i = 0; i < positionCount; i++ )
+                {
+                    positions[i] = new Coordinate(positionsX[i], positionsY[i]);
+                }
+                currentBoundaries = allBoundaries;
+                currentGeneration = generation;
+                isRequested = false;
+                isUpdated = true;
+                lastUpdateTime = System.nanoTime();
+            }
+            try
+            {
+                crowd.setCrowdOutlines(crowd.createCrowdOutlines(positions, currentBoundaries),
+                    currentGeneration);
+            }
+            catch (RuntimeException e)
+            {
+                logger.error("CrowdOutlineService.run(), ", e);
+            }
+            finally
+            {
+                synchronized (this)
+                {
+                    isScheduled = false;
+                    // catch up with the requests during the computation
+                    if (isRequested && !isCancelled)
+                        schedule();
+                }
+            }
+        }
+    }
+}
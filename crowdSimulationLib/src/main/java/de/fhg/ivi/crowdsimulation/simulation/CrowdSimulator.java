@@ -3,6 +3,7 @@ package de.fhg.ivi.crowdsimulation.simulation;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.geometry.jts.ReferencedEnvelope;
@@ -19,17 +20,25 @@ import com.vividsolutions.jts.geom.LineString;
 
 import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
 import de.fhg.ivi.crowdsimulation.simulation.forcemodel.HelbingBuznaModel;
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.HelbingModel;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.MultiRateIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.RungeKuttaIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.SemiImplicitEulerIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.SimpleEulerIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryDistanceField;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Crowd;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Grid;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianNeighbourList;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianPairForces;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianSnapshotBuffer;
 import de.fhg.ivi.crowdsimulation.simulation.objects.RoutingNetwork;
 import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
 import de.fhg.ivi.crowdsimulation.simulation.tools.GeometryTools;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ParallelTools;
 import hcu.csl.agentbasedmodeling.PedestrianAgent;
 import math.geom2d.Vector2D;
 
@@ -66,6 +75,13 @@ public class CrowdSimulator implements Runnable
     private static final Logger       logger                          = LoggerFactory
         .getLogger(CrowdSimulator.class);
 
+    /**
+     * The default value of {@link #pedestrianSortInterval}. Sorting is disabled by default, since
+     * it reorders the {@link Pedestrian}s, which may be read concurrently (e.g. by the Graphical
+     * User Interface), and forces all copies of the {@link Pedestrian}s to be rebuilt.
+     */
+    public static final int           defaultSortInterval             = 0;
+
     /**
      * Time between 2 consecutive Iteration/Update steps. Given in seconds.
      */
@@ -102,6 +118,25 @@ public class CrowdSimulator implements Runnable
      */
     private int                       refreshInterval                 = 1;
 
+    /**
+     * The simulated time between two consecutive simulation steps in fixed time step mode (cf.
+     * {@link #setFixedTimeStep(long)}). Given in milliseconds. If {@code 0}, the simulated time is
+     * derived from the {@link #fastForwardClock}.
+     */
+    private long                      fixedTimeStep                   = 0;
+
+    /**
+     * The number of simulation steps between two consecutive sortings of the {@link Pedestrian}s
+     * of all {@link #crowds} along a Z-order curve (cf. {@link Crowd#sortPedestrians()}). If
+     * {@code 0}, the {@link Pedestrian}s are never sorted.
+     */
+    private int                       pedestrianSortInterval          = defaultSortInterval;
+
+    /**
+     * The number of simulation steps since the {@link Pedestrian}s have been sorted the last time.
+     */
+    private int                       stepsSincePedestrianSort        = 0;
+
     /**
      * The time difference between the {@code startSimulationTime} and the
      * {@code lastSimulationTime}.
@@ -111,7 +146,7 @@ public class CrowdSimulator implements Runnable
     /**
      * Boolean parameter which denotes whether the thread for the simulation is running or not.
      */
-    private boolean                   simulationThreadRunning         = false;
+    private volatile boolean          simulationThreadRunning         = false;
 
     /**
      * A "Clock" which can speed up (or speed down) the simulation.
@@ -121,7 +156,7 @@ public class CrowdSimulator implements Runnable
     /**
      * {@link Long} number which denotes how much the simulation is speed up or down
      */
-    private int                       fastForwardFactor               = 1;
+    private volatile int              fastForwardFactor               = 1;
 
     /**
      * An {@link Integer} storage for the set {@code fastForwardFactor}
@@ -151,6 +186,19 @@ public class CrowdSimulator implements Runnable
      */
     private List<Boundary>            boundaries;
 
+    /**
+     * {@link BoundaryIndex} object, which is a spatial index of all {@link #boundaries} and used for
+     * pedestrian-boundary interaction, the validation of moves and line of sight checks
+     */
+    private BoundaryIndex             boundaryIndex;
+
+    /**
+     * The resolution of the {@link BoundaryDistanceField} of the {@link #boundaryIndex}. Given in
+     * meters. If {@code 0}, no {@link BoundaryDistanceField} is computed and the interaction with
+     * each {@link Boundary} is computed exactly.
+     */
+    private double                    boundaryDistanceFieldResolution;
+
     /**
      * {@link Geometry} object, which contains the geometric union of all {@link Boundary} objects
      * of {@link CrowdSimulator}
@@ -184,6 +232,12 @@ public class CrowdSimulator implements Runnable
      */
     private Grid                      grid;
 
+    /**
+     * The {@link Pedestrian}s of all {@link Crowd}s counted by the {@link #grid}. Refilled and
+     * reused for each update of the {@link #grid}.
+     */
+    private List<Pedestrian>          gridPedestrians;
+
     /**
      * Object for saving a coordinate reference system of {@link Geometry}s.
      */
@@ -194,6 +248,18 @@ public class CrowdSimulator implements Runnable
      */
     private ExecutorService           threadPool;
 
+    /**
+     * The number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool} (cf. {@link Crowd#setChunkSize(int)})
+     */
+    private int                       chunkSize;
+
+    /**
+     * Indicates, if the {@link Pedestrian}s are moved in two separate phases, so that the result
+     * does not depend on the number of threads (cf. {@link Crowd#setDeterministic(boolean)})
+     */
+    private boolean                   isDeterministic;
+
     /**
      * {@link RoutingNetwork} for pedestrian wayfinding
      * 
@@ -201,6 +267,48 @@ public class CrowdSimulator implements Runnable
      */
     private RoutingNetwork            network;
 
+    /**
+     * Neighbour lists of all {@link Pedestrian}s of all {@link #crowds}, which are updated once per
+     * simulation step in {@link #moveCrowds(long)} to restrict pedestrian-pedestrian interaction to
+     * neighbouring {@link Pedestrian}s
+     */
+    private PedestrianNeighbourList   pedestrianNeighbourList;
+
+    /**
+     * Double-buffered copies of all {@link Pedestrian}s of all {@link #crowds}, which are updated
+     * once per simulation step in {@link #moveCrowds(long)} before any {@link Pedestrian} is moved
+     */
+    private PedestrianSnapshotBuffer  pedestrianSnapshotBuffer;
+
+    /**
+     * Indicates, if the pedestrian-pedestrian interaction is computed pair by pair by the
+     * {@link #pedestrianPairForces} at the beginning of each simulation step
+     */
+    private boolean                   isPairwiseInteraction;
+
+    /**
+     * Computes the pedestrian-pedestrian interaction of all pairs of neighbouring
+     * {@link Pedestrian}s once per simulation step, if {@link #isPairwiseInteraction} is
+     * {@code true}
+     */
+    private PedestrianPairForces      pedestrianPairForces;
+
+    /**
+     * Moves the {@link Pedestrian}s of all {@link #crowds} in each simulation step in
+     * {@link #moveCrowds(long)}
+     */
+    private StepScheduler             stepScheduler;
+
+    /**
+     * Paces the simulation steps of {@link #run()} in real time
+     */
+    private StepPacer                 stepPacer;
+
+    /**
+     * Computes the outlines of all {@link #crowds} in the background after the simulation steps
+     */
+    private CrowdOutlineService       crowdOutlineService;
+
     /**
      * Constructor.
      * <p>
@@ -227,7 +335,17 @@ public class CrowdSimulator implements Runnable
         fastForwardClock = new FastForwardClock();
         numericIntegrator = new SemiImplicitEulerIntegrator();
         forceModel = new HelbingBuznaModel();
+        pedestrianNeighbourList = new PedestrianNeighbourList(
+            forceModel.getMaxPedestrianInteractionDistance(),
+            PedestrianNeighbourList.defaultSkinDistance);
+        pedestrianSnapshotBuffer = new PedestrianSnapshotBuffer();
+        gridPedestrians = new ArrayList<>();
         this.threadPool = threadPool;
+        this.chunkSize = ParallelTools.defaultChunkSize;
+        this.isDeterministic = Crowd.defaultIsDeterministic;
+        this.stepScheduler = new StepScheduler(threadPool, chunkSize);
+        this.stepPacer = new StepPacer();
+        this.crowdOutlineService = new CrowdOutlineService();
     }
 
     /**
@@ -302,6 +420,84 @@ public class CrowdSimulator implements Runnable
         return refreshInterval;
     }
 
+    /**
+     * Sets the minimum interval between two refreshes in milliseconds, i.e. the interval between
+     * the deadlines of two consecutive simulation steps of {@link #run()} (cf. {@link StepPacer}).
+     * Takes effect at the next start of {@link #run()}.
+     *
+     * @param refreshInterval the minimum interval between two refreshes in milliseconds, must be
+     *            positive
+     */
+    public void setRefreshInterval(int refreshInterval)
+    {
+        if (refreshInterval < 1)
+            throw new IllegalArgumentException(
+                "refreshInterval must be positive: " + refreshInterval);
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Gets the {@link StepPacer}, which paces the simulation steps of {@link #run()} in real time
+     * and records the overrun and jitter statistics.
+     *
+     * @return the {@link StepPacer}
+     */
+    public StepPacer getStepPacer()
+    {
+        return stepPacer;
+    }
+
+    /**
+     * Gets the {@link CrowdOutlineService}, which computes the outlines of all {@link Crowd}s in
+     * the background after the simulation steps, e.g. to change its update interval.
+     *
+     * @return the {@link CrowdOutlineService}
+     */
+    public CrowdOutlineService getCrowdOutlineService()
+    {
+        return crowdOutlineService;
+    }
+
+    /**
+     * Stops the background thread of the {@link CrowdOutlineService}, e.g. when the application is
+     * closed. The {@link #threadPool} is not shut down, since it is owned by the caller.
+     */
+    public void shutdown()
+    {
+        crowdOutlineService.shutdown();
+    }
+
+    /**
+     * Gets the simulated time between two consecutive simulation steps in fixed time step mode.
+     * Given in milliseconds.
+     *
+     * @return the {@link #fixedTimeStep} or {@code 0}, if the simulated time is derived from the
+     *         {@link FastForwardClock}
+     */
+    public long getFixedTimeStep()
+    {
+        return fixedTimeStep;
+    }
+
+    /**
+     * Sets the simulated time between two consecutive simulation steps. Given in milliseconds.
+     * <p>
+     * If positive, {@link #run()} and {@link #simulate(long)} advance the simulated time by exactly
+     * this value in each simulation step and compute the steps as fast as possible, i.e. the
+     * simulated time is not coupled to the wall-clock time and the {@link #fastForwardFactor} is
+     * ignored. If {@code 0}, {@link #run()} derives the simulated time from the
+     * {@link FastForwardClock}. Must not be changed while {@link #run()} is in progress.
+     *
+     * @param fixedTimeStep the {@link #fixedTimeStep} in milliseconds or {@code 0}
+     */
+    public void setFixedTimeStep(long fixedTimeStep)
+    {
+        if (fixedTimeStep < 0)
+            throw new IllegalArgumentException(
+                "fixedTimeStep must not be negative: " + fixedTimeStep);
+        this.fixedTimeStep = fixedTimeStep;
+    }
+
     /**
      * Calculates the time the simulation is running, which results of the difference between
      * {@link #lastSimulationTime} and {@link #startSimulationTime}.
@@ -359,7 +555,8 @@ public class CrowdSimulator implements Runnable
     }
 
     /**
-     * Sets the factor with which the simulation is speed up or down.
+     * Sets the factor with which the simulation is speed up or down. The factor is applied to the
+     * {@link #fastForwardClock} at the beginning of the next simulation step of {@link #run()}.
      *
      * @param fastForwardFactor the speed up/down factor as number
      */
@@ -463,6 +660,160 @@ public class CrowdSimulator implements Runnable
         return forceModel;
     }
 
+    /**
+     * Gets the skin distance of the {@link PedestrianNeighbourList}, i.e. the distance (in
+     * addition to the maximum interaction distance of the {@link #forceModel}) within which
+     * {@link Pedestrian}s are stored as neighbours. Given in meters.
+     *
+     * @return the skin distance of the {@link PedestrianNeighbourList}
+     */
+    public double getNeighbourListSkinDistance()
+    {
+        return pedestrianNeighbourList.getSkinDistance();
+    }
+
+    /**
+     * Gets the copies of all {@link Pedestrian}s of all {@link Crowd}s, which have been taken at
+     * the beginning of the last simulation step (cf. {@link PedestrianSnapshotBuffer}). The
+     * returned {@link List} remains unchanged during the next simulation step.
+     *
+     * @return the read-only {@link List} of copies of all {@link Pedestrian}s
+     */
+    public List<Pedestrian> getPedestrianSnapshot()
+    {
+        return pedestrianSnapshotBuffer.getPedestrians();
+    }
+
+    /**
+     * Sets the skin distance of the {@link PedestrianNeighbourList}. Given in meters. Larger values
+     * lead to less frequent rebuilds of the neighbour lists, but to more {@link Pedestrian}s in each
+     * list. If set to {@code 0}, the neighbour lists are rebuilt in each simulation step.
+     *
+     * @param skinDistance the skin distance of the {@link PedestrianNeighbourList}
+     */
+    public void setNeighbourListSkinDistance(double skinDistance)
+    {
+        pedestrianNeighbourList.setSkinDistance(skinDistance);
+    }
+
+    /**
+     * Gets the number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool}.
+     *
+     * @return the {@link #chunkSize}
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool}, for all existing and all future {@link Crowd}s (cf.
+     * {@link Crowd#setChunkSize(int)}).
+     *
+     * @param chunkSize the {@link #chunkSize}, must be positive
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        this.chunkSize = chunkSize;
+        stepScheduler.setChunkSize(chunkSize);
+        for (Crowd crowd : crowds)
+        {
+            crowd.setChunkSize(chunkSize);
+        }
+    }
+
+    /**
+     * Tests, if the {@link Pedestrian}s are moved in two separate phases (cf.
+     * {@link Crowd#setDeterministic(boolean)}).
+     *
+     * @return {@code true}, if the {@link Pedestrian}s are moved in two separate phases
+     */
+    public boolean isDeterministic()
+    {
+        return isDeterministic;
+    }
+
+    /**
+     * Sets, if the {@link Pedestrian}s of all existing and all future {@link Crowd}s are moved in
+     * two separate phases, so that the result of a simulation step is bit-identical for any number
+     * of threads of the {@link #threadPool} (cf. {@link Crowd#setDeterministic(boolean)}).
+     *
+     * @param isDeterministic {@code true}, if the {@link Pedestrian}s are moved in two separate
+     *            phases
+     */
+    public void setDeterministic(boolean isDeterministic)
+    {
+        this.isDeterministic = isDeterministic;
+        for (Crowd crowd : crowds)
+        {
+            crowd.setDeterministic(isDeterministic);
+        }
+    }
+
+    /**
+     * Gets the number of simulation steps between two consecutive sortings of the
+     * {@link Pedestrian}s (cf. {@link #setPedestrianSortInterval(int)}).
+     *
+     * @return the number of simulation steps between two sortings or {@code 0}, if the
+     *         {@link Pedestrian}s are never sorted
+     */
+    public int getPedestrianSortInterval()
+    {
+        return pedestrianSortInterval;
+    }
+
+    /**
+     * Sets the number of simulation steps between two consecutive sortings of the
+     * {@link Pedestrian}s of all {@link #crowds} along a Z-order curve of their current positions
+     * (cf. {@link Crowd#sortPedestrians()}), which keeps neighbouring {@link Pedestrian}s close to
+     * each other in memory. Each sorting causes the {@link #pedestrianSnapshotBuffer} and the
+     * {@link #pedestrianNeighbourList} to be rebuilt, i.e. all {@link Pedestrian}s to be copied.
+     * Readers iterating the {@link Pedestrian}s concurrently to a simulation step (e.g. the
+     * Graphical User Interface) may see the old order for one more step, so sorting is mostly
+     * useful for large headless simulations.
+     *
+     * @param pedestrianSortInterval the number of simulation steps between two sortings or
+     *            {@code 0}, if the {@link Pedestrian}s should never be sorted
+     */
+    public void setPedestrianSortInterval(int pedestrianSortInterval)
+    {
+        if (pedestrianSortInterval < 0)
+            throw new IllegalArgumentException("pedestrianSortInterval must not be negative");
+        this.pedestrianSortInterval = pedestrianSortInterval;
+    }
+
+    /**
+     * Tests, if the pedestrian-pedestrian interaction is computed pair by pair (cf.
+     * {@link #setPairwiseInteraction(boolean)}).
+     *
+     * @return {@code true}, if the pedestrian-pedestrian interaction is computed pair by pair
+     */
+    public boolean isPairwiseInteraction()
+    {
+        return isPairwiseInteraction;
+    }
+
+    /**
+     * Sets, if the pedestrian-pedestrian interaction is computed pair by pair at the beginning of
+     * each simulation step, so that each pair of neighbouring {@link Pedestrian}s is computed only
+     * once (cf. {@link PedestrianPairForces}). Only takes effect, if the {@link #forceModel} is a
+     * {@link HelbingModel}. The results differ from the computation per {@link Pedestrian} only
+     * by rounding.
+     *
+     * @param isPairwiseInteraction {@code true}, if the pedestrian-pedestrian interaction is
+     *            computed pair by pair
+     */
+    public void setPairwiseInteraction(boolean isPairwiseInteraction)
+    {
+        this.isPairwiseInteraction = isPairwiseInteraction;
+        if (isPairwiseInteraction && pedestrianPairForces == null)
+            pedestrianPairForces = new PedestrianPairForces();
+    }
+
     /**
      * Gets the complete {@link List} of {@link Boundary} objects.
      *
@@ -505,7 +856,50 @@ public class CrowdSimulator implements Runnable
         for (Crowd crowd : crowds)
         {
             crowd.updateCrowdOutline(unionOfAllBoundaries);
-            crowd.setBoundaries(boundaries);
+        }
+        updateBoundaryIndex();
+    }
+
+    /**
+     * Gets the resolution of the {@link BoundaryDistanceField}. Given in meters.
+     *
+     * @return the resolution of the {@link BoundaryDistanceField} or {@code 0}, if no
+     *         {@link BoundaryDistanceField} is used
+     */
+    public double getBoundaryDistanceFieldResolution()
+    {
+        return boundaryDistanceFieldResolution;
+    }
+
+    /**
+     * Sets the resolution of the {@link BoundaryDistanceField}, which allows to compute the
+     * interaction between {@link Pedestrian}s and {@link Boundary} objects in constant time, and
+     * recomputes it. Given in meters. A smaller resolution leads to more accurate forces, but
+     * needs quadratically more memory.
+     *
+     * @param boundaryDistanceFieldResolution the resolution of the {@link BoundaryDistanceField}
+     *            or {@code 0}, if the interaction with each {@link Boundary} should be computed
+     *            exactly, cf. {@link BoundaryDistanceField#defaultResolution}
+     */
+    public void setBoundaryDistanceFieldResolution(double boundaryDistanceFieldResolution)
+    {
+        if (boundaryDistanceFieldResolution < 0)
+            boundaryDistanceFieldResolution = 0;
+        this.boundaryDistanceFieldResolution = boundaryDistanceFieldResolution;
+        updateBoundaryIndex();
+    }
+
+    /**
+     * Rebuilds the {@link #boundaryIndex} of all {@link #boundaries} (including the
+     * {@link BoundaryDistanceField}, if {@link #boundaryDistanceFieldResolution} is positive) and
+     * sets it to all {@link Crowd}s.
+     */
+    private void updateBoundaryIndex()
+    {
+        boundaryIndex = new BoundaryIndex(boundaries, boundaryDistanceFieldResolution);
+        for (Crowd crowd : crowds)
+        {
+            crowd.setBoundaries(boundaryIndex);
         }
     }
 
@@ -635,9 +1029,12 @@ public class CrowdSimulator implements Runnable
         String id = String.valueOf(crowdId);
 
         // create new crowd
-        Crowd crowd = new Crowd(id, numericIntegrator, forceModel, boundaries, unionOfAllBoundaries,
-            threadPool, network);
+        Crowd crowd = new Crowd(id, numericIntegrator, forceModel, boundaryIndex,
+            unionOfAllBoundaries, threadPool, network);
+        crowd.setChunkSize(chunkSize);
+        crowd.setDeterministic(isDeterministic);
         crowd.setPedestriansFromAgents(pedestrians, startTime);
+        crowd.setCrowdOutlineService(crowdOutlineService);
         crowds.add(crowd);
     }
 
@@ -649,6 +1046,8 @@ public class CrowdSimulator implements Runnable
     public void removeCrowd(Crowd crowd)
     {
         crowds.remove(crowd);
+        crowd.setCrowdOutlineService(null);
+        crowdOutlineService.remove(crowd);
     }
 
     /**
@@ -723,6 +1122,7 @@ public class CrowdSimulator implements Runnable
     public void init()
     {
         boundaries = new ArrayList<>();
+        boundaryIndex = new BoundaryIndex(boundaries);
         wayPoints = new ArrayList<>();
         crowds = new ArrayList<>();
     }
@@ -734,6 +1134,11 @@ public class CrowdSimulator implements Runnable
     {
         wayPoints.clear();
         boundaries.clear();
+        boundaryIndex = new BoundaryIndex(boundaries);
+        for (Crowd crowd : crowds)
+        {
+            crowdOutlineService.remove(crowd);
+        }
         crowds.clear();
         grid.clear();
 
@@ -1066,40 +1471,93 @@ public class CrowdSimulator implements Runnable
     @Override
     public void run()
     {
-        startSimulationTime = fastForwardClock.currentTimeMillis(fastForwardFactor);
-        // startSimulationTime = fastForwardClock.nanoTime(fastForwardFactor);
+        if (fixedTimeStep > 0)
+        {
+            initFixedTimeStep();
+            while (simulationThreadRunning)
+            {
+                stepFixedTimeStep();
+            }
+            return;
+        }
+
+        long lastSimulationTimeNanos = fastForwardClock.nanoTime(fastForwardFactor);
+        startSimulationTime = TimeUnit.NANOSECONDS.toMillis(lastSimulationTimeNanos);
 
+        stepPacer.start(refreshInterval);
         while (simulationThreadRunning)
         {
             logger.trace("CrowdSimulator.run(), fastForwardFactor=" + fastForwardFactor);
 
-            long currentTime = fastForwardClock.currentTimeMillis(fastForwardFactor);
-            // long currentTime = fastForwardClock.nanoTime(fastForwardFactor);
-
-            // if (simulationUpdateIntervalNanos < refreshInterval)
-            // {
-            // try
-            // {
-            // long sleepInterval = refreshInterval - simulationUpdateIntervalNanos;
-            // long sleepIntervalMs = TimeUnit.NANOSECONDS.toMillis(sleepInterval);
-            // long sleepIntervalremainingNanos = (sleepInterval) % 1000000;
-            // Thread.sleep(sleepIntervalMs, (int) sleepIntervalremainingNanos);
-            // }
-            // catch (InterruptedException e)
-            // {
-            // logger.trace("MapPanel.run(), sleep interrupted", e);
-            // }
-            // }
-            // don't refresh more than 1 time per second
-            if (currentTime - lastSimulationTime < refreshInterval)
+            // wait without occupying a processor until the next step is due
+            stepPacer.awaitNextStep();
+
+            // changes of the fast forward factor are applied to the clock only here, i.e. at the
+            // boundary between two steps
+            long currentTimeNanos = fastForwardClock.nanoTime(fastForwardFactor);
+
+            // the simulated time does not advance, if the simulation is paused. Otherwise, each
+            // deadline leads to a step, so that steps missed by an overrun are caught up
+            if (currentTimeNanos - lastSimulationTimeNanos <= 0)
                 continue;
+            stepPacer.recordStep();
+            long currentTime = TimeUnit.NANOSECONDS.toMillis(currentTimeNanos);
             isSimulatingInProgress = true;
-            moveCrowds(currentTime);
+            // the update interval is computed from nanoseconds to avoid truncation errors
+            moveCrowds(currentTime, (currentTimeNanos - lastSimulationTimeNanos) / 1_000_000_000d);
             isSimulatingInProgress = false;
             lastSimulationTime = currentTime;
+            lastSimulationTimeNanos = currentTimeNanos;
         }
     }
 
+    /**
+     * Computes simulation steps in fixed time step mode (cf. {@link #setFixedTimeStep(long)})
+     * until the simulated time has been advanced by {@code simulatedTimeSpan}. Returns immediately
+     * after the last simulation step without any sleeping, i.e. this can be used to run a scenario
+     * in a batch process without starting a thread.
+     *
+     * @param simulatedTimeSpan the simulated time to be computed. Given in milliseconds.
+     */
+    public void simulate(long simulatedTimeSpan)
+    {
+        if (fixedTimeStep <= 0)
+            throw new IllegalStateException("fixed time step mode is not enabled");
+        initFixedTimeStep();
+        long endTime = lastSimulationTime + simulatedTimeSpan;
+        while (lastSimulationTime + fixedTimeStep <= endTime)
+        {
+            stepFixedTimeStep();
+        }
+    }
+
+    /**
+     * Initializes {@link #startSimulationTime} and {@link #lastSimulationTime} from the
+     * {@link #fastForwardClock}, if no simulation step has been computed so far, so that the
+     * simulated time is consistent with the start times of the {@link Pedestrian}s.
+     */
+    private void initFixedTimeStep()
+    {
+        if (lastSimulationTime == 0)
+        {
+            startSimulationTime = fastForwardClock.currentTimeMillis();
+            lastSimulationTime = startSimulationTime;
+        }
+    }
+
+    /**
+     * Computes a single simulation step in fixed time step mode, i.e. advances the simulated time
+     * by {@link #fixedTimeStep}.
+     */
+    private void stepFixedTimeStep()
+    {
+        long currentTime = lastSimulationTime + fixedTimeStep;
+        isSimulatingInProgress = true;
+        moveCrowds(currentTime);
+        isSimulatingInProgress = false;
+        lastSimulationTime = currentTime;
+    }
+
     /**
      * Moves all {@link Pedestrian} objects of the {@link Crowd} belonging to this
      * {@link CrowdSimulator}. Updating the {@link Grid} with new aggregate values of
@@ -1108,48 +1566,112 @@ public class CrowdSimulator implements Runnable
      * @param currentTime the current timestamp (unix timestamp) in simulation time in milliseconds
      */
     public void moveCrowds(long currentTime)
+    {
+        moveCrowds(currentTime, (currentTime - lastSimulationTime) / 1000d);
+    }
+
+    /**
+     * Moves all {@link Pedestrian} objects of the {@link Crowd} belonging to this
+     * {@link CrowdSimulator} using the given {@code simulationUpdateInterval}. Updating the
+     * {@link Grid} with new aggregate values of {@link Pedestrian} object count per cell is invoked
+     * as well.
+     *
+     * @param currentTime the current timestamp (unix timestamp) in simulation time in milliseconds
+     * @param simulationUpdateInterval the simulated time since the last simulation step given in
+     *            seconds
+     */
+    public void moveCrowds(long currentTime, double simulationUpdateInterval)
     {
         if (crowds != null && !crowds.isEmpty())
         {
-            // collect all pedestrians from all crowds and make copies of them before any
-            // crowd/pedestrian is moved
-            List<Pedestrian> allPedestrians = new ArrayList<>();
-            for (Crowd crowd : crowds)
+            // restore the locality of the pedestrians in memory from time to time
+            if (pedestrianSortInterval > 0 && ++stepsSincePedestrianSort >= pedestrianSortInterval)
             {
-                allPedestrians.addAll(crowd.getPedestrians(true));
+                for (Crowd crowd : crowds)
+                {
+                    crowd.sortPedestrians();
+                }
+                stepsSincePedestrianSort = 0;
             }
 
-            // iterate over all crowds to move all crowds
+            // copy the states of all pedestrians from all crowds before any crowd/pedestrian is
+            // moved (reusing the copies of the last but one step)
+            pedestrianSnapshotBuffer.update(crowds);
+            List<Pedestrian> allPedestrians = pedestrianSnapshotBuffer.getPedestrians();
+
+            // update the neighbour lists once per step (rebuilding them only if necessary), so
+            // that each pedestrian only needs to interact with its neighbours
+            pedestrianNeighbourList
+                .setInteractionDistance(forceModel.getMaxPedestrianInteractionDistance());
+            pedestrianNeighbourList.update(allPedestrians);
+
+            if (lastSimulationTime == 0)
+            {
+                return;
+            }
+            // update the statistics once per step for all crowds
+            this.simulationUpdateInterval = simulationUpdateInterval;
+            this.totalSimulationSteps++ ;
+            this.averageSimulationUpdateInterval = (averageSimulationUpdateInterval
+                * (totalSimulationSteps - 1) + this.simulationUpdateInterval)
+                / totalSimulationSteps;
+
+            int firstPedestrianSlot = 0;
             for (Crowd crowd : crowds)
             {
-                if (lastSimulationTime == 0)
+                crowd.setAllPedestrians(allPedestrians);
+                crowd.setPedestrianNeighbourList(pedestrianNeighbourList, firstPedestrianSlot);
+                firstPedestrianSlot += crowd.getSize();
+            }
+
+            // compute each pair of neighbouring pedestrians only once for all crowds
+            if (isPairwiseInteraction && forceModel instanceof HelbingModel)
+            {
+                pedestrianPairForces.update(allPedestrians, pedestrianNeighbourList, crowds,
+                    (HelbingModel) forceModel, threadPool);
+            }
+
+            // the multi-rate integrator only gets the neighbours of each pedestrian, so it needs
+            // to know how far these are complete and how fast any other pedestrian can approach
+            if (numericIntegrator instanceof MultiRateIntegrator)
+            {
+                double maximumVelocity = 0;
+                for (int i = 0; i < allPedestrians.size(); i++ )
                 {
-                    return;
+                    maximumVelocity = Math.max(maximumVelocity,
+                        allPedestrians.get(i).getMaximumDesiredVelocity());
                 }
-                // this.simulationUpdateIntervalNanos = currentTime - lastSimulationTime;
-                // this.simulationUpdateInterval = simulationUpdateIntervalNanos / 1_000_000_000d;
-                this.simulationUpdateInterval = (currentTime - lastSimulationTime) / 1000d;
-                this.totalSimulationSteps++ ;
-                this.averageSimulationUpdateInterval = (averageSimulationUpdateInterval
-                    * (totalSimulationSteps - 1) + this.simulationUpdateInterval)
-                    / totalSimulationSteps;
+                MultiRateIntegrator multiRateIntegrator = (MultiRateIntegrator) numericIntegrator;
+                multiRateIntegrator
+                    .setCompleteDistance(pedestrianNeighbourList.getCompleteDistance());
+                multiRateIntegrator.setMaximumVelocity(maximumVelocity);
+            }
 
-                crowd.setAllPedestrians(allPedestrians);
-                crowd.moveCrowd(currentTime, simulationUpdateInterval);
-                logger.trace("moveCrowd(), " + currentTime);
-                logger.trace("moveCrowd(), " + crowd.getPedestrians().size());
-                logger.trace("moveCrowd(), " + forceModel);
-                logger.trace("moveCrowd(), " + numericIntegrator);
-                logger.trace("moveCrowd(), " + simulationUpdateInterval);
-                logger.trace("moveCrowd(), " + crowd.getPedestrians(true).size());
-                logger.trace("moveCrowd(), " + boundaries.size());
-                logger.trace("moveCrowd(), " + unionOfAllBoundaries);
-                logger.trace("moveCrowd(), " + threadPool.isShutdown());
-
-                grid.update(crowd.getPedestrians(), currentTime);
-
-                logger.trace("CrowdSimulator.movePedestrians(), ");
+            // move the pedestrians of all crowds at once
+            stepScheduler.step(crowds, currentTime, simulationUpdateInterval);
+            logger.trace("moveCrowd(), " + currentTime);
+            logger.trace("moveCrowd(), " + firstPedestrianSlot);
+            logger.trace("moveCrowd(), " + forceModel);
+            logger.trace("moveCrowd(), " + numericIntegrator);
+            logger.trace("moveCrowd(), " + simulationUpdateInterval);
+            logger.trace("moveCrowd(), " + boundaries.size());
+            logger.trace("moveCrowd(), " + unionOfAllBoundaries);
+            logger.trace("moveCrowd(), " + (threadPool != null && threadPool.isShutdown()));
+
+            // count the pedestrians per grid cell in a single (parallel) pass, at most once per
+            // update interval of the grid
+            if (grid.isUpdateNecessary(currentTime))
+            {
+                gridPedestrians.clear();
+                for (Crowd crowd : crowds)
+                {
+                    gridPedestrians.addAll(crowd.getPedestrians());
+                }
+                grid.update(gridPedestrians, currentTime, threadPool);
+                gridPedestrians.clear();
             }
+
+            logger.trace("CrowdSimulator.movePedestrians(), ");
         }
     }
 }
@@ -1,94 +1,171 @@
 package de.fhg.ivi.crowdsimulation.simulation;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 /**
  * This class was created for the implementation of a time lapse. Generally the FastForwardClock
  * should speed up the simulation.
+ * <p>
+ * The simulated time is derived from the monotonic {@link System#nanoTime()}. It is a piecewise
+ * linear function of the real time, whose current piece is published as a single immutable
+ * {@link Segment} through an {@link AtomicReference}. Hence, reading the simulated time neither
+ * takes a lock nor changes the state of the clock and can be done concurrently by the simulation,
+ * the user interface and any other thread. Only a change of the fast forward factor creates a new
+ * {@link Segment}, which starts at the simulated time of the moment of the change.
+ * <p>
+ * The simulated time starts at the current unix time stamp, when the {@link FastForwardClock} is
+ * created.
  *
  * @author Hahmann
  */
 public class FastForwardClock
 {
     /**
-     * The current fake time in dependence by the {@code fastForwardFactor}. Given in milliseconds.
+     * The current piece of the simulated time.
      */
-    private long fakeTimeMillis     = 0;
+    private final AtomicReference<Segment> segment;
 
     /**
-     * The current system time. Given in milliseconds.
+     * Creates a new {@link FastForwardClock} with a fast forward factor of {@code 1}, whose
+     * simulated time starts at the current unix time stamp.
      */
-    private long lastRealTimeMillis = 0;
+    public FastForwardClock()
+    {
+        this.segment = new AtomicReference<>(new Segment(System.nanoTime(),
+            TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis()), 1));
+    }
 
     /**
-     * The current fake time in dependence by the {@code fastForwardFactor}. Given in milliseconds.
+     * Gets the current simulated time without changing the fast forward factor.
+     *
+     * @return the current simulated time as unix time stamp in milliseconds
      */
-    private long fakeTimeNanos      = 0;
+    public long currentTimeMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime());
+    }
 
     /**
-     * The current system time. Given in milliseconds.
+     * Sets the fast forward factor to {@code fastForwardFactor} (cf.
+     * {@link #setFastForwardFactor(long)}) and gets the current simulated time.
+     *
+     * @param fastForwardFactor the factor to speed up the resulting simulated time
+     *
+     * @return the current simulated time as unix time stamp in milliseconds
      */
-    private long lastRealTimeNanos  = 0;
+    public long currentTimeMillis(long fastForwardFactor)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(nanoTime(fastForwardFactor));
+    }
 
     /**
-     * Invokes the method currentTimeMillis() with a specific fastForwardFactor. This will speed up
-     * (or speed down) the {@code simulationThread} by this factor.
+     * Gets the current simulated time without changing the fast forward factor.
      *
-     * @return the current {@code fakeTimeStamp}
+     * @return the current simulated time as unix time stamp in nanoseconds
      */
-    public long currentTimeMillis()
+    public long nanoTime()
     {
-        return currentTimeMillis(1);
+        return segment.get().simulatedTimeAt(System.nanoTime());
     }
 
     /**
-     * Computes a faked "real time" depending on a fast forward factor {@code fastForwardFactor}.
+     * Sets the fast forward factor to {@code fastForwardFactor} (cf.
+     * {@link #setFastForwardFactor(long)}) and gets the current simulated time.
      *
      * @param fastForwardFactor the factor to speed up the resulting simulated time
      *
-     * @return the new resulting simulated time
+     * @return the current simulated time as unix time stamp in nanoseconds
      */
-    public long currentTimeMillis(long fastForwardFactor)
+    public long nanoTime(long fastForwardFactor)
     {
-        synchronized (this)
-        {
-            if (fakeTimeMillis == 0)
-            {
-                fakeTimeMillis = System.currentTimeMillis();
-            }
-            else
-            {
-                long fakeDeltaTime = (System.currentTimeMillis() - lastRealTimeMillis)
-                    * fastForwardFactor;
-                fakeTimeMillis += fakeDeltaTime;
-            }
-            lastRealTimeMillis = System.currentTimeMillis();
-        }
-
-        return fakeTimeMillis;
+        return setFastForwardFactor(fastForwardFactor);
     }
 
     /**
-     * Computes a faked "real time" depending on a fast forward factor {@code fastForwardFactor}.
+     * Gets the current fast forward factor.
      *
-     * @param fastForwardFactor the factor to speed up the resulting simulated time
+     * @return the factor, by which the simulated time is speed up
+     */
+    public long getFastForwardFactor()
+    {
+        return segment.get().fastForwardFactor;
+    }
+
+    /**
+     * Sets the fast forward factor atomically. The simulated time until now is computed with the
+     * previous factor, the simulated time from now on with {@code fastForwardFactor}. A factor of
+     * {@code 0} stops the simulated time.
      *
-     * @return the new resulting simulated time
+     * @param fastForwardFactor the factor to speed up the resulting simulated time, must not be
+     *            negative
+     * @return the simulated time as unix time stamp in nanoseconds at the moment of the change
      */
-    public long nanoTime(long fastForwardFactor)
+    public long setFastForwardFactor(long fastForwardFactor)
     {
-        synchronized (this)
+        if (fastForwardFactor < 0)
+            throw new IllegalArgumentException(
+                "fastForwardFactor must not be negative: " + fastForwardFactor);
+        while (true)
         {
-            if (fakeTimeNanos == 0)
-            {
-                fakeTimeNanos = System.nanoTime();
-            }
-            else
-            {
-                long fakeDeltaTime = (System.nanoTime() - lastRealTimeNanos) * fastForwardFactor;
-                fakeTimeNanos += fakeDeltaTime;
-            }
-            lastRealTimeNanos = System.nanoTime();
+            Segment current = segment.get();
+            long realTime = System.nanoTime();
+            long simulatedTime = current.simulatedTimeAt(realTime);
+            if (current.fastForwardFactor == fastForwardFactor)
+                return simulatedTime;
+            if (segment.compareAndSet(current,
+                new Segment(realTime, simulatedTime, fastForwardFactor)))
+                return simulatedTime;
         }
+    }
 
-        return fakeTimeNanos;
+    /**
+     * A piece of the simulated time, during which the fast forward factor is constant.
+     */
+    private static final class Segment
+    {
+        /**
+         * The real time at the start of this {@link Segment} given as {@link System#nanoTime()}.
+         */
+        private final long realTime;
+
+        /**
+         * The simulated time at the start of this {@link Segment} given as unix time stamp in
+         * nanoseconds.
+         */
+        private final long simulatedTime;
+
+        /**
+         * The factor, by which the simulated time is speed up during this {@link Segment}.
+         */
+        private final long fastForwardFactor;
+
+        /**
+         * Creates a new {@link Segment}.
+         *
+         * @param realTime the real time at the start of this {@link Segment} given as
+         *            {@link System#nanoTime()}
+         * @param simulatedTime the simulated time at the start of this {@link Segment} given as
+         *            unix time stamp in nanoseconds
+         * @param fastForwardFactor the factor, by which the simulated time is speed up
+         */
+        private Segment(long realTime, long simulatedTime, long fastForwardFactor)
+        {
+            this.realTime = realTime;
+            this.simulatedTime = simulatedTime;
+            this.fastForwardFactor = fastForwardFactor;
+        }
+
+        /**
+         * Computes the simulated time at the real time {@code now}.
+         *
+         * @param now the real time given as {@link System#nanoTime()}
+         * @return the simulated time given as unix time stamp in nanoseconds
+         */
+        private long simulatedTimeAt(long now)
+        {
+            // a concurrent reader may have read the real time before this segment was created
+            return simulatedTime + Math.max(now - realTime, 0) * fastForwardFactor;
+        }
     }
 }
@@ -0,0 +1,257 @@
+package de.fhg.ivi.crowdsimulation.simulation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link StepPacer} paces the simulation steps of a {@link CrowdSimulator} in real time, i.e. it
+ * blocks the simulation thread until the deadline of the next simulation step has been reached.
+ * Instead of polling the clock, the thread is parked using {@link LockSupport#parkNanos(long)}, so
+ * that no processor is occupied while waiting.
+ * <p>
+ * The deadlines are computed at a fixed rate, i.e. each deadline is the previous deadline plus the
+ * {@link #interval}. If a simulation step takes longer than the {@link #interval} (an overrun),
+ * the following steps are started without waiting until the schedule has been caught up again. If
+ * the simulation is more than {@link #maximumCatchUpSteps} steps behind its schedule, the schedule
+ * is reset to the current time instead.
+ * <p>
+ * Additionally, the number of overruns and the jitter, i.e. the delay between a deadline and the
+ * actual start of a simulation step, are recorded. Since not every deadline leads to a simulation
+ * step (e.g. if the simulation is paused), the statistics of a deadline are only recorded, if
+ * {@link #recordStep()} is called after {@link #awaitNextStep()}.
+ *
+ * @author hahmann/meinert
+ */
+public class StepPacer
+{
+    /**
+     * Uses the object logger for printing specific messages in the console.
+     */
+    private static final Logger logger                     = LoggerFactory
+        .getLogger(StepPacer.class);
+
+    /**
+     * The default value of {@link #maximumCatchUpSteps}.
+     */
+    public static final int     defaultMaximumCatchUpSteps = 5;
+
+    /**
+     * The time between the deadlines of two consecutive simulation steps. Given in nanoseconds.
+     */
+    private long                interval;
+
+    /**
+     * The maximum number of simulation steps, which are started without waiting after an overrun.
+     */
+    private int                 maximumCatchUpSteps;
+
+    /**
+     * The deadline of the next simulation step given as {@link System#nanoTime()}.
+     */
+    private long                nextDeadline;
+
+    /**
+     * The number of simulation steps since the last call of {@link #start(long)}.
+     */
+    private long                stepCount;
+
+    /**
+     * The number of simulation steps since the last call of {@link #start(long)}, whose deadline
+     * had already passed, when the previous step was finished.
+     */
+    private long                overrunCount;
+
+    /**
+     * The number of times the schedule has been reset, since the simulation was more than
+     * {@link #maximumCatchUpSteps} behind.
+     */
+    private long                resetCount;
+
+    /**
+     * The sum of the delays between the deadlines and the actual starts of all simulation steps.
+     * Given in nanoseconds.
+     */
+    private long                totalJitter;
+
+    /**
+     * The maximum delay between the deadline and the actual start of a simulation step. Given in
+     * nanoseconds.
+     */
+    private long                maximumJitter;
+
+    /**
+     * The delay between the last deadline returned by {@link #awaitNextStep()} and the end of
+     * waiting. Given in nanoseconds.
+     */
+    private long                pendingJitter;
+
+    /**
+     * Indicates, if the last deadline returned by {@link #awaitNextStep()} had already passed,
+     * when {@link #awaitNextStep()} was called.
+     */
+    private boolean             isPendingOverrun;
+
+    /**
+     * Creates a new {@link StepPacer}.
+     */
+    public StepPacer()
+    {
+        this.maximumCatchUpSteps = defaultMaximumCatchUpSteps;
+    }
+
+    /**
+     * Starts a new schedule, i.e. the deadline of the first simulation step is the current time,
+     * and resets all statistics.
+     *
+     * @param intervalMillis the time between the deadlines of two consecutive simulation steps.
+     *            Given in milliseconds.
+     */
+    public synchronized void start(long intervalMillis)
+    {
+        this.interval = TimeUnit.MILLISECONDS.toNanos(Math.max(intervalMillis, 0));
+        this.nextDeadline = System.nanoTime();
+        this.stepCount = 0;
+        this.overrunCount = 0;
+        this.resetCount = 0;
+        this.totalJitter = 0;
+        this.maximumJitter = 0;
+        this.pendingJitter = 0;
+        this.isPendingOverrun = false;
+    }
+
+    /**
+     * Blocks the calling thread until the deadline of the next simulation step has been reached
+     * and computes the deadline of the following simulation step. Returns immediately, if the
+     * deadline has already passed or the calling thread is interrupted. If a simulation step is
+     * computed afterwards, {@link #recordStep()} must be called to record it in the statistics.
+     */
+    public void awaitNextStep()
+    {
+        long deadline;
+        synchronized (this)
+        {
+            deadline = nextDeadline;
+        }
+        long now = System.nanoTime();
+        boolean isOverrun = now - deadline > 0;
+        while (now - deadline < 0 && !Thread.currentThread().isInterrupted())
+        {
+            LockSupport.parkNanos(this, deadline - now);
+            now = System.nanoTime();
+        }
+
+        synchronized (this)
+        {
+            long jitter = Math.max(now - deadline, 0);
+            pendingJitter = jitter;
+            isPendingOverrun = isOverrun;
+
+            nextDeadline = deadline + interval;
+            // don't catch up endlessly, if the simulation is far behind its schedule
+            if (now - nextDeadline > maximumCatchUpSteps * interval)
+            {
+                nextDeadline = now + interval;
+                resetCount++ ;
+                logger.trace("StepPacer.awaitNextStep(), schedule reset, jitter=" + jitter);
+            }
+        }
+    }
+
+    /**
+     * Records the simulation step started after the last call of {@link #awaitNextStep()} in the
+     * statistics, i.e. the number of steps, the number of overruns and the jitter. Must be called
+     * at most once after each call of {@link #awaitNextStep()}.
+     */
+    public synchronized void recordStep()
+    {
+        if (isPendingOverrun && stepCount > 0)
+            overrunCount++ ;
+        stepCount++ ;
+        totalJitter += pendingJitter;
+        maximumJitter = Math.max(maximumJitter, pendingJitter);
+    }
+
+    /**
+     * Gets the maximum number of simulation steps, which are started without waiting after an
+     * overrun.
+     *
+     * @return the {@link #maximumCatchUpSteps}
+     */
+    public synchronized int getMaximumCatchUpSteps()
+    {
+        return maximumCatchUpSteps;
+    }
+
+    /**
+     * Sets the maximum number of simulation steps, which are started without waiting after an
+     * overrun. If {@code 0}, overruns are never caught up.
+     *
+     * @param maximumCatchUpSteps the {@link #maximumCatchUpSteps}, must not be negative
+     */
+    public synchronized void setMaximumCatchUpSteps(int maximumCatchUpSteps)
+    {
+        if (maximumCatchUpSteps < 0)
+            throw new IllegalArgumentException(
+                "maximumCatchUpSteps must not be negative: " + maximumCatchUpSteps);
+        this.maximumCatchUpSteps = maximumCatchUpSteps;
+    }
+
+    /**
+     * Gets the number of simulation steps since the last call of {@link #start(long)}.
+     *
+     * @return the {@link #stepCount}
+     */
+    public synchronized long getStepCount()
+    {
+        return stepCount;
+    }
+
+    /**
+     * Gets the number of simulation steps since the last call of {@link #start(long)}, whose
+     * deadline had already passed, when the previous step was finished.
+     *
+     * @return the {@link #overrunCount}
+     */
+    public synchronized long getOverrunCount()
+    {
+        return overrunCount;
+    }
+
+    /**
+     * Gets the number of times the schedule has been reset, since the simulation was more than
+     * {@link #maximumCatchUpSteps} behind its schedule.
+     *
+     * @return the {@link #resetCount}
+     */
+    public synchronized long getResetCount()
+    {
+        return resetCount;
+    }
+
+    /**
+     * Gets the average delay between the deadlines and the actual starts of all simulation steps
+     * since the last call of {@link #start(long)}. Given in nanoseconds.
+     *
+     * @return the average jitter in nanoseconds
+     */
+    public synchronized double getAverageJitter()
+    {
+        if (stepCount == 0)
+            return 0;
+        return totalJitter / (double) stepCount;
+    }
+
+    /**
+     * Gets the maximum delay between the deadline and the actual start of a simulation step since
+     * the last call of {@link #start(long)}. Given in nanoseconds.
+     *
+     * @return the {@link #maximumJitter}
+     */
+    public synchronized long getMaximumJitter()
+    {
+        return maximumJitter;
+    }
+}
@@ -0,0 +1,189 @@
+package de.fhg.ivi.crowdsimulation.simulation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import de.fhg.ivi.crowdsimulation.simulation.objects.Crowd;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ParallelTools;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ParallelTools.ChunkTask;
+
+/**
+ * A {@link StepScheduler} moves all {@link Pedestrian}s of all {@link Crowd}s of a
+ * {@link CrowdSimulator} in a single simulation step. Instead of moving one {@link Crowd} after
+ * another, the {@link Pedestrian}s of all {@link Crowd}s are regarded as a single range of indices,
+ * which is split into chunks of consecutive {@link Pedestrian}s (cf.
+ * {@link ParallelTools#invokeChunked(ExecutorService, int, int, ChunkTask)}). Hence, a chunk may
+ * contain {@link Pedestrian}s of several {@link Crowd}s and no thread needs to wait for the
+ * {@link Pedestrian}s of another {@link Crowd} to be finished.
+ * <p>
+ * If any {@link Crowd} is deterministic (cf. {@link Crowd#setDeterministic(boolean)}), the first
+ * phase of all deterministic {@link Crowd}s is computed together with the moves of all other
+ * {@link Crowd}s and the second phase is computed afterwards.
+ * <p>
+ * Important: {@link Crowd#setAllPedestrians(List)} needs to be called for all {@link Crowd}s before
+ * {@link #step(List, long, double)}
+ *
+ * @author hahmann/meinert
+ */
+public class StepScheduler
+{
+    /**
+     * Thread Pool for parallelization of Pedestrian movement computation, may be {@code null}
+     */
+    private ExecutorService threadPool;
+
+    /**
+     * The number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool}
+     */
+    private int             chunkSize;
+
+    /**
+     * The {@link Crowd}s of the current simulation step.
+     */
+    private Crowd[]         crowds;
+
+    /**
+     * The index of the first {@link Pedestrian} of each of the {@link #crowds} in the range of all
+     * {@link Pedestrian}s. Contains the total number of {@link Pedestrian}s as last element.
+     */
+    private int[]           firstIndices;
+
+    /**
+     * Creates a new {@link StepScheduler}.
+     *
+     * @param threadPool the Thread Pool for parallelization of Pedestrian movement computation. If
+     *            {@code null} no parallelization is applied
+     * @param chunkSize the number of consecutive {@link Pedestrian}s, which are moved by a single
+     *            task of the {@code threadPool}
+     */
+    public StepScheduler(ExecutorService threadPool, int chunkSize)
+    {
+        this.threadPool = threadPool;
+        this.crowds = new Crowd[0];
+        this.firstIndices = new int[1];
+        setChunkSize(chunkSize);
+    }
+
+    /**
+     * Gets the number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool}.
+     *
+     * @return the {@link #chunkSize}
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool}.
+     *
+     * @param chunkSize the {@link #chunkSize}, must be positive
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Moves all {@link Pedestrian}s of all {@code crowds} and returns, when all of them have been
+     * moved. Afterwards {@link Crowd#finishMove()} is called for each of the {@code crowds}.
+     *
+     * @param crowdsToMove the {@link List} of all {@link Crowd}s to be moved
+     * @param time the current time stamp in simulated time (given in milliseconds)
+     * @param simulationUpdateInterval the time between 2 consecutive simulation steps given in
+     *            seconds
+     */
+    public synchronized void step(List<Crowd> crowdsToMove, final long time,
+        final double simulationUpdateInterval)
+    {
+        boolean isAnyDeterministic = false;
+        crowds = crowdsToMove.toArray(crowds);
+        if (firstIndices.length < crowdsToMove.size() + 1)
+            firstIndices = new int[crowdsToMove.size() + 1];
+        firstIndices[0] = 0;
+        for (int i = 0; i < crowdsToMove.size(); i++ )
+        {
+            firstIndices[i + 1] = firstIndices[i] + crowds[i].getSize();
+            isAnyDeterministic |= crowds[i].isDeterministic();
+        }
+        final int crowdCount = crowdsToMove.size();
+        int size = firstIndices[crowdCount];
+
+        // moves all non deterministic crowds and computes the first phase of all deterministic
+        // crowds
+        ParallelTools.invokeChunked(threadPool, size, chunkSize, new ChunkTask()
+            {
+                @Override
+                public void run(int start, int end)
+                {
+                    for (int i = findCrowd(start, crowdCount); i < crowdCount
+                        && firstIndices[i] < end; i++ )
+                    {
+                        int crowdStart = Math.max(start, firstIndices[i]) - firstIndices[i];
+                        int crowdEnd = Math.min(end, firstIndices[i + 1]) - firstIndices[i];
+                        if (crowds[i].isDeterministic())
+                            crowds[i].prepareMovePedestrians(crowdStart, crowdEnd, time);
+                        else
+                            crowds[i].movePedestrians(crowdStart, crowdEnd, time,
+                                simulationUpdateInterval);
+                    }
+                }
+            });
+
+        // computes the second phase of all deterministic crowds
+        if (isAnyDeterministic)
+        {
+            ParallelTools.invokeChunked(threadPool, size, chunkSize, new ChunkTask()
+                {
+                    @Override
+                    public void run(int start, int end)
+                    {
+                        for (int i = findCrowd(start, crowdCount); i < crowdCount
+                            && firstIndices[i] < end; i++ )
+                        {
+                            if ( !crowds[i].isDeterministic())
+                                continue;
+                            int crowdStart = Math.max(start, firstIndices[i]) - firstIndices[i];
+                            int crowdEnd = Math.min(end, firstIndices[i + 1]) - firstIndices[i];
+                            crowds[i].completeMovePedestrians(crowdStart, crowdEnd, time,
+                                simulationUpdateInterval);
+                        }
+                    }
+                });
+        }
+
+        for (int i = 0; i < crowdCount; i++ )
+        {
+            crowds[i].finishMove();
+        }
+
+        // don't keep references to removed crowds
+        Arrays.fill(crowds, null);
+    }
+
+    /**
+     * Finds the index of the {@link Crowd} in {@link #crowds}, which contains the
+     * {@link Pedestrian} with the given {@code index} in the range of all {@link Pedestrian}s.
+     *
+     * @param index the index of a {@link Pedestrian} in the range of all {@link Pedestrian}s
+     * @param crowdCount the number of {@link #crowds} of the current simulation step
+     * @return the index of the {@link Crowd} in {@link #crowds}
+     */
+    private int findCrowd(int index, int crowdCount)
+    {
+        int crowd = Arrays.binarySearch(firstIndices, 0, crowdCount + 1, index);
+        if (crowd < 0)
+            return -crowd - 2;
+        // skip empty crowds, which have the same first index as the following crowd
+        while (crowd < crowdCount && firstIndices[crowd + 1] == index)
+            crowd++ ;
+        return crowd;
+    }
+}
@@ -3,7 +3,9 @@ package de.fhg.ivi.crowdsimulation.simulation.forcemodel;
 import com.vividsolutions.jts.geom.Geometry;
 
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryDistanceField;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ExpLookupTable;
 import math.geom2d.Vector2D;
 
 /**
@@ -48,6 +50,48 @@ public abstract class ForceModel
      */
     public static final float limitResultingForce = 0.01f;
 
+    /**
+     * The minimum length of the buffer given to the allocation-free methods of this
+     * {@link ForceModel}, e.g.
+     * {@link #interactPedestrian(double, double, double, double, double, double, double[])}. The
+     * force is added to the elements {@code 0} (x component) and {@code 1} (y component) of the
+     * buffer, the elements {@code 2} and {@code 3} are used for intermediate results.
+     */
+    public static final int   forceBufferLength   = 4;
+
+    /**
+     * If {@code true}, the interaction terms are computed in fast math mode, i.e. with tabulated
+     * values of the exponential function (cf. {@link ExpLookupTable}) and without trigonometric
+     * functions, if {@code false} with the strict functions of {@link Math}.
+     */
+    protected boolean         isFastMath;
+
+    /**
+     * Checks, whether the interaction terms are computed in fast math mode.
+     *
+     * @return {@code true}, if the fast math mode is used, {@code false} if the strict mode is
+     *         used
+     */
+    public boolean isFastMath()
+    {
+        return isFastMath;
+    }
+
+    /**
+     * Switches between the strict mode (default) and the fast math mode. In the fast math mode the
+     * exponential function is looked up in the {@link ExpLookupTable} with a relative error of at
+     * most {@link ExpLookupTable#maximumRelativeError} and the anisotropy of the interaction is
+     * computed directly from the dot product of the direction vectors instead of the angle
+     * between them. Sub classes, which do not support the fast math mode, ignore this setting.
+     *
+     * @param isFastMath {@code true}, if the fast math mode should be used, {@code false} if the
+     *            strict mode should be used
+     */
+    public void setFastMath(boolean isFastMath)
+    {
+        this.isFastMath = isFastMath;
+    }
+
     /**
      * Gets the acceleration that is needed to reach the desired velocity and go in the desired
      * direction.
@@ -69,6 +113,31 @@ public abstract class ForceModel
         Vector2D normalizedDirectionVector, float averageVelocityOnRoute,
         float actualDesiredVelocity, float maximumDesiredVelocity);
 
+    /**
+     * Computes the acceleration that is needed to reach the desired velocity and go in the desired
+     * direction (cf. {@link #intrinsicForce(Vector2D, Vector2D, Vector2D, float, float, float)})
+     * and adds it to {@code force} without creating any objects.
+     *
+     * @param currentPositionX the x component of the current position of the {@link Pedestrian}
+     * @param currentPositionY the y component of the current position of the {@link Pedestrian}
+     * @param currentVelocityX the x component of the current velocity of the {@link Pedestrian}
+     * @param currentVelocityY the y component of the current velocity of the {@link Pedestrian}
+     * @param normalizedDirectionX the x component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param normalizedDirectionY the y component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param averageVelocityOnRoute averageVelocityOnRoute the velocity of the {@link Pedestrian}
+     *            in dependence to his/her current traveled distance and the past time.
+     * @param actualDesiredVelocity the current velocity of the {@link Pedestrian}
+     * @param maximumDesiredVelocity the maximal desired velocity the {@link Pedestrian}
+     * @param force the buffer of at least {@link #forceBufferLength} elements, to whose elements
+     *            {@code 0} and {@code 1} the x and y component of the force are added
+     */
+    public abstract void intrinsicForce(double currentPositionX, double currentPositionY,
+        double currentVelocityX, double currentVelocityY, double normalizedDirectionX,
+        double normalizedDirectionY, float averageVelocityOnRoute, float actualDesiredVelocity,
+        float maximumDesiredVelocity, double[] force);
+
     /**
      * Computes the force resulting from pedestrian-pedestrian interaction. Checks, if the distance
      * between {@code currentPosition} and the {@link Pedestrian} is smaller than
@@ -86,6 +155,61 @@ public abstract class ForceModel
     public abstract Vector2D interactPedestrian(Vector2D currentPosition,
         Vector2D normalizedDirectionVector, Pedestrian pedestrian);
 
+    /**
+     * Computes the force resulting from pedestrian-pedestrian interaction (cf.
+     * {@link #interactPedestrian(Vector2D, Vector2D, Pedestrian)}) and adds it to {@code force}
+     * without creating any objects.
+     *
+     * @param currentPositionX the x component of the current position of the {@link Pedestrian}
+     * @param currentPositionY the y component of the current position of the {@link Pedestrian}
+     * @param normalizedDirectionX the x component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param normalizedDirectionY the y component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param otherPositionX the x component of the position of the other {@link Pedestrian}
+     * @param otherPositionY the y component of the position of the other {@link Pedestrian}
+     * @param force the buffer of at least {@link #forceBufferLength} elements, to whose elements
+     *            {@code 0} and {@code 1} the x and y component of the force are added
+     */
+    public abstract void interactPedestrian(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, double otherPositionX,
+        double otherPositionY, double[] force);
+
+    /**
+     * Computes the force resulting from the interaction with a block of other {@link Pedestrian}s
+     * (cf. {@link #interactPedestrian(double, double, double, double, double, double, double[])})
+     * and adds it to {@code force} without creating any objects. The positions of the other
+     * {@link Pedestrian}s are packed into {@code otherPositionsX} and {@code otherPositionsY}, so
+     * that sub classes can process the whole block at once.
+     * <p>
+     * The default implementation calls
+     * {@link #interactPedestrian(double, double, double, double, double, double, double[])} for
+     * each of the other {@link Pedestrian}s.
+     *
+     * @param currentPositionX the x component of the current position of the {@link Pedestrian}
+     * @param currentPositionY the y component of the current position of the {@link Pedestrian}
+     * @param normalizedDirectionX the x component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param normalizedDirectionY the y component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param otherPositionsX the x components of the positions of the other {@link Pedestrian}s
+     * @param otherPositionsY the y components of the positions of the other {@link Pedestrian}s
+     * @param count the number of other {@link Pedestrian}s, i.e. the number of used elements of
+     *            {@code otherPositionsX} and {@code otherPositionsY}
+     * @param force the buffer of at least {@link #forceBufferLength} elements, to whose elements
+     *            {@code 0} and {@code 1} the x and y component of the force are added
+     */
+    public void interactPedestrians(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, double[] otherPositionsX,
+        double[] otherPositionsY, int count, double[] force)
+    {
+        for (int i = 0; i < count; i++ )
+        {
+            interactPedestrian(currentPositionX, currentPositionY, normalizedDirectionX,
+                normalizedDirectionY, otherPositionsX[i], otherPositionsY[i], force);
+        }
+    }
+
     /**
      * Computes the force resulting from pedestrian-boundary interaction. Checks, if the distance
      * between {@code currentPosition} and the {@link Pedestrian} is smaller than
@@ -103,6 +227,63 @@ public abstract class ForceModel
     public abstract Vector2D interactBoundary(Vector2D currentPosition,
         Vector2D normalizedDirectionVector, Boundary boundary);
 
+    /**
+     * Computes the force resulting from pedestrian-boundary interaction (cf.
+     * {@link #interactBoundary(Vector2D, Vector2D, Boundary)}) and adds it to {@code force}
+     * without creating any objects.
+     *
+     * @param currentPositionX the x component of the current position of the {@link Pedestrian}
+     * @param currentPositionY the y component of the current position of the {@link Pedestrian}
+     * @param normalizedDirectionX the x component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param normalizedDirectionY the y component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param boundary the {@link Boundary} object
+     * @param force the buffer of at least {@link #forceBufferLength} elements, to whose elements
+     *            {@code 0} and {@code 1} the x and y component of the force are added
+     */
+    public abstract void interactBoundary(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, Boundary boundary,
+        double[] force);
+
+    /**
+     * Computes the force resulting from the interaction with the nearest {@link Boundary} using
+     * the precomputed distances and normal vectors of {@code distanceField}, i.e. in constant time.
+     * Checks, if the distance to the nearest {@link Boundary} is smaller than
+     * {@link #getMaxBoundaryInteractionDistance()} before.
+     *
+     * @param currentPosition denotes the approximated x, y position as {@link Vector2D} of the
+     *            {@link Pedestrian}
+     * @param normalizedDirectionVector the direction {@link Vector2D} in which the
+     *            {@link Pedestrian} wants to walk.
+     * @param distanceField the {@link BoundaryDistanceField} of all {@link Boundary} objects
+     *
+     * @return the {@link Vector2D} vector which resulting from the interaction of the current
+     *         {@link Pedestrian} with the nearest {@link Boundary}
+     */
+    public abstract Vector2D interactBoundary(Vector2D currentPosition,
+        Vector2D normalizedDirectionVector, BoundaryDistanceField distanceField);
+
+    /**
+     * Computes the force resulting from the interaction with the nearest {@link Boundary} using
+     * {@code distanceField} (cf.
+     * {@link #interactBoundary(Vector2D, Vector2D, BoundaryDistanceField)}) and adds it to
+     * {@code force} without creating any objects.
+     *
+     * @param currentPositionX the x component of the current position of the {@link Pedestrian}
+     * @param currentPositionY the y component of the current position of the {@link Pedestrian}
+     * @param normalizedDirectionX the x component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param normalizedDirectionY the y component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param distanceField the {@link BoundaryDistanceField} of all {@link Boundary} objects
+     * @param force the buffer of at least {@link #forceBufferLength} elements, to whose elements
+     *            {@code 0} and {@code 1} the x and y component of the force are added
+     */
+    public abstract void interactBoundary(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY,
+        BoundaryDistanceField distanceField, double[] force);
+
     /**
      * Gets the radius of a {@link Pedestrian}. Given in meters.
      *
@@ -135,5 +316,5 @@ public abstract class ForceModel
      * @return distance, given in meters, in which the {@link Pedestrian} interacts with another
      *         {@link Pedestrian}
      */
-    protected abstract float getMaxPedestrianInteractionDistance();
+    public abstract float getMaxPedestrianInteractionDistance();
 }
@@ -8,7 +8,9 @@ import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryDistanceField;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ExpLookupTable;
 import de.fhg.ivi.crowdsimulation.simulation.tools.GeometryTools;
 import de.fhg.ivi.crowdsimulation.simulation.tools.MathTools;
 import math.geom2d.Vector2D;
@@ -38,7 +40,46 @@ public abstract class HelbingModel extends ForceModel
     /**
      * Uses the object logger for printing specific messages in the console.
      */
-    private static final Logger logger = LoggerFactory.getLogger(HelbingModel.class);
+    private static final Logger         logger                      = LoggerFactory
+        .getLogger(HelbingModel.class);
+
+    /**
+     * The {@link PedestrianInteractionKernel}, which is used by
+     * {@link #interactPedestrians(double, double, double, double, double[], double[], int, double[])}
+     * in fast math mode. In strict mode the {@link ScalarPedestrianInteractionKernel} is always
+     * used (cf. {@link #setFastMath(boolean)}).
+     */
+    private PedestrianInteractionKernel pedestrianInteractionKernel = PedestrianInteractionKernel
+        .getScalarKernel();
+
+    /**
+     * Gets the {@link PedestrianInteractionKernel}, which is used to compute the interaction with
+     * a block of other {@link Pedestrian}s.
+     *
+     * @return the {@link #pedestrianInteractionKernel}
+     */
+    public PedestrianInteractionKernel getPedestrianInteractionKernel()
+    {
+        return pedestrianInteractionKernel;
+    }
+
+    /**
+     * Sets the {@link PedestrianInteractionKernel}, which is used to compute the interaction with
+     * a block of other {@link Pedestrian}s in fast math mode, e.g.
+     * {@link PedestrianInteractionKernel#getVectorKernel()}. Since the vector kernel does not give
+     * exactly the same results as the strict functions of {@link Math}, it is only used, if the
+     * fast math mode is switched on (cf. {@link #setFastMath(boolean)}).
+     *
+     * @param pedestrianInteractionKernel the {@link #pedestrianInteractionKernel}, if {@code null}
+     *            the {@link ScalarPedestrianInteractionKernel} is used
+     */
+    public void setPedestrianInteractionKernel(
+        PedestrianInteractionKernel pedestrianInteractionKernel)
+    {
+        if (pedestrianInteractionKernel == null)
+            pedestrianInteractionKernel = PedestrianInteractionKernel.getScalarKernel();
+        this.pedestrianInteractionKernel = pedestrianInteractionKernel;
+    }
 
     /**
      * Computes the force resulting from pedestrian-pedestrian interaction if the {@link Pedestrian}
@@ -56,30 +97,49 @@ public abstract class HelbingModel extends ForceModel
     public Vector2D interactPedestrian(Vector2D currentPosition, Vector2D normalizedDirectionVector,
         Pedestrian pedestrian)
     {
-        Vector2D forceDelta = new Vector2D(0, 0);
+        double[] force = new double[forceBufferLength];
+        interactPedestrian(currentPosition.x(), currentPosition.y(), normalizedDirectionVector.x(),
+            normalizedDirectionVector.y(), pedestrian.getCurrentPositionX(),
+            pedestrian.getCurrentPositionY(), force);
+        return new Vector2D(force[0], force[1]);
+    }
 
+    /**
+     * Computes the force resulting from pedestrian-pedestrian interaction if the {@link Pedestrian}
+     * is under the {@code Pedestrian#getMaxPedestrianInteractionDistance()} to the other
+     * {@link Pedestrian} and adds it to {@code force} without creating any objects.
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel#interactPedestrian(double,
+     *      double, double, double, double, double, double[])
+     */
+    @Override
+    public void interactPedestrian(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, double otherPositionX,
+        double otherPositionY, double[] force)
+    {
         // quick check, if the other pedestrian is roughly within the interaction distance of
         // this pedestrian
         {
-            if (Math.abs(pedestrian.getCurrentPosition().x()
-                - currentPosition.x()) > getMaxPedestrianInteractionDistance())
+            if (Math.abs(otherPositionX - currentPositionX) > getMaxPedestrianInteractionDistance())
             {
-                return forceDelta;
+                return;
             }
-            if (Math.abs(pedestrian.getCurrentPosition().y()
-                - currentPosition.y()) > getMaxPedestrianInteractionDistance())
+            if (Math.abs(otherPositionY - currentPositionY) > getMaxPedestrianInteractionDistance())
             {
-                return forceDelta;
+                return;
             }
         }
 
         // exact check if a pedestrian is within the interaction distance of this pedestrian
-        double distanceSquared = MathTools
-            .normSquared(currentPosition.minus(pedestrian.getCurrentPosition()));
+        double dx = currentPositionX - otherPositionX;
+        double dy = currentPositionY - otherPositionY;
+        double distanceSquared = dx * dx + dy * dy;
 
-        // 2 pedestrians lying exactly on top of each - this should be a rare case
-        if (currentPosition.equals(pedestrian.getCurrentPosition()))
-            distanceSquared = Double.MIN_VALUE;
+        // 2 pedestrians lying exactly on top of each - this should be a rare case. The direction of
+        // the force is undefined, so they do not interact (the same as in
+        // interactPedestrianPair and the pedestrianInteractionKernel)
+        if (distanceSquared == 0)
+            return;
 
         // TODO: perhaps quick check if other pedestrian is behind this pedestrian:
         // ep12 = distp12.Normalized();
@@ -90,31 +150,126 @@ public abstract class HelbingModel extends ForceModel
         if (distanceSquared < getMaxPedestrianInteractionDistance()
             * getMaxPedestrianInteractionDistance())
         {
-            double distance = MathTools
-                .norm(currentPosition.minus(pedestrian.getCurrentPosition()));
-
-            // 2 pedestrians lying exactly on top of each - this should be a rare case
-            if (currentPosition.equals(pedestrian.getCurrentPosition()))
-                distance = Double.MIN_VALUE;
+            double distance = MathTools.distance(currentPositionX, currentPositionY,
+                otherPositionX, otherPositionY);
 
             // calculation of nVector
-            Vector2D nVector = (currentPosition.minus(pedestrian.getCurrentPosition())
-                .times(1 / distance));
+            double nX = dx * (1 / distance);
+            double nY = dy * (1 / distance);
 
-            // calculation of phi
-            double phi = 0;
+            // calculation of cos(phi)
+            double cos = 1;
             if (getParameterPedestrianA1() != 0)
-            {
-                double cos = nVector.times( -1).dot(normalizedDirectionVector);
-                // TODO: Look up table to speed up in case of HelbingJohanssonModel
-                phi = Math.acos(cos);
-            }
+                cos = -nX * normalizedDirectionX + -nY * normalizedDirectionY;
 
-            forceDelta = interact(pedestrian.getCurrentPosition(), nVector,
-                getParameterPedestrianA1(), getParameterPedestrianB1(), getParameterPedestrianA2(),
-                getParameterPedestrianB2(), (getPedestrianRadius() * 2), distance, phi);
+            interact(nX, nY, getParameterPedestrianA1(), getParameterPedestrianB1(),
+                getParameterPedestrianA2(), getParameterPedestrianB2(),
+                (getPedestrianRadius() * 2), distance, cos, force);
         }
-        return forceDelta;
+    }
+
+    /**
+     * Computes the force resulting from the interaction with a block of other {@link Pedestrian}s
+     * using the {@link #pedestrianInteractionKernel} in fast math mode or the
+     * {@link ScalarPedestrianInteractionKernel} in strict mode and adds it to {@code force} without
+     * creating any objects.
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel#interactPedestrians(double,
+     *      double, double, double, double[], double[], int, double[])
+     */
+    @Override
+    public void interactPedestrians(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, double[] otherPositionsX,
+        double[] otherPositionsY, int count, double[] force)
+    {
+        PedestrianInteractionKernel kernel = isFastMath ? pedestrianInteractionKernel
+            : PedestrianInteractionKernel.getScalarKernel();
+        kernel.interact(this, currentPositionX, currentPositionY, normalizedDirectionX,
+            normalizedDirectionY, otherPositionsX, otherPositionsY, count, force);
+    }
+
+    /**
+     * Computes the parts of the pedestrian-pedestrian interaction of a pair of {@link Pedestrian}s,
+     * which are the same for both {@link Pedestrian}s, i.e. which do not depend on their
+     * directions. Used to compute each pair only once and to apply equal and opposite forces to
+     * both {@link Pedestrian}s (Newton's third law).
+     * <p>
+     * The element {@code 0} of {@code strengths} is set to the isotropic strength
+     * {@code A2 * e^((2r - d) / B2)}, the element {@code 1} to the strength of the anisotropic part
+     * {@code A1 * e^((2r - d) / B1)} (or {@code 0}, if {@code A1 = 0}) and the element {@code 2} to
+     * the distance {@code d}. The anisotropy is applied per side by
+     * {@link #interactPedestrians(double, double, double[], int, double[])}.
+     *
+     * @param dx the x component of the vector from the second to the first {@link Pedestrian}
+     * @param dy the y component of the vector from the second to the first {@link Pedestrian}
+     * @param strengths the buffer of at least 3 elements, which receives the strengths and the
+     *            distance
+     * @return {@code true}, if the {@link Pedestrian}s interact, {@code false} if they are
+     *         farther apart than {@link #getMaxPedestrianInteractionDistance()} or lying exactly
+     *         on top of each other
+     */
+    public boolean interactPedestrianPair(double dx, double dy, double[] strengths)
+    {
+        double distanceSquared = dx * dx + dy * dy;
+        if ( !(distanceSquared < getMaxPedestrianInteractionDistance()
+            * getMaxPedestrianInteractionDistance()) || distanceSquared == 0)
+            return false;
+
+        double distance = MathTools.distance(dx, dy, 0, 0);
+        double interactionRadius = getPedestrianRadius() * 2;
+        strengths[0] = getParameterPedestrianA2()
+            * exp((interactionRadius - distance) / getParameterPedestrianB2());
+        strengths[1] = 0;
+        if (getParameterPedestrianA1() != 0)
+            strengths[1] = getParameterPedestrianA1()
+                * exp((interactionRadius - distance) / getParameterPedestrianB1());
+        strengths[2] = distance;
+        return true;
+    }
+
+    /**
+     * Computes the force resulting from pedestrian-pedestrian interaction from sums, which have
+     * been accumulated pair by pair using {@link #interactPedestrianPair(double, double, double[])}
+     * and adds it to {@code force}. The sums are (each over all other {@link Pedestrian}s with the
+     * normalized vector {@code n} pointing from the other to the current {@link Pedestrian}):
+     * <ol>
+     * <li>{@code sums[offset]}, {@code sums[offset + 1]}: the isotropic force, i.e. the sum of
+     * {@code n * strengths[0]}</li>
+     * <li>{@code sums[offset + 2]}, {@code sums[offset + 3]}: the sum of {@code n * strengths[1]}
+     * </li>
+     * <li>{@code sums[offset + 4]}, {@code sums[offset + 5]}, {@code sums[offset + 6]}: the xx, xy
+     * and yy components of the sum of {@code n * n^T * strengths[1]}</li>
+     * </ol>
+     * Since the anisotropy {@code lambda + (1 - lambda) * (1 + cos(phi)) / 2} is linear in
+     * {@code cos(phi) = -n * e}, the anisotropic force can be computed exactly from these sums and
+     * the current normalized direction {@code e}.
+     *
+     * @param normalizedDirectionX the x component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param normalizedDirectionY the y component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param sums the accumulated sums
+     * @param offset the index of the first sum in {@code sums}
+     * @param force the buffer of at least {@link #forceBufferLength} elements, to whose elements
+     *            {@code 0} and {@code 1} the x and y component of the force are added
+     */
+    public void interactPedestrians(double normalizedDirectionX, double normalizedDirectionY,
+        double[] sums, int offset, double[] force)
+    {
+        double forceX = sums[offset];
+        double forceY = sums[offset + 1];
+        if (getParameterPedestrianA1() != 0)
+        {
+            double weight = getLambda() + (1 - getLambda()) / 2;
+            double directionalWeight = (1 - getLambda()) / 2;
+            // the anisotropic force minus the contribution of cos(phi), i.e. of n * n^T * e
+            forceX += weight * sums[offset + 2] - directionalWeight * (sums[offset + 4]
+                * normalizedDirectionX + sums[offset + 5] * normalizedDirectionY);
+            forceY += weight * sums[offset + 3] - directionalWeight * (sums[offset + 5]
+                * normalizedDirectionX + sums[offset + 6] * normalizedDirectionY);
+        }
+        force[0] += forceX;
+        force[1] += forceY;
     }
 
     /**
@@ -134,26 +289,45 @@ public abstract class HelbingModel extends ForceModel
     public Vector2D interactBoundary(Vector2D currentPosition, Vector2D normalizedDirectionVector,
         Boundary boundary)
     {
-        Vector2D forceDelta = new Vector2D(0, 0);
+        double[] force = new double[forceBufferLength];
+        interactBoundary(currentPosition.x(), currentPosition.y(), normalizedDirectionVector.x(),
+            normalizedDirectionVector.y(), boundary, force);
+        return new Vector2D(force[0], force[1]);
+    }
 
+    /**
+     * Computes the force resulting from pedestrian-geometry interaction if the {@link Pedestrian}
+     * is under the {@code Pedestrian#getMaxBoundaryInteractionDistance()} to {@link Geometry} and
+     * adds it to {@code force}. No objects are created, unless the parameter A1 for
+     * pedestrian-boundary interaction is not {@code 0}.
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel#interactBoundary(double,
+     *      double, double, double, Boundary, double[])
+     */
+    @Override
+    public void interactBoundary(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, Boundary boundary,
+        double[] force)
+    {
         // bounding box based check, if the boundary is roughly within the interaction distance of
         // this pedestrian
         Envelope boundingBox = boundary.getBoundingBox();
-        if ( !GeometryTools.isInside(currentPosition, boundingBox))
+        if ( !(boundingBox.getMinX() <= currentPositionX && boundingBox.getMaxX() >= currentPositionX
+            && boundingBox.getMinY() <= currentPositionY
+            && boundingBox.getMaxY() >= currentPositionY))
         {
-            return forceDelta;
+            return;
         }
 
-        Coordinate currentPositionCoordinate = new Coordinate(currentPosition.x(),
-            currentPosition.y());
-        Coordinate relevantInteractionCoordinate = GeometryTools
-            .getNearestPoint(currentPositionCoordinate, boundary.getGeometry());
-
-        double distanceSquared = MathTools.distanceSquared(currentPositionCoordinate,
-            relevantInteractionCoordinate);
+        // nearest point on the line segments of the boundary
+        double distanceSquared = boundary.getNearestPoint(currentPositionX, currentPositionY,
+            force, 2);
+        double nearestX = force[2];
+        double nearestY = force[3];
 
         // a pedestrian lying exactly on top of a boundary - this should be a rare case
-        if (currentPositionCoordinate.equals(relevantInteractionCoordinate))
+        boolean isOnBoundary = currentPositionX == nearestX && currentPositionY == nearestY;
+        if (isOnBoundary)
             distanceSquared = Double.MIN_VALUE;
 
         // compare distance squared to gain some performance
@@ -161,54 +335,119 @@ public abstract class HelbingModel extends ForceModel
             * getMaxBoundaryInteractionDistance())
         {
             // actual distance
-            double distance = MathTools.distance(currentPositionCoordinate,
-                relevantInteractionCoordinate);
+            double distance = MathTools.distance(currentPositionX, currentPositionY, nearestX,
+                nearestY);
 
             // a pedestrian lying exactly on top of a boundary - this should be a rare case
-            if (currentPositionCoordinate.equals(relevantInteractionCoordinate))
+            if (isOnBoundary)
                 distance = Double.MIN_VALUE;
 
             // calculation of nVector
-            Vector2D vectorInteractingObject = new Vector2D(relevantInteractionCoordinate.x,
-                relevantInteractionCoordinate.y);
-            Vector2D nVector = (currentPosition.minus(vectorInteractingObject)).times(1 / distance);
+            double nX = (currentPositionX - nearestX) * (1 / distance);
+            double nY = (currentPositionY - nearestY) * (1 / distance);
 
             // TODO Because of the following condition, the parameter phi is not used at the moment.
             // The reason for that is that the phi-calculation needs to be proven against its
             // correctness and usefulness (compare with Helbing et al. 2005).
 
-            // calculation of phi - phi is the dot product of the normalized direction vectors
-            double phi = 0;
+            // calculation of cos(phi) - the dot product of the normalized direction vectors
+            double cos = 1;
             if (getParameterBoundaryA1() != 0)
             {
-                Vector2D eAlpha = normalizedDirectionVector;
-                Vector2D eBeta = GeometryTools.getEVectorOfBoundary(currentPositionCoordinate,
-                    boundary.getGeometry());
-                // TODO LUT based method for Math.acos()
-                phi = Math
-                    .acos((eAlpha.dot(eBeta) / (MathTools.norm(eAlpha) * MathTools.norm(eBeta))));
+                Vector2D eAlpha = new Vector2D(normalizedDirectionX, normalizedDirectionY);
+                Vector2D eBeta = GeometryTools.getEVectorOfBoundary(
+                    new Coordinate(currentPositionX, currentPositionY), boundary.getGeometry());
+                cos = eAlpha.dot(eBeta) / (MathTools.norm(eAlpha) * MathTools.norm(eBeta));
             }
 
-            logger.trace("interactBoundary(), phi: " + phi);
+            interact(nX, nY, getParameterBoundaryA1(), getParameterBoundaryB1(),
+                getParameterBoundaryA2(), getParameterBoundaryB2(), getPedestrianRadius(),
+                distance, cos, force);
+        }
+    }
+
+    /**
+     * Computes the force resulting from the interaction with the nearest {@link Boundary} using
+     * the precomputed distance and normal vector of {@code distanceField} instead of computing the
+     * nearest point of the {@link Geometry} of each {@link Boundary}.
+     * <p>
+     * For the computation of phi, the direction of the {@link Boundary} is approximated by the
+     * vector perpendicular to the normal vector.
+     *
+     * @param currentPosition denotes the approximated x, y position as {@link Vector2D} of the
+     *            {@link Pedestrian}
+     * @param normalizedDirectionVector the direction {@link Vector2D} in which the
+     *            {@link Pedestrian} wants to walk.
+     * @param distanceField the {@link BoundaryDistanceField} of all {@link Boundary} objects
+     *
+     * @return the {@link Vector2D} vector which resulting from the interaction of the current
+     *         {@link Pedestrian} with the nearest {@link Boundary}
+     */
+    @Override
+    public Vector2D interactBoundary(Vector2D currentPosition, Vector2D normalizedDirectionVector,
+        BoundaryDistanceField distanceField)
+    {
+        double[] force = new double[forceBufferLength];
+        interactBoundary(currentPosition.x(), currentPosition.y(), normalizedDirectionVector.x(),
+            normalizedDirectionVector.y(), distanceField, force);
+        return new Vector2D(force[0], force[1]);
+    }
 
-            forceDelta = interact(
-                new Vector2D(relevantInteractionCoordinate.x, relevantInteractionCoordinate.y),
-                nVector, getParameterBoundaryA1(), getParameterBoundaryB1(),
-                getParameterBoundaryA2(), getParameterBoundaryB2(), getPedestrianRadius(), distance,
-                phi);
+    /**
+     * Computes the force resulting from the interaction with the nearest {@link Boundary} using
+     * the precomputed distance and normal vector of {@code distanceField} and adds it to
+     * {@code force} without creating any objects.
+     * <p>
+     * For the computation of phi, the direction of the {@link Boundary} is approximated by the
+     * vector perpendicular to the normal vector.
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel#interactBoundary(double,
+     *      double, double, double, BoundaryDistanceField, double[])
+     */
+    @Override
+    public void interactBoundary(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY,
+        BoundaryDistanceField distanceField, double[] force)
+    {
+        double distance = distanceField.getDistance(currentPositionX, currentPositionY);
+        if ( !(distance < getMaxBoundaryInteractionDistance()))
+            return;
+
+        if ( !distanceField.getNormal(currentPositionX, currentPositionY, force, 2))
+            return;
+        double nX = force[2];
+        double nY = force[3];
+
+        // a pedestrian lying exactly on top of a boundary - this should be a rare case
+        if (distance <= 0)
+            distance = Double.MIN_VALUE;
+
+        double cos = 1;
+        if (getParameterBoundaryA1() != 0)
+        {
+            // the direction of the boundary is perpendicular to the normal vector
+            cos = (normalizedDirectionX * -nY + normalizedDirectionY * nX)
+                / MathTools.distance(normalizedDirectionX, normalizedDirectionY, 0, 0);
         }
 
-        return forceDelta;
+        interact(nX, nY, getParameterBoundaryA1(), getParameterBoundaryB1(),
+            getParameterBoundaryA2(), getParameterBoundaryB2(), getPedestrianRadius(), distance,
+            cos, force);
     }
 
     /**
      * Computes the force resulting of pedestrian-pedestrian interaction or pedestrian-geometry
-     * interaction.
+     * interaction and adds it to {@code force}.
+     * <p>
+     * In strict mode the anisotropy is computed from {@code cos(acos(cos))} as in the original
+     * formulation using the angle phi. In fast math mode (cf. {@link #setFastMath(boolean)}) the
+     * anisotropy is computed directly from {@code cos}, which is clamped to {@code [-1, 1]}, and
+     * the exponential function is looked up in the {@link ExpLookupTable}.
      *
-     * @param currentPosition denotes the approximated x, y position as {@link Vector2D} of the
-     *            {@link Pedestrian}
-     * @param nVector the normalized {@link Vector2D} pointing from pedestrian or geometry to the
-     *            current {@link Pedestrian}
+     * @param nX the x component of the normalized vector pointing from pedestrian or geometry to
+     *            the current {@link Pedestrian}
+     * @param nY the y component of the normalized vector pointing from pedestrian or geometry to
+     *            the current {@link Pedestrian}
      * @param parameterA1 the parameter denotes the strength of the interaction (it's a given
      *            constant)
      * @param parameterB1 the parameter denotes the range of the repulsive interaction (it's a given
@@ -220,28 +459,51 @@ public abstract class HelbingModel extends ForceModel
      * @param interactionRadius radius of {@link Pedestrian} or boundaries
      * @param distance describes the distance between the {@link Coordinate} and the current
      *            {@link Pedestrian}
-     * @param phi dot product of the normalized direction vector
-     *
-     * @return the {@link Vector2D} vector resulting from the interaction of the current
-     *         {@link Pedestrian} with another {@code pedestrian} or a {@code geometry}
+     * @param cos cosine of the angle phi between the normalized direction vector of the current
+     *            {@link Pedestrian} and the other {@code pedestrian} or {@code geometry}, i.e.
+     *            their dot product
+     * @param force the buffer, to whose elements {@code 0} and {@code 1} the x and y component of
+     *            the force resulting from the interaction of the current {@link Pedestrian} with
+     *            another {@code pedestrian} or a {@code geometry} are added
      */
-    private Vector2D interact(Vector2D currentPosition, Vector2D nVector, double parameterA1,
-        double parameterB1, double parameterA2, double parameterB2, double interactionRadius,
-        double distance, double phi)
+    private void interact(double nX, double nY, double parameterA1, double parameterB1,
+        double parameterA2, double parameterB2, double interactionRadius, double distance,
+        double cos, double[] force)
     {
-        Vector2D forceDelta = nVector
-            .times(parameterA2 * Math.exp((interactionRadius - distance) / parameterB2));
+        double strength = parameterA2 * exp((interactionRadius - distance) / parameterB2);
+        double forceX = nX * strength;
+        double forceY = nY * strength;
 
         if (parameterA1 != 0)
         {
-            // TODO: Look up table for cos to speed up in case of HelbingJohanssonModel
-            forceDelta = nVector
-                .times(parameterA1 * Math.exp((interactionRadius - distance) / parameterB1))
-                .times(getLambda() + (1 - getLambda()) * (1 + Math.cos(phi)) / 2)
-                .plus(forceDelta);
+            double anisotropicStrength = parameterA1
+                * exp((interactionRadius - distance) / parameterB1);
+            if (isFastMath)
+                cos = Math.max( -1, Math.min(cos, 1));
+            else
+                cos = Math.cos(Math.acos(cos));
+            double anisotropy = getLambda() + (1 - getLambda()) * (1 + cos) / 2;
+            forceX = nX * anisotropicStrength * anisotropy + forceX;
+            forceY = nY * anisotropicStrength * anisotropy + forceY;
         }
 
-        return forceDelta;
+        force[0] += forceX;
+        force[1] += forceY;
+    }
+
+    /**
+     * Returns Euler's number <i>e</i> raised to the power of {@code x}, either looked up in the
+     * {@link ExpLookupTable} in fast math mode or computed by {@link Math#exp(double)} in strict
+     * mode.
+     *
+     * @param x the exponent
+     * @return the value <i>e</i><sup>{@code x}</sup>
+     */
+    private double exp(double x)
+    {
+        if (isFastMath)
+            return ExpLookupTable.exp(x);
+        return Math.exp(x);
     }
 
     /**
@@ -265,17 +527,37 @@ public abstract class HelbingModel extends ForceModel
     public Vector2D intrinsicForce(Vector2D currentPosition, Vector2D currentVelocity,
         Vector2D normalizedDirectionVector, float averageVelocityOnRoute,
         float actualDesiredVelocity, float maximumDesiredVelocity)
+    {
+        double[] force = new double[forceBufferLength];
+        intrinsicForce(currentPosition.x(), currentPosition.y(), currentVelocity.x(),
+            currentVelocity.y(), normalizedDirectionVector.x(), normalizedDirectionVector.y(),
+            averageVelocityOnRoute, actualDesiredVelocity, maximumDesiredVelocity, force);
+        return new Vector2D(force[0], force[1]);
+    }
+
+    /**
+     * Computes the acceleration that is needed to reach the desired velocity and go in the desired
+     * direction and adds it to {@code force} without creating any objects.
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel#intrinsicForce(double,
+     *      double, double, double, double, double, float, float, float, double[])
+     */
+    @Override
+    public void intrinsicForce(double currentPositionX, double currentPositionY,
+        double currentVelocityX, double currentVelocityY, double normalizedDirectionX,
+        double normalizedDirectionY, float averageVelocityOnRoute, float actualDesiredVelocity,
+        float maximumDesiredVelocity, double[] force)
     {
         // this is the implementation of formula (5) and (6) of Helbing et al. (2005)
         float currentDesiredVelocity = averageVelocityOnRoute
             + (1f - averageVelocityOnRoute / actualDesiredVelocity) * maximumDesiredVelocity;
 
         // the actual force computation
-        Vector2D resultingForce = normalizedDirectionVector.times(currentDesiredVelocity)
-            .minus(currentVelocity)
-            .times(1 / getTau());
-
-        return resultingForce;
+        float inverseTau = 1 / getTau();
+        force[0] += (normalizedDirectionX * currentDesiredVelocity - currentVelocityX)
+            * inverseTau;
+        force[1] += (normalizedDirectionY * currentDesiredVelocity - currentVelocityY)
+            * inverseTau;
     }
 
     /**
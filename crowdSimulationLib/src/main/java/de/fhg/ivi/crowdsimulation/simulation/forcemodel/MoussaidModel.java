@@ -1,6 +1,7 @@
 package de.fhg.ivi.crowdsimulation.simulation.forcemodel;
 
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryDistanceField;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
 import math.geom2d.Vector2D;
 
@@ -45,6 +46,42 @@ public class MoussaidModel extends ForceModel
         return null;
     }
 
+    @Override
+    public Vector2D interactBoundary(Vector2D currentPosition, Vector2D normalizedDirectionVector,
+        BoundaryDistanceField distanceField)
+    {
+        return null;
+    }
+
+    @Override
+    public void intrinsicForce(double currentPositionX, double currentPositionY,
+        double currentVelocityX, double currentVelocityY, double normalizedDirectionX,
+        double normalizedDirectionY, float averageVelocityOnRoute, float actualDesiredVelocity,
+        float maximumDesiredVelocity, double[] force)
+    {
+    }
+
+    @Override
+    public void interactPedestrian(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, double otherPositionX,
+        double otherPositionY, double[] force)
+    {
+    }
+
+    @Override
+    public void interactBoundary(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, Boundary boundary,
+        double[] force)
+    {
+    }
+
+    @Override
+    public void interactBoundary(double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY,
+        BoundaryDistanceField distanceField, double[] force)
+    {
+    }
+
     @Override
     public float getMaxBoundaryInteractionDistance()
     {
@@ -0,0 +1,126 @@
+package de.fhg.ivi.crowdsimulation.simulation.forcemodel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+
+/**
+ * A {@link PedestrianInteractionKernel} computes the pedestrian-pedestrian interaction of the
+ * {@link HelbingModel} for one {@link Pedestrian} against a packed block of positions of other
+ * {@link Pedestrian}s (cf. {@link ForceModel#interactPedestrians(double, double, double, double,
+ * double[], double[], int, double[])}).
+ * <p>
+ * Two implementations exist: The {@link ScalarPedestrianInteractionKernel}, which is used by
+ * default and gives exactly the same results as
+ * {@link HelbingModel#interactPedestrian(double, double, double, double, double, double, double[])},
+ * and the {@link #vectorKernelClassName vector kernel}, which processes several other
+ * {@link Pedestrian}s at once using the SIMD instructions of the processor via the Java Vector API
+ * ({@code jdk.incubator.vector}). The vector kernel is compiled only by the {@code vector} profile
+ * of the build, requires Java 17 or newer and needs the JVM option
+ * {@code --add-modules jdk.incubator.vector}. Hence, it is loaded by reflection (cf.
+ * {@link #getVectorKernel()}) and the {@link ScalarPedestrianInteractionKernel} is used as
+ * fallback, if it is not available. Since the vector kernel approximates the interaction like
+ * the fast math mode, the {@link HelbingModel} uses it only in fast math mode (cf.
+ * {@link ForceModel#setFastMath(boolean)}) and the {@link ScalarPedestrianInteractionKernel}
+ * otherwise.
+ *
+ * @author hahmann/meinert
+ */
+public abstract class PedestrianInteractionKernel
+{
+    /**
+     * Uses the object logger for printing specific messages in the console.
+     */
+    private static final Logger                      logger                = LoggerFactory
+        .getLogger(PedestrianInteractionKernel.class);
+
+    /**
+     * The fully qualified name of the {@link PedestrianInteractionKernel} using the Java Vector
+     * API.
+     */
+    public static final String                       vectorKernelClassName = "de.fhg.ivi.crowdsimulation.simulation.forcemodel.VectorPedestrianInteractionKernel";
+
+    /**
+     * The only instance of the {@link ScalarPedestrianInteractionKernel}.
+     */
+    private static final PedestrianInteractionKernel scalarKernel          = new ScalarPedestrianInteractionKernel();
+
+    /**
+     * The instance of the vector kernel or {@link #scalarKernel}, if the vector kernel is not
+     * available. Loaded on demand by {@link #getVectorKernel()}.
+     */
+    private static PedestrianInteractionKernel       vectorKernel;
+
+    /**
+     * Computes the force resulting from the interaction of a {@link Pedestrian} with a block of
+     * other {@link Pedestrian}s according to {@code model} and adds it to {@code force}.
+     *
+     * @param model the {@link HelbingModel} providing the parameters of the interaction
+     * @param currentPositionX the x component of the current position of the {@link Pedestrian}
+     * @param currentPositionY the y component of the current position of the {@link Pedestrian}
+     * @param normalizedDirectionX the x component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param normalizedDirectionY the y component of the normalized direction in which the
+     *            {@link Pedestrian} wants to walk
+     * @param otherPositionsX the x components of the positions of the other {@link Pedestrian}s
+     * @param otherPositionsY the y components of the positions of the other {@link Pedestrian}s
+     * @param count the number of other {@link Pedestrian}s, i.e. the number of used elements of
+     *            {@code otherPositionsX} and {@code otherPositionsY}
+     * @param force the buffer of at least {@link ForceModel#forceBufferLength} elements, to whose
+     *            elements {@code 0} and {@code 1} the x and y component of the force are added
+     */
+    public abstract void interact(HelbingModel model, double currentPositionX,
+        double currentPositionY, double normalizedDirectionX, double normalizedDirectionY,
+        double[] otherPositionsX, double[] otherPositionsY, int count, double[] force);
+
+    /**
+     * Gets the {@link ScalarPedestrianInteractionKernel}.
+     *
+     * @return the {@link ScalarPedestrianInteractionKernel}
+     */
+    public static PedestrianInteractionKernel getScalarKernel()
+    {
+        return scalarKernel;
+    }
+
+    /**
+     * Gets the {@link PedestrianInteractionKernel} using the Java Vector API, if it is available,
+     * or the {@link ScalarPedestrianInteractionKernel} otherwise.
+     *
+     * @return the vector kernel or the {@link ScalarPedestrianInteractionKernel}
+     */
+    public static synchronized PedestrianInteractionKernel getVectorKernel()
+    {
+        if (vectorKernel == null)
+        {
+            try
+            {
+                vectorKernel = (PedestrianInteractionKernel) Class.forName(vectorKernelClassName)
+                    .getConstructor().newInstance();
+                logger.info("PedestrianInteractionKernel.getVectorKernel(), using "
+                    + vectorKernel);
+            }
+            // class not compiled, module not present or Java version too old
+            catch (ReflectiveOperationException | LinkageError | RuntimeException e)
+            {
+                logger.warn("PedestrianInteractionKernel.getVectorKernel(), vector kernel not "
+                    + "available, using scalar kernel: " + e);
+                vectorKernel = scalarKernel;
+            }
+        }
+        return vectorKernel;
+    }
+
+    /**
+     * Checks, whether the {@link PedestrianInteractionKernel} using the Java Vector API is
+     * available.
+     *
+     * @return {@code true}, if {@link #getVectorKernel()} returns a vector kernel, {@code false}
+     *         otherwise
+     */
+    public static boolean isVectorKernelAvailable()
+    {
+        return getVectorKernel() != scalarKernel;
+    }
+}
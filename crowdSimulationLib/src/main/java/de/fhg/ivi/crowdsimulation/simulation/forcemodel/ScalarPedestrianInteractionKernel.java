@@ -0,0 +1,37 @@
+package de.fhg.ivi.crowdsimulation.simulation.forcemodel;
+
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+
+/**
+ * The default {@link PedestrianInteractionKernel}, which computes the interaction with each of the
+ * other {@link Pedestrian}s one after another using
+ * {@link HelbingModel#interactPedestrian(double, double, double, double, double, double, double[])}.
+ *
+ * @author hahmann/meinert
+ */
+public class ScalarPedestrianInteractionKernel extends PedestrianInteractionKernel
+{
+    /**
+     * Computes the interaction with each of the other {@link Pedestrian}s one after another.
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.forcemodel.PedestrianInteractionKernel#interact(HelbingModel,
+     *      double, double, double, double, double[], double[], int, double[])
+     */
+    @Override
+    public void interact(HelbingModel model, double currentPositionX, double currentPositionY,
+        double normalizedDirectionX, double normalizedDirectionY, double[] otherPositionsX,
+        double[] otherPositionsY, int count, double[] force)
+    {
+        for (int i = 0; i < count; i++ )
+        {
+            model.interactPedestrian(currentPositionX, currentPositionY, normalizedDirectionX,
+                normalizedDirectionY, otherPositionsX[i], otherPositionsY[i], force);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "ScalarPedestrianInteractionKernel";
+    }
+}
@@ -6,12 +6,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.geom.Coordinate;
-import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineSegment;
 import com.vividsolutions.jts.geom.LineString;
@@ -19,6 +17,7 @@ import com.vividsolutions.jts.geom.MultiLineString;
 
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrationTools;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
 import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
 import de.fhg.ivi.crowdsimulation.simulation.tools.GeometryTools;
@@ -127,7 +126,8 @@ public class FollowWayPointsMentalModel extends WayFindingModel
     /**
      * Maximum allowed course deviation. If the difference between the actual course and the
      * required course is above this threshold,
-     * {@link #updateNormalizedDirectionVector(Vector2D, long, List, float)} should be called.
+     * {@link #updateNormalizedDirectionVector(Vector2D, long, BoundaryIndex, float)} should be
+     * called.
      *
      * Hint: 1 degree = 0.0175 radians, 5 degree = 0.0873 radians
      */
@@ -301,19 +301,19 @@ public class FollowWayPointsMentalModel extends WayFindingModel
      * {@link #currentDestinationWayPoint}. If so, the {@link #currentDestinationWayPoint} is added
      * to the {@link List} of {@link #visitedWayPoints}} and the next {@link WayPoint} is set as
      * {@link #currentDestinationWayPoint}. After that the method
-     * {@link #computeNormalizedDirectionVector(Vector2D, long, List)} is invoked.
+     * {@link #computeNormalizedDirectionVector(Vector2D, long, BoundaryIndex)} is invoked.
      * <p>
      * In case of the {@link Pedestrian} not having passed its {@link #currentDestinationWayPoint},
      * but one of the two re-orientation parameters {@link #needsOrientation} or
      * {@link #hasCourseDeviation} is {@code true} the
-     * {@link #computeNormalizedDirectionVector(Vector2D, long, List)} is also invoked.
+     * {@link #computeNormalizedDirectionVector(Vector2D, long, BoundaryIndex)} is also invoked.
      *
      * @see de.fhg.ivi.crowdsimulation.simulation.mentalmodel.WayFindingModel#updateNormalizedDirectionVector(math.geom2d.Vector2D,
-     *      long, java.util.List, float)
+     *      long, de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex, float)
      */
     @Override
     public void updateNormalizedDirectionVector(Vector2D position, long time,
-        List<Boundary> boundaries, float normalDesiredVelocity)
+        BoundaryIndex boundaries, float normalDesiredVelocity)
     {
         if (currentDestinationWayPoint == null || wayPoints == null || wayPoints.isEmpty())
         {
@@ -477,10 +477,10 @@ public class FollowWayPointsMentalModel extends WayFindingModel
      *
      * @param position for which the normalized direction vector should be updated
      * @param timestamp time when this method is called
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      */
     private void computeNormalizedDirectionVector(Vector2D position, long timestamp,
-        List<Boundary> boundaries)
+        BoundaryIndex boundaries)
     {
         // if current destination waypoint is null set target vector to (0, 0)
         if (currentDestinationWayPoint == null)
@@ -612,41 +612,20 @@ public class FollowWayPointsMentalModel extends WayFindingModel
      * @param currentPositionVector the current position of a {@link Pedestrian}
      * @param nearestCoordinateOnWayPoint is the calculated nearest {@link Coordinate} on the
      *            {@code wayPointVertical}
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      *
      * @return {@code true} if there is a direct line of sight between this {@link Pedestrian} and
      *         its {@code Pedestrian#currentDestinationWayPoint}, {@code false} otherwise
      */
     private boolean isTargetVisible(Vector2D currentPositionVector,
-        Coordinate nearestCoordinateOnWayPoint, List<Boundary> boundaries)
+        Coordinate nearestCoordinateOnWayPoint, BoundaryIndex boundaries)
     {
-        Coordinate pedestrianPosition = new Coordinate(currentPositionVector.x(),
-            currentPositionVector.y());
-
-        // computes LineString between Pedestrian and next Waypoint
-        Coordinate[] coordinates = new Coordinate[] { pedestrianPosition,
-            nearestCoordinateOnWayPoint };
-        LineString lineOfSight = JTSFactoryFinder.getGeometryFactory()
-            .createLineString(coordinates);
+        if (boundaries == null)
+            return true;
 
         // checks if the Pedestrian sees the its next Waypoint.
-        boolean lineOfSightIntersectsBoundary = false;
-        if (boundaries != null)
-        {
-            Envelope boundingBoxLineOfSight = lineOfSight.getEnvelopeInternal();
-            for (Boundary boundary : boundaries)
-            {
-                // quick check
-                if (boundingBoxLineOfSight.intersects(boundary.getBoundingBox()))
-                {
-                    // accurate check
-                    lineOfSightIntersectsBoundary = lineOfSight.intersects(boundary.getGeometry());
-                    if (lineOfSightIntersectsBoundary)
-                        break;
-                }
-            }
-        }
-        return !lineOfSightIntersectsBoundary;
+        return boundaries.isTargetVisible(currentPositionVector.x(), currentPositionVector.y(),
+            nearestCoordinateOnWayPoint.x, nearestCoordinateOnWayPoint.y);
     }
 
     /**
@@ -661,13 +640,13 @@ public class FollowWayPointsMentalModel extends WayFindingModel
      * closest will be chosen.
      *
      * @param currentPositionVector the actual position of this {@link Pedestrian}
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      *
      * @return {@link Coordinate} on the {@code wayPointVertical} which is visible for the
      *         {@link Pedestrian}
      */
     private Coordinate getAlternativeOnWayPointVertical(Vector2D currentPositionVector,
-        List<Boundary> boundaries)
+        BoundaryIndex boundaries)
     {
         Map<Coordinate, Double> candidatePointsAndDistances = new HashMap<>();
         Coordinate pedestrianPosition = new Coordinate(currentPositionVector.x(),
@@ -743,7 +722,7 @@ public class FollowWayPointsMentalModel extends WayFindingModel
      *         possible to the next {@link WayPoint} or {@code null}, if no such {@link Coordinate}
      *         could be found.
      */
-    private Coordinate getAlternativeOnWayPointAxis(Vector2D position, List<Boundary> boundaries)
+    private Coordinate getAlternativeOnWayPointAxis(Vector2D position, BoundaryIndex boundaries)
     {
         LineSegment ls = null;
         Coordinate coordinateOnWayPointAxis = null;
@@ -787,7 +766,7 @@ public class FollowWayPointsMentalModel extends WayFindingModel
      * @param pedestrianPosition describes the current position of a {@link Pedestrian}
      * @param maxIterations counts the number of segments in which the {@link LineSegment} is split
      *            for the search for an alternative wayPoint.
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      * @param distanceOriginPosition if {@code true} the distance between {@code pedestrianPosition}
      *            and the interpolated {@link Coordinate}s are computed, otherwise the distance
      *            between the start point of the segment and the interpolated Coordinate is computed
@@ -795,7 +774,7 @@ public class FollowWayPointsMentalModel extends WayFindingModel
      * @return the Map of interpolated {@link Coordinate}s and associated distances.
      */
     private Map<Coordinate, Double> searchForAlternativePointsOnLineSegment(LineSegment lineSegment,
-        Coordinate pedestrianPosition, double maxIterations, List<Boundary> boundaries,
+        Coordinate pedestrianPosition, double maxIterations, BoundaryIndex boundaries,
         boolean distanceOriginPosition)
     {
         Map<Coordinate, Double> candidatePointsAndDistances = new HashMap<>();
@@ -814,8 +793,6 @@ public class FollowWayPointsMentalModel extends WayFindingModel
                 incrementOnLineSegment = 1;
 
             coordinateOnLineSegment = lineSegment.pointAlong(incrementOnLineSegment);
-            LineString lineOfSight = JTSFactoryFinder.getGeometryFactory()
-                .createLineString(new Coordinate[] { pedestrianPosition, coordinateOnLineSegment });
 
             // only put into candidate points into map if there is no intersection with boundaries
             // (if boundaries exist)
@@ -831,18 +808,8 @@ public class FollowWayPointsMentalModel extends WayFindingModel
             }
             else
             {
-                Envelope boundingBoxOfLineString = lineOfSight.getEnvelopeInternal();
-                boolean lineOfSightIntersectBoundaries = false;
-                for (Boundary boundary : boundaries)
-                {
-                    if (boundingBoxOfLineString.intersects(boundary.getBoundingBox()))
-                    {
-                        lineOfSightIntersectBoundaries = lineOfSight
-                            .intersects(boundary.getGeometry());
-                    }
-                    if (lineOfSightIntersectBoundaries)
-                        break;
-                }
+                boolean lineOfSightIntersectBoundaries = !boundaries
+                    .isTargetVisible(pedestrianPosition, coordinateOnLineSegment);
                 if ( !lineOfSightIntersectBoundaries)
                 {
                     if (distanceOriginPosition)
@@ -3,6 +3,7 @@ package de.fhg.ivi.crowdsimulation.simulation.mentalmodel;
 import java.util.List;
 
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
 import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
 import math.geom2d.Vector2D;
@@ -142,12 +143,12 @@ public abstract class WayFindingModel
      * @param position the {@link Vector2D} position at which the normalized direction vector should
      *            be derived
      * @param time the unix time stamp when this method is called (in simulation time)
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      * @param normalDesiredVelocity the normal desired velocity of the pedestrian for checking, if
      *            the Pedestrian is not moving anymore
      */
     public abstract void updateNormalizedDirectionVector(Vector2D position, long time,
-        List<Boundary> boundaries, float normalDesiredVelocity);
+        BoundaryIndex boundaries, float normalDesiredVelocity);
 
     /**
      * Set {@code true} if a {@link Pedestrian} has passed a specific {@link WayPoint}.
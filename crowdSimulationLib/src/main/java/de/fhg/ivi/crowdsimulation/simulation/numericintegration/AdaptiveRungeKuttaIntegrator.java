@@ -0,0 +1,406 @@
+package de.fhg.ivi.crowdsimulation.simulation.numericintegration;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianStateStore;
+import math.geom2d.Vector2D;
+
+/**
+ * Adaptive Runge-Kutta is one of many possible algorithms of numerical integration which can
+ * dissolve ordinary differential equations, like the Social Force Model {@link ForceModel}. In this
+ * class the embedded Runge-Kutta pair of 5. and 4. order by Cash and Karp is used.
+ * <p>
+ * In contrast to the {@link RungeKuttaIntegrator} the difference between the solutions of 5. and 4.
+ * order is used as an estimation of the local error. If the error exceeds the
+ * {@link #positionTolerance} or the {@link #velocityTolerance}, the step is rejected and repeated
+ * with a smaller sub step. Hence, each {@link Pedestrian} is integrated with its own step size:
+ * {@link Pedestrian}s without close contacts move in a single step of the simulation interval,
+ * while {@link Pedestrian}s in dense contact situations are moved in several sub steps. The other
+ * {@link Pedestrian}s remain at their positions of the beginning of the simulation step during all
+ * sub steps.
+ * <p>
+ * Cash-Karp explanation:<br>
+ * https://doi.org/10.1145/79505.79507<br>
+ * https://en.wikipedia.org/wiki/Cash%E2%80%93Karp_method<br>
+ *
+ * @author hahmann/meinert
+ */
+public class AdaptiveRungeKuttaIntegrator extends NumericIntegrator
+{
+    /**
+     * Uses the object logger for printing specific messages in the console.
+     */
+    private static final Logger     logger                   = LoggerFactory
+        .getLogger(AdaptiveRungeKuttaIntegrator.class);
+
+    /**
+     * The default value of {@link #positionTolerance}. Given in meters.
+     */
+    public static final double      defaultPositionTolerance = 0.001d;
+
+    /**
+     * The default value of {@link #velocityTolerance}. Given in m/s.
+     */
+    public static final double      defaultVelocityTolerance = 0.01d;
+
+    /**
+     * The default value of {@link #minimumStep}. Given in seconds.
+     */
+    public static final double      defaultMinimumStep       = 0.001d;
+
+    /**
+     * The nodes of the Cash-Karp method, i.e. the fractions of the step at which the stages are
+     * evaluated.
+     */
+    private static final double[]   c                        = { 0, 1d / 5d, 3d / 10d, 3d / 5d, 1,
+        7d / 8d };
+
+    /**
+     * The Runge-Kutta matrix of the Cash-Karp method, i.e. the weights of the previous stages used
+     * to compute the state of each stage.
+     */
+    private static final double[][] a                        = { {}, { 1d / 5d },
+        { 3d / 40d, 9d / 40d }, { 3d / 10d, -9d / 10d, 6d / 5d },
+        { -11d / 54d, 5d / 2d, -70d / 27d, 35d / 27d },
+        { 1631d / 55296d, 175d / 512d, 575d / 13824d, 44275d / 110592d, 253d / 4096d } };
+
+    /**
+     * The weights of the stages of the solution of 5. order.
+     */
+    private static final double[]   b                        = { 37d / 378d, 0, 250d / 621d,
+        125d / 594d, 0, 512d / 1771d };
+
+    /**
+     * The differences between the weights of the stages of the solutions of 5. and 4. order, which
+     * are used to estimate the local error.
+     */
+    private static final double[]   e                        = { 37d / 378d - 2825d / 27648d, 0,
+        250d / 621d - 18575d / 48384d, 125d / 594d - 13525d / 55296d, -277d / 14336d,
+        512d / 1771d - 1d / 4d };
+
+    /**
+     * The maximum tolerated local error of the position in a single sub step. Given in meters.
+     */
+    private double                  positionTolerance;
+
+    /**
+     * The maximum tolerated local error of the velocity in a single sub step. Given in m/s.
+     */
+    private double                  velocityTolerance;
+
+    /**
+     * The smallest allowed sub step. A sub step of this size is accepted regardless of its error.
+     * Given in seconds.
+     */
+    private double                  minimumStep;
+
+    /**
+     * The total number of accepted sub steps of all {@link Pedestrian}s.
+     */
+    private LongAdder               acceptedStepCount;
+
+    /**
+     * The total number of rejected sub steps of all {@link Pedestrian}s.
+     */
+    private LongAdder               rejectedStepCount;
+
+    /**
+     * The length of the buffer containing the derivatives of position (x, y) and velocity (vx,
+     * vy) of each stage followed by the state of the current stage (cf. {@link #getBuffer(int)}).
+     */
+    private static final int       bufferLength             = (c.length + 1) * 4;
+
+    /**
+     * Creates a new {@link AdaptiveRungeKuttaIntegrator} using the default tolerances.
+     */
+    public AdaptiveRungeKuttaIntegrator()
+    {
+        this(defaultPositionTolerance, defaultVelocityTolerance, defaultMinimumStep);
+    }
+
+    /**
+     * Creates a new {@link AdaptiveRungeKuttaIntegrator}.
+     *
+     * @param positionTolerance the maximum tolerated local error of the position in a single sub
+     *            step. Given in meters.
+     * @param velocityTolerance the maximum tolerated local error of the velocity in a single sub
+     *            step. Given in m/s.
+     * @param minimumStep the smallest allowed sub step. Given in seconds.
+     */
+    public AdaptiveRungeKuttaIntegrator(double positionTolerance, double velocityTolerance,
+        double minimumStep)
+    {
+        if ( !(positionTolerance > 0) || !(velocityTolerance > 0))
+            throw new IllegalArgumentException("tolerances must be positive: " + positionTolerance
+                + ", " + velocityTolerance);
+        if ( !(minimumStep > 0))
+            throw new IllegalArgumentException("minimumStep must be positive: " + minimumStep);
+        this.positionTolerance = positionTolerance;
+        this.velocityTolerance = velocityTolerance;
+        this.minimumStep = minimumStep;
+        this.acceptedStepCount = new LongAdder();
+        this.rejectedStepCount = new LongAdder();
+    }
+
+    /**
+     * Gets the maximum tolerated local error of the position in a single sub step. Given in
+     * meters.
+     *
+     * @return the {@link #positionTolerance}
+     */
+    public double getPositionTolerance()
+    {
+        return positionTolerance;
+    }
+
+    /**
+     * Gets the maximum tolerated local error of the velocity in a single sub step. Given in m/s.
+     *
+     * @return the {@link #velocityTolerance}
+     */
+    public double getVelocityTolerance()
+    {
+        return velocityTolerance;
+    }
+
+    /**
+     * Gets the smallest allowed sub step. Given in seconds.
+     *
+     * @return the {@link #minimumStep}
+     */
+    public double getMinimumStep()
+    {
+        return minimumStep;
+    }
+
+    /**
+     * Gets the total number of accepted sub steps of all {@link Pedestrian}s. If no step has been
+     * rejected, this is the number of calls of {@link #move(long, double, Pedestrian, List,
+     * BoundaryIndex, ForceModel)}.
+     *
+     * @return the number of accepted sub steps
+     */
+    public long getAcceptedStepCount()
+    {
+        return acceptedStepCount.sum();
+    }
+
+    /**
+     * Gets the total number of rejected sub steps of all {@link Pedestrian}s, i.e. the number of
+     * sub steps, which needed to be repeated with a smaller step size.
+     *
+     * @return the number of rejected sub steps
+     */
+    public long getRejectedStepCount()
+    {
+        return rejectedStepCount.sum();
+    }
+
+    /**
+     * Overrides the abstract method in {@link NumericIntegrator} and sets this
+     * {@link AdaptiveRungeKuttaIntegrator} as algorithm of numeric integration, which dissolves the
+     * {@link ForceModel}.
+     * <p>
+     * Basically this class calculates the movement of a specific {@link Pedestrian}. This means
+     * his/her new position and velocity, in dependence to his/her old velocity and the terms of the
+     * Social Force Model (see Helbing et al. 2005), is computed in one or more sub steps, whose
+     * size is controlled by the estimated local error.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#move(long,
+     *      double, Pedestrian, List, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void move(long currentTimeMillis, double simulationInterval, Pedestrian pedestrian,
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        move(currentTimeMillis, simulationInterval, pedestrian, pedestrians, boundaries,
+            forceModel, getBuffer(bufferLength));
+    }
+
+    /**
+     * Overrides the method in {@link NumericIntegrator} and moves all {@link Pedestrian}s of the
+     * range one after another using the same buffer of the current thread. Since each
+     * {@link Pedestrian} is integrated with its own sub steps, the stages cannot be computed for
+     * all {@link Pedestrian}s in common passes like in the {@link RungeKuttaIntegrator}.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrians the {@link List} of {@link Pedestrian}s containing the range to be moved
+     * @param start the index of the first {@link Pedestrian} to be moved
+     * @param end the index after the last {@link Pedestrian} to be moved
+     * @param neighbours provides the {@link Pedestrian}s that potentially interact with each
+     *            {@link Pedestrian} of the range
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#moveAll(long,
+     *      double, List, int, int, NeighbourProvider, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void moveAll(long currentTimeMillis, double simulationInterval,
+        List<Pedestrian> pedestrians, int start, int end, NeighbourProvider neighbours,
+        BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        double[] k = getBuffer(bufferLength);
+        for (int i = start; i < end; i++ )
+        {
+            move(currentTimeMillis, simulationInterval, pedestrians.get(i),
+                neighbours.getNeighbours(i), boundaries, forceModel, k);
+        }
+    }
+
+    /**
+     * Moves a single {@link Pedestrian} in one or more sub steps (cf. {@link #move(long, double,
+     * Pedestrian, List, BoundaryIndex, ForceModel)}).
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     * @param k the buffer of at least {@link #bufferLength} values for the derivatives of position
+     *            (x, y) and velocity (vx, vy) of each stage followed by the state of the current
+     *            stage
+     */
+    private void move(long currentTimeMillis, double simulationInterval, Pedestrian pedestrian,
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel, double[] k)
+    {
+        PedestrianStateStore state = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
+
+        // old position
+        double startX = state.getPositionX(slot);
+        double startY = state.getPositionY(slot);
+
+        // derivatives of position (x, y) and velocity (vx, vy) of stage i at k[4 * i + n] and the
+        // state of the current stage at k[y + n]
+        int y = c.length * 4;
+
+        double remaining = simulationInterval;
+        double step = simulationInterval;
+        boolean isRejected = false;
+        while (remaining > 0)
+        {
+            if (remaining - step < minimumStep)
+            {
+                // after a rejection, split the remainder into two sub steps instead of undoing the
+                // reduction of the step. Otherwise, avoid a tiny last sub step
+                if (isRejected && remaining >= 2 * minimumStep)
+                    step = remaining / 2;
+                else
+                    step = remaining;
+            }
+            // a remainder below twice the minimum step cannot be split any further
+            boolean isMinimumStep = step <= minimumStep
+                || (step >= remaining && remaining < 2 * minimumStep);
+            double x0 = state.getPositionX(slot);
+            double y0 = state.getPositionY(slot);
+            double vx0 = state.getVelocityX(slot);
+            double vy0 = state.getVelocityY(slot);
+
+            // compute all stages
+            for (int i = 0; i < c.length; i++ )
+            {
+                k[y] = x0;
+                k[y + 1] = y0;
+                k[y + 2] = vx0;
+                k[y + 3] = vy0;
+                for (int j = 0; j < i; j++ )
+                {
+                    double weight = a[i][j] * step;
+                    for (int n = 0; n < 4; n++ )
+                    {
+                        k[y + n] += weight * k[4 * j + n];
+                    }
+                }
+                pedestrian.updateForces(k[y], k[y + 1], k[y + 2], k[y + 3], currentTimeMillis,
+                    pedestrians, boundaries, forceModel);
+                k[4 * i] = k[y + 2];
+                k[4 * i + 1] = k[y + 3];
+                k[4 * i + 2] = state.getForceX(slot);
+                k[4 * i + 3] = state.getForceY(slot);
+            }
+
+            // estimated local error relative to the tolerances
+            double error = 0;
+            for (int n = 0; n < 4; n++ )
+            {
+                double errorComponent = 0;
+                for (int i = 0; i < c.length; i++ )
+                {
+                    errorComponent += e[i] * k[4 * i + n];
+                }
+                errorComponent = Math.abs(errorComponent * step)
+                    / (n < 2 ? positionTolerance : velocityTolerance);
+                error = Math.max(error, errorComponent);
+            }
+
+            if (error > 1 && !isMinimumStep)
+            {
+                // reject and repeat with a smaller step
+                rejectedStepCount.increment();
+                step = Math.max(step * Math.max(0.9 * Math.pow(error, -0.25), 0.1), minimumStep);
+                isRejected = true;
+                continue;
+            }
+
+            // accept the solution of 5. order
+            acceptedStepCount.increment();
+            isRejected = false;
+            k[y] = x0;
+            k[y + 1] = y0;
+            k[y + 2] = vx0;
+            k[y + 3] = vy0;
+            for (int i = 0; i < c.length; i++ )
+            {
+                double weight = b[i] * step;
+                for (int n = 0; n < 4; n++ )
+                {
+                    k[y + n] += weight * k[4 * i + n];
+                }
+            }
+            state.setVelocity(slot, k[y + 2], k[y + 3]);
+            NumericIntegrationTools.validateVelocity(state, slot,
+                pedestrian.getMaximumDesiredVelocity());
+            state.setPosition(slot, k[y], k[y + 1]);
+            // validated updated position - guaranteed not to go through a boundary
+            NumericIntegrationTools.validateMove(pedestrian, boundaries, x0, y0);
+
+            remaining -= step;
+            // grow the next step, if the error is small, but never below the minimum step (e.g.
+            // after accepting a minimum step with an error above the tolerances)
+            if (error < 1e-4)
+                step *= 5;
+            else
+                step = Math.max(step * Math.min(0.9 * Math.pow(error, -0.2), 5), minimumStep);
+        }
+
+        Vector2D currentPosition = new Vector2D(startX, startY);
+        Vector2D updatedPosition = pedestrian.getCurrentPosition();
+
+        // check if the current WayPoint has been passed
+        pedestrian.getMentalModel().checkWayPointPassing(pedestrian, currentPosition,
+            updatedPosition);
+
+        // check if WayPoint has been passed
+        pedestrian.getMentalModel().checkCourse(pedestrian, currentTimeMillis);
+
+        logger.trace("move(), updatedPosition: " + updatedPosition);
+    }
+}
@@ -0,0 +1,369 @@
+package de.fhg.ivi.crowdsimulation.simulation.numericintegration;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianNeighbourList;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianStateStore;
+
+/**
+ * A {@link MultiRateIntegrator} moves each {@link Pedestrian} with its own rate using another
+ * {@link NumericIntegrator} (the {@link #baseIntegrator}). Each {@link Pedestrian} has a step
+ * class {@code k}, i.e. its forces are computed and it is moved by the {@link #baseIntegrator} only
+ * in every {@code 2^k}-th simulation step using the sum of the simulation intervals since its last
+ * update.
+ * <p>
+ * The step class is computed after each update from the distance to the nearest other
+ * {@link Pedestrian} and the speed: it is chosen as large as possible, so that no other
+ * {@link Pedestrian} can come within the maximum interaction distance of the {@link ForceModel}
+ * before the next update, if both walk towards each other (the other one with the
+ * {@link #maximumVelocity} of all {@link Pedestrian}s). If only the neighbours of each
+ * {@link Pedestrian} are given, the distance to the nearest other {@link Pedestrian} is bounded by
+ * the {@link #completeDistance} of the neighbours. {@link Pedestrian}s within the interaction
+ * distance of any other {@link Pedestrian} or any {@link Boundary} always have the step class
+ * {@code 0}, i.e. they are moved in each simulation step. Hence, the force computations are saved
+ * for {@link Pedestrian}s walking in open space, while the {@link Pedestrian}s in dense situations
+ * are moved as accurate as before.
+ * <p>
+ * In the simulation steps between two updates, a {@link Pedestrian} is moved with its current
+ * velocity without computing any forces, so that the other {@link Pedestrian}s interact with an
+ * interpolated position. At its next update, the {@link Pedestrian} is moved from the position of
+ * its last update.
+ *
+ * @author hahmann/meinert
+ */
+public class MultiRateIntegrator extends NumericIntegrator
+{
+    /**
+     * The default value of {@link #maximumStepClass}.
+     */
+    public static final int   defaultMaximumStepClass = 2;
+
+    /**
+     * The {@link NumericIntegrator}, which is used to move the {@link Pedestrian}s at their
+     * updates.
+     */
+    private NumericIntegrator baseIntegrator;
+
+    /**
+     * The largest step class, i.e. each {@link Pedestrian} is updated at least in every
+     * {@code 2^maximumStepClass}-th simulation step.
+     */
+    private int               maximumStepClass;
+
+    /**
+     * The distance, within which the {@link List}s of {@link Pedestrian}s given to
+     * {@link #move(long, double, Pedestrian, List, BoundaryIndex, ForceModel)} contain all other
+     * {@link Pedestrian}s (e.g. {@link PedestrianNeighbourList#getCompleteDistance()}). Given in
+     * meters. {@link Double#POSITIVE_INFINITY}, if these {@link List}s contain all
+     * {@link Pedestrian}s.
+     */
+    private double            completeDistance;
+
+    /**
+     * The maximum velocity of all {@link Pedestrian}s, which may walk towards a {@link Pedestrian}.
+     * Given in m/s.
+     */
+    private double            maximumVelocity;
+
+    /**
+     * The total number of updates of all {@link Pedestrian}s, i.e. the number of calls of
+     * {@link NumericIntegrator#move(long, double, Pedestrian, List, BoundaryIndex, ForceModel)} of
+     * the {@link #baseIntegrator}.
+     */
+    private LongAdder         updateCount;
+
+    /**
+     * The total number of simulation steps of all {@link Pedestrian}s, in which the
+     * {@link Pedestrian} has been moved without an update.
+     */
+    private LongAdder         skipCount;
+
+    /**
+     * Creates a new {@link MultiRateIntegrator} using the {@link #defaultMaximumStepClass}.
+     *
+     * @param baseIntegrator the {@link NumericIntegrator}, which is used to move the
+     *            {@link Pedestrian}s at their updates
+     */
+    public MultiRateIntegrator(NumericIntegrator baseIntegrator)
+    {
+        this(baseIntegrator, defaultMaximumStepClass);
+    }
+
+    /**
+     * Creates a new {@link MultiRateIntegrator}.
+     *
+     * @param baseIntegrator the {@link NumericIntegrator}, which is used to move the
+     *            {@link Pedestrian}s at their updates
+     * @param maximumStepClass the largest step class. If {@code 0}, each {@link Pedestrian} is
+     *            updated in each simulation step.
+     */
+    public MultiRateIntegrator(NumericIntegrator baseIntegrator, int maximumStepClass)
+    {
+        if (baseIntegrator == null)
+            throw new IllegalArgumentException("baseIntegrator must not be null");
+        if (maximumStepClass < 0 || maximumStepClass > 16)
+            throw new IllegalArgumentException(
+                "maximumStepClass must be between 0 and 16: " + maximumStepClass);
+        this.baseIntegrator = baseIntegrator;
+        this.maximumStepClass = maximumStepClass;
+        this.completeDistance = Double.POSITIVE_INFINITY;
+        this.updateCount = new LongAdder();
+        this.skipCount = new LongAdder();
+    }
+
+    /**
+     * Gets the {@link NumericIntegrator}, which is used to move the {@link Pedestrian}s at their
+     * updates.
+     *
+     * @return the {@link #baseIntegrator}
+     */
+    public NumericIntegrator getBaseIntegrator()
+    {
+        return baseIntegrator;
+    }
+
+    /**
+     * Gets the largest step class, i.e. each {@link Pedestrian} is updated at least in every
+     * {@code 2^maximumStepClass}-th simulation step.
+     *
+     * @return the {@link #maximumStepClass}
+     */
+    public int getMaximumStepClass()
+    {
+        return maximumStepClass;
+    }
+
+    /**
+     * Gets the distance, within which the {@link List}s of {@link Pedestrian}s given to
+     * {@link #move(long, double, Pedestrian, List, BoundaryIndex, ForceModel)} contain all other
+     * {@link Pedestrian}s. Given in meters.
+     *
+     * @return the {@link #completeDistance}
+     */
+    public double getCompleteDistance()
+    {
+        return completeDistance;
+    }
+
+    /**
+     * Sets the distance, within which the {@link List}s of {@link Pedestrian}s given to
+     * {@link #move(long, double, Pedestrian, List, BoundaryIndex, ForceModel)} contain all other
+     * {@link Pedestrian}s, e.g. {@link PedestrianNeighbourList#getCompleteDistance()}, if only the
+     * neighbours of each {@link Pedestrian} are given. The distance to the nearest other
+     * {@link Pedestrian} is assumed to be at most this distance. Given in meters.
+     *
+     * @param completeDistance the distance, within which all other {@link Pedestrian}s are given,
+     *            or {@link Double#POSITIVE_INFINITY}, if all {@link Pedestrian}s are given
+     */
+    public void setCompleteDistance(double completeDistance)
+    {
+        this.completeDistance = completeDistance;
+    }
+
+    /**
+     * Gets the maximum velocity of all {@link Pedestrian}s, which may walk towards a
+     * {@link Pedestrian}. Given in m/s.
+     *
+     * @return the {@link #maximumVelocity}
+     */
+    public double getMaximumVelocity()
+    {
+        return maximumVelocity;
+    }
+
+    /**
+     * Sets the maximum velocity of all {@link Pedestrian}s, which may walk towards a
+     * {@link Pedestrian}, e.g. the largest {@link Pedestrian#getMaximumDesiredVelocity()} of all
+     * {@link Pedestrian}s. Given in m/s. If smaller than the
+     * {@link Pedestrian#getMaximumDesiredVelocity()} of a {@link Pedestrian}, the latter is used.
+     *
+     * @param maximumVelocity the maximum velocity of all {@link Pedestrian}s
+     */
+    public void setMaximumVelocity(double maximumVelocity)
+    {
+        this.maximumVelocity = maximumVelocity;
+    }
+
+    /**
+     * Gets the total number of updates of all {@link Pedestrian}s, i.e. the number of calls of
+     * the {@link #baseIntegrator}.
+     *
+     * @return the number of updates
+     */
+    public long getUpdateCount()
+    {
+        return updateCount.sum();
+    }
+
+    /**
+     * Gets the total number of simulation steps of all {@link Pedestrian}s, in which a
+     * {@link Pedestrian} has been moved without an update.
+     *
+     * @return the number of skipped updates
+     */
+    public long getSkipCount()
+    {
+        return skipCount.sum();
+    }
+
+    /**
+     * Overrides the abstract method in {@link NumericIntegrator}. Moves {@code pedestrian} using
+     * the {@link #baseIntegrator}, if an update of {@code pedestrian} is due according to its step
+     * class, or moves it with its current velocity otherwise.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#move(long,
+     *      double, Pedestrian, List, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void move(long currentTimeMillis, double simulationInterval, Pedestrian pedestrian,
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        PedestrianStateStore state = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
+
+        StepState stepState = getStepState(pedestrian);
+        stepState.accumulatedInterval += simulationInterval;
+        stepState.stepCount++ ;
+
+        double currentX = state.getPositionX(slot);
+        double currentY = state.getPositionY(slot);
+        if (stepState.stepCount < 1 << stepState.stepClass)
+        {
+            // interpolate the position for the other pedestrians
+            state.setPosition(slot, currentX + state.getVelocityX(slot) * simulationInterval,
+                currentY + state.getVelocityY(slot) * simulationInterval);
+            NumericIntegrationTools.validateMove(pedestrian, boundaries, currentX, currentY);
+            skipCount.increment();
+            return;
+        }
+
+        // move from the position of the last update using the accumulated interval
+        if (stepState.stepCount > 1)
+            state.setPosition(slot, stepState.lastUpdatePositionX,
+                stepState.lastUpdatePositionY);
+        baseIntegrator.move(currentTimeMillis, stepState.accumulatedInterval, pedestrian,
+            pedestrians, boundaries, forceModel);
+        updateCount.increment();
+
+        stepState.lastUpdatePositionX = state.getPositionX(slot);
+        stepState.lastUpdatePositionY = state.getPositionY(slot);
+        stepState.accumulatedInterval = 0;
+        stepState.stepCount = 0;
+        stepState.stepClass = computeStepClass(pedestrian, simulationInterval, pedestrians,
+            boundaries, forceModel);
+    }
+
+    /**
+     * Gets the {@link StepState} of {@code pedestrian} and creates it, if necessary.
+     *
+     * @param pedestrian the {@link Pedestrian}
+     * @return the {@link StepState} of {@code pedestrian}
+     */
+    private StepState getStepState(Pedestrian pedestrian)
+    {
+        Object integratorState = pedestrian.getIntegratorState();
+        if (integratorState instanceof StepState)
+            return (StepState) integratorState;
+        StepState stepState = new StepState();
+        pedestrian.setIntegratorState(stepState);
+        return stepState;
+    }
+
+    /**
+     * Computes the step class of {@code pedestrian}, i.e. the largest {@code k} not exceeding
+     * {@link #maximumStepClass}, so that no other {@link Pedestrian} can come within the maximum
+     * interaction distance of {@code pedestrian} within {@code 2^k} simulation steps.
+     *
+     * @param pedestrian the {@link Pedestrian}
+     * @param simulationInterval the time between two simulation steps given in seconds
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     * @return the step class of {@code pedestrian}
+     */
+    private int computeStepClass(Pedestrian pedestrian, double simulationInterval,
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        if (maximumStepClass == 0 || !(simulationInterval > 0))
+            return 0;
+        double x = pedestrian.getCurrentPositionX();
+        double y = pedestrian.getCurrentPositionY();
+        if (boundaries != null && !boundaries.getBoundaries(x, y).isEmpty())
+            return 0;
+
+        // pedestrians not contained in pedestrians are at least completeDistance away
+        double nearestDistanceSquared = completeDistance * completeDistance;
+        for (int i = 0; i < pedestrians.size(); i++ )
+        {
+            Pedestrian other = pedestrians.get(i);
+            if (other.getId() == pedestrian.getId())
+                continue;
+            double dx = other.getCurrentPositionX() - x;
+            double dy = other.getCurrentPositionY() - y;
+            nearestDistanceSquared = Math.min(nearestDistanceSquared, dx * dx + dy * dy);
+        }
+        if (nearestDistanceSquared == Double.POSITIVE_INFINITY)
+            return maximumStepClass;
+
+        // both pedestrians may walk towards each other with the maximum velocity of all
+        // pedestrians
+        PedestrianStateStore state = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
+        double speed = Math.hypot(state.getVelocityX(slot), state.getVelocityY(slot))
+            + Math.max(maximumVelocity, pedestrian.getMaximumDesiredVelocity());
+        double gap = Math.sqrt(nearestDistanceSquared)
+            - forceModel.getMaxPedestrianInteractionDistance();
+        if (gap <= 0)
+            return 0;
+        if ( !(speed > 0))
+            return maximumStepClass;
+        double steps = gap / (speed * simulationInterval);
+        int stepClass = 0;
+        while (stepClass < maximumStepClass && 1 << (stepClass + 1) <= steps)
+            stepClass++ ;
+        return stepClass;
+    }
+
+    /**
+     * The state of a single {@link Pedestrian}, which is kept between two simulation steps.
+     */
+    private static final class StepState
+    {
+        /**
+         * The step class of the {@link Pedestrian}.
+         */
+        private int    stepClass;
+
+        /**
+         * The number of simulation steps since the last update.
+         */
+        private int    stepCount;
+
+        /**
+         * The sum of the simulation intervals since the last update. Given in seconds.
+         */
+        private double accumulatedInterval;
+
+        /**
+         * The x component of the position after the last update.
+         */
+        private double lastUpdatePositionX;
+
+        /**
+         * The y component of the position after the last update.
+         */
+        private double lastUpdatePositionY;
+    }
+}
@@ -1,7 +1,5 @@
 package de.fhg.ivi.crowdsimulation.simulation.numericintegration;
 
-import java.util.List;
-
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,7 +10,9 @@ import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.LineString;
 
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianStateStore;
 import de.fhg.ivi.crowdsimulation.simulation.tools.GeometryTools;
 import de.fhg.ivi.crowdsimulation.simulation.tools.MathTools;
 import math.geom2d.Vector2D;
@@ -87,6 +87,69 @@ public class NumericIntegrationTools
         return updatedVelocity;
     }
 
+    /**
+     * Checks whether the current velocity of the {@link Pedestrian} at {@code slot} of
+     * {@code stateStore} is bigger than {@code maximumDesiredVelocity}. If this is the case, the
+     * velocity is scaled down to {@code maximumDesiredVelocity} within {@code stateStore}. This is
+     * the same validation as {@link #getValidatedVelocity(Pedestrian, Vector2D)}, but without
+     * creating any objects.
+     *
+     * @param stateStore the {@link PedestrianStateStore} containing the velocity
+     * @param slot the slot of the {@link Pedestrian} in {@code stateStore}
+     * @param maximumDesiredVelocity the maximum desired velocity of the {@link Pedestrian}
+     */
+    public static void validateVelocity(PedestrianStateStore stateStore, int slot,
+        float maximumDesiredVelocity)
+    {
+        double velocityX = stateStore.getVelocityX(slot);
+        double velocityY = stateStore.getVelocityY(slot);
+
+        // compare square products to gain some performance
+        if (velocityX * velocityX + velocityY * velocityY > maximumDesiredVelocity
+            * maximumDesiredVelocity)
+        {
+            double norm = MathTools.distance(velocityX, velocityY, 0, 0);
+            stateStore.setVelocity(slot, (velocityX / norm) * maximumDesiredVelocity,
+                (velocityY / norm) * maximumDesiredVelocity);
+        }
+    }
+
+    /**
+     * Checks whether the move of the {@link Pedestrian} from the position {@code oldX},
+     * {@code oldY} to its current position in its {@link PedestrianStateStore} crosses any
+     * {@link Geometry}s of {@link Boundary}s. If this is the case, the position is reset to
+     * {@code oldX}, {@code oldY} within the {@link PedestrianStateStore}. This is the same
+     * validation as {@link #validateMove(Pedestrian, BoundaryIndex, Vector2D, Vector2D)}, but
+     * without creating any objects.
+     *
+     * @param pedestrian the {@link Pedestrian}, whose move is validated
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param oldX the x component of the position of the {@link Pedestrian} before the move
+     * @param oldY the y component of the position of the {@link Pedestrian} before the move
+     *
+     * @return {@code true}, if the move is valid, {@code false} if the position has been reset
+     */
+    public static boolean validateMove(Pedestrian pedestrian, BoundaryIndex boundaries,
+        double oldX, double oldY)
+    {
+        PedestrianStateStore stateStore = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
+        double newX = stateStore.getPositionX(slot);
+        double newY = stateStore.getPositionY(slot);
+
+        // this move would cross a boundary
+        if (boundaries != null && !boundaries.isEmpty()
+            && boundaries.crosses(oldX, oldY, newX, newY))
+        {
+            logger.trace("NumericIntegrator.validateMove(), move intersects boundary");
+            pedestrian.getMentalModel().setNeedsOrientation(true);
+            stateStore.setPosition(slot, oldX, oldY);
+            return false;
+        }
+
+        return true;
+    }
+
     /**
      * Checks whether the {@link Pedestrian} movement crosses any {@link Geometry}s of
      * {@link Boundary}s. This would mean that the {@link Pedestrian} would pass a wall during this
@@ -94,31 +157,24 @@ public class NumericIntegrationTools
      * {@code newPosition}
      *
      * @param pedestrian an object of the {@link Pedestrian}
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      * @param oldPosition current position of the {@link Pedestrian}
      * @param newPosition next position of the {@link Pedestrian}, after the move
      *
      * @return the validated position of the {@link Pedestrian} (either {@code oldPosition} or
      *         {@code newPosition}).
      */
-    public static Vector2D validateMove(Pedestrian pedestrian, List<Boundary> boundaries,
+    public static Vector2D validateMove(Pedestrian pedestrian, BoundaryIndex boundaries,
         Vector2D oldPosition, Vector2D newPosition)
     {
-        if (boundaries != null && !boundaries.isEmpty())
+        // this move would cross a boundary
+        if (boundaries != null && !boundaries.isEmpty()
+            && boundaries.crosses(oldPosition, newPosition))
         {
-            for (Boundary boundary : boundaries)
-            {
-                // this move would cross a boundary
-                if (moveCrossesGeometry(boundary.getBoundingBox(), boundary.getGeometry(),
-                    oldPosition, newPosition))
-                {
-                    logger.trace(
-                        "NumericIntegrator.validateMove(), move intersects boundary, oldPosition="
-                            + oldPosition + ", newPosition=" + newPosition);
-                    pedestrian.getMentalModel().setNeedsOrientation(true);
-                    return oldPosition;
-                }
-            }
+            logger.trace("NumericIntegrator.validateMove(), move intersects boundary, oldPosition="
+                + oldPosition + ", newPosition=" + newPosition);
+            pedestrian.getMentalModel().setNeedsOrientation(true);
+            return oldPosition;
         }
 
         return newPosition;
@@ -4,7 +4,9 @@ import java.util.List;
 
 import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianStateStore;
 
 /**
  * Algorithms of numeric integrations are necessary to dissolve Ordinary Differential Equations like
@@ -21,6 +23,12 @@ import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
  */
 public abstract class NumericIntegrator
 {
+    /**
+     * The buffer of each thread, which is reused by all invocations of
+     * {@link #moveAll(long, double, List, int, int, NeighbourProvider, BoundaryIndex, ForceModel)}
+     * on the same thread (cf. {@link #getBuffer(int)}).
+     */
+    private final ThreadLocal<double[]> buffers = new ThreadLocal<>();
 
     /**
      * Invokes one of the three numeric integration methods, which means
@@ -32,10 +40,127 @@ public abstract class NumericIntegrator
      * @param simulationInterval the time between this method invocation and the last one
      * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
      * @param pedestrians represents a list of all {@link Pedestrian}s
-     * @param boundaries represents a list of all {@link Boundary}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
      * @param forceModel an {@link Object} of {@link ForceModel}
      */
     public abstract void move(long currentTimeMillis, double simulationInterval,
-        Pedestrian pedestrian, List<Pedestrian> pedestrians, List<Boundary> boundaries,
+        Pedestrian pedestrian, List<Pedestrian> pedestrians, BoundaryIndex boundaries,
         ForceModel forceModel);
+
+    /**
+     * First phase of a two-phase move (cf. {@link #completeMove(long, double, Pedestrian, List,
+     * BoundaryIndex, ForceModel)}). Computes everything that depends on other {@link Pedestrian}s,
+     * e.g. the resulting force, and stores it in the {@link Pedestrian}, but does not change its
+     * position or velocity. Is called for all {@link Pedestrian}s, before
+     * {@link #completeMove(long, double, Pedestrian, List, BoundaryIndex, ForceModel)} is called
+     * for any of them.
+     * <p>
+     * The default implementation does nothing, i.e. all computations are done in the second phase.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     */
+    public void prepareMove(long currentTimeMillis, Pedestrian pedestrian,
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
+    {
+    }
+
+    /**
+     * Second phase of a two-phase move (cf. {@link #prepareMove(long, Pedestrian, List,
+     * BoundaryIndex, ForceModel)}). Updates the velocity and position of {@code pedestrian} using
+     * the values computed in the first phase.
+     * <p>
+     * The default implementation calls {@link #move(long, double, Pedestrian, List, BoundaryIndex,
+     * ForceModel)}.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     */
+    public void completeMove(long currentTimeMillis, double simulationInterval,
+        Pedestrian pedestrian, List<Pedestrian> pedestrians, BoundaryIndex boundaries,
+        ForceModel forceModel)
+    {
+        move(currentTimeMillis, simulationInterval, pedestrian, pedestrians, boundaries,
+            forceModel);
+    }
+
+    /**
+     * Moves all {@link Pedestrian}s from index {@code start} (inclusive) to index {@code end}
+     * (exclusive) of {@code pedestrians} in a single call. The neighbours of each
+     * {@link Pedestrian} are looked up only once per call using {@code neighbours}. Subclasses may
+     * override this method to process the whole range in several passes over the
+     * {@link PedestrianStateStore}, e.g. to compute all forces first and to update all velocities
+     * and positions in a single tight loop afterwards. The result must be the same as calling
+     * {@link #move(long, double, Pedestrian, List, BoundaryIndex, ForceModel)} for each
+     * {@link Pedestrian} of the range.
+     * <p>
+     * The default implementation calls {@link #move(long, double, Pedestrian, List, BoundaryIndex,
+     * ForceModel)} for each {@link Pedestrian} of the range.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrians the {@link List} of {@link Pedestrian}s containing the range to be moved
+     * @param start the index of the first {@link Pedestrian} to be moved
+     * @param end the index after the last {@link Pedestrian} to be moved
+     * @param neighbours provides the {@link Pedestrian}s that potentially interact with each
+     *            {@link Pedestrian} of the range
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     */
+    public void moveAll(long currentTimeMillis, double simulationInterval,
+        List<Pedestrian> pedestrians, int start, int end, NeighbourProvider neighbours,
+        BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        for (int i = start; i < end; i++ )
+        {
+            move(currentTimeMillis, simulationInterval, pedestrians.get(i),
+                neighbours.getNeighbours(i), boundaries, forceModel);
+        }
+    }
+
+    /**
+     * Gets the buffer of the calling thread, which contains at least {@code length} elements. The
+     * buffer is reused by all subsequent calls on the same thread and only replaced by a larger
+     * one, if it is too small. Hence, its content is undefined and it must not be used by two
+     * nested computations.
+     *
+     * @param length the minimum number of elements of the buffer
+     * @return the buffer of the calling thread
+     */
+    protected double[] getBuffer(int length)
+    {
+        double[] buffer = buffers.get();
+        if (buffer == null || buffer.length < length)
+        {
+            buffer = new double[Math.max(length, buffer == null ? 0 : 2 * buffer.length)];
+            buffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Provides the {@link Pedestrian}s that potentially interact with a {@link Pedestrian}, which
+     * is moved by {@link NumericIntegrator#moveAll(long, double, List, int, int,
+     * NeighbourProvider, BoundaryIndex, ForceModel)}.
+     */
+    public interface NeighbourProvider
+    {
+        /**
+         * Gets the {@link Pedestrian}s that potentially interact with the {@link Pedestrian} at
+         * {@code index}.
+         *
+         * @param index the index of the {@link Pedestrian} in the {@link List} given to
+         *            {@link NumericIntegrator#moveAll(long, double, List, int, int,
+         *            NeighbourProvider, BoundaryIndex, ForceModel)}
+         * @return the {@link List} of potentially interacting {@link Pedestrian}s
+         */
+        List<Pedestrian> getNeighbours(int index);
+    }
 }
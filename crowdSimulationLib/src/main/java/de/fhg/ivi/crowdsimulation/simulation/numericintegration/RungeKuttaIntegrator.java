@@ -4,7 +4,10 @@ import java.util.List;
 
 import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianStateStore;
+import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
 import math.geom2d.Vector2D;
 
 /**
@@ -21,6 +24,12 @@ import math.geom2d.Vector2D;
  */
 public class RungeKuttaIntegrator extends NumericIntegrator
 {
+    /**
+     * The number of elements of the buffer used for each {@link Pedestrian}: its position (x, y)
+     * and velocity (vx, vy) at the beginning of the step followed by the resulting forces (x, y)
+     * of the 4 Runge-Kutta steps.
+     */
+    private static final int stride = 12;
 
     /**
      * Overrides the abstract method in {@link NumericIntegrator} and sets this
@@ -35,88 +44,226 @@ public class RungeKuttaIntegrator extends NumericIntegrator
      * @param simulationInterval the time between this method invocation and the last one
      * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
      * @param pedestrians represents a list of all {@link Pedestrian}s
-     * @param boundaries represents a list of all {@link Boundary}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
      * @param forceModel an {@link Object} of {@link ForceModel}
      *
      * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#move(long,
-     *      double, Pedestrian, List, List, ForceModel)
+     *      double, Pedestrian, List, BoundaryIndex, ForceModel)
      */
     @Override
     public void move(long currentTimeMillis, double simulationInterval, Pedestrian pedestrian,
-        List<Pedestrian> pedestrians, List<Boundary> boundaries, ForceModel forceModel)
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
     {
-        double[] integrationIntervals = { 0, simulationInterval / 2, simulationInterval / 2,
-            simulationInterval };
-        Vector2D[] temporaryForces = new Vector2D[integrationIntervals.length];
-        Vector2D[] temporaryVelocities = new Vector2D[integrationIntervals.length];
-
-        // current position
-        Vector2D currentPosition = pedestrian.getCurrentPosition();
-        // current velocity
-        Vector2D currentVelocity = pedestrian.getCurrentVelocity();
+        double[] buffer = getBuffer(stride);
+        startStep(pedestrian, buffer, 0);
 
         // iterate over 4 Runge-Kutta steps
         for (int k = 0; k < 4; k++ )
         {
-            // temporary position during this Runge-Kutta step
-            Vector2D temporaryPosition;
-            // temporary velocity during this Runge-Kutta step
-            Vector2D temporaryVelocity = pedestrian.getCurrentVelocity();
+            computeStage(k, getIntegrationInterval(k, simulationInterval), currentTimeMillis,
+                pedestrian, pedestrians, boundaries, forceModel, buffer, 0);
+        }
 
-            if (k == 0)
-            {
-                temporaryPosition = currentPosition;
-            }
-            // k > 0
-            else
+        completeStep(currentTimeMillis, simulationInterval, pedestrian, boundaries, buffer, 0);
+    }
+
+    /**
+     * Overrides the method in {@link NumericIntegrator} and moves all {@link Pedestrian}s of the
+     * range stage by stage: Each of the 4 Runge-Kutta steps is computed for all
+     * {@link Pedestrian}s in a single pass, before the velocities and positions of all
+     * {@link Pedestrian}s are updated in a final pass. The intermediate states are kept in a buffer
+     * reused by the calling thread. Since the forces only depend on the snapshot of the other
+     * {@link Pedestrian}s, the result is the same as moving each {@link Pedestrian} by
+     * {@link #move(long, double, Pedestrian, List, BoundaryIndex, ForceModel)}.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrians the {@link List} of {@link Pedestrian}s containing the range to be moved
+     * @param start the index of the first {@link Pedestrian} to be moved
+     * @param end the index after the last {@link Pedestrian} to be moved
+     * @param neighbours provides the {@link Pedestrian}s that potentially interact with each
+     *            {@link Pedestrian} of the range
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#moveAll(long,
+     *      double, List, int, int, NeighbourProvider, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void moveAll(long currentTimeMillis, double simulationInterval,
+        List<Pedestrian> pedestrians, int start, int end, NeighbourProvider neighbours,
+        BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        if (end <= start)
+            return;
+
+        double[] buffer = getBuffer(stride * (end - start));
+        for (int i = start; i < end; i++ )
+        {
+            startStep(pedestrians.get(i), buffer, stride * (i - start));
+        }
+
+        // iterate over 4 Runge-Kutta steps, each for all pedestrians
+        for (int k = 0; k < 4; k++ )
+        {
+            double integrationInterval = getIntegrationInterval(k, simulationInterval);
+            for (int i = start; i < end; i++ )
             {
-                temporaryPosition = currentPosition
-                    .plus(temporaryVelocity.times(integrationIntervals[k]))
-                    .plus(temporaryForces[k - 1].times(0.5)
-                        .times(integrationIntervals[k])
-                        .times(integrationIntervals[k]));
-                temporaryVelocity = temporaryVelocity
-                    .plus(temporaryForces[k - 1].times(integrationIntervals[k]));
+                computeStage(k, integrationInterval, currentTimeMillis, pedestrians.get(i),
+                    neighbours.getNeighbours(i), boundaries, forceModel, buffer,
+                    stride * (i - start));
             }
+        }
 
-            // total acceleration on current pedestrian
-            Vector2D resultingForce = pedestrian.getForces(temporaryPosition, temporaryVelocity,
-                currentTimeMillis, pedestrians, boundaries, forceModel);
+        for (int i = start; i < end; i++ )
+        {
+            completeStep(currentTimeMillis, simulationInterval, pedestrians.get(i), boundaries,
+                buffer, stride * (i - start));
+        }
+    }
 
-            // add resulting temporary forces to array
-            temporaryForces[k] = resultingForce;
-            temporaryVelocities[k] = temporaryVelocity
-                .plus(resultingForce.times(integrationIntervals[k]));
+    /**
+     * Gets the integration interval of the Runge-Kutta step {@code k}.
+     *
+     * @param k the index of the Runge-Kutta step between {@code 0} and {@code 3}
+     * @param simulationInterval the time between this method invocation and the last one
+     * @return the integration interval of the Runge-Kutta step {@code k}
+     */
+    private static double getIntegrationInterval(int k, double simulationInterval)
+    {
+        if (k == 0)
+            return 0;
+        if (k == 3)
+            return simulationInterval;
+        return simulationInterval / 2;
+    }
+
+    /**
+     * Copies the current position and velocity of {@code pedestrian} into {@code buffer}.
+     *
+     * @param pedestrian the {@link Pedestrian}, whose movement is calculated
+     * @param buffer the buffer containing the intermediate states
+     * @param offset the index of the first element of {@code pedestrian} in {@code buffer}
+     */
+    private static void startStep(Pedestrian pedestrian, double[] buffer, int offset)
+    {
+        PedestrianStateStore state = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
+        buffer[offset] = state.getPositionX(slot);
+        buffer[offset + 1] = state.getPositionY(slot);
+        buffer[offset + 2] = state.getVelocityX(slot);
+        buffer[offset + 3] = state.getVelocityY(slot);
+    }
+
+    /**
+     * Computes the resulting force of the Runge-Kutta step {@code k} of {@code pedestrian} at the
+     * temporary position and velocity extrapolated from the force of the previous step and stores
+     * it in {@code buffer}.
+     *
+     * @param k the index of the Runge-Kutta step between {@code 0} and {@code 3}
+     * @param integrationInterval the integration interval of the Runge-Kutta step {@code k}
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param pedestrian the {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     * @param buffer the buffer containing the intermediate states
+     * @param offset the index of the first element of {@code pedestrian} in {@code buffer}
+     */
+    private static void computeStage(int k, double integrationInterval, long currentTimeMillis,
+        Pedestrian pedestrian, List<Pedestrian> pedestrians, BoundaryIndex boundaries,
+        ForceModel forceModel, double[] buffer, int offset)
+    {
+        // temporary position and velocity during this Runge-Kutta step
+        double temporaryPositionX = buffer[offset];
+        double temporaryPositionY = buffer[offset + 1];
+        double temporaryVelocityX = buffer[offset + 2];
+        double temporaryVelocityY = buffer[offset + 3];
+        if (k > 0)
+        {
+            double previousForceX = buffer[offset + 2 + 2 * k];
+            double previousForceY = buffer[offset + 3 + 2 * k];
+            temporaryPositionX = (temporaryPositionX + temporaryVelocityX * integrationInterval)
+                + previousForceX * 0.5 * integrationInterval * integrationInterval;
+            temporaryPositionY = (temporaryPositionY + temporaryVelocityY * integrationInterval)
+                + previousForceY * 0.5 * integrationInterval * integrationInterval;
+            temporaryVelocityX += previousForceX * integrationInterval;
+            temporaryVelocityY += previousForceY * integrationInterval;
+        }
+
+        // total acceleration on current pedestrian
+        pedestrian.updateForces(temporaryPositionX, temporaryPositionY, temporaryVelocityX,
+            temporaryVelocityY, currentTimeMillis, pedestrians, boundaries, forceModel);
+        PedestrianStateStore state = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
+        buffer[offset + 4 + 2 * k] = state.getForceX(slot);
+        buffer[offset + 5 + 2 * k] = state.getForceY(slot);
+    }
+
+    /**
+     * Updates the velocity and position of {@code pedestrian} using the resulting forces of all 4
+     * Runge-Kutta steps stored in {@code buffer}, validates the move and checks the passing of
+     * {@link WayPoint}s.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrian the {@link Pedestrian}, whose movement is calculated
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param buffer the buffer containing the intermediate states
+     * @param offset the index of the first element of {@code pedestrian} in {@code buffer}
+     */
+    private static void completeStep(long currentTimeMillis, double simulationInterval,
+        Pedestrian pedestrian, BoundaryIndex boundaries, double[] buffer, int offset)
+    {
+        PedestrianStateStore state = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
+        double currentX = buffer[offset];
+        double currentY = buffer[offset + 1];
+        double currentVelocityX = buffer[offset + 2];
+        double currentVelocityY = buffer[offset + 3];
+
+        // weighted sums of the forces and of the velocities at the end of all Runge-Kutta steps
+        double forceSumX = 0;
+        double forceSumY = 0;
+        double velocitySumX = 0;
+        double velocitySumY = 0;
+        for (int k = 0; k < 4; k++ )
+        {
+            double integrationInterval = getIntegrationInterval(k, simulationInterval);
+            double forceX = buffer[offset + 4 + 2 * k];
+            double forceY = buffer[offset + 5 + 2 * k];
+            double temporaryVelocityX = currentVelocityX;
+            double temporaryVelocityY = currentVelocityY;
+            if (k > 0)
+            {
+                temporaryVelocityX += buffer[offset + 2 + 2 * k] * integrationInterval;
+                temporaryVelocityY += buffer[offset + 3 + 2 * k] * integrationInterval;
+            }
+            double weight = k == 1 || k == 2 ? 2d : 1d;
+            forceSumX += forceX * weight;
+            forceSumY += forceY * weight;
+            velocitySumX += (temporaryVelocityX + forceX * integrationInterval) * weight;
+            velocitySumY += (temporaryVelocityY + forceY * integrationInterval) * weight;
         }
 
         // updatedVelocity = v(n+1)
-        Vector2D updatedVelocity = currentVelocity
-            .plus((temporaryForces[0].plus(temporaryForces[1].times(2d))
-                .plus(temporaryForces[2].times(2d))
-                .plus(temporaryForces[3])).times(1d / 6d).times(simulationInterval));
+        state.setVelocity(slot, currentVelocityX + forceSumX * (1d / 6d) * simulationInterval,
+            currentVelocityY + forceSumY * (1d / 6d) * simulationInterval);
 
         // validate velocity
-        updatedVelocity = NumericIntegrationTools.getValidatedVelocity(pedestrian, updatedVelocity);
-
-        // update velocity
-        pedestrian.setCurrentVelocity(updatedVelocity);
+        NumericIntegrationTools.validateVelocity(state, slot,
+            pedestrian.getMaximumDesiredVelocity());
 
         // updatedPosition = x(n+1)
-        Vector2D updatedPosition = currentPosition
-            .plus((temporaryVelocities[0].plus(temporaryVelocities[1].times(2d))
-                .plus(temporaryVelocities[2].times(2d))
-                .plus(temporaryVelocities[3])).times(simulationInterval).times(1d / 6d));
+        state.setPosition(slot, currentX + velocitySumX * simulationInterval * (1d / 6d),
+            currentY + velocitySumY * simulationInterval * (1d / 6d));
 
         // validated updated position - guaranteed not to go through a boundary
-        updatedPosition = NumericIntegrationTools.validateMove(pedestrian, boundaries,
-            currentPosition, updatedPosition);
-
-        // update position
-        pedestrian.setCurrentPosition(updatedPosition);
+        NumericIntegrationTools.validateMove(pedestrian, boundaries, currentX, currentY);
 
         // check if the current WayPoint has been passed
-        pedestrian.getMentalModel().checkWayPointPassing(pedestrian, currentPosition,
-            updatedPosition);
+        pedestrian.getMentalModel().checkWayPointPassing(pedestrian,
+            new Vector2D(currentX, currentY), pedestrian.getCurrentPosition());
 
         // check if WayPoint has been passed
         pedestrian.getMentalModel().checkCourse(pedestrian, currentTimeMillis);
@@ -7,7 +7,10 @@ import org.slf4j.LoggerFactory;
 
 import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianStateStore;
+import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
 import math.geom2d.Vector2D;
 
 /**
@@ -45,39 +48,166 @@ public class SemiImplicitEulerIntegrator extends NumericIntegrator
      * @param simulationInterval the time between this method invocation and the last one
      * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
      * @param pedestrians represents a list of all {@link Pedestrian}s
-     * @param boundaries represents a list of all {@link Boundary}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
      * @param forceModel an {@link Object} of {@link ForceModel}
      *
      * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#move(long,
-     *      double, Pedestrian, List, List, ForceModel)
+     *      double, Pedestrian, List, BoundaryIndex, ForceModel)
      */
     @Override
     public void move(long currentTimeMillis, double simulationInterval, Pedestrian pedestrian,
-        List<Pedestrian> pedestrians, List<Boundary> boundaries, ForceModel forceModel)
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
     {
-        Vector2D resultingForce = pedestrian.getForces(currentTimeMillis, pedestrians, boundaries,
+        prepareMove(currentTimeMillis, pedestrian, pedestrians, boundaries, forceModel);
+        completeMove(currentTimeMillis, simulationInterval, pedestrian, pedestrians, boundaries,
             forceModel);
+    }
+
+    /**
+     * Overrides the method in {@link NumericIntegrator} and moves all {@link Pedestrian}s of the
+     * range in three passes: First, the resulting forces of all {@link Pedestrian}s are computed.
+     * Second, the velocities and positions of all {@link Pedestrian}s are updated in a single loop
+     * over the {@link PedestrianStateStore}. Third, all moves are validated against the
+     * {@link Boundary}s and the passing of {@link WayPoint}s is checked. Since the forces only
+     * depend on the snapshot of the other {@link Pedestrian}s, the result is the same as moving
+     * each {@link Pedestrian} by {@link #move(long, double, Pedestrian, List, BoundaryIndex,
+     * ForceModel)}.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrians the {@link List} of {@link Pedestrian}s containing the range to be moved
+     * @param start the index of the first {@link Pedestrian} to be moved
+     * @param end the index after the last {@link Pedestrian} to be moved
+     * @param neighbours provides the {@link Pedestrian}s that potentially interact with each
+     *            {@link Pedestrian} of the range
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#moveAll(long,
+     *      double, List, int, int, NeighbourProvider, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void moveAll(long currentTimeMillis, double simulationInterval,
+        List<Pedestrian> pedestrians, int start, int end, NeighbourProvider neighbours,
+        BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        if (end <= start)
+            return;
+
+        // computes the resulting forces of all pedestrians
+        for (int i = start; i < end; i++ )
+        {
+            prepareMove(currentTimeMillis, pedestrians.get(i), neighbours.getNeighbours(i),
+                boundaries, forceModel);
+        }
+
+        // updates velocities and positions of all pedestrians, keeps the old positions
+        double[] oldPositions = getBuffer(2 * (end - start));
+        for (int i = start; i < end; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            PedestrianStateStore state = pedestrian.getStateStore();
+            int slot = pedestrian.getSlot();
+
+            // updatedVelocity = v(n+1)
+            state.setVelocity(slot,
+                state.getVelocityX(slot) + state.getForceX(slot) * simulationInterval,
+                state.getVelocityY(slot) + state.getForceY(slot) * simulationInterval);
+            NumericIntegrationTools.validateVelocity(state, slot,
+                pedestrian.getMaximumDesiredVelocity());
+
+            // updatedPosition = x(n+1)
+            double currentX = state.getPositionX(slot);
+            double currentY = state.getPositionY(slot);
+            oldPositions[2 * (i - start)] = currentX;
+            oldPositions[2 * (i - start) + 1] = currentY;
+            state.setPosition(slot, currentX + state.getVelocityX(slot) * simulationInterval,
+                currentY + state.getVelocityY(slot) * simulationInterval);
+        }
+
+        // validates all moves and checks the way points
+        for (int i = start; i < end; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            double currentX = oldPositions[2 * (i - start)];
+            double currentY = oldPositions[2 * (i - start) + 1];
+
+            // validated updated position - guaranteed not to go through a boundary
+            NumericIntegrationTools.validateMove(pedestrian, boundaries, currentX, currentY);
+
+            // check if the current WayPoint has been passed
+            pedestrian.getMentalModel().checkWayPointPassing(pedestrian,
+                new Vector2D(currentX, currentY), pedestrian.getCurrentPosition());
+
+            // check if WayPoint has been passed
+            pedestrian.getMentalModel().checkCourse(pedestrian, currentTimeMillis);
+        }
+    }
+
+    /**
+     * Computes the resulting force of {@code pedestrian} into its {@link PedestrianStateStore}.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#prepareMove(long,
+     *      Pedestrian, List, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void prepareMove(long currentTimeMillis, Pedestrian pedestrian,
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        // computes the resulting force into the state store
+        pedestrian.updateForces(currentTimeMillis, pedestrians, boundaries, forceModel);
+    }
+
+    /**
+     * Updates the velocity and position of {@code pedestrian} using the resulting force, which has
+     * been computed by {@link #prepareMove(long, Pedestrian, List, BoundaryIndex, ForceModel)}.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#completeMove(long,
+     *      double, Pedestrian, List, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void completeMove(long currentTimeMillis, double simulationInterval,
+        Pedestrian pedestrian, List<Pedestrian> pedestrians, BoundaryIndex boundaries,
+        ForceModel forceModel)
+    {
+        PedestrianStateStore state = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
 
         // updatedVelocity = v(n+1)
-        Vector2D updatedVelocity = pedestrian.getCurrentVelocity()
-            .plus(resultingForce.times(simulationInterval));
+        state.setVelocity(slot,
+            state.getVelocityX(slot) + state.getForceX(slot) * simulationInterval,
+            state.getVelocityY(slot) + state.getForceY(slot) * simulationInterval);
 
         // check if updatedVelocity is bigger than maximal desired velocity
-        updatedVelocity = NumericIntegrationTools.getValidatedVelocity(pedestrian, updatedVelocity);
+        NumericIntegrationTools.validateVelocity(state, slot,
+            pedestrian.getMaximumDesiredVelocity());
 
         // old position
-        Vector2D currentPosition = pedestrian.getCurrentPosition();
+        double currentX = state.getPositionX(slot);
+        double currentY = state.getPositionY(slot);
 
         // updatedPosition = x(n+1)
-        Vector2D updatedPosition = pedestrian.getCurrentPosition()
-            .plus(updatedVelocity.times(simulationInterval));
+        state.setPosition(slot, currentX + state.getVelocityX(slot) * simulationInterval,
+            currentY + state.getVelocityY(slot) * simulationInterval);
 
         // validated updated position - guaranteed not to go through a boundary
-        updatedPosition = NumericIntegrationTools.validateMove(pedestrian, boundaries,
-            currentPosition, updatedPosition);
+        NumericIntegrationTools.validateMove(pedestrian, boundaries, currentX, currentY);
 
-        // update position
-        pedestrian.setCurrentPosition(updatedPosition);
+        Vector2D currentPosition = new Vector2D(currentX, currentY);
+        Vector2D updatedPosition = pedestrian.getCurrentPosition();
 
         // check if WayPoint has been passed
         pedestrian.getMentalModel().checkWayPointPassing(pedestrian, currentPosition,
@@ -86,10 +216,7 @@ public class SemiImplicitEulerIntegrator extends NumericIntegrator
         // check if WayPoint has been passed
         pedestrian.getMentalModel().checkCourse(pedestrian, currentTimeMillis);
 
-        // update velocity
-        pedestrian.setCurrentVelocity(updatedVelocity);
-
-        logger.trace("move(), updatedVelocity: " + updatedVelocity);
+        logger.trace("move(), updatedVelocity: " + pedestrian.getCurrentVelocity());
         logger.trace("move(), updatedPosition: " + updatedPosition);
     }
 }
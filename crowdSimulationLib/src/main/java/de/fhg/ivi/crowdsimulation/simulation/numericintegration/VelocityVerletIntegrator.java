@@ -0,0 +1,220 @@
+package de.fhg.ivi.crowdsimulation.simulation.numericintegration;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianStateStore;
+import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
+import math.geom2d.Vector2D;
+
+/**
+ * Velocity Verlet (also known as leapfrog in its kick-drift-kick form) is one of many possible
+ * algorithms of numerical integration which can dissolve ordinary differential equations, like the
+ * Social Force Model {@link ForceModel}. It is a symplectic algorithm of 2. order, i.e. it drifts
+ * much less than the {@link SimpleEulerIntegrator} and the {@link SemiImplicitEulerIntegrator} at
+ * larger simulation intervals.
+ * <p>
+ * In contrast to the {@link RungeKuttaIntegrator}, which needs four evaluations of the forces per
+ * step, the forces are evaluated only once per step: The force computed at the end of a step is
+ * kept in the {@link PedestrianStateStore} and reused at the beginning of the next step. Only in
+ * the very first step of a {@link Pedestrian} (i.e. if no force has been computed yet) the forces
+ * are evaluated twice.
+ * <p>
+ * Each step consists of the following parts:
+ * <ol>
+ * <li>half kick: {@code v(n+1/2) = v(n) + a(n) * dt / 2}</li>
+ * <li>drift: {@code x(n+1) = x(n) + v(n+1/2) * dt}</li>
+ * <li>force evaluation: {@code a(n+1) = F(x(n+1), v(n+1/2))}</li>
+ * <li>half kick: {@code v(n+1) = v(n+1/2) + a(n+1) * dt / 2}</li>
+ * </ol>
+ * Since the Social Force Model depends on the velocity, the force at the end of the step is
+ * evaluated with the velocity at the half step. After each kick the velocity is validated by
+ * {@link NumericIntegrationTools#validateVelocity(PedestrianStateStore, int, float)} and after the
+ * drift the move is validated by {@link NumericIntegrationTools#validateMove(Pedestrian,
+ * BoundaryIndex, double, double)}.
+ * <p>
+ * Velocity Verlet explanation:<br>
+ * https://en.wikipedia.org/wiki/Verlet_integration#Velocity_Verlet<br>
+ * https://en.wikipedia.org/wiki/Leapfrog_integration<br>
+ *
+ * @author hahmann/meinert
+ */
+public class VelocityVerletIntegrator extends NumericIntegrator
+{
+    /**
+     * Uses the object logger for printing specific messages in the console.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(VelocityVerletIntegrator.class);
+
+    /**
+     * Overrides the abstract method in {@link NumericIntegrator} and sets this
+     * {@link VelocityVerletIntegrator} as algorithm of numeric integration, which dissolves the
+     * {@link ForceModel}.
+     * <p>
+     * Basically this class calculates the movement of a specific {@link Pedestrian}. This means
+     * his/her new position and velocity, in dependence to his/her old velocity and the terms of the
+     * Social Force Model (see Helbing et al. 2005), is computed.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrian the one {@link Pedestrian}, whose movement is calculated
+     * @param pedestrians represents a list of all {@link Pedestrian}s
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#move(long,
+     *      double, Pedestrian, List, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void move(long currentTimeMillis, double simulationInterval, Pedestrian pedestrian,
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        PedestrianStateStore state = pedestrian.getStateStore();
+        int slot = pedestrian.getSlot();
+        double halfInterval = simulationInterval / 2d;
+
+        // a(n) of the previous step, computed only in the first step
+        if (Double.isNaN(state.getForceX(slot)) || Double.isNaN(state.getForceY(slot)))
+            pedestrian.updateForces(currentTimeMillis, pedestrians, boundaries, forceModel);
+
+        // half kick: v(n+1/2)
+        state.setVelocity(slot, state.getVelocityX(slot) + state.getForceX(slot) * halfInterval,
+            state.getVelocityY(slot) + state.getForceY(slot) * halfInterval);
+        NumericIntegrationTools.validateVelocity(state, slot,
+            pedestrian.getMaximumDesiredVelocity());
+
+        // old position
+        double currentX = state.getPositionX(slot);
+        double currentY = state.getPositionY(slot);
+
+        // drift: x(n+1)
+        state.setPosition(slot, currentX + state.getVelocityX(slot) * simulationInterval,
+            currentY + state.getVelocityY(slot) * simulationInterval);
+
+        // validated updated position - guaranteed not to go through a boundary
+        NumericIntegrationTools.validateMove(pedestrian, boundaries, currentX, currentY);
+
+        // a(n+1), which is reused in the next step
+        pedestrian.updateForces(currentTimeMillis, pedestrians, boundaries, forceModel);
+
+        // half kick: v(n+1)
+        state.setVelocity(slot, state.getVelocityX(slot) + state.getForceX(slot) * halfInterval,
+            state.getVelocityY(slot) + state.getForceY(slot) * halfInterval);
+        NumericIntegrationTools.validateVelocity(state, slot,
+            pedestrian.getMaximumDesiredVelocity());
+
+        Vector2D currentPosition = new Vector2D(currentX, currentY);
+        Vector2D updatedPosition = pedestrian.getCurrentPosition();
+
+        // check if the current WayPoint has been passed
+        pedestrian.getMentalModel().checkWayPointPassing(pedestrian, currentPosition,
+            updatedPosition);
+
+        // check if WayPoint has been passed
+        pedestrian.getMentalModel().checkCourse(pedestrian, currentTimeMillis);
+
+        logger.trace("move(), updatedVelocity: " + pedestrian.getCurrentVelocity());
+        logger.trace("move(), updatedPosition: " + updatedPosition);
+    }
+
+    /**
+     * Overrides the method in {@link NumericIntegrator} and moves all {@link Pedestrian}s of the
+     * range in four passes: First, the first half kick and the drift of all {@link Pedestrian}s
+     * are computed in a single loop over the {@link PedestrianStateStore}. Second, all moves are
+     * validated against the {@link Boundary}s. Third, the resulting forces at the new positions
+     * are computed and the second half kick is applied. Fourth, the passing of {@link WayPoint}s
+     * is checked. Since the forces only depend on the snapshot of the other {@link Pedestrian}s,
+     * the result is the same as moving each {@link Pedestrian} by {@link #move(long, double,
+     * Pedestrian, List, BoundaryIndex, ForceModel)}.
+     *
+     * @param currentTimeMillis the current unix time stamp in simulated time, given in milliseconds
+     * @param simulationInterval the time between this method invocation and the last one
+     * @param pedestrians the {@link List} of {@link Pedestrian}s containing the range to be moved
+     * @param start the index of the first {@link Pedestrian} to be moved
+     * @param end the index after the last {@link Pedestrian} to be moved
+     * @param neighbours provides the {@link Pedestrian}s that potentially interact with each
+     *            {@link Pedestrian} of the range
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary}s
+     * @param forceModel an {@link Object} of {@link ForceModel}
+     *
+     * @see de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator#moveAll(long,
+     *      double, List, int, int, NeighbourProvider, BoundaryIndex, ForceModel)
+     */
+    @Override
+    public void moveAll(long currentTimeMillis, double simulationInterval,
+        List<Pedestrian> pedestrians, int start, int end, NeighbourProvider neighbours,
+        BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        if (end <= start)
+            return;
+
+        double halfInterval = simulationInterval / 2d;
+
+        // half kick and drift of all pedestrians, keeps the old positions
+        double[] oldPositions = getBuffer(2 * (end - start));
+        for (int i = start; i < end; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            PedestrianStateStore state = pedestrian.getStateStore();
+            int slot = pedestrian.getSlot();
+
+            // a(n) of the previous step, computed only in the first step
+            if (Double.isNaN(state.getForceX(slot)) || Double.isNaN(state.getForceY(slot)))
+                pedestrian.updateForces(currentTimeMillis, neighbours.getNeighbours(i),
+                    boundaries, forceModel);
+
+            // half kick: v(n+1/2)
+            state.setVelocity(slot,
+                state.getVelocityX(slot) + state.getForceX(slot) * halfInterval,
+                state.getVelocityY(slot) + state.getForceY(slot) * halfInterval);
+            NumericIntegrationTools.validateVelocity(state, slot,
+                pedestrian.getMaximumDesiredVelocity());
+
+            // drift: x(n+1)
+            double currentX = state.getPositionX(slot);
+            double currentY = state.getPositionY(slot);
+            oldPositions[2 * (i - start)] = currentX;
+            oldPositions[2 * (i - start) + 1] = currentY;
+            state.setPosition(slot, currentX + state.getVelocityX(slot) * simulationInterval,
+                currentY + state.getVelocityY(slot) * simulationInterval);
+        }
+
+        // validates all moves
+        for (int i = start; i < end; i++ )
+        {
+            NumericIntegrationTools.validateMove(pedestrians.get(i), boundaries,
+                oldPositions[2 * (i - start)], oldPositions[2 * (i - start) + 1]);
+        }
+
+        // a(n+1), which is reused in the next step, and half kick: v(n+1)
+        for (int i = start; i < end; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            PedestrianStateStore state = pedestrian.getStateStore();
+            int slot = pedestrian.getSlot();
+            pedestrian.updateForces(currentTimeMillis, neighbours.getNeighbours(i), boundaries,
+                forceModel);
+            state.setVelocity(slot,
+                state.getVelocityX(slot) + state.getForceX(slot) * halfInterval,
+                state.getVelocityY(slot) + state.getForceY(slot) * halfInterval);
+            NumericIntegrationTools.validateVelocity(state, slot,
+                pedestrian.getMaximumDesiredVelocity());
+        }
+
+        // checks the way points
+        for (int i = start; i < end; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            pedestrian.getMentalModel().checkWayPointPassing(pedestrian,
+                new Vector2D(oldPositions[2 * (i - start)], oldPositions[2 * (i - start) + 1]),
+                pedestrian.getCurrentPosition());
+            pedestrian.getMentalModel().checkCourse(pedestrian, currentTimeMillis);
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package de.fhg.ivi.crowdsimulation.simulation.objects;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.geom.Polygon;
+
+import de.fhg.ivi.crowdsimulation.simulation.tools.GeometryTools;
 
 /**
  * A {@link Boundary} consists on a {@link Geometry}, which could be e.g. points, lines or polygons,
@@ -12,7 +21,9 @@ import com.vividsolutions.jts.geom.Geometry;
  * formula. Look at p. 11, 12 and formula 3, 7 (in this publication) for understanding.
  * <p>
  * Otherwise this class encapsulates the {@link Geometry} object and the caches the bounding box of
- * it for fast access.
+ * it for fast access. Furthermore, the {@link Geometry} is decomposed into line segments, whose
+ * coordinates are stored in a primitive array ({@link #segments}), which allows nearest point,
+ * intersection and containment tests without creating any objects.
  *
  * @author hahmann/meinert
  */
@@ -29,6 +40,20 @@ public class Boundary
      */
     private Envelope boundingBox;
 
+    /**
+     * The coordinates of all line segments of {@link #geometry}, i.e. 4 values {@code x0},
+     * {@code y0}, {@code x1}, {@code y1} per line segment. The line segments of the rings of
+     * polygons are stored first (cf. {@link #ringSegmentCount}). A point is stored as a line
+     * segment of length 0.
+     */
+    private double[] segments;
+
+    /**
+     * The number of line segments at the beginning of {@link #segments}, which belong to the rings
+     * of polygons.
+     */
+    private int      ringSegmentCount;
+
     /**
      * Creates a new {@link Geometry} of a {@link Boundary} object.
      * <p>
@@ -44,6 +69,37 @@ public class Boundary
         this.geometry = geometry;
         this.boundingBox = geometry.getEnvelopeInternal();
         this.boundingBox.expandBy(maxBoundaryInteractionDistance);
+
+        List<Coordinate[]> rings = new ArrayList<>();
+        List<Coordinate[]> lines = new ArrayList<>();
+        collectParts(geometry, rings, lines);
+        int segmentCount = 0;
+        for (Coordinate[] ring : rings)
+            segmentCount += ring.length - 1;
+        this.ringSegmentCount = segmentCount;
+        for (Coordinate[] line : lines)
+            segmentCount += Math.max(line.length - 1, 1);
+
+        this.segments = new double[4 * segmentCount];
+        int index = 0;
+        rings.addAll(lines);
+        for (Coordinate[] part : rings)
+        {
+            if (part.length == 1)
+            {
+                segments[index++ ] = part[0].x;
+                segments[index++ ] = part[0].y;
+                segments[index++ ] = part[0].x;
+                segments[index++ ] = part[0].y;
+            }
+            for (int i = 0; i < part.length - 1; i++ )
+            {
+                segments[index++ ] = part[i].x;
+                segments[index++ ] = part[i].y;
+                segments[index++ ] = part[i + 1].x;
+                segments[index++ ] = part[i + 1].y;
+            }
+        }
     }
 
     /**
@@ -69,4 +125,201 @@ public class Boundary
     {
         return boundingBox;
     }
+
+    /**
+     * Gets the number of line segments of the {@link Geometry} of this {@link Boundary}.
+     *
+     * @return the number of line segments
+     */
+    public int getSegmentCount()
+    {
+        return segments.length / 4;
+    }
+
+    /**
+     * Gets the coordinates of all line segments of the {@link Geometry} of this {@link Boundary},
+     * i.e. 4 values {@code x0}, {@code y0}, {@code x1}, {@code y1} per line segment. The returned
+     * array must not be modified.
+     *
+     * @return the coordinates of all line segments
+     */
+    public double[] getSegments()
+    {
+        return segments;
+    }
+
+    /**
+     * Computes the point on the {@link Geometry} of this {@link Boundary} that is nearest to the
+     * position {@code x}, {@code y} without creating any objects.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     * @param nearestPoint an array of at least 2 elements, which receives the x and y component of
+     *            the nearest point
+     *
+     * @return the squared distance between the position and the nearest point or
+     *         {@link Double#POSITIVE_INFINITY}, if the {@link Geometry} is empty
+     */
+    public double getNearestPoint(double x, double y, double[] nearestPoint)
+    {
+        return getNearestPoint(x, y, nearestPoint, 0);
+    }
+
+    /**
+     * Computes the point on the {@link Geometry} of this {@link Boundary} that is nearest to the
+     * position {@code x}, {@code y} without creating any objects.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     * @param nearestPoint an array, which receives the x and y component of the nearest point at
+     *            {@code offset} and {@code offset + 1}
+     * @param offset the index of the x component of the nearest point in {@code nearestPoint}
+     *
+     * @return the squared distance between the position and the nearest point or
+     *         {@link Double#POSITIVE_INFINITY}, if the {@link Geometry} is empty
+     */
+    public double getNearestPoint(double x, double y, double[] nearestPoint, int offset)
+    {
+        double nearestX = Double.NaN;
+        double nearestY = Double.NaN;
+        double minDistanceSquared = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < segments.length; i += 4)
+        {
+            double distanceSquared = GeometryTools.getNearestPointOnSegment(x, y, segments[i],
+                segments[i + 1], segments[i + 2], segments[i + 3], nearestPoint, offset);
+            if (distanceSquared < minDistanceSquared)
+            {
+                minDistanceSquared = distanceSquared;
+                nearestX = nearestPoint[offset];
+                nearestY = nearestPoint[offset + 1];
+            }
+        }
+        nearestPoint[offset] = nearestX;
+        nearestPoint[offset + 1] = nearestY;
+        return minDistanceSquared;
+    }
+
+    /**
+     * Tests, whether the line segment between {@code x0}, {@code y0} and {@code x1}, {@code y1}
+     * intersects any line segment of the {@link Geometry} of this {@link Boundary} without creating
+     * any objects. Note that a line segment completely inside a polygon does not intersect any of
+     * its line segments, cf. {@link #contains(double, double)}.
+     *
+     * @param x0 the x component of the start point of the line segment
+     * @param y0 the y component of the start point of the line segment
+     * @param x1 the x component of the end point of the line segment
+     * @param y1 the y component of the end point of the line segment
+     *
+     * @return {@link GeometryTools#SEGMENTS_DISJOINT}, if the line segment is disjoint from all
+     *         line segments, {@link GeometryTools#SEGMENTS_INTERSECT}, if it intersects at least
+     *         one line segment and {@link GeometryTools#SEGMENTS_UNCERTAIN}, if an accurate check
+     *         is needed
+     */
+    public int intersectsSegments(double x0, double y0, double x1, double y1)
+    {
+        int result = GeometryTools.SEGMENTS_DISJOINT;
+        for (int i = 0; i < segments.length; i += 4)
+        {
+            int segmentResult = intersectsSegment(i / 4, x0, y0, x1, y1);
+            if (segmentResult == GeometryTools.SEGMENTS_INTERSECT)
+                return segmentResult;
+            if (segmentResult == GeometryTools.SEGMENTS_UNCERTAIN)
+                result = segmentResult;
+        }
+        return result;
+    }
+
+    /**
+     * Tests, whether the line segment between {@code x0}, {@code y0} and {@code x1}, {@code y1}
+     * intersects the line segment {@code segment} of the {@link Geometry} of this {@link Boundary}
+     * without creating any objects.
+     *
+     * @param segment the index of the line segment of this {@link Boundary}
+     * @param x0 the x component of the start point of the line segment
+     * @param y0 the y component of the start point of the line segment
+     * @param x1 the x component of the end point of the line segment
+     * @param y1 the y component of the end point of the line segment
+     *
+     * @return {@link GeometryTools#SEGMENTS_DISJOINT}, {@link GeometryTools#SEGMENTS_INTERSECT} or
+     *         {@link GeometryTools#SEGMENTS_UNCERTAIN}
+     */
+    public int intersectsSegment(int segment, double x0, double y0, double x1, double y1)
+    {
+        int i = 4 * segment;
+        return GeometryTools.segmentsIntersect(x0, y0, x1, y1, segments[i], segments[i + 1],
+            segments[i + 2], segments[i + 3]);
+    }
+
+    /**
+     * Tests, whether the position {@code x}, {@code y} lies inside a polygon of the
+     * {@link Geometry} of this {@link Boundary} (even-odd rule) without creating any objects.
+     * Positions exactly on the rings of the polygons may be reported either way.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     *
+     * @return {@code true}, if the position lies inside a polygon, {@code false} otherwise
+     */
+    public boolean contains(double x, double y)
+    {
+        boolean isInside = false;
+        for (int i = 0; i < 4 * ringSegmentCount; i += 4)
+        {
+            double y0 = segments[i + 1];
+            double y1 = segments[i + 3];
+            if ((y0 > y) != (y1 > y))
+            {
+                double x0 = segments[i];
+                double x1 = segments[i + 2];
+                if (x < x0 + (y - y0) * (x1 - x0) / (y1 - y0))
+                    isInside = !isInside;
+            }
+        }
+        return isInside;
+    }
+
+    /**
+     * Tests, whether the {@link Geometry} of this {@link Boundary} contains any polygons.
+     *
+     * @return {@code true}, if the {@link Geometry} contains polygons, {@code false} otherwise
+     */
+    public boolean isPolygonal()
+    {
+        return ringSegmentCount > 0;
+    }
+
+    /**
+     * Collects the coordinates of all rings of polygons and all line strings and points contained
+     * in {@code geometry}.
+     *
+     * @param geometry the {@link Geometry} to decompose
+     * @param rings the {@link List} receiving the coordinates of all rings of polygons
+     * @param lines the {@link List} receiving the coordinates of all line strings and points
+     */
+    private static void collectParts(Geometry geometry, List<Coordinate[]> rings,
+        List<Coordinate[]> lines)
+    {
+        if (geometry.isEmpty())
+            return;
+        if (geometry instanceof Polygon)
+        {
+            Polygon polygon = (Polygon) geometry;
+            rings.add(polygon.getExteriorRing().getCoordinates());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++ )
+            {
+                rings.add(polygon.getInteriorRingN(i).getCoordinates());
+            }
+        }
+        else if (geometry instanceof LineString || geometry instanceof Point)
+        {
+            lines.add(geometry.getCoordinates());
+        }
+        else
+        {
+            for (int i = 0; i < geometry.getNumGeometries(); i++ )
+            {
+                collectParts(geometry.getGeometryN(i), rings, lines);
+            }
+        }
+    }
 }
@@ -0,0 +1,280 @@
+package de.fhg.ivi.crowdsimulation.simulation.objects;
+
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import math.geom2d.Vector2D;
+
+/**
+ * A {@link BoundaryDistanceField} is a precomputed raster, which stores for each of its nodes the
+ * distance to the nearest {@link Boundary} and the normalized vector pointing from the nearest
+ * point of this {@link Boundary} to the node. Values between the nodes are interpolated bilinear,
+ * so that the interaction between a {@link Pedestrian} and the {@link Boundary} objects can be
+ * computed in constant time (cf. {@link ForceModel#interactBoundary(Vector2D, Vector2D,
+ * BoundaryDistanceField)}) instead of computing the nearest point on each {@link Boundary}.
+ * <p>
+ * The raster covers the union of the bounding boxes of all {@link Boundary} objects (cf.
+ * {@link Boundary#getBoundingBox()}), which are already expanded by the maximum distance of
+ * interaction between a {@link Pedestrian} and a {@link Boundary}. Outside of this area no
+ * {@link Boundary} interacts with a {@link Pedestrian}. Nodes, that are not within the interaction
+ * distance of any {@link Boundary} are stored with an infinite distance.
+ * <p>
+ * Note that only the nearest {@link Boundary} is regarded at each node, i.e. if a
+ * {@link Pedestrian} is within the interaction distance of several {@link Boundary} objects only
+ * the force of the nearest one is computed. The accuracy depends on the {@link #resolution}, which
+ * needs to be chosen considerably smaller than the radius of a {@link Pedestrian}. The memory
+ * consumption is 12 bytes per node, i.e. it grows quadratically with decreasing
+ * {@link #resolution}.
+ * <p>
+ * The {@link BoundaryDistanceField} is immutable and can be queried concurrently.
+ *
+ * @author hahmann/meinert
+ */
+public class BoundaryDistanceField
+{
+    /**
+     * The default value of {@link #resolution}. Given in meters.
+     */
+    public static final double defaultResolution = 0.1d;
+
+    /**
+     * The distance between two neighbouring nodes of the raster. Given in meters.
+     */
+    private double             resolution;
+
+    /**
+     * The x component of the lower left node of the raster.
+     */
+    private double             minX;
+
+    /**
+     * The y component of the lower left node of the raster.
+     */
+    private double             minY;
+
+    /**
+     * The number of nodes in x direction.
+     */
+    private int                columns;
+
+    /**
+     * The number of nodes in y direction.
+     */
+    private int                rows;
+
+    /**
+     * The distances to the nearest {@link Boundary} of all nodes in row-major order. Given in
+     * meters.
+     */
+    private float[]            distances;
+
+    /**
+     * The x components of the normalized vectors pointing from the nearest {@link Boundary} to
+     * all nodes in row-major order.
+     */
+    private float[]            normalsX;
+
+    /**
+     * The y components of the normalized vectors pointing from the nearest {@link Boundary} to
+     * all nodes in row-major order.
+     */
+    private float[]            normalsY;
+
+    /**
+     * Creates a new {@link BoundaryDistanceField} and computes the distances and normal vectors
+     * of all nodes.
+     *
+     * @param boundaryIndex the {@link BoundaryIndex} of all {@link Boundary} objects, which is
+     *            used to find the candidate {@link Boundary} objects of each node
+     * @param resolution the distance between two neighbouring nodes of the raster. Given in
+     *            meters. Must be positive.
+     */
+    public BoundaryDistanceField(BoundaryIndex boundaryIndex, double resolution)
+    {
+        if ( !(resolution > 0))
+            throw new IllegalArgumentException("resolution must be positive: " + resolution);
+        this.resolution = resolution;
+
+        Envelope extent = new Envelope();
+        for (Boundary boundary : boundaryIndex.getBoundaries())
+        {
+            extent.expandToInclude(boundary.getBoundingBox());
+        }
+        if (extent.isNull())
+            extent.init(0, 0, 0, 0);
+        // one additional node on each side to allow interpolation at the edges of the extent
+        this.minX = extent.getMinX() - resolution;
+        this.minY = extent.getMinY() - resolution;
+        this.columns = (int) Math.ceil(extent.getWidth() / resolution) + 3;
+        this.rows = (int) Math.ceil(extent.getHeight() / resolution) + 3;
+
+        this.distances = new float[columns * rows];
+        this.normalsX = new float[columns * rows];
+        this.normalsY = new float[columns * rows];
+
+        // nodes within one diagonal of a cell around the interaction area of a boundary are
+        // needed, so that all 4 nodes around an interacting position are known
+        double searchDistance = resolution * Math.sqrt(2);
+        Envelope searchEnvelope = new Envelope();
+        Coordinate node = new Coordinate();
+        double[] nearestPoint = new double[2];
+        for (int row = 0; row < rows; row++ )
+        {
+            for (int column = 0; column < columns; column++ )
+            {
+                node.x = minX + column * resolution;
+                node.y = minY + row * resolution;
+                searchEnvelope.init(node.x - searchDistance, node.x + searchDistance,
+                    node.y - searchDistance, node.y + searchDistance);
+                computeNode(row * columns + column, node,
+                    boundaryIndex.getBoundaries(searchEnvelope), nearestPoint);
+            }
+        }
+    }
+
+    /**
+     * Gets the distance between two neighbouring nodes of the raster. Given in meters.
+     *
+     * @return the {@link #resolution}
+     */
+    public double getResolution()
+    {
+        return resolution;
+    }
+
+    /**
+     * Gets the bilinear interpolated distance between the position {@code x}, {@code y} and the
+     * nearest {@link Boundary}. Given in meters.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     * @return the distance to the nearest {@link Boundary} or {@link Double#POSITIVE_INFINITY},
+     *         if the position is not within the interaction distance of any {@link Boundary}
+     */
+    public double getDistance(double x, double y)
+    {
+        double gridX = (x - minX) / resolution;
+        double gridY = (y - minY) / resolution;
+        // also true, if position is NaN
+        if ( !(gridX >= 0 && gridY >= 0 && gridX < columns - 1 && gridY < rows - 1))
+            return Double.POSITIVE_INFINITY;
+        double distance = interpolate(distances, gridX, gridY);
+        // NaN, if an infinite distance is interpolated with a zero weight
+        if (Double.isNaN(distance))
+            return Double.POSITIVE_INFINITY;
+        return distance;
+    }
+
+    /**
+     * Gets the bilinear interpolated normalized vector pointing from the nearest {@link Boundary}
+     * to the position {@code x}, {@code y}.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     * @return the normalized vector pointing from the nearest {@link Boundary} to the position or
+     *         {@code null}, if the position is not within the interaction distance of any
+     *         {@link Boundary} or the interpolated vector vanishes
+     */
+    public Vector2D getNormal(double x, double y)
+    {
+        double[] normal = new double[2];
+        if ( !getNormal(x, y, normal, 0))
+            return null;
+        return new Vector2D(normal[0], normal[1]);
+    }
+
+    /**
+     * Gets the bilinear interpolated normalized vector pointing from the nearest {@link Boundary}
+     * to the position {@code x}, {@code y} without creating any objects.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     * @param normal an array, which receives the x and y component of the normalized vector at
+     *            {@code offset} and {@code offset + 1}
+     * @param offset the index of the x component of the normalized vector in {@code normal}
+     * @return {@code true}, if the normalized vector has been written to {@code normal},
+     *         {@code false} if the position is not within the interaction distance of any
+     *         {@link Boundary} or the interpolated vector vanishes
+     */
+    public boolean getNormal(double x, double y, double[] normal, int offset)
+    {
+        double gridX = (x - minX) / resolution;
+        double gridY = (y - minY) / resolution;
+        if ( !(gridX >= 0 && gridY >= 0 && gridX < columns - 1 && gridY < rows - 1))
+            return false;
+        double normalX = interpolate(normalsX, gridX, gridY);
+        double normalY = interpolate(normalsY, gridX, gridY);
+        double norm = Math.sqrt(normalX * normalX + normalY * normalY);
+        if ( !(norm > 0))
+            return false;
+        normal[offset] = normalX / norm;
+        normal[offset + 1] = normalY / norm;
+        return true;
+    }
+
+    /**
+     * Computes the distance and the normal vector of a single node.
+     *
+     * @param nodeIndex the index of the node in {@link #distances}, {@link #normalsX} and
+     *            {@link #normalsY}
+     * @param node the {@link Coordinate} of the node
+     * @param candidates the {@link Boundary} objects, which possibly interact with positions
+     *            around {@code node}
+     * @param nearestPoint an array of at least 2 elements used as buffer for the nearest point
+     */
+    private void computeNode(int nodeIndex, Coordinate node, List<Boundary> candidates,
+        double[] nearestPoint)
+    {
+        double minDistanceSquared = Double.POSITIVE_INFINITY;
+        double nearestX = Double.NaN;
+        double nearestY = Double.NaN;
+        for (Boundary boundary : candidates)
+        {
+            double distanceSquared = boundary.getNearestPoint(node.x, node.y, nearestPoint);
+            if (distanceSquared < minDistanceSquared)
+            {
+                minDistanceSquared = distanceSquared;
+                nearestX = nearestPoint[0];
+                nearestY = nearestPoint[1];
+            }
+        }
+        if (minDistanceSquared == Double.POSITIVE_INFINITY)
+        {
+            distances[nodeIndex] = Float.POSITIVE_INFINITY;
+            return;
+        }
+        double distance = Math.sqrt(minDistanceSquared);
+        distances[nodeIndex] = (float) distance;
+        // a node lying exactly on top of a boundary has no defined normal vector
+        if (distance > 0)
+        {
+            normalsX[nodeIndex] = (float) ((node.x - nearestX) / distance);
+            normalsY[nodeIndex] = (float) ((node.y - nearestY) / distance);
+        }
+    }
+
+    /**
+     * Interpolates the values of the 4 nodes around the raster position {@code gridX},
+     * {@code gridY} bilinear.
+     *
+     * @param values the values of all nodes in row-major order
+     * @param gridX the position in x direction given in units of {@link #resolution}
+     * @param gridY the position in y direction given in units of {@link #resolution}
+     * @return the interpolated value
+     */
+    private double interpolate(float[] values, double gridX, double gridY)
+    {
+        int column = (int) gridX;
+        int row = (int) gridY;
+        double fractionX = gridX - column;
+        double fractionY = gridY - row;
+        int index = row * columns + column;
+        double bottom = values[index] + fractionX * (values[index + 1] - values[index]);
+        double top = values[index + columns]
+            + fractionX * (values[index + columns + 1] - values[index + columns]);
+        return bottom + fractionY * (top - bottom);
+    }
+}
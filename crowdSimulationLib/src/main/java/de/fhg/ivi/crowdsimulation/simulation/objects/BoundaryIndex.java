@@ -0,0 +1,240 @@
+package de.fhg.ivi.crowdsimulation.simulation.objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+import de.fhg.ivi.crowdsimulation.simulation.CrowdSimulator;
+import math.geom2d.Vector2D;
+
+/**
+ * A {@link BoundaryIndex} is a spatial index of a {@link List} of {@link Boundary} objects. It is
+ * used for all queries, which would otherwise need to test each {@link Boundary}, i.e. the
+ * pedestrian-boundary interaction, the validation of moves and the line of sight checks of the
+ * way finding.
+ * <p>
+ * The index is a {@link STRtree} over the bounding boxes of the {@link Boundary} objects (cf.
+ * {@link Boundary#getBoundingBox()}), which are already expanded by the maximum distance of
+ * interaction between a {@link Pedestrian} and a {@link Boundary}. Hence, all {@link Boundary}
+ * objects that are able to interact with a {@link Pedestrian} at a given position can be found
+ * using a point query.
+ * <p>
+ * Additionally, the line segments of all {@link Boundary} objects are indexed by a
+ * {@link BoundarySegmentGrid}, which is used for testing moves and lines of sight without creating
+ * any objects.
+ * <p>
+ * Optionally, a {@link BoundaryDistanceField} is computed, which allows to compute the
+ * interaction between a {@link Pedestrian} and the {@link Boundary} objects in constant time.
+ * <p>
+ * The {@link BoundaryIndex} is immutable. It is built once, when the {@link Boundary} objects are
+ * set (cf. {@link CrowdSimulator#setBoundaries(List)}) and can be queried concurrently afterwards.
+ *
+ * @author hahmann/meinert
+ */
+public class BoundaryIndex
+{
+    /**
+     * The {@link List} of all indexed {@link Boundary} objects.
+     */
+    private List<Boundary>        boundaries;
+
+    /**
+     * The {@link STRtree} containing all {@link #boundaries} indexed by their bounding boxes.
+     */
+    private STRtree               index;
+
+    /**
+     * The {@link BoundarySegmentGrid} containing the line segments of all {@link #boundaries}.
+     */
+    private BoundarySegmentGrid   segmentGrid;
+
+    /**
+     * The optional {@link BoundaryDistanceField} of all {@link #boundaries}, may be {@code null}.
+     */
+    private BoundaryDistanceField distanceField;
+
+    /**
+     * Creates a new {@link BoundaryIndex} and builds the {@link STRtree} of the given
+     * {@code boundaries}.
+     *
+     * @param boundaries the {@link List} of {@link Boundary} objects to be indexed, may be
+     *            {@code null}
+     */
+    public BoundaryIndex(List<Boundary> boundaries)
+    {
+        this(boundaries, 0);
+    }
+
+    /**
+     * Creates a new {@link BoundaryIndex}, builds the {@link STRtree} of the given
+     * {@code boundaries} and computes a {@link BoundaryDistanceField}, if
+     * {@code distanceFieldResolution} is positive.
+     *
+     * @param boundaries the {@link List} of {@link Boundary} objects to be indexed, may be
+     *            {@code null}
+     * @param distanceFieldResolution the resolution of the {@link BoundaryDistanceField} given in
+     *            meters, cf. {@link BoundaryDistanceField#getResolution()}. If {@code 0}, no
+     *            {@link BoundaryDistanceField} is computed.
+     */
+    public BoundaryIndex(List<Boundary> boundaries, double distanceFieldResolution)
+    {
+        if (boundaries == null)
+            boundaries = new ArrayList<>();
+        this.boundaries = Collections.unmodifiableList(new ArrayList<>(boundaries));
+        this.index = new STRtree();
+        for (Boundary boundary : this.boundaries)
+        {
+            index.insert(boundary.getBoundingBox(), boundary);
+        }
+        // build the tree immediately, since building on the first query is not thread safe
+        index.build();
+        this.segmentGrid = new BoundarySegmentGrid(this.boundaries);
+
+        if (distanceFieldResolution > 0 && !this.boundaries.isEmpty())
+            this.distanceField = new BoundaryDistanceField(this, distanceFieldResolution);
+    }
+
+    /**
+     * Gets the {@link List} of all indexed {@link Boundary} objects.
+     *
+     * @return the unmodifiable {@link List} of all {@link Boundary} objects
+     */
+    public List<Boundary> getBoundaries()
+    {
+        return boundaries;
+    }
+
+    /**
+     * Gets the {@link BoundaryDistanceField} of all {@link Boundary} objects.
+     *
+     * @return the {@link BoundaryDistanceField} or {@code null}, if it has not been computed
+     */
+    public BoundaryDistanceField getDistanceField()
+    {
+        return distanceField;
+    }
+
+    /**
+     * Tests, if this {@link BoundaryIndex} does not contain any {@link Boundary}.
+     *
+     * @return {@code true}, if no {@link Boundary} is indexed, {@code false} otherwise
+     */
+    public boolean isEmpty()
+    {
+        return boundaries.isEmpty();
+    }
+
+    /**
+     * Gets all {@link Boundary} objects, whose bounding box (cf. {@link Boundary#getBoundingBox()})
+     * intersects {@code searchEnvelope}.
+     *
+     * @param searchEnvelope the {@link Envelope} to search for
+     * @return the {@link List} of candidate {@link Boundary} objects
+     */
+    @SuppressWarnings("unchecked")
+    public List<Boundary> getBoundaries(Envelope searchEnvelope)
+    {
+        if (boundaries.isEmpty())
+            return Collections.emptyList();
+        return index.query(searchEnvelope);
+    }
+
+    /**
+     * Gets all {@link Boundary} objects, whose bounding box (cf. {@link Boundary#getBoundingBox()})
+     * contains {@code position}, i.e. all {@link Boundary} objects, which possibly interact with a
+     * {@link Pedestrian} at {@code position}.
+     *
+     * @param position the position of a {@link Pedestrian}
+     * @return the {@link List} of candidate {@link Boundary} objects
+     */
+    public List<Boundary> getBoundaries(Vector2D position)
+    {
+        return getBoundaries(position.x(), position.y());
+    }
+
+    /**
+     * Gets all {@link Boundary} objects, whose bounding box (cf. {@link Boundary#getBoundingBox()})
+     * contains the position {@code x}, {@code y}, i.e. all {@link Boundary} objects, which
+     * possibly interact with a {@link Pedestrian} at this position.
+     *
+     * @param x the x component of the position of a {@link Pedestrian}
+     * @param y the y component of the position of a {@link Pedestrian}
+     * @return the {@link List} of candidate {@link Boundary} objects
+     */
+    public List<Boundary> getBoundaries(double x, double y)
+    {
+        if (boundaries.isEmpty())
+            return Collections.emptyList();
+        return getBoundaries(new Envelope(x, x, y, y));
+    }
+
+    /**
+     * Checks whether there is a direct line of sight between {@code start} and
+     * {@code target} or whether this is blocked by any {@link Boundary}.
+     *
+     * @param start start {@link Coordinate}
+     * @param target target {@link Coordinate}
+     * @return {@code true} if there is a direct line of sight between start and target,
+     *         {@code false} otherwise
+     */
+    public boolean isTargetVisible(Coordinate start, Coordinate target)
+    {
+        return isTargetVisible(start.x, start.y, target.x, target.y);
+    }
+
+    /**
+     * Checks whether there is a direct line of sight between the position {@code startX},
+     * {@code startY} and the position {@code targetX}, {@code targetY} or whether this is blocked
+     * by any {@link Boundary}. No objects are created, unless an accurate check is needed (cf.
+     * {@link BoundarySegmentGrid}).
+     *
+     * @param startX the x component of the start position
+     * @param startY the y component of the start position
+     * @param targetX the x component of the target position
+     * @param targetY the y component of the target position
+     * @return {@code true} if there is a direct line of sight between start and target,
+     *         {@code false} otherwise
+     */
+    public boolean isTargetVisible(double startX, double startY, double targetX, double targetY)
+    {
+        return !segmentGrid.intersects(startX, startY, targetX, targetY);
+    }
+
+    /**
+     * Tests, whether a move from {@code oldPosition} to {@code newPosition} crosses any
+     * {@link Boundary}. No objects are created, unless an accurate check is needed (cf.
+     * {@link BoundarySegmentGrid}).
+     *
+     * @param oldPosition current position of a {@link Pedestrian}
+     * @param newPosition next position of a {@link Pedestrian}
+     * @return {@code true}, if the move crosses the {@link Geometry} of any {@link Boundary},
+     *         {@code false} otherwise
+     */
+    public boolean crosses(Vector2D oldPosition, Vector2D newPosition)
+    {
+        return segmentGrid.crosses(oldPosition.x(), oldPosition.y(), newPosition.x(),
+            newPosition.y());
+    }
+
+    /**
+     * Tests, whether a move from the position {@code oldX}, {@code oldY} to the position
+     * {@code newX}, {@code newY} crosses any {@link Boundary}. No objects are created, unless an
+     * accurate check is needed (cf. {@link BoundarySegmentGrid}).
+     *
+     * @param oldX the x component of the current position of a {@link Pedestrian}
+     * @param oldY the y component of the current position of a {@link Pedestrian}
+     * @param newX the x component of the next position of a {@link Pedestrian}
+     * @param newY the y component of the next position of a {@link Pedestrian}
+     * @return {@code true}, if the move crosses the {@link Geometry} of any {@link Boundary},
+     *         {@code false} otherwise
+     */
+    public boolean crosses(double oldX, double oldY, double newX, double newY)
+    {
+        return segmentGrid.crosses(oldX, oldY, newX, newY);
+    }
+}
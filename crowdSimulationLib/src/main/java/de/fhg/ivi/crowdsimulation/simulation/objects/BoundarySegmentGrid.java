@@ -0,0 +1,430 @@
+package de.fhg.ivi.crowdsimulation.simulation.objects;
+
+import java.util.List;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+
+import de.fhg.ivi.crowdsimulation.simulation.tools.GeometryTools;
+
+/**
+ * A {@link BoundarySegmentGrid} stores the line segments of all {@link Boundary} objects (cf.
+ * {@link Boundary#getSegments()}) in primitive arrays and indexes them in a uniform grid. It allows
+ * to test whether a line segment (e.g. the move of a {@link Pedestrian} or a line of sight)
+ * intersects or crosses any {@link Boundary} without creating any objects in the common case.
+ * <p>
+ * Only the cells of the grid, which are touched by the tested line segment are visited. The
+ * intersection with the line segments stored in these cells is tested using
+ * {@link GeometryTools#segmentsIntersect(double, double, double, double, double, double, double,
+ * double)}. Only if this test is not conclusive (touching, overlapping or numerically not
+ * decidable line segments), the accurate test of JTS is performed on the {@link Geometry} of the
+ * concerned {@link Boundary}, so that the results are the same as of
+ * {@link Geometry#intersects(Geometry)} and {@link Geometry#crosses(Geometry)}.
+ * <p>
+ * The {@link BoundarySegmentGrid} is immutable and can be queried concurrently.
+ *
+ * @author hahmann/meinert
+ */
+public class BoundarySegmentGrid
+{
+    /**
+     * Mode for testing crossing in {@link #relates(double, double, double, double, byte)}
+     */
+    private static final byte CROSSES    = 0;
+
+    /**
+     * Mode for testing intersection in {@link #relates(double, double, double, double, byte)}
+     */
+    private static final byte INTERSECTS = 1;
+
+    /**
+     * The {@link List} of all {@link Boundary} objects.
+     */
+    private List<Boundary>    boundaries;
+
+    /**
+     * The coordinates of the line segments of all {@link #boundaries}, i.e. 4 values {@code x0},
+     * {@code y0}, {@code x1}, {@code y1} per line segment.
+     */
+    private double[]          segments;
+
+    /**
+     * The index of the {@link Boundary} in {@link #boundaries} of each line segment.
+     */
+    private int[]             segmentBoundaries;
+
+    /**
+     * The x component of the lower left corner of the grid.
+     */
+    private double            minX;
+
+    /**
+     * The y component of the lower left corner of the grid.
+     */
+    private double            minY;
+
+    /**
+     * The edge length of a single (square) cell. Given in meters.
+     */
+    private double            cellSize;
+
+    /**
+     * The number of cells in x direction.
+     */
+    private int               columns;
+
+    /**
+     * The number of cells in y direction.
+     */
+    private int               rows;
+
+    /**
+     * For each cell (in row-major order) the index of its first entry in {@link #cellSegments}.
+     * Has the length of the number of cells plus 1.
+     */
+    private int[]             cellStart;
+
+    /**
+     * The line segments of all cells, stored consecutively for each cell. A line segment is stored
+     * in each cell its bounding box overlaps.
+     */
+    private int[]             cellSegments;
+
+    /**
+     * For each cell (in row-major order) the index of its first entry in {@link #cellPolygons}.
+     * Has the length of the number of cells plus 1.
+     */
+    private int[]             cellPolygonStart;
+
+    /**
+     * The indices of all polygonal {@link Boundary} objects (cf. {@link Boundary#isPolygonal()}),
+     * stored consecutively for each cell their bounding box overlaps.
+     */
+    private int[]             cellPolygons;
+
+    /**
+     * Creates a new {@link BoundarySegmentGrid} of the given {@code boundaries}. The size of the
+     * cells is chosen, so that the number of cells roughly equals the number of line segments.
+     *
+     * @param boundaries the {@link List} of {@link Boundary} objects
+     */
+    public BoundarySegmentGrid(List<Boundary> boundaries)
+    {
+        this.boundaries = boundaries;
+
+        int segmentCount = 0;
+        for (Boundary boundary : boundaries)
+        {
+            segmentCount += boundary.getSegmentCount();
+        }
+        this.segments = new double[4 * segmentCount];
+        this.segmentBoundaries = new int[segmentCount];
+        int segment = 0;
+        for (int b = 0; b < boundaries.size(); b++ )
+        {
+            double[] boundarySegments = boundaries.get(b).getSegments();
+            System.arraycopy(boundarySegments, 0, segments, 4 * segment, boundarySegments.length);
+            for (int i = 0; i < boundarySegments.length / 4; i++ )
+            {
+                segmentBoundaries[segment++ ] = b;
+            }
+        }
+
+        // extent of all line segments
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        minX = Double.POSITIVE_INFINITY;
+        minY = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < segments.length; i += 2)
+        {
+            minX = Math.min(minX, segments[i]);
+            minY = Math.min(minY, segments[i + 1]);
+            maxX = Math.max(maxX, segments[i]);
+            maxY = Math.max(maxY, segments[i + 1]);
+        }
+        if (segmentCount == 0)
+        {
+            minX = 0;
+            minY = 0;
+            maxX = 0;
+            maxY = 0;
+        }
+        double width = maxX - minX;
+        double height = maxY - minY;
+        int n = Math.max(segmentCount, 1);
+        // roughly one cell per line segment, but not more cells than line segments in one direction
+        cellSize = Math.max(Math.sqrt(width * height / n), Math.max(width, height) / n);
+        if ( !(cellSize > 0))
+            cellSize = 1;
+        columns = (int) (width / cellSize) + 1;
+        rows = (int) (height / cellSize) + 1;
+
+        // line segments per cell
+        cellStart = new int[columns * rows + 1];
+        for (int pass = 0; pass < 2; pass++ )
+        {
+            int[] insertPosition = pass == 0 ? null : cellStart.clone();
+            for (int s = 0; s < segmentCount; s++ )
+            {
+                int i = 4 * s;
+                int firstColumn = getColumn(Math.min(segments[i], segments[i + 2]));
+                int lastColumn = getColumn(Math.max(segments[i], segments[i + 2]));
+                int firstRow = getRow(Math.min(segments[i + 1], segments[i + 3]));
+                int lastRow = getRow(Math.max(segments[i + 1], segments[i + 3]));
+                for (int row = firstRow; row <= lastRow; row++ )
+                {
+                    for (int column = firstColumn; column <= lastColumn; column++ )
+                    {
+                        if (pass == 0)
+                            cellStart[row * columns + column + 1]++ ;
+                        else
+                            cellSegments[insertPosition[row * columns + column]++ ] = s;
+                    }
+                }
+            }
+            if (pass == 0)
+            {
+                for (int c = 0; c < columns * rows; c++ )
+                {
+                    cellStart[c + 1] += cellStart[c];
+                }
+                cellSegments = new int[cellStart[columns * rows]];
+            }
+        }
+
+        // polygonal boundaries per cell
+        cellPolygonStart = new int[columns * rows + 1];
+        for (int pass = 0; pass < 2; pass++ )
+        {
+            int[] insertPosition = pass == 0 ? null : cellPolygonStart.clone();
+            for (int b = 0; b < boundaries.size(); b++ )
+            {
+                Boundary boundary = boundaries.get(b);
+                if ( !boundary.isPolygonal())
+                    continue;
+                double[] boundarySegments = boundary.getSegments();
+                double boundaryMinX = Double.POSITIVE_INFINITY;
+                double boundaryMinY = Double.POSITIVE_INFINITY;
+                double boundaryMaxX = Double.NEGATIVE_INFINITY;
+                double boundaryMaxY = Double.NEGATIVE_INFINITY;
+                for (int i = 0; i < boundarySegments.length; i += 2)
+                {
+                    boundaryMinX = Math.min(boundaryMinX, boundarySegments[i]);
+                    boundaryMinY = Math.min(boundaryMinY, boundarySegments[i + 1]);
+                    boundaryMaxX = Math.max(boundaryMaxX, boundarySegments[i]);
+                    boundaryMaxY = Math.max(boundaryMaxY, boundarySegments[i + 1]);
+                }
+                for (int row = getRow(boundaryMinY); row <= getRow(boundaryMaxY); row++ )
+                {
+                    for (int column = getColumn(boundaryMinX); column <= getColumn(
+                        boundaryMaxX); column++ )
+                    {
+                        if (pass == 0)
+                            cellPolygonStart[row * columns + column + 1]++ ;
+                        else
+                            cellPolygons[insertPosition[row * columns + column]++ ] = b;
+                    }
+                }
+            }
+            if (pass == 0)
+            {
+                for (int c = 0; c < columns * rows; c++ )
+                {
+                    cellPolygonStart[c + 1] += cellPolygonStart[c];
+                }
+                cellPolygons = new int[cellPolygonStart[columns * rows]];
+            }
+        }
+    }
+
+    /**
+     * Gets the edge length of a single (square) cell. Given in meters.
+     *
+     * @return the edge length of a single cell
+     */
+    public double getCellSize()
+    {
+        return cellSize;
+    }
+
+    /**
+     * Tests, whether the line segment between {@code x0}, {@code y0} and {@code x1}, {@code y1}
+     * intersects the {@link Geometry} of any {@link Boundary}. The result is the same as of
+     * {@link Geometry#intersects(Geometry)}, i.e. also a line segment completely inside a polygon
+     * intersects it.
+     *
+     * @param x0 the x component of the start point of the line segment
+     * @param y0 the y component of the start point of the line segment
+     * @param x1 the x component of the end point of the line segment
+     * @param y1 the y component of the end point of the line segment
+     *
+     * @return {@code true}, if the line segment intersects any {@link Boundary}, {@code false}
+     *         otherwise
+     */
+    public boolean intersects(double x0, double y0, double x1, double y1)
+    {
+        if (relates(x0, y0, x1, y1, INTERSECTS))
+            return true;
+
+        // the line segment does not intersect any ring, but could be completely inside a polygon
+        if (x0 < minX || y0 < minY || x0 > minX + columns * cellSize
+            || y0 > minY + rows * cellSize)
+            return false;
+        int cell = getRow(y0) * columns + getColumn(x0);
+        for (int e = cellPolygonStart[cell]; e < cellPolygonStart[cell + 1]; e++ )
+        {
+            if (boundaries.get(cellPolygons[e]).contains(x0, y0))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tests, whether the line segment between {@code x0}, {@code y0} and {@code x1}, {@code y1}
+     * crosses the {@link Geometry} of any {@link Boundary}. The result is the same as of
+     * {@link Geometry#crosses(Geometry)}.
+     *
+     * @param x0 the x component of the start point of the line segment
+     * @param y0 the y component of the start point of the line segment
+     * @param x1 the x component of the end point of the line segment
+     * @param y1 the y component of the end point of the line segment
+     *
+     * @return {@code true}, if the line segment crosses any {@link Boundary}, {@code false}
+     *         otherwise
+     */
+    public boolean crosses(double x0, double y0, double x1, double y1)
+    {
+        return relates(x0, y0, x1, y1, CROSSES);
+    }
+
+    /**
+     * Visits all cells of the grid touched by the line segment between {@code x0}, {@code y0} and
+     * {@code x1}, {@code y1} and tests the line segments stored in them. Cells are visited column by
+     * column, within each column only the rows between the entry and exit of the line segment are
+     * visited.
+     *
+     * @param x0 the x component of the start point of the line segment
+     * @param y0 the y component of the start point of the line segment
+     * @param x1 the x component of the end point of the line segment
+     * @param y1 the y component of the end point of the line segment
+     * @param mode {@link #INTERSECTS} for testing intersection {@link #CROSSES} for testing
+     *            crossing
+     *
+     * @return {@code true}, if the line segment relates to the line segments of any
+     *         {@link Boundary} in the given {@code mode}
+     */
+    private boolean relates(double x0, double y0, double x1, double y1, byte mode)
+    {
+        if (segmentBoundaries.length == 0)
+            return false;
+        double lineMinX = Math.min(x0, x1);
+        double lineMaxX = Math.max(x0, x1);
+        // a small margin ensures that no touched cell is missed due to rounding
+        double margin = cellSize * 1e-9;
+
+        for (int column = getColumn(lineMinX); column <= getColumn(lineMaxX); column++ )
+        {
+            double columnMinX = minX + column * cellSize;
+            double sectionMinX = Math.max(columnMinX, lineMinX);
+            double sectionMaxX = Math.min(columnMinX + cellSize, lineMaxX);
+            if (column == 0)
+                sectionMinX = lineMinX;
+            if (column == columns - 1)
+                sectionMaxX = lineMaxX;
+
+            // the part of the line segment within the current column
+            double sectionMinY;
+            double sectionMaxY;
+            if (x0 == x1)
+            {
+                sectionMinY = Math.min(y0, y1);
+                sectionMaxY = Math.max(y0, y1);
+            }
+            else
+            {
+                double slope = (y1 - y0) / (x1 - x0);
+                double sectionY0 = y0 + (sectionMinX - x0) * slope;
+                double sectionY1 = y0 + (sectionMaxX - x0) * slope;
+                sectionMinY = Math.min(sectionY0, sectionY1);
+                sectionMaxY = Math.max(sectionY0, sectionY1);
+            }
+
+            for (int row = getRow(sectionMinY - margin); row <= getRow(
+                sectionMaxY + margin); row++ )
+            {
+                int cell = row * columns + column;
+                for (int e = cellStart[cell]; e < cellStart[cell + 1]; e++ )
+                {
+                    int s = cellSegments[e];
+                    int i = 4 * s;
+                    int result = GeometryTools.segmentsIntersect(x0, y0, x1, y1, segments[i],
+                        segments[i + 1], segments[i + 2], segments[i + 3]);
+                    if (result == GeometryTools.SEGMENTS_DISJOINT)
+                        continue;
+                    if (mode == INTERSECTS && result == GeometryTools.SEGMENTS_INTERSECT)
+                        return true;
+                    // accurate check
+                    if (relatesExactly(boundaries.get(segmentBoundaries[s]), x0, y0, x1, y1,
+                        mode))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Performs the accurate test, whether the line segment between {@code x0}, {@code y0} and
+     * {@code x1}, {@code y1} relates to the {@link Geometry} of {@code boundary} in the given
+     * {@code mode}.
+     *
+     * @param boundary the {@link Boundary} to be tested
+     * @param x0 the x component of the start point of the line segment
+     * @param y0 the y component of the start point of the line segment
+     * @param x1 the x component of the end point of the line segment
+     * @param y1 the y component of the end point of the line segment
+     * @param mode {@link #INTERSECTS} for testing intersection {@link #CROSSES} for testing
+     *            crossing
+     *
+     * @return {@code true}, if the line segment relates to the {@link Geometry} of
+     *         {@code boundary}, {@code false} otherwise
+     */
+    private static boolean relatesExactly(Boundary boundary, double x0, double y0, double x1,
+        double y1, byte mode)
+    {
+        LineString line = JTSFactoryFinder.getGeometryFactory().createLineString(
+            new Coordinate[] { new Coordinate(x0, y0), new Coordinate(x1, y1) });
+        if (mode == CROSSES)
+            return line.crosses(boundary.getGeometry());
+        return line.intersects(boundary.getGeometry());
+    }
+
+    /**
+     * Computes the column of the grid containing {@code x}. Values outside of the grid are mapped
+     * to the first or last column.
+     *
+     * @param x the x component of a position
+     * @return the column
+     */
+    private int getColumn(double x)
+    {
+        int column = (int) Math.floor((x - minX) / cellSize);
+        return Math.max(0, Math.min(columns - 1, column));
+    }
+
+    /**
+     * Computes the row of the grid containing {@code y}. Values outside of the grid are mapped to
+     * the first or last row.
+     *
+     * @param y the y component of a position
+     * @return the row
+     */
+    private int getRow(double y)
+    {
+        int row = (int) Math.floor((y - minY) / cellSize);
+        return Math.max(0, Math.min(rows - 1, row));
+    }
+}
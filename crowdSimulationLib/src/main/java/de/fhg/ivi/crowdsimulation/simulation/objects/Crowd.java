@@ -2,14 +2,12 @@ package de.fhg.ivi.crowdsimulation.simulation.objects;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.math3.ml.clustering.Cluster;
-import org.apache.commons.math3.ml.clustering.Clusterable;
-import org.apache.commons.math3.ml.clustering.DBSCANClusterer;
 import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.geotools.graph.path.Path;
 import org.geotools.graph.structure.Node;
@@ -24,15 +22,23 @@ import com.vividsolutions.jts.geom.GeometryCollection;
 import com.vividsolutions.jts.geom.MultiPoint;
 import com.vividsolutions.jts.geom.Point;
 
+import de.fhg.ivi.crowdsimulation.simulation.CrowdOutlineService;
 import de.fhg.ivi.crowdsimulation.simulation.CrowdSimulator;
 import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.mentalmodel.WayFindingModel;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator.NeighbourProvider;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.RungeKuttaIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.SemiImplicitEulerIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.SimpleEulerIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.tools.GeometryTools;
+import de.fhg.ivi.crowdsimulation.simulation.tools.GridDBSCANClusterer;
 import de.fhg.ivi.crowdsimulation.simulation.tools.MathTools;
+import de.fhg.ivi.crowdsimulation.simulation.tools.MortonOrder;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ParallelTools;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ParallelTools.ChunkTask;
 import hcu.csl.agentbasedmodeling.PedestrianAgent;
+import math.geom2d.Vector2D;
 
 /**
  * A {@link Crowd} consists of a {@link List} of {@link Pedestrian} objects.
@@ -61,66 +67,107 @@ public class Crowd
     /**
      * Uses the object logger for printing specific messages in the console.
      */
-    private static final Logger logger                                           = LoggerFactory
+    private static final Logger     logger                                           = LoggerFactory
         .getLogger(Crowd.class);
 
     /**
-     * {@link List} object, which contains all created {@link Pedestrian}
+     * {@link List} object, which contains all created {@link Pedestrian}. Replaced as a whole by
+     * {@link #sortPedestrians()}, hence volatile
      */
-    private List<Pedestrian>    pedestrians;
+    private volatile List<Pedestrian> pedestrians;
+
+    /**
+     * {@link PedestrianStateStore}, which contains the current positions, velocities and forces of
+     * all {@link #pedestrians} contiguously
+     */
+    private PedestrianStateStore    stateStore;
+
+    /**
+     * Maps the id of each {@link Pedestrian} to its index in {@link #pedestrians}, which changes
+     * when the {@link #pedestrians} are sorted (cf. {@link #sortPedestrians()}). The {@link Map} is
+     * never modified after it has been published, but replaced as a whole (copy-on-write), so that
+     * it can be read by {@link #getPedestrianIndex(int)} concurrently
+     */
+    private volatile Map<Integer, Integer> pedestrianIndices;
 
     /**
      * {@link Geometry} object, which denotes a outline of all {@link Pedestrian}
      */
-    private ArrayList<Geometry> crowdOutlines;
+    private volatile List<Geometry> crowdOutlines;
+
+    /**
+     * The generation of the {@link #crowdOutlines}, which is incremented each time the
+     * {@link #crowdOutlines} are cleared or computed synchronously, so that outlines computed in
+     * the background from older positions are discarded (cf. {@link #setCrowdOutlines(List, int)})
+     */
+    private int                     crowdOutlineGeneration;
 
     /**
      * Crowd ID
      */
-    private String              crowdIdentifyer;
+    private String                  crowdIdentifyer;
 
     /**
      * Can be one of the following methods of numerical mathematics to compute {@link Pedestrian}
      * movement - Simple Euler {@link SimpleEulerIntegrator}, Semi Implicit Euler
      * {@link SemiImplicitEulerIntegrator} or Runge Kutta {@link RungeKuttaIntegrator}.
      */
-    private NumericIntegrator   numericIntegrator;
+    private NumericIntegrator       numericIntegrator;
 
     /**
      * {@link ForceModel} objects, which represents the pedestrian modeling approach.
      */
-    private ForceModel          forceModel;
+    private ForceModel              forceModel;
 
     /**
      * {@link List} of {@link Pedestrian}s, which contains a full copy of all {@link Pedestrian}s of
      * all {@link Crowd}s (including the {@link Pedestrian}s of this {@link Crowd}). This must be
      * updated before any call of {@link #moveCrowd(long, double)}
      */
-    private List<Pedestrian>    allPedestrians;
+    private List<Pedestrian>        allPedestrians;
 
     /**
-     * {@link Geometry} object, which contains the geometric union of all {@link Boundary} objects
-     * of {@link CrowdSimulator}
+     * Neighbour lists of {@link #allPedestrians}, which are used to find the {@link Pedestrian}s
+     * interacting with a given {@link Pedestrian}. If {@code null}, each {@link Pedestrian}
+     * interacts with all {@link #allPedestrians}.
+     */
+    private PedestrianNeighbourList pedestrianNeighbourList;
+
+    /**
+     * The index of the first {@link Pedestrian} of this {@link Crowd} in {@link #allPedestrians}.
      */
-    private List<Boundary>      boundaries;
+    private int                     firstPedestrianSlot;
+
+    /**
+     * {@link BoundaryIndex} object, which contains all {@link Boundary} objects of
+     * {@link CrowdSimulator}
+     */
+    private BoundaryIndex           boundaries;
 
     /**
      * {@link Geometry} object, which contains the geometric union of all {@link Boundary} objects
      * of {@link CrowdSimulator}
      */
-    private Geometry            unionOfAllBoundaries;
+    private Geometry                unionOfAllBoundaries;
 
     /**
      * Thread Pool for parallelization of Pedestrian movement computation
      */
-    private ExecutorService     threadPool;
+    private ExecutorService         threadPool;
+
+    /**
+     * The number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool} (cf. {@link ParallelTools#invokeChunked(ExecutorService, int, int,
+     * ChunkTask)})
+     */
+    private int                     chunkSize;
 
     /**
      * Default Average normal velocity, i.e. the average normal walking velocity of a
      * {@link Pedestrian}. This is the velocity that a pedestrian would choose for walking, when not
      * being delayed. The velocity is given in m/s. Cf. Helbing et al (2005) p. 11.
      */
-    public static float         defaultMeanNormalDesiredVelocity                 = 1.2f;
+    public static float             defaultMeanNormalDesiredVelocity                 = 1.2f;
 
     /**
      * Default Standard deviation of {@link Crowd#defaultMeanNormalDesiredVelocity}, i.e. the
@@ -129,7 +176,7 @@ public class Crowd
      * Outliers that would not be within the 95% of all values are avoided. The value is given in
      * m/s. Cf. Helbing et al (2005) p. 11.
      */
-    public static float         defaultStandardDeviationOfNormalDesiredVelocity  = 0.3f;
+    public static float             defaultStandardDeviationOfNormalDesiredVelocity  = 0.3f;
 
     /**
      * Default average maximum velocity, i.e. the average maximum walking velocity of all
@@ -139,7 +186,7 @@ public class Crowd
      * {@link Crowd#defaultMeanNormalDesiredVelocity}. Unfortunately there is no value for that in
      * Helbing et al (2005).
      */
-    public static float         defaultMeanMaximumDesiredVelocity                = 1.3f
+    public static float             defaultMeanMaximumDesiredVelocity                = 1.3f
         * defaultMeanNormalDesiredVelocity;
 
     /**
@@ -151,26 +198,32 @@ public class Crowd
      * This value is chosen arbitrarily. In Helbing, Molnar (1995) as well as in Helbing et al
      * (2005) there is no value defined.
      */
-    public static float         defaultStandardDeviationOfMaximumDesiredVelocity = 0.3f;
+    public static float             defaultStandardDeviationOfMaximumDesiredVelocity = 0.3f;
 
     /**
      * Default value, if the {@link Pedestrian} objects are clustered into groups using
-     * {@link DBSCANClusterer} before the crowd outlines are computed
+     * {@link GridDBSCANClusterer} before the crowd outlines are computed
      */
-    public static boolean       defaultIsClusteringCrowdOutlines                 = false;
+    public static boolean           defaultIsClusteringCrowdOutlines                 = false;
 
     /**
      * Default value, if the calculation of the crowd outlines uses a {@link ConvexHull} or a
      * {@link ConcaveHull} algorithm
      */
-    public static boolean       defaultIsCrowdOutlineConvex                      = false;
+    public static boolean           defaultIsCrowdOutlineConvex                      = false;
+
+    /**
+     * Default value, if the {@link Pedestrian}s are moved in two separate phases (cf.
+     * {@link #setDeterministic(boolean)})
+     */
+    public static boolean           defaultIsDeterministic                           = false;
 
     /**
      * Average normal velocity, i.e. the average normal walking velocity of all {@link Pedestrian}s.
      * From this the velocity that a pedestrian would choose for walking (when not being delayed) is
      * derived. The velocity is given in m/s.
      */
-    private float               meanNormalDesiredVelocity;
+    private float                   meanNormalDesiredVelocity;
 
     /**
      * Standard deviation of {@link Crowd#meanNormalDesiredVelocity}, i.e. the standard deviation of
@@ -178,14 +231,14 @@ public class Crowd
      * {@link Pedestrian} of this Crowd from the resulting Gaussian distribution. Outliers that
      * would not be within the 95% of all values are avoided.
      */
-    private float               standardDeviationOfNormalDesiredVelocity;
+    private float                   standardDeviationOfNormalDesiredVelocity;
 
     /**
      * Average maximum velocity, i.e. the average maximum walking velocity of all pedestrians. From
      * this the maximum velocity that an individual {@link Pedestrian} is able to walk (e.g. when
      * being delayed) is derived. The velocity is given in m/s.
      */
-    private float               meanMaximumDesiredVelocity;
+    private float                   meanMaximumDesiredVelocity;
 
     /**
      * Standard deviation of {@link Crowd#meanMaximumDesiredVelocity}, i.e. the standard deviation
@@ -193,34 +246,41 @@ public class Crowd
      * {@link Pedestrian} from the resulting Gaussian distribution. Outliers that would not be
      * within the 95% of all values are avoided. The value is given in m/s.
      */
-    private float               standardDeviationOfMaximumDesiredVelocity;
+    private float                   standardDeviationOfMaximumDesiredVelocity;
 
     /**
      * Indicates, if the {@link Pedestrian} objects are clustered into groups using
-     * {@link DBSCANClusterer} before the crowd outlines are computed
+     * {@link GridDBSCANClusterer} before the crowd outlines are computed
      */
-    private boolean             isClusteringCrowdOutlines;
+    private boolean                 isClusteringCrowdOutlines;
 
     /**
      * Indicates, if calculation of the crowd outline use a {@link ConvexHull} or a
      * {@link ConcaveHull} algorithm
      */
-    private boolean             isCrowdOutlineConvex;
+    private boolean                 isCrowdOutlineConvex;
+
+    /**
+     * Indicates, if the {@link Pedestrian}s are moved in two separate phases, so that the result
+     * does not depend on the number of threads (cf. {@link #setDeterministic(boolean)})
+     */
+    private boolean                 isDeterministic;
 
     /**
-     * One out of two parameters of the {@link DBSCANClusterer}.
+     * One out of two parameters of the {@link GridDBSCANClusterer}.
      * <p>
      * This parameter denotes the maximum radius of the neighborhood, in which a cluster can be
      * build up.
      */
-    private static final double epsilon                                          = 10d;
+    private static final double     epsilon                                          = 10d;
 
     /**
-     * One out of two parameters of the {@link DBSCANClusterer}.
+     * One out of two parameters of the {@link GridDBSCANClusterer}.
      * <p>
-     * MinPts denotes the minimal number of points, which is necessary to build up a cluster.
+     * MinPts denotes the minimal number of neighbours of a point (not counting the point itself),
+     * which is necessary to build up a cluster.
      */
-    private static final int    minPts                                           = 4;
+    private static final int        minPts                                           = 4;
 
     /**
      * Parameter for the form of the concave hull.
@@ -230,7 +290,7 @@ public class Crowd
      * @see <a href=
      *      "http://geosensor.net/papers/duckham08.PR.pdf">http://geosensor.net/papers/duckham08.PR.pdf</a>
      */
-    private double              crowdOutlineThreshold                            = 20;
+    private double                  crowdOutlineThreshold                            = 20;
 
     /**
      * Indicates, if the {@link #crowdOutlines} should be updated each time
@@ -238,14 +298,21 @@ public class Crowd
      * crowd outline is not visible in the Graphical User Interface, since it is currently unused
      * elsewhere.
      */
-    private boolean             isUpdatingCrowdOutline                           = true;
+    private boolean                 isUpdatingCrowdOutline                           = true;
 
     /**
      * {@link RoutingNetwork} for pedestrian wayfinding
      *
      * @author Martin Knura
      */
-    private RoutingNetwork      network;
+    private RoutingNetwork          network;
+
+    /**
+     * The {@link CrowdOutlineService} computing the {@link #crowdOutlines} in the background after
+     * each simulation step or {@code null}, if the {@link #crowdOutlines} are computed
+     * synchronously by {@link #finishMove()}
+     */
+    private CrowdOutlineService     crowdOutlineService;
 
     /**
      * Creates a new {@link Crowd} object
@@ -257,14 +324,14 @@ public class Crowd
      * @param forceModel the {@link ForceModel} objects, which represents the pedestrian modeling
      *            approach
      *
-     * @param boundaries the {@link List} of existing {@link Boundary} objects
+     * @param boundaries the {@link BoundaryIndex} of existing {@link Boundary} objects
      * @param unionOfAllBoundaries the geometric union of all {@link Boundary} objects as a single
      *            {@link Geometry} objects
      * @param threadPool the Thread Pool for parallelization of Pedestrian movement computation
      * @param rn RoutingNetwork for pedestrian wayfinding
      */
     public Crowd(String id, NumericIntegrator numericIntegrator, ForceModel forceModel,
-        List<Boundary> boundaries, Geometry unionOfAllBoundaries, ExecutorService threadPool,
+        BoundaryIndex boundaries, Geometry unionOfAllBoundaries, ExecutorService threadPool,
         RoutingNetwork rn)
     {
         crowdIdentifyer = id;
@@ -273,6 +340,7 @@ public class Crowd
         this.boundaries = boundaries;
         this.unionOfAllBoundaries = unionOfAllBoundaries;
         this.threadPool = threadPool;
+        this.chunkSize = ParallelTools.defaultChunkSize;
 
         this.meanNormalDesiredVelocity = defaultMeanNormalDesiredVelocity;
         this.standardDeviationOfNormalDesiredVelocity = defaultStandardDeviationOfNormalDesiredVelocity;
@@ -280,9 +348,12 @@ public class Crowd
         this.standardDeviationOfMaximumDesiredVelocity = defaultStandardDeviationOfMaximumDesiredVelocity;
         this.isClusteringCrowdOutlines = defaultIsClusteringCrowdOutlines;
         this.isCrowdOutlineConvex = defaultIsCrowdOutlineConvex;
+        this.isDeterministic = defaultIsDeterministic;
         this.network = rn;
 
         pedestrians = new ArrayList<>();
+        stateStore = new PedestrianStateStore();
+        pedestrianIndices = new HashMap<>();
         crowdOutlines = new ArrayList<>();
 
     }
@@ -301,7 +372,8 @@ public class Crowd
     /**
      * Gets a {@link List} of all {@link Pedestrian} objects belonging to this {@link Crowd}. If
      * {@code clone} parameter is set to {@code true}, a new {@link ArrayList} is returned
-     * containing cloned {@link Pedestrian} objects
+     * containing cloned {@link Pedestrian} objects, whose states are stored in a single new
+     * {@link PedestrianStateStore}
      *
      * @param clone if {@code true} a new {@link ArrayList} is returned containing cloned
      *            {@link Pedestrian} objects otherwise {@link #pedestrians} is returned directly
@@ -311,16 +383,90 @@ public class Crowd
     {
         if (clone)
         {
-            List<Pedestrian> pedestriansDeepCopy = new ArrayList<>();
+            List<Pedestrian> pedestriansDeepCopy = new ArrayList<>(pedestrians.size());
+            PedestrianStateStore stateStoreCopy = new PedestrianStateStore(pedestrians.size());
             for (Pedestrian pedestrian : pedestrians)
             {
-                pedestriansDeepCopy.add(pedestrian.clone());
+                pedestriansDeepCopy.add(pedestrian.clone(stateStoreCopy));
             }
             return pedestriansDeepCopy;
         }
         return pedestrians;
     }
 
+    /**
+     * Gets the {@link Pedestrian} with the given {@code id}.
+     *
+     * @param id the id of the {@link Pedestrian}
+     * @return the {@link Pedestrian} or {@code null}, if this {@link Crowd} does not contain a
+     *         {@link Pedestrian} with the given {@code id}
+     */
+    public Pedestrian getPedestrian(int id)
+    {
+        int index = getPedestrianIndex(id);
+        return index < 0 ? null : pedestrians.get(index);
+    }
+
+    /**
+     * Gets the index of the {@link Pedestrian} with the given {@code id} in the {@link List}
+     * returned by {@link #getPedestrians()}. The index changes, when the {@link Pedestrian}s are
+     * sorted by {@link #sortPedestrians()}, whereas the id remains stable.
+     *
+     * @param id the id of the {@link Pedestrian}
+     * @return the index of the {@link Pedestrian} or {@code -1}, if this {@link Crowd} does not
+     *         contain a {@link Pedestrian} with the given {@code id}
+     */
+    public int getPedestrianIndex(int id)
+    {
+        Integer index = pedestrianIndices.get(id);
+        return index == null ? -1 : index.intValue();
+    }
+
+    /**
+     * Sorts the {@link Pedestrian}s of this {@link Crowd} along a Z-order curve of their current
+     * positions (cf. {@link MortonOrder}) and moves their states into a new
+     * {@link PedestrianStateStore} in the same order. Afterwards, {@link Pedestrian}s being close
+     * to each other in space are mostly close to each other in {@link #pedestrians} and in the
+     * {@link PedestrianStateStore} as well, which improves the cache locality of all loops over
+     * the {@link Pedestrian}s and their neighbours.
+     * <p>
+     * The {@link List} returned by {@link #getPedestrians()} afterwards is a new {@link List},
+     * whereas a {@link List} obtained before remains unchanged. Must not be called while a
+     * simulation step is computed.
+     */
+    public void sortPedestrians()
+    {
+        int size = pedestrians.size();
+        if (size < 2)
+            return;
+
+        double[] positionsX = new double[size];
+        double[] positionsY = new double[size];
+        for (int i = 0; i < size; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            positionsX[i] = pedestrian.getCurrentPositionX();
+            positionsY[i] = pedestrian.getCurrentPositionY();
+        }
+        int[] order = MortonOrder.sort(positionsX, positionsY, size);
+
+        PedestrianStateStore sortedStateStore = new PedestrianStateStore(size);
+        List<Pedestrian> sorted = new ArrayList<>(size);
+        Map<Integer, Integer> sortedIndices = new HashMap<>();
+        for (int i = 0; i < size; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(order[i]);
+            pedestrian.setStateStore(sortedStateStore);
+            sorted.add(pedestrian);
+            sortedIndices.put(pedestrian.getId(), i);
+        }
+        // publish the sorted list and the indices as a whole instead of reordering the list and
+        // updating the map, which may be read concurrently
+        pedestrians = sorted;
+        pedestrianIndices = sortedIndices;
+        stateStore = sortedStateStore;
+    }
+
     /**
      * This create a new list of {@link Pedestrian} objects belonging to this {@link Crowd}.
      * Furthermore the initial velocity parameters of all {@link Pedestrian}s are set.
@@ -347,9 +493,15 @@ public class Crowd
     {
         // removes pedestrians if they are already existing
         if (pedestrians != null && !pedestrians.isEmpty())
+        {
             pedestrians.clear();
+            pedestrianIndices = new HashMap<>();
+            // removed pedestrians keep their last state in the old store
+            stateStore = new PedestrianStateStore();
+        }
 
         RoutingNetwork routing = network;
+        Map<Integer, Integer> indices = new HashMap<>(pedestrianIndices);
 
         for (PedestrianAgent agent : agents)
         {
@@ -516,11 +668,14 @@ public class Crowd
             pedestrian.getMentalModel().updateNormalizedDirectionVector(
                 pedestrian.getCurrentPosition(), startTime, boundaries,
                 pedestrian.getNormalDesiredVelocity());
+            pedestrian.setStateStore(stateStore);
+            indices.put(pedestrian.getId(), pedestrians.size());
             pedestrians.add(pedestrian);
 
             logger.trace("setPedestrians(), " + pedestrian.getInitialPositionVector());
             logger.trace("setPedestrians(), " + startTime);
         }
+        pedestrianIndices = indices;
 
         updateCrowdOutline(unionOfAllBoundaries);
     }
@@ -531,12 +686,12 @@ public class Crowd
      *
      * @return the {@link ConvexHull} {@link Geometry} of all {@link Pedestrian}
      */
-    @SuppressWarnings("unchecked")
     public List<Geometry> getCrowdOutlines()
     {
-        if (crowdOutlines == null)
+        List<Geometry> tempCrowdOutlines = crowdOutlines;
+        if (tempCrowdOutlines == null)
             return null;
-        return (ArrayList<Geometry>) crowdOutlines.clone();
+        return new ArrayList<>(tempCrowdOutlines);
     }
 
     /**
@@ -661,7 +816,7 @@ public class Crowd
 
     /**
      * Tests if the {@link Pedestrian} objects are clustered into groups using
-     * {@link DBSCANClusterer} before the crowd outlines are computed.
+     * {@link GridDBSCANClusterer} before the crowd outlines are computed.
      *
      * @return {@code true} for clustering = yes, {@code false} for clustering = no
      */
@@ -672,12 +827,12 @@ public class Crowd
 
     /**
      * Sets if the {@link Pedestrian} objects are clustered into groups using
-     * {@link DBSCANClusterer} before the crowd outlines are computed. {@code true} for clustering =
-     * yes, {@code false} for clustering = no
+     * {@link GridDBSCANClusterer} before the crowd outlines are computed. {@code true} for
+     * clustering = yes, {@code false} for clustering = no
      *
      * @param isClusteringCrowdOutlines Sets if the {@link Pedestrian} objects are clustered into
-     *            groups using {@link DBSCANClusterer} before the crowd outlines are computed.
-     *            {@code true} for clustering = yes, {@code false} for clustering = no
+     *            groups using {@link GridDBSCANClusterer} before the crowd outlines are
+     *            computed. {@code true} for clustering = yes, {@code false} for clustering = no
      */
     public void setClusteringCrowdOutlines(boolean isClusteringCrowdOutlines)
     {
@@ -709,6 +864,64 @@ public class Crowd
         this.isCrowdOutlineConvex = isCrowdOutlineConvex;
     }
 
+    /**
+     * Tests, if the {@link Pedestrian}s are moved in two separate phases (cf.
+     * {@link #setDeterministic(boolean)}).
+     *
+     * @return {@code true}, if the {@link Pedestrian}s are moved in two separate phases
+     */
+    public boolean isDeterministic()
+    {
+        return isDeterministic;
+    }
+
+    /**
+     * Sets, if the {@link Pedestrian}s are moved in two separate phases. In the first phase the
+     * direction vectors (cf. {@link WayFindingModel#updateNormalizedDirectionVector(Vector2D, long,
+     * BoundaryIndex, float)}) and everything else depending on other {@link Pedestrian}s (cf.
+     * {@link NumericIntegrator#prepareMove(long, Pedestrian, List, BoundaryIndex, ForceModel)}) are
+     * computed for all {@link Pedestrian}s. Only after all {@link Pedestrian}s have finished the
+     * first phase, the new velocities and positions are committed in the second phase (cf.
+     * {@link NumericIntegrator#completeMove(long, double, Pedestrian, List, BoundaryIndex,
+     * ForceModel)}).
+     * <p>
+     * Since no {@link Pedestrian} is changed while another one reads its state, the result is
+     * bit-identical for any number of threads of the {@link #threadPool} and any
+     * {@link #chunkSize}.
+     *
+     * @param isDeterministic {@code true}, if the {@link Pedestrian}s are moved in two separate
+     *            phases, {@code false} if each {@link Pedestrian} is moved in a single pass
+     */
+    public void setDeterministic(boolean isDeterministic)
+    {
+        this.isDeterministic = isDeterministic;
+    }
+
+    /**
+     * Gets the number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool}.
+     *
+     * @return the {@link #chunkSize}
+     */
+    public int getChunkSize()
+    {
+        return chunkSize;
+    }
+
+    /**
+     * Sets the number of consecutive {@link Pedestrian}s, which are moved by a single task of the
+     * {@link #threadPool}. Smaller values allow a better load balancing between the threads, larger
+     * values reduce the overhead of scheduling the tasks.
+     *
+     * @param chunkSize the {@link #chunkSize}, must be positive
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        this.chunkSize = chunkSize;
+    }
+
     /**
      * Update {@link #crowdOutlines} based on the current position of the {@code pedestrians} minus
      * {@code unionOfAllBoundaries} (if available). Return immediately without any
@@ -726,21 +939,48 @@ public class Crowd
         if ( !isUpdatingCrowdOutline)
             return;
 
+        List<Geometry> newCrowdOutlines = createCrowdOutlines(
+            GeometryTools.getCoordinatesFromPedestrians(pedestrians), allBoundaries);
+        synchronized (this)
+        {
+            crowdOutlineGeneration++ ;
+            crowdOutlines = newCrowdOutlines;
+        }
+    }
+
+    /**
+     * Computes the outlines of the given {@code positions} of the {@link Pedestrian}s of this
+     * {@link Crowd} minus {@code allBoundaries} (if available), either of all {@code positions} or
+     * of each cluster of {@code positions} (cf. {@link #isClusteringCrowdOutlines}). Does not
+     * access the {@link Pedestrian}s, so it can be called concurrently to a simulation step (cf.
+     * {@link CrowdOutlineService}).
+     *
+     * @param positions the positions of the {@link Pedestrian}s
+     * @param allBoundaries {@link Geometry} object, which contains the geometric union of all
+     *            {@link Boundary} objects.
+     * @return the {@link ArrayList} of outlines
+     */
+    public ArrayList<Geometry> createCrowdOutlines(Coordinate[] positions, Geometry allBoundaries)
+    {
+        ArrayList<Geometry> tempCrowdOutlines = new ArrayList<>();
         if (isClusteringCrowdOutlines)
         {
-            DBSCANClusterer<Clusterable> dbscan = new DBSCANClusterer<>(epsilon, minPts);
-            List<Cluster<Clusterable>> clusters = dbscan
-                .cluster(new ArrayList<Clusterable>(pedestrians));
-            ArrayList<Geometry> tempCrowdOutlines = new ArrayList<>();
+            double[] x = new double[positions.length];
+            double[] y = new double[positions.length];
+            for (int i = 0; i < positions.length; i++ )
+            {
+                x[i] = positions[i].x;
+                y[i] = positions[i].y;
+            }
+            GridDBSCANClusterer dbscan = new GridDBSCANClusterer(epsilon, minPts);
+            List<int[]> clusters = dbscan.cluster(x, y, positions.length);
             for (int i = 0; i < clusters.size(); i++ )
             {
-                Cluster<Clusterable> cluster = clusters.get(i);
-                List<Clusterable> points = cluster.getPoints();
-                Coordinate[] coordinates = new Coordinate[points.size()];
-                for (int j = 0; j < points.size(); j++ )
+                int[] cluster = clusters.get(i);
+                Coordinate[] coordinates = new Coordinate[cluster.length];
+                for (int j = 0; j < cluster.length; j++ )
                 {
-                    coordinates[j] = new Coordinate(points.get(j).getPoint()[0],
-                        points.get(j).getPoint()[1]);
+                    coordinates[j] = new Coordinate(positions[cluster[j]]);
                 }
                 MultiPoint multiPointCluster = JTSFactoryFinder.getGeometryFactory()
                     .createMultiPoint(coordinates);
@@ -749,19 +989,71 @@ public class Crowd
                     allBoundaries, isCrowdOutlineConvex, crowdOutlineThreshold);
                 tempCrowdOutlines.add(crowdOutline);
             }
-            crowdOutlines = tempCrowdOutlines;
         }
         else
         {
             // gets position of all pedestrians as MultiPoint object
             MultiPoint multiPoint = JTSFactoryFinder.getGeometryFactory()
-                .createMultiPoint(GeometryTools.getCoordinatesFromPedestrians(pedestrians));
+                .createMultiPoint(positions);
             Geometry crowdOutline = GeometryTools.createOutline(multiPoint, allBoundaries,
                 isCrowdOutlineConvex, crowdOutlineThreshold);
-            ArrayList<Geometry> tempCrowdOutlines = new ArrayList<>();
             tempCrowdOutlines.add(crowdOutline);
-            crowdOutlines = tempCrowdOutlines;
         }
+        return tempCrowdOutlines;
+    }
+
+    /**
+     * Gets the generation of the {@link #crowdOutlines}, which is incremented each time the
+     * {@link #crowdOutlines} are cleared (cf. {@link #clear()}) or computed synchronously (cf.
+     * {@link #updateCrowdOutline(Geometry)}).
+     *
+     * @return the generation of the {@link #crowdOutlines}
+     */
+    public synchronized int getCrowdOutlineGeneration()
+    {
+        return crowdOutlineGeneration;
+    }
+
+    /**
+     * Replaces the {@link #crowdOutlines} as a whole by outlines computed in the background by
+     * {@link #createCrowdOutlines(Coordinate[], Geometry)}, unless the {@link #crowdOutlines} have
+     * been cleared or computed synchronously since the positions have been copied.
+     *
+     * @param crowdOutlines the new outlines
+     * @param generation the {@link #getCrowdOutlineGeneration()} at the time the positions the
+     *            new outlines are computed from have been copied
+     * @return {@code true}, if the {@link #crowdOutlines} have been replaced, {@code false}, if
+     *         {@code crowdOutlines} are outdated
+     */
+    public synchronized boolean setCrowdOutlines(List<Geometry> crowdOutlines, int generation)
+    {
+        if (generation != crowdOutlineGeneration)
+            return false;
+        this.crowdOutlines = new ArrayList<>(crowdOutlines);
+        return true;
+    }
+
+    /**
+     * Sets the {@link CrowdOutlineService}, which computes the {@link #crowdOutlines} in the
+     * background after each simulation step (cf. {@link #finishMove()}).
+     *
+     * @param crowdOutlineService the {@link CrowdOutlineService} or {@code null}, if the
+     *            {@link #crowdOutlines} should be computed synchronously
+     */
+    public void setCrowdOutlineService(CrowdOutlineService crowdOutlineService)
+    {
+        this.crowdOutlineService = crowdOutlineService;
+    }
+
+    /**
+     * Tests, if the {@link #crowdOutlines} are updated (cf.
+     * {@link #setUpdatingCrowdOutline(boolean)}).
+     *
+     * @return {@code true}, if the {@link #crowdOutlines} are updated
+     */
+    public boolean isUpdatingCrowdOutline()
+    {
+        return isUpdatingCrowdOutline;
     }
 
     /**
@@ -812,6 +1104,17 @@ public class Crowd
         }
     }
 
+    /**
+     * Gets the {@link PedestrianStateStore}, which contains the current positions, velocities and
+     * forces of all {@link Pedestrian}s of this {@link Crowd}.
+     *
+     * @return the {@link PedestrianStateStore} of this {@link Crowd}
+     */
+    public PedestrianStateStore getStateStore()
+    {
+        return stateStore;
+    }
+
     /**
      * Sets the {@link List} of {@link Pedestrian}s, which contains a full copy of all
      * {@link Pedestrian}s of all {@link Crowd}s (including the {@link Pedestrian}s of this
@@ -826,11 +1129,44 @@ public class Crowd
     }
 
     /**
-     * Sets {@link #boundaries} object as a {@link List} of {@link Geometry}s.
+     * Sets the {@link PedestrianNeighbourList}, which must have been updated using the same
+     * {@link List} given to {@link #setAllPedestrians(List)}. This must be updated before any call
+     * of {@link #moveCrowd(long, double)}
      *
-     * @param boundaries object denotes all {@link Geometry} implements in a {@link List}.
+     * @param pedestrianNeighbourList the neighbour lists of all {@link Pedestrian}s or
+     *            {@code null}, if every {@link Pedestrian} should interact with all
+     *            {@link Pedestrian}s
+     * @param firstPedestrianSlot the index of the first {@link Pedestrian} of this {@link Crowd}
+     *            in the {@link List} given to {@link #setAllPedestrians(List)}
      */
-    public void setBoundaries(List<Boundary> boundaries)
+    public void setPedestrianNeighbourList(PedestrianNeighbourList pedestrianNeighbourList,
+        int firstPedestrianSlot)
+    {
+        this.pedestrianNeighbourList = pedestrianNeighbourList;
+        this.firstPedestrianSlot = firstPedestrianSlot;
+    }
+
+    /**
+     * Gets the {@link Pedestrian}s that potentially interact with the {@link Pedestrian} at
+     * {@code index} of this {@link Crowd}, i.e. its neighbours in {@link #pedestrianNeighbourList}
+     * or {@link #allPedestrians}, if no {@link PedestrianNeighbourList} is set.
+     *
+     * @param index the index of the {@link Pedestrian} in {@link #pedestrians}
+     * @return the {@link List} of potentially interacting {@link Pedestrian}s
+     */
+    private List<Pedestrian> getNeighbours(int index)
+    {
+        if (pedestrianNeighbourList == null)
+            return allPedestrians;
+        return pedestrianNeighbourList.getNeighbours(firstPedestrianSlot + index);
+    }
+
+    /**
+     * Sets {@link #boundaries} object as a {@link BoundaryIndex} of {@link Boundary} objects.
+     *
+     * @param boundaries the {@link BoundaryIndex} of all {@link Boundary} objects
+     */
+    public void setBoundaries(BoundaryIndex boundaries)
     {
         this.boundaries = boundaries;
     }
@@ -847,6 +1183,17 @@ public class Crowd
         this.unionOfAllBoundaries = unionOfAllBoundaries;
     }
 
+    /**
+     * Gets the {@link Geometry} object, which contains the geometric union of all {@link Boundary}
+     * objects, cf. {@link #setUnionOfAllBoundaries(Geometry)}.
+     *
+     * @return the geometric union of all {@link Boundary} objects
+     */
+    public Geometry getUnionOfAllBoundaries()
+    {
+        return unionOfAllBoundaries;
+    }
+
     /**
      * Method for GeoJSON file export of the current pedestrian positions
      *
@@ -971,65 +1318,157 @@ public class Crowd
      *            Addition of @author Martin Knura: Adding current position to trajectory of
      *            {@link Pedestrian}, print currentPedsInLine for CityScope
      */
-    public void moveCrowd(long time, double simulationUpdateInterval)
+    public void moveCrowd(final long time, final double simulationUpdateInterval)
     {
+        if (isDeterministic)
+        {
+            // all pedestrians need to finish the first phase before any position is changed
+            ParallelTools.invokeChunked(threadPool, pedestrians.size(), chunkSize, new ChunkTask()
+                {
+                    @Override
+                    public void run(int start, int end)
+                    {
+                        prepareMovePedestrians(start, end, time);
+                    }
+                });
+            ParallelTools.invokeChunked(threadPool, pedestrians.size(), chunkSize, new ChunkTask()
+                {
+                    @Override
+                    public void run(int start, int end)
+                    {
+                        completeMovePedestrians(start, end, time, simulationUpdateInterval);
+                    }
+                });
+        }
+        else
+        {
+            // blocks until all chunks of pedestrians have been moved to remain consistency
+            ParallelTools.invokeChunked(threadPool, pedestrians.size(), chunkSize, new ChunkTask()
+                {
+                    @Override
+                    public void run(int start, int end)
+                    {
+                        movePedestrians(start, end, time, simulationUpdateInterval);
+                    }
+                });
+        }
+        logger.trace("moveCrowd(), -----------------------------");
 
-        AtomicInteger movedPedestrians = new AtomicInteger(0);
+        finishMove();
+    }
+
+    /**
+     * Finishes a simulation step after all {@link Pedestrian}s of this {@link Crowd} have been
+     * moved, i.e. adds the current positions to the trajectories of all {@link Pedestrian}s,
+     * invalidates their pairwise computed interaction (cf.
+     * {@link Pedestrian#clearPairwiseInteraction()}) and updates the {@link #crowdOutlines} (in
+     * the background, if a {@link CrowdOutlineService} is set).
+     */
+    public void finishMove()
+    {
         for (Pedestrian pedestrian : pedestrians)
         {
-            if (threadPool != null)
-            {
-                // ensure that all threads for moving a single pedestrian are finished before this
-                // method is left to remain consistency
-                threadPool.submit(new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            pedestrian.getMentalModel().updateNormalizedDirectionVector(
-                                pedestrian.getCurrentPosition(), time, boundaries,
-                                pedestrian.getNormalDesiredVelocity());
-                            numericIntegrator.move(time, simulationUpdateInterval, pedestrian,
-                                allPedestrians, boundaries, forceModel);
-                            movedPedestrians.getAndIncrement();
-                        }
-                    });
-            }
-            else
-            {
-                pedestrian.getMentalModel().updateNormalizedDirectionVector(
-                    pedestrian.getCurrentPosition(), time, boundaries,
-                    pedestrian.getNormalDesiredVelocity());
-                numericIntegrator.move(time, simulationUpdateInterval, pedestrian, allPedestrians,
-                    boundaries, forceModel);
-                movedPedestrians.getAndIncrement();
-                logger.trace("moveCrowd(), " + pedestrian.getCurrentPosition());
-            }
             pedestrian.addPositionToTrajectory();
+            pedestrian.clearPairwiseInteraction();
         }
-        logger.trace("moveCrowd(), -----------------------------");
+        if (crowdOutlineService != null)
+            crowdOutlineService.requestUpdate(this);
+        else
+            updateCrowdOutline(unionOfAllBoundaries);
+        printCurrentPedsInLine();
+    }
 
-        long waitForThreadsToFinish = System.currentTimeMillis();
-        while (movedPedestrians.get() < pedestrians.size())
+    /**
+     * Moves all {@link Pedestrian}s from index {@code start} (inclusive) to index {@code end}
+     * (exclusive) of {@link #pedestrians} using the {@link #numericIntegrator}. Can be called
+     * concurrently for disjoint ranges of {@link Pedestrian}s (cf. {@link #moveCrowd(long,
+     * double)}).
+     * <p>
+     * Important: {@link #setAllPedestrians(List)} needs to be called before this method and
+     * {@link #finishMove()} needs to be called after all {@link Pedestrian}s have been moved
+     *
+     * @param start the index of the first {@link Pedestrian} to be moved
+     * @param end the index after the last {@link Pedestrian} to be moved
+     * @param time the current time stamp in simulated time (given in milliseconds)
+     * @param simulationUpdateInterval the time between 2 consecutive simulation steps given in
+     *            seconds
+     */
+    public void movePedestrians(int start, int end, long time, double simulationUpdateInterval)
+    {
+        for (int i = start; i < end; i++ )
         {
-            try
+            Pedestrian pedestrian = pedestrians.get(i);
+            pedestrian.getMentalModel().updateNormalizedDirectionVector(
+                pedestrian.getCurrentPosition(), time, boundaries,
+                pedestrian.getNormalDesiredVelocity());
+        }
+        numericIntegrator.moveAll(time, simulationUpdateInterval, pedestrians, start, end,
+            new NeighbourProvider()
             {
-                // wait 0.1 milliseconds for pedestrian threads to finish
-                Thread.sleep(0, 100000);
-            }
-            catch (InterruptedException e)
+                @Override
+                public List<Pedestrian> getNeighbours(int index)
+                {
+                    return Crowd.this.getNeighbours(index);
+                }
+            }, boundaries, forceModel);
+        if (logger.isTraceEnabled())
+        {
+            for (int i = start; i < end; i++ )
             {
-                logger.debug("Crowd.movePedestrians(), sleep interrupted", e);
+                logger.trace("moveCrowd(), " + pedestrians.get(i).getCurrentPosition());
             }
-            long threadProcessingTime = System.currentTimeMillis() - waitForThreadsToFinish;
-            // inform user, if threads are not finishing within reasonable time (2 seconds)
-            if (threadProcessingTime > 10000)
-                logger.info("movePedestrians(), threads take too long too finish, totalTime="
-                    + threadProcessingTime / 1000 + "s, moved peds=" + movedPedestrians.get()
-                    + ", total peds=" + pedestrians.size());
         }
-        updateCrowdOutline(unionOfAllBoundaries);
-        printCurrentPedsInLine();
+    }
+
+    /**
+     * First phase of a deterministic move (cf. {@link #setDeterministic(boolean)}) of all
+     * {@link Pedestrian}s from index {@code start} (inclusive) to index {@code end} (exclusive) of
+     * {@link #pedestrians}. Updates the direction vectors and calls
+     * {@link NumericIntegrator#prepareMove(long, Pedestrian, List, BoundaryIndex, ForceModel)}. Can
+     * be called concurrently for disjoint ranges of {@link Pedestrian}s.
+     *
+     * @param start the index of the first {@link Pedestrian} to be prepared
+     * @param end the index after the last {@link Pedestrian} to be prepared
+     * @param time the current time stamp in simulated time (given in milliseconds)
+     */
+    public void prepareMovePedestrians(int start, int end, long time)
+    {
+        for (int i = start; i < end; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            pedestrian.getMentalModel().updateNormalizedDirectionVector(
+                pedestrian.getCurrentPosition(), time, boundaries,
+                pedestrian.getNormalDesiredVelocity());
+            numericIntegrator.prepareMove(time, pedestrian, getNeighbours(i), boundaries,
+                forceModel);
+        }
+    }
+
+    /**
+     * Second phase of a deterministic move (cf. {@link #setDeterministic(boolean)}) of all
+     * {@link Pedestrian}s from index {@code start} (inclusive) to index {@code end} (exclusive) of
+     * {@link #pedestrians}. Calls {@link NumericIntegrator#completeMove(long, double, Pedestrian,
+     * List, BoundaryIndex, ForceModel)}. Must not be called before the first phase has been
+     * finished for all {@link Pedestrian}s. Can be called concurrently for disjoint ranges of
+     * {@link Pedestrian}s.
+     *
+     * @param start the index of the first {@link Pedestrian} to be moved
+     * @param end the index after the last {@link Pedestrian} to be moved
+     * @param time the current time stamp in simulated time (given in milliseconds)
+     * @param simulationUpdateInterval the time between 2 consecutive simulation steps given in
+     *            seconds
+     */
+    public void completeMovePedestrians(int start, int end, long time,
+        double simulationUpdateInterval)
+    {
+        for (int i = start; i < end; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            numericIntegrator.completeMove(time, simulationUpdateInterval, pedestrian,
+                getNeighbours(i), boundaries, forceModel);
+            if (logger.isTraceEnabled())
+                logger.trace("moveCrowd(), " + pedestrian.getCurrentPosition());
+        }
     }
 
     /**
@@ -1038,9 +1477,15 @@ public class Crowd
      */
     public void clear()
     {
-        crowdOutlines = null;
+        synchronized (this)
+        {
+            crowdOutlineGeneration++ ;
+            crowdOutlines = null;
+        }
         // wayPoints.clear();
         pedestrians.clear();
+        pedestrianIndices = new HashMap<>();
+        stateStore = new PedestrianStateStore();
     }
 
 }
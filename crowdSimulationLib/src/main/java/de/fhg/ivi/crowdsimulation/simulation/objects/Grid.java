@@ -1,70 +1,139 @@
 package de.fhg.ivi.crowdsimulation.simulation.objects;
 
-import java.io.IOException;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import org.apache.commons.math3.util.FastMath;
-import org.geotools.data.simple.SimpleFeatureIterator;
-import org.geotools.data.simple.SimpleFeatureSource;
 import org.geotools.geometry.jts.ReferencedEnvelope;
-import org.geotools.grid.Grids;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import com.vividsolutions.jts.geom.Envelope;
-import com.vividsolutions.jts.geom.Geometry;
 
-import de.fhg.ivi.crowdsimulation.simulation.tools.GeometryTools;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ParallelTools;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ParallelTools.ChunkTask;
 
 /**
  * A {@link Grid} is a raster of cells with specifiable {@link #cellSize}. It can be used to
  * aggregate the number of {@link Pedestrian} objects within each cell at a given point of time
+ * <p>
+ * The cell values are stored in a row-major {@code int} array ({@link #cellValues}), starting with
+ * the cell in the lower left corner of the grid bounds. The cell of a {@link Pedestrian} is
+ * computed arithmetically from its position, so that {@link #update(List, long, ExecutorService)}
+ * only needs a single pass over all {@link Pedestrian}s. Each cell contains its lower and left
+ * edge, so that each {@link Pedestrian} is counted in exactly one cell.
  *
  * @author hahmann/meinert
  */
 public class Grid
 {
+    /**
+     * The default minimum time between two consecutive updates of the cell values. Given in
+     * milliseconds. Although an update only needs a single (parallel) pass over all
+     * {@link Pedestrian}s and could be done in each simulation step, the cell values are updated
+     * only once per second by default, since they are only used for painting the density in the
+     * Graphical User Interface. Updates in each simulation step can be switched on by
+     * {@link #setUpdateInterval(long)} with {@code 0}.
+     */
+    public static final long        defaultUpdateInterval = 1000;
+
+    /**
+     * Tolerance used when fitting the cells into the grid bounds, so that rounding errors do not
+     * remove the last row or column.
+     */
+    private static final double     tolerance             = 1e-6;
+
+    /**
+     * The number of consecutive {@link Pedestrian}s, whose cells are computed by a single task.
+     */
+    private static final int        chunkSize             = 1024;
+
+    /**
+     * The x coordinate of the left edge of the cells. Given in meters.
+     */
+    private double                  minX;
 
     /**
-     * Uses the object logger for printing specific messages in the console.
+     * The y coordinate of the lower edge of the cells. Given in meters.
      */
-    private static final Logger    logger          = LoggerFactory.getLogger(Grid.class);
+    private double                  minY;
 
     /**
-     * A map of {@link Envelope} objects (i.e. representing the cells of this Grid) that stores an
-     * {@link Integer} value for each grid cell.
+     * The number of columns of cells.
      */
-    private Map<Envelope, Integer> gridCells;
+    private int                     columns;
+
+    /**
+     * The number of rows of cells.
+     */
+    private int                     rows;
+
+    /**
+     * The number of {@link Pedestrian}s per cell in row-major order, i.e. the value of the cell in
+     * {@code column} and {@code row} is stored at the index {@code row * columns + column}. The
+     * array is replaced as a whole by {@link #update(List, long, ExecutorService)}, so that it can
+     * be read concurrently (cf. {@link #getCellValues()}). {@code null}, if this {@link Grid} has
+     * been cleared.
+     */
+    private volatile CellValues     cellValues;
+
+    /**
+     * The {@link CellValues}, which have been replaced by the last call of
+     * {@link #update(List, long, ExecutorService)}. Their array is reused for counting in the next
+     * call, if it has never been read, so that an array is only allocated for an update, if a
+     * reader may still hold the previous one.
+     */
+    private CellValues              spareCellValues;
+
+    /**
+     * The cell indices of the {@link Pedestrian}s computed in the last call of
+     * {@link #update(List, long, ExecutorService)} or {@code -1} for {@link Pedestrian}s outside
+     * of this {@link Grid}.
+     */
+    private int[]                   pedestrianCells;
+
+    /**
+     * Read-only view on the cells, cf. {@link #getGridCells()}.
+     */
+    private Map<Envelope, Integer>  gridCells;
 
     /**
      * Unix time stamp of the last full update of the aggregate value associated to each grid cell.
      */
-    private long                   lastUpdateTime;
+    private long                    lastUpdateTime;
+
+    /**
+     * The minimum time between two consecutive updates of the cell values. Given in milliseconds.
+     */
+    private long                    updateInterval        = defaultUpdateInterval;
 
     /**
      * The cell size of the grid. Given in meters.
      */
-    private double                 cellSize;
+    private double                  cellSize;
 
     /**
      * The default cell size of the grid. Given in meters.
      */
-    private double                 defaultCellSize = 10d;
+    private double                  defaultCellSize       = 10d;
 
     /**
      * The maximum amount of cells this grid should have.
      */
-    private double                 maxCells        = 1000000;
+    private double                  maxCells              = 1000000;
 
     /**
-     * Indicates, if the {@link #gridCells} should be updated each time {@link #update(List, long)}
-     * is called. Usually, it is unnecessary to do so, if the {@link Grid} is not visible in the
-     * Graphical User Interface, since it is currently unused elsewhere.
+     * Indicates, if the {@link #cellValues} should be updated each time
+     * {@link #update(List, long, ExecutorService)} is called. Usually, it is unnecessary to do so,
+     * if the {@link Grid} is not visible in the Graphical User Interface, since it is currently
+     * unused elsewhere.
      */
-    private boolean                isUpdating      = false;
+    private boolean                 isUpdating            = false;
 
     /**
      * Creates a new grid with a cell size of {@link #defaultCellSize} that fits into
@@ -74,51 +143,123 @@ public class Grid
      */
     public Grid(ReferencedEnvelope gridBounds)
     {
-        gridCells = new HashMap<>();
         lastUpdateTime = 0;
         double dynamicCellSize = FastMath.sqrt(gridBounds.getArea() / maxCells);
         double staticCellSize = defaultCellSize;
         this.cellSize = gridBounds.getArea() / (defaultCellSize * defaultCellSize) < maxCells
             ? staticCellSize : dynamicCellSize;
-        SimpleFeatureSource grid = Grids.createSquareGrid(gridBounds, cellSize);
-        @SuppressWarnings("resource")
-        SimpleFeatureIterator features = null;
-        try
-        {
-            features = grid.getFeatures().features();
-            while (features.hasNext())
-            {
-                Geometry gridCell = (Geometry) features.next().getDefaultGeometry();
-                gridCells.put(gridCell.getEnvelopeInternal(), 0);
-            }
-        }
-        catch (NoSuchElementException e)
-        {
-            logger.error("Grid.createGrid(), ", e);
 
-        }
-        catch (IOException e)
-        {
-            logger.error("Grid.createGrid(), ", e);
-        }
-        finally
+        // only cells lying completely inside of the grid bounds
+        this.minX = gridBounds.getMinX();
+        this.minY = gridBounds.getMinY();
+        if (cellSize > 0)
         {
-            if (features != null)
-                features.close();
+            this.columns = (int) Math.floor(gridBounds.getWidth() / cellSize + tolerance);
+            this.rows = (int) Math.floor(gridBounds.getHeight() / cellSize + tolerance);
         }
+        this.cellValues = new CellValues(new int[columns * rows]);
+        this.pedestrianCells = new int[0];
+        this.gridCells = new GridCellView();
     }
 
     /**
      * Gets the map of {@link Envelope} objects (i.e. representing the cells of the Grid) that
      * stores an {@link Integer} value for each grid cell
+     * <p>
+     * The map is a read-only view on the current cell values, which creates the {@link Envelope}
+     * of each cell on demand. Iterating over all cells using {@link #getColumns()},
+     * {@link #getRows()} and {@link #getCellValue(int, int)} avoids this.
      *
-     * @return the map of grid cells and associated cell values for this {@link Grid} object
+     * @return the map of grid cells and associated cell values for this {@link Grid} object or
+     *         {@code null}, if this {@link Grid} has been cleared
      */
     public Map<Envelope, Integer> getGridCells()
     {
+        if (cellValues == null)
+            return null;
         return gridCells;
     }
 
+    /**
+     * Gets the number of columns of cells of this {@link Grid}.
+     *
+     * @return the number of columns
+     */
+    public int getColumns()
+    {
+        return columns;
+    }
+
+    /**
+     * Gets the number of rows of cells of this {@link Grid}.
+     *
+     * @return the number of rows
+     */
+    public int getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Gets the x coordinate of the left edge of the cells in the first column. Given in meters.
+     *
+     * @return the x coordinate of the left edge of this {@link Grid}
+     */
+    public double getMinX()
+    {
+        return minX;
+    }
+
+    /**
+     * Gets the y coordinate of the lower edge of the cells in the first row. Given in meters.
+     *
+     * @return the y coordinate of the lower edge of this {@link Grid}
+     */
+    public double getMinY()
+    {
+        return minY;
+    }
+
+    /**
+     * Gets the value of a cell, i.e. the number of {@link Pedestrian}s in the cell at the last
+     * update.
+     *
+     * @param column the column of the cell between {@code 0} and {@link #getColumns()}
+     * @param row the row of the cell between {@code 0} and {@link #getRows()}
+     * @return the value of the cell or {@code 0}, if this {@link Grid} has been cleared
+     */
+    public int getCellValue(int column, int row)
+    {
+        int[] values = getCellValues();
+        if (values == null)
+            return 0;
+        return values[row * columns + column];
+    }
+
+    /**
+     * Gets the current array of the cell values and marks it as read, so that it is never reused
+     * by {@link #update(List, long, ExecutorService)}. Hence, the returned array is never modified
+     * afterwards, even if it is held by a reader for longer than the {@link #updateInterval}.
+     *
+     * @return the current array of the cell values or {@code null}, if this {@link Grid} has been
+     *         cleared
+     */
+    private int[] getCellValues()
+    {
+        while (true)
+        {
+            CellValues current = cellValues;
+            if (current == null)
+                return null;
+            if ( !current.isRead)
+                current.isRead = true;
+            // otherwise, update() may have decided to reuse the array before it has been marked,
+            // hence the new current values are read
+            if ( !current.isRecycled)
+                return current.values;
+        }
+    }
+
     /**
      * The cell size of the grid. Given in meters
      *
@@ -129,6 +270,39 @@ public class Grid
         return cellSize;
     }
 
+    /**
+     * Gets the minimum time between two consecutive updates of the cell values. Given in
+     * milliseconds.
+     *
+     * @return the minimum time between two consecutive updates
+     */
+    public long getUpdateInterval()
+    {
+        return updateInterval;
+    }
+
+    /**
+     * Sets the minimum time between two consecutive updates of the cell values. Given in
+     * milliseconds. If {@code 0}, the cell values are updated in each simulation step.
+     *
+     * @param updateInterval the minimum time between two consecutive updates
+     */
+    public void setUpdateInterval(long updateInterval)
+    {
+        this.updateInterval = updateInterval;
+    }
+
+    /**
+     * Tests, if this {@link Grid} is currently updating all its cell values
+     *
+     * @return {@code true} if this {@link Grid} is currently updating all its cell values,
+     *         {@code false} otherwise
+     */
+    public boolean isUpdating()
+    {
+        return isUpdating;
+    }
+
     /**
      * Indicate, if this {@link Grid} is currently updating all its cell values
      *
@@ -140,47 +314,266 @@ public class Grid
         this.isUpdating = isUpdating;
     }
 
+    /**
+     * Tests, if the next call of {@link #update(List, long, ExecutorService)} at
+     * {@code currentTime} would update the cell values, i.e. if this {@link Grid} is updating, has
+     * not been cleared and the last update is at least {@link #updateInterval} ago.
+     *
+     * @param currentTime the current time stamp
+     * @return {@code true}, if the cell values would be updated at {@code currentTime}
+     */
+    public boolean isUpdateNecessary(long currentTime)
+    {
+        return isUpdating && cellValues != null && currentTime - lastUpdateTime >= updateInterval;
+    }
+
     /**
      * Updates this {@link Grid} object, i.e. all cell values are updated by the aggregated number
      * of {@link Pedestrian} objects contained in each cell.
      *
      * @param pedestrians a {@link List} of {@link Pedestrian} objects that should be counted per
      *            grid cell
-     * @param currentTime the current time stamp (the Grid is only updated if last update is more
-     *            than 1000ms ago)
+     * @param currentTime the current time stamp (the Grid is only updated if the last update is at
+     *            least {@link #updateInterval} ago)
      */
     public void update(List<Pedestrian> pedestrians, long currentTime)
     {
-        if ( !isUpdating)
-            return;
+        update(pedestrians, currentTime, null);
+    }
 
-        boolean pastTime = currentTime - lastUpdateTime > 1000;
+    /**
+     * Updates this {@link Grid} object, i.e. all cell values are updated by the aggregated number
+     * of {@link Pedestrian} objects contained in each cell. The cells of the {@link Pedestrian}s
+     * are computed in parallel using {@code threadPool}, the {@link Pedestrian}s are counted
+     * afterwards in a single pass.
+     *
+     * @param pedestrians a {@link List} of {@link Pedestrian} objects that should be counted per
+     *            grid cell
+     * @param currentTime the current time stamp (the Grid is only updated if the last update is at
+     *            least {@link #updateInterval} ago)
+     * @param threadPool the {@link ExecutorService} used for parallel processing, may be
+     *            {@code null}
+     */
+    public void update(final List<Pedestrian> pedestrians, long currentTime,
+        ExecutorService threadPool)
+    {
+        if ( !isUpdateNecessary(currentTime))
+            return;
 
-        if (pastTime)
-        {
-            for (Map.Entry<Envelope, Integer> gridCell : gridCells.entrySet())
+        if (pedestrianCells.length < pedestrians.size())
+            pedestrianCells = new int[pedestrians.size()];
+        final int[] cells = pedestrianCells;
+        ParallelTools.invokeChunked(threadPool, pedestrians.size(), chunkSize, new ChunkTask()
             {
-                gridCell.setValue(0);
-            }
-            for (Map.Entry<Envelope, Integer> gridCell : gridCells.entrySet())
-            {
-                for (Pedestrian pedestrian : pedestrians)
+                @Override
+                public void run(int start, int end)
                 {
-                    if (GeometryTools.isInside(pedestrian.getCurrentPosition(), gridCell.getKey()))
+                    for (int i = start; i < end; i++ )
                     {
-                        gridCell.setValue(gridCell.getValue() + 1);
+                        Pedestrian pedestrian = pedestrians.get(i);
+                        cells[i] = getCellIndex(pedestrian.getCurrentPositionX(),
+                            pedestrian.getCurrentPositionY());
                     }
                 }
+            });
+
+        // count into the spare array, so that readers never see partially updated values, unless a
+        // reader may still hold it (cf. getCellValues())
+        int[] values = null;
+        CellValues spare = spareCellValues;
+        if (spare != null)
+        {
+            spare.isRecycled = true;
+            if ( !spare.isRead && spare.values.length == columns * rows)
+            {
+                values = spare.values;
+                Arrays.fill(values, 0);
             }
-            lastUpdateTime = currentTime;
         }
+        if (values == null)
+            values = new int[columns * rows];
+        for (int i = 0; i < pedestrians.size(); i++ )
+        {
+            if (cells[i] >= 0)
+                values[cells[i]]++ ;
+        }
+        spareCellValues = cellValues;
+        cellValues = new CellValues(values);
+        lastUpdateTime = currentTime;
+    }
+
+    /**
+     * Gets the index of the cell containing the given position in the array of the cell values.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     * @return the index of the cell or {@code -1}, if the position is outside of this {@link Grid}
+     */
+    private int getCellIndex(double x, double y)
+    {
+        double column = Math.floor((x - minX) / cellSize);
+        double row = Math.floor((y - minY) / cellSize);
+        // also false for NaN
+        if ( !(column >= 0 && column < columns && row >= 0 && row < rows))
+            return -1;
+        return (int) row * columns + (int) column;
     }
 
     /**
-     * Sets {@link #gridCells} to {@code null}.
+     * Sets the cell values of this {@link Grid} to {@code null}.
      */
     public void clear()
     {
-        gridCells = null;
+        cellValues = null;
+    }
+
+    /**
+     * Read-only {@link Map} view on the cells of a {@link Grid}, which maps the {@link Envelope} of
+     * each cell to its current value.
+     */
+    private class GridCellView extends AbstractMap<Envelope, Integer>
+    {
+        /**
+         * Gets the value of the cell with the given {@link Envelope} without iterating over all
+         * cells.
+         *
+         * @see java.util.AbstractMap#get(java.lang.Object)
+         */
+        @Override
+        public Integer get(Object key)
+        {
+            int index = indexOf(key);
+            if (index < 0)
+                return null;
+            int[] values = getCellValues();
+            return values == null ? null : Integer.valueOf(values[index]);
+        }
+
+        @Override
+        public boolean containsKey(Object key)
+        {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size()
+        {
+            return columns * rows;
+        }
+
+        @Override
+        public Set<Map.Entry<Envelope, Integer>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<Envelope, Integer>>()
+                {
+                    @Override
+                    public Iterator<Map.Entry<Envelope, Integer>> iterator()
+                    {
+                        return new Iterator<Map.Entry<Envelope, Integer>>()
+                            {
+                                /**
+                                 * The values of the cells at the creation of this
+                                 * {@link Iterator}.
+                                 */
+                                private final int[] values = getCellValues();
+
+                                /**
+                                 * The index of the next cell.
+                                 */
+                                private int         index;
+
+                                @Override
+                                public boolean hasNext()
+                                {
+                                    return values != null && index < values.length;
+                                }
+
+                                @Override
+                                public Map.Entry<Envelope, Integer> next()
+                                {
+                                    if ( !hasNext())
+                                        throw new NoSuchElementException();
+                                    Envelope envelope = getEnvelope(index);
+                                    int value = values[index];
+                                    index++ ;
+                                    return new AbstractMap.SimpleImmutableEntry<>(envelope,
+                                        value);
+                                }
+                            };
+                    }
+
+                    @Override
+                    public int size()
+                    {
+                        return columns * rows;
+                    }
+                };
+        }
+
+        /**
+         * Creates the {@link Envelope} of the cell at {@code index}.
+         *
+         * @param index the index of the cell in the array of the cell values
+         * @return the {@link Envelope} of the cell
+         */
+        private Envelope getEnvelope(int index)
+        {
+            double cellMinX = minX + (index % columns) * cellSize;
+            double cellMinY = minY + (index / columns) * cellSize;
+            return new Envelope(cellMinX, cellMinX + cellSize, cellMinY, cellMinY + cellSize);
+        }
+
+        /**
+         * Gets the index of the cell with the given {@link Envelope}.
+         *
+         * @param key the {@link Envelope} of a cell
+         * @return the index of the cell or {@code -1}, if {@code key} is not the {@link Envelope}
+         *         of a cell of this {@link Grid}
+         */
+        private int indexOf(Object key)
+        {
+            if ( !(key instanceof Envelope))
+                return -1;
+            Envelope envelope = (Envelope) key;
+            int index = getCellIndex(envelope.centre().x, envelope.centre().y);
+            if (index < 0 || !getEnvelope(index).equals(envelope))
+                return -1;
+            return index;
+        }
+    }
+
+    /**
+     * The array of the cell values of a single update of a {@link Grid} together with the flags,
+     * which decide, whether the array may be reused by a later update. The array may only be
+     * reused, if it has not been read before {@link #isRecycled} has been set (cf.
+     * {@link Grid#getCellValues()}).
+     */
+    private static class CellValues
+    {
+        /**
+         * The number of {@link Pedestrian}s per cell in row-major order.
+         */
+        private final int[]      values;
+
+        /**
+         * {@code true}, if {@link #values} has been read.
+         */
+        private volatile boolean isRead;
+
+        /**
+         * {@code true}, if {@link Grid#update(List, long, ExecutorService)} has decided, whether
+         * to reuse {@link #values}.
+         */
+        private volatile boolean isRecycled;
+
+        /**
+         * Creates new {@link CellValues}.
+         *
+         * @param values the number of {@link Pedestrian}s per cell in row-major order
+         */
+        private CellValues(int[] values)
+        {
+            this.values = values;
+        }
     }
 }
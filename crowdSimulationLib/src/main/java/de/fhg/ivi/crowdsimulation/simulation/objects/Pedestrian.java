@@ -10,8 +10,11 @@ import org.slf4j.LoggerFactory;
 import com.vividsolutions.jts.geom.Geometry;
 
 import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.HelbingModel;
 import de.fhg.ivi.crowdsimulation.simulation.mentalmodel.FollowWayPointsMentalModel;
 import de.fhg.ivi.crowdsimulation.simulation.mentalmodel.WayFindingModel;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.MultiRateIntegrator;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator;
 import math.geom2d.Vector2D;
 
 /**
@@ -23,11 +26,13 @@ import math.geom2d.Vector2D;
  * {@link Pedestrian}. These forces are:
  *
  * <li>intrinsic forces of each {@link Pedestrian}, see
- * {@link Pedestrian#intrinsicForce(Vector2D, Vector2D, long, ForceModel)}</li>
+ * {@link Pedestrian#intrinsicForce(double, double, double, double, double, double, long, ForceModel, double[])}</li>
  * <li>an extrinsic force resulting of the repulsion between {@link Pedestrian} and
- * {@link Boundary}, see {@link Pedestrian#interactBoundaries(Vector2D, List, ForceModel)}</li>
+ * {@link Boundary}, see
+ * {@link Pedestrian#interactBoundaries(double, double, double, double, BoundaryIndex, ForceModel, double[])}</li>
  * <li>an extrinsic force resulting of the repulsion between a {@link Pedestrian} and another
- * {@link Pedestrian}, see {@link Pedestrian#interactPedestrians(Vector2D, List, ForceModel)}</li>
+ * {@link Pedestrian}, see
+ * {@link Pedestrian#interactPedestrians(double, double, double, double, List, ForceModel, double[])}</li>
  *
  * <p>
  *
@@ -39,76 +44,87 @@ public class Pedestrian implements Clusterable, Cloneable
     /**
      * Uses the object logger for printing specific messages in the console.
      */
-    private static final Logger logger = LoggerFactory.getLogger(Pedestrian.class);
+    private static final Logger  logger = LoggerFactory.getLogger(Pedestrian.class);
 
     /**
      * Identification of this {@link Pedestrian}. Required for {@link Cloneable} interface.
      */
-    private int                 id;
+    private int                  id;
 
     /**
      * Starting x, y position as {@link Vector2D} of the {@link Pedestrian}. This updated, when
      * {@link #setWayPoints(List)} is called.
      */
-    private Vector2D            initialPositionVector;
+    private Vector2D             initialPositionVector;
 
     /**
-     * Current approximated x, y position as {@link Vector2D} of the {@link Pedestrian}.
+     * The {@link PedestrianStateStore} containing the current position, the current velocity and
+     * the current forces of this {@link Pedestrian} together with the slot of this
+     * {@link Pedestrian} in it. Both are published together in a single volatile field, so that a
+     * concurrent reader (e.g. the painting thread) never sees a new {@link PedestrianStateStore}
+     * with an old slot (cf. {@link #setStateStore(PedestrianStateStore)}).
      */
-    private Vector2D            currentPositionVector;
-
-    /**
-     * Current velocity as {@link Vector2D} of the {@link Pedestrian}.
-     */
-    private Vector2D            currentVelocityVector;
+    private volatile StateSlot   state;
 
     /**
      * The desired velocity that this {@link Pedestrian} initially wants to reach (without being
      * "delayed") given in m/s.
      */
-    private float               normalDesiredVelocity;
+    private float                normalDesiredVelocity;
 
     /**
      * The maximal desired velocity the {@link Pedestrian} can reach (when being "delayed") given in
      * m/s.
      */
-    private float               maximumDesiredVelocity;
+    private float                maximumDesiredVelocity;
 
     /**
-     * Is the resulting force, of all acting forces, which denotes the {@link Pedestrian} movement.
+     * list of pedestrian positions to export a LineString of pedestrian movement
+     *
+     * @author Martin Knura
      */
-    private Vector2D            totalForce;
+    private List<Vector2D>       trajectory;
 
     /**
-     * Force vector that results from the interaction of this {@link Pedestrian} with all
-     * surrounding {@link Pedestrian} objects.
+     * Object of the {@link WayFindingModel}
      */
-    private Vector2D            forceInteractionWithPedestrians;
+    protected WayFindingModel    wayFindingModel;
 
     /**
-     * Force Vector that results from the interaction of this {@link Pedestrian} with all
-     * surrounding {@link Boundary} objects.
+     * Buffer for the allocation-free force computation of the {@link ForceModel}, cf.
+     * {@link ForceModel#forceBufferLength}. Created on demand and not shared with clones.
      */
-    private Vector2D            forceInteractionWithBoundaries;
+    private double[]             forceBuffer;
 
     /**
-     * Sum of all {@link #totalForce} extrinsic forces (currently
-     * {@link #forceInteractionWithBoundaries} and {@link #forceInteractionWithPedestrians}) that
-     * influence the movement of this {@link Pedestrian}.
+     * Buffer for the x components of the positions of the other {@link Pedestrian}s, which are
+     * packed for {@link ForceModel#interactPedestrians(double, double, double, double, double[],
+     * double[], int, double[])}. Created on demand and not shared with clones.
      */
-    private Vector2D            totalExtrinsicForces;
+    private double[]             otherPositionsX;
 
     /**
-     * list of pedestrian positions to export a LineString of pedestrian movement
-     *
-     * @author Martin Knura
+     * Buffer for the y components of the positions of the other {@link Pedestrian}s, which are
+     * packed for {@link ForceModel#interactPedestrians(double, double, double, double, double[],
+     * double[], int, double[])}. Created on demand and not shared with clones.
      */
-    private List<Vector2D>      trajectory;
+    private double[]             otherPositionsY;
 
     /**
-     * Object of the {@link WayFindingModel}
+     * The sums of the pedestrian-pedestrian interaction, which have been computed pair by pair by
+     * {@link PedestrianPairForces} for the position stored in the elements {@code 0} and {@code 1}
+     * (cf. {@link HelbingModel#interactPedestrians(double, double, double[], int, double[])}, which
+     * starts at element {@code 2}). Element {@code 0} is {@link Double#NaN}, if no sums are
+     * available. Created on demand and not shared with clones.
+     */
+    private double[]             pairwiseInteraction;
+
+    /**
+     * State of the {@link NumericIntegrator}, which is specific for this {@link Pedestrian} and
+     * kept between two simulation steps (e.g. by the {@link MultiRateIntegrator}). Not shared with
+     * clones.
      */
-    protected WayFindingModel   wayFindingModel;
+    private Object               integratorState;
 
     /**
      * Creates a new {@link Pedestrian} object and initializes the variables the {@link Pedestrian}
@@ -136,6 +152,7 @@ public class Pedestrian implements Clusterable, Cloneable
         List<WayPoint> wayPoints)
     {
         this.id = id;
+        this.state = new StateSlot(new PedestrianStateStore(1));
         this.initialPositionVector = new Vector2D(initialPositionX, initialPositionY);
         this.wayFindingModel = new FollowWayPointsMentalModel(wayPoints,
             this.initialPositionVector);
@@ -180,6 +197,7 @@ public class Pedestrian implements Clusterable, Cloneable
         List<WayPoint> wayPoints, String wayFindModel)
     {
         this.id = id;
+        this.state = new StateSlot(new PedestrianStateStore(1));
         this.initialPositionVector = new Vector2D(initialPositionX, initialPositionY);
         this.wayFindingModel = new FollowWayPointsMentalModel(wayPoints,
             this.initialPositionVector);
@@ -195,22 +213,41 @@ public class Pedestrian implements Clusterable, Cloneable
     }
 
     /**
-     * Implementation of {@link Cloneable} interface. Creates new instances of
-     * {@link #currentPositionVector}, {@link #currentVelocityVector}.
+     * Implementation of {@link Cloneable} interface. Copies the current position, the current
+     * velocity and the current forces into a new {@link PedestrianStateStore}, i.e. the clone is
+     * not affected by later changes of this {@link Pedestrian}.
      *
-     * Does not create deep clones of force vectors, {@link #initialPositionVector},
-     * {@link #wayFindingModel}
+     * Does not create deep clones of {@link #initialPositionVector}, {@link #wayFindingModel}
      *
      * @see java.lang.Object#clone()
      */
     @Override
     public Pedestrian clone()
+    {
+        return clone(new PedestrianStateStore(1));
+    }
+
+    /**
+     * Creates a clone of this {@link Pedestrian} (cf. {@link #clone()}), whose current position,
+     * current velocity and current forces are copied into a new slot of {@code stateStore}. This
+     * allows to store the state of a large number of clones contiguously.
+     *
+     * @param stateStore the {@link PedestrianStateStore} to store the state of the clone
+     * @return the clone of this {@link Pedestrian}
+     */
+    public Pedestrian clone(PedestrianStateStore stateStore)
     {
         try
         {
             Pedestrian clone = (Pedestrian) super.clone();
-            clone.setCurrentPosition(this.getCurrentPosition().clone());
-            clone.setCurrentVelocity(this.getCurrentVelocity().clone());
+            StateSlot state = this.state;
+            clone.state = new StateSlot(stateStore);
+            clone.forceBuffer = null;
+            clone.otherPositionsX = null;
+            clone.otherPositionsY = null;
+            clone.integratorState = null;
+            clone.pairwiseInteraction = null;
+            stateStore.copy(clone.state.slot, state.stateStore, state.slot);
             clone.setNormalDesiredVelocity(this.getNormalDesiredVelocity());
             clone.setMaximumDesiredVelocity(this.getMaximumDesiredVelocity());
             return clone;
@@ -222,6 +259,24 @@ public class Pedestrian implements Clusterable, Cloneable
         return null;
     }
 
+    /**
+     * Overwrites the current position, the current velocity, the current forces, the desired
+     * velocities and the {@link WayFindingModel} of this {@link Pedestrian} with those of
+     * {@code pedestrian}. This allows to update a clone (cf. {@link #clone()}) without creating a
+     * new one.
+     *
+     * @param pedestrian the {@link Pedestrian} to copy from
+     */
+    public void copyState(Pedestrian pedestrian)
+    {
+        StateSlot state = this.state;
+        StateSlot otherState = pedestrian.state;
+        state.stateStore.copy(state.slot, otherState.stateStore, otherState.slot);
+        this.normalDesiredVelocity = pedestrian.normalDesiredVelocity;
+        this.maximumDesiredVelocity = pedestrian.maximumDesiredVelocity;
+        this.wayFindingModel = pedestrian.wayFindingModel;
+    }
+
     /**
      * Tests if two Pedestrians equal each other using {@link #getId()} method
      *
@@ -270,14 +325,62 @@ public class Pedestrian implements Clusterable, Cloneable
     }
 
     /**
-     * Gets the {@link #currentPositionVector} as {@link Clusterable}.
+     * Gets the current position as {@link Clusterable}.
      *
      * @see org.apache.commons.math3.ml.clustering.Clusterable#getPoint()
      */
     @Override
     public double[] getPoint()
     {
-        return new double[] { currentPositionVector.x(), currentPositionVector.y() };
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        return new double[] { stateStore.getPositionX(slot), stateStore.getPositionY(slot) };
+    }
+
+    /**
+     * Gets the {@link PedestrianStateStore} containing the current position, the current velocity
+     * and the current forces of this {@link Pedestrian}. Since the {@link PedestrianStateStore} and
+     * the slot (cf. {@link #getSlot()}) are read separately, this must be called only by the
+     * thread, which calls {@link #setStateStore(PedestrianStateStore)}, e.g. by the
+     * {@link NumericIntegrator}s. Other threads use the getters of the current position and
+     * velocity, which read both at once.
+     *
+     * @return the {@link PedestrianStateStore} of this {@link Pedestrian}
+     */
+    public PedestrianStateStore getStateStore()
+    {
+        return state.stateStore;
+    }
+
+    /**
+     * Gets the slot of this {@link Pedestrian} in its {@link PedestrianStateStore} (cf.
+     * {@link #getStateStore()}).
+     *
+     * @return the slot of this {@link Pedestrian}
+     */
+    public int getSlot()
+    {
+        return state.slot;
+    }
+
+    /**
+     * Moves the current position, the current velocity and the current forces of this
+     * {@link Pedestrian} into a new slot of {@code stateStore} and releases its old slot. Must not
+     * be called while a simulation step is computed.
+     *
+     * @param stateStore the new {@link PedestrianStateStore} of this {@link Pedestrian}
+     */
+    public void setStateStore(PedestrianStateStore stateStore)
+    {
+        StateSlot oldState = this.state;
+        if (oldState.stateStore == stateStore)
+            return;
+        StateSlot newState = new StateSlot(stateStore);
+        stateStore.copy(newState.slot, oldState.stateStore, oldState.slot);
+        // publish the new store and slot at once and release the old slot only afterwards
+        this.state = newState;
+        oldState.stateStore.release(oldState.slot);
     }
 
     /**
@@ -291,13 +394,16 @@ public class Pedestrian implements Clusterable, Cloneable
     }
 
     /**
-     * Gets the {@link #currentPositionVector} of a {@link Pedestrian}.
+     * Gets the current approximated x, y position as {@link Vector2D} of a {@link Pedestrian}.
      *
-     * @return the {@link #currentPositionVector}
+     * @return the current position
      */
     public Vector2D getCurrentPosition()
     {
-        return currentPositionVector;
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        return new Vector2D(stateStore.getPositionX(slot), stateStore.getPositionY(slot));
     }
 
     /**
@@ -308,17 +414,45 @@ public class Pedestrian implements Clusterable, Cloneable
      */
     public void setCurrentPosition(Vector2D currentPosition)
     {
-        this.currentPositionVector = currentPosition;
+        StateSlot state = this.state;
+        state.stateStore.setPosition(state.slot, currentPosition.x(), currentPosition.y());
+    }
+
+    /**
+     * Gets the x component of the current position of the {@link Pedestrian} without creating any
+     * objects.
+     *
+     * @return the x component of the current position
+     */
+    public double getCurrentPositionX()
+    {
+        StateSlot state = this.state;
+        return state.stateStore.getPositionX(state.slot);
+    }
+
+    /**
+     * Gets the y component of the current position of the {@link Pedestrian} without creating any
+     * objects.
+     *
+     * @return the y component of the current position
+     */
+    public double getCurrentPositionY()
+    {
+        StateSlot state = this.state;
+        return state.stateStore.getPositionY(state.slot);
     }
 
     /**
-     * Gets the {@link #currentVelocityVector}.
+     * Gets the current velocity as {@link Vector2D} of the {@link Pedestrian}.
      *
-     * @return the {@link #currentVelocityVector}
+     * @return the current velocity
      */
     public Vector2D getCurrentVelocity()
     {
-        return currentVelocityVector;
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        return new Vector2D(stateStore.getVelocityX(slot), stateStore.getVelocityY(slot));
     }
 
     /**
@@ -326,11 +460,14 @@ public class Pedestrian implements Clusterable, Cloneable
      */
     public void addPositionToTrajectory()
     {
-
-        if ( !(Double.isNaN(this.getCurrentPosition().x())
-            || Double.isNaN(this.getCurrentPosition().y())))
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        double x = stateStore.getPositionX(slot);
+        double y = stateStore.getPositionY(slot);
+        if ( !(Double.isNaN(x) || Double.isNaN(y)))
         {
-            this.trajectory.add(new Vector2D(currentPositionVector.x(), currentPositionVector.y()));
+            this.trajectory.add(new Vector2D(x, y));
         }
     }
 
@@ -445,12 +582,14 @@ public class Pedestrian implements Clusterable, Cloneable
      */
     public String currentPosition2JSON()
     {
-
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
         String wktTyp = new String("    { \"type\": \"Feature\",\n" + "        \"geometry\": {\n"
             + "          \"type\": \"Point\",\n" + "          \"coordinates\": [");
-        String wktCoords = new String(String.valueOf(currentPositionVector.x()));
+        String wktCoords = new String(String.valueOf(stateStore.getPositionX(slot)));
         wktCoords = wktCoords + new String(", ");
-        wktCoords = wktCoords + new String(String.valueOf( -currentPositionVector.y()));
+        wktCoords = wktCoords + new String(String.valueOf( -stateStore.getPositionY(slot)));
         String wktEnd = new String("]\r\n        }\r\n     }");
         return wktTyp + wktCoords + wktEnd;
     }
@@ -462,25 +601,28 @@ public class Pedestrian implements Clusterable, Cloneable
      */
     public String currentPosition2JSONLine()
     {
-
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
         String wktTyp = new String("{\"type\":\"Feature\"," + "\"geometry\":{"
             + "\"type\":\"Point\"," + "\"coordinates\": [");
-        String wktCoords = new String(String.valueOf(currentPositionVector.x()));
+        String wktCoords = new String(String.valueOf(stateStore.getPositionX(slot)));
         wktCoords = wktCoords + new String(", ");
-        wktCoords = wktCoords + new String(String.valueOf( -currentPositionVector.y()));
+        wktCoords = wktCoords + new String(String.valueOf( -stateStore.getPositionY(slot)));
         String wktEnd = new String("]}}");
         return wktTyp + wktCoords + wktEnd;
     }
 
     /**
-     * Sets the {@link #currentVelocityVector}, which denotes the approximated velocity of the
+     * Sets the current velocity, which denotes the approximated velocity of the
      * {@link Pedestrian}.
      *
      * @param currentVelocity denotes the approximated velocity of the {@link Pedestrian}
      */
     public void setCurrentVelocity(Vector2D currentVelocity)
     {
-        this.currentVelocityVector = currentVelocity;
+        StateSlot state = this.state;
+        state.stateStore.setVelocity(state.slot, currentVelocity.x(), currentVelocity.y());
     }
 
     /**
@@ -546,14 +688,22 @@ public class Pedestrian implements Clusterable, Cloneable
      * with all surrounding {@link Pedestrian} objects.
      *
      * Please note: this methods only returns the value of the force, without re-computing it. For
-     * re-computing {@link #getForces(Vector2D, Vector2D, long, List, List, ForceModel)} needs to be
+     * re-computing
+     * {@link #getForces(Vector2D, Vector2D, long, List, BoundaryIndex, ForceModel)} needs to be
      * called.
      *
-     * @return the current force vector for Pedestrian-Pedestrian interaction.
+     * @return the current force vector for Pedestrian-Pedestrian interaction or {@code null}, if
+     *         it has not been computed yet
      */
     public Vector2D getForceInteractionWithPedestrians()
     {
-        return forceInteractionWithPedestrians;
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        double forceX = stateStore.getPedestrianForceX(slot);
+        if (Double.isNaN(forceX))
+            return null;
+        return new Vector2D(forceX, stateStore.getPedestrianForceY(slot));
     }
 
     /**
@@ -561,31 +711,47 @@ public class Pedestrian implements Clusterable, Cloneable
      * with all surrounding {@link Boundary} objects
      *
      * Please note: this methods only returns the value of the force, without re-computing it. For
-     * re-computing {@link #getForces(Vector2D, Vector2D, long, List, List, ForceModel)} needs to be
+     * re-computing
+     * {@link #getForces(Vector2D, Vector2D, long, List, BoundaryIndex, ForceModel)} needs to be
      * called.
      *
-     * @return the current force Vector for Pedestrian-Boundary interaction.
+     * @return the current force Vector for Pedestrian-Boundary interaction or {@code null}, if it
+     *         has not been computed yet
      */
     public Vector2D getForceInteractionWithBoundaries()
     {
-        return forceInteractionWithBoundaries;
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        double forceX = stateStore.getBoundaryForceX(slot);
+        if (Double.isNaN(forceX))
+            return null;
+        return new Vector2D(forceX, stateStore.getBoundaryForceY(slot));
     }
 
     /**
-     * Gets the Sum of all extrinsic forces (i.e. {@link #forceInteractionWithBoundaries} and
-     * {@link #forceInteractionWithPedestrians}) that influence the movement of this
+     * Gets the Sum of all extrinsic forces (i.e. {@link #getForceInteractionWithBoundaries()} and
+     * {@link #getForceInteractionWithPedestrians()}) that influence the movement of this
      * {@link Pedestrian}.
      *
      * Please note: this methods only returns the value of the force, without re-computing it. For
-     * re-computing {@link #getForces(Vector2D, Vector2D, long, List, List, ForceModel)} needs to be
+     * re-computing
+     * {@link #getForces(Vector2D, Vector2D, long, List, BoundaryIndex, ForceModel)} needs to be
      * called.
      *
      * @return the sum of all extrinsic forces from Pedestrian-Pedestrian and Pedestrian-Boundary
-     *         interaction.
+     *         interaction or {@code null}, if they have not been computed yet
      */
     public Vector2D getTotalExtrinsicForces()
     {
-        return totalExtrinsicForces;
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        double forceX = stateStore.getPedestrianForceX(slot);
+        if (Double.isNaN(forceX))
+            return null;
+        return new Vector2D(forceX + stateStore.getBoundaryForceX(slot),
+            stateStore.getPedestrianForceY(slot) + stateStore.getBoundaryForceY(slot));
     }
 
     /**
@@ -599,94 +765,132 @@ public class Pedestrian implements Clusterable, Cloneable
     }
 
     /**
-     * Computes and updates acceleration that is needed to reach the desired velocity and go in the
-     * desired direction.
+     * Computes the acceleration that is needed to reach the desired velocity and go in the desired
+     * direction and adds it to {@code force}.
      *
-     * @param currentPosition denotes the approximated x, y position as {@link Vector2D} of the
+     * @param currentPositionX the x component of the approximated position of the
      *            {@link Pedestrian}
-     * @param currentVelocity the approximated velocity of the {@link Pedestrian}
+     * @param currentPositionY the y component of the approximated position of the
+     *            {@link Pedestrian}
+     * @param currentVelocityX the x component of the approximated velocity of the
+     *            {@link Pedestrian}
+     * @param currentVelocityY the y component of the approximated velocity of the
+     *            {@link Pedestrian}
+     * @param directionX the x component of the normalized direction of the {@link Pedestrian}
+     * @param directionY the y component of the normalized direction of the {@link Pedestrian}
      * @param currentTime current system time in milliseconds
      * @param forceModel the kind of movement calculation which is denoted by the {@link ForceModel}
-     *
-     * @return the {@link Vector2D} vector which resulting from the self-driven velocity and
-     *         direction of pedestrian
+     * @param force the buffer of {@link ForceModel#forceBufferLength} elements, to which the force
+     *            resulting from the self-driven velocity and direction of pedestrian is added
      */
-    private Vector2D intrinsicForce(Vector2D currentPosition, Vector2D currentVelocity,
-        long currentTime, ForceModel forceModel)
+    private void intrinsicForce(double currentPositionX, double currentPositionY,
+        double currentVelocityX, double currentVelocityY, double directionX, double directionY,
+        long currentTime, ForceModel forceModel, double[] force)
     {
         float averageVelocityOnDesiredRoute = normalDesiredVelocity;
 
         // at the beginning no average velocity can be computed due to division by zero
         if (currentTime != wayFindingModel.getStartTime())
         {
-            averageVelocityOnDesiredRoute = wayFindingModel
-                .getAverageVelocityOnRoute(currentPosition, currentTime, false);
+            averageVelocityOnDesiredRoute = wayFindingModel.getAverageVelocityOnRoute(
+                new Vector2D(currentPositionX, currentPositionY), currentTime, false);
         }
 
         // the actual force computation
-        Vector2D resultingForce = forceModel.intrinsicForce(currentPosition, currentVelocity,
-            wayFindingModel.getNormalizedDirectionVector(), averageVelocityOnDesiredRoute,
-            normalDesiredVelocity, maximumDesiredVelocity);
-
-        return resultingForce;
+        forceModel.intrinsicForce(currentPositionX, currentPositionY, currentVelocityX,
+            currentVelocityY, directionX, directionY, averageVelocityOnDesiredRoute,
+            normalDesiredVelocity, maximumDesiredVelocity, force);
     }
 
     /**
-     * Computes and returns the force resulting from pedestrian-pedestrian interaction.
+     * Computes the force resulting from pedestrian-pedestrian interaction and adds it to
+     * {@code force}.
      *
-     * @param currentPosition denotes the approximated x, y position as {@link Vector2D} of the
+     * @param currentPositionX the x component of the approximated position of the
      *            {@link Pedestrian}
+     * @param currentPositionY the y component of the approximated position of the
+     *            {@link Pedestrian}
+     * @param directionX the x component of the normalized direction of the {@link Pedestrian}
+     * @param directionY the y component of the normalized direction of the {@link Pedestrian}
      * @param pedestrians the {@link List} object of all {@link Pedestrian} which interact with the
      *            current {@link Pedestrian}
      * @param forceModel object of the {@link ForceModel}
-     *
-     * @return the {@link Vector2D} vector which describes the force resulting of
-     *         pedestrian-pedestrian interaction
+     * @param force the buffer of {@link ForceModel#forceBufferLength} elements, to which the force
+     *            resulting of pedestrian-pedestrian interaction is added
      */
-    private Vector2D interactPedestrians(Vector2D currentPosition, List<Pedestrian> pedestrians,
-        ForceModel forceModel)
+    private void interactPedestrians(double currentPositionX, double currentPositionY,
+        double directionX, double directionY, List<Pedestrian> pedestrians, ForceModel forceModel,
+        double[] force)
     {
-        Vector2D resultingForce = new Vector2D(0, 0);
+        // sums computed pair by pair are only valid at the position they have been computed for
+        if (pairwiseInteraction != null && pairwiseInteraction[0] == currentPositionX
+            && pairwiseInteraction[1] == currentPositionY && forceModel instanceof HelbingModel)
+        {
+            ((HelbingModel) forceModel).interactPedestrians(directionX, directionY,
+                pairwiseInteraction, 2, force);
+            return;
+        }
+
+        if (otherPositionsX == null || otherPositionsX.length < pedestrians.size())
+        {
+            otherPositionsX = new double[Math.max(pedestrians.size(), 16)];
+            otherPositionsY = new double[otherPositionsX.length];
+        }
 
-        for (Pedestrian pedestrian : pedestrians)
+        // packs the positions of all other pedestrians
+        int count = 0;
+        for (int i = 0; i < pedestrians.size(); i++ )
         {
+            Pedestrian pedestrian = pedestrians.get(i);
             if ( !this.equals(pedestrian))
             {
-                resultingForce = resultingForce.plus(forceModel.interactPedestrian(currentPosition,
-                    wayFindingModel.getNormalizedDirectionVector(), pedestrian));
-
+                otherPositionsX[count] = pedestrian.getCurrentPositionX();
+                otherPositionsY[count] = pedestrian.getCurrentPositionY();
+                count++ ;
             }
         }
-        return resultingForce;
+        forceModel.interactPedestrians(currentPositionX, currentPositionY, directionX, directionY,
+            otherPositionsX, otherPositionsY, count, force);
     }
 
     /**
-     * Computes and returns the force resulting from pedestrian-boundary interaction.
+     * Computes the force resulting from pedestrian-boundary interaction and adds it to
+     * {@code force}. If the {@link BoundaryIndex} provides a {@link BoundaryDistanceField}, only
+     * the interaction with the nearest {@link Boundary} is computed in constant time.
      *
-     * @param currentPosition denotes the approximated x, y position as {@link Vector2D} of the
+     * @param currentPositionX the x component of the approximated position of the
      *            {@link Pedestrian}
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param currentPositionY the y component of the approximated position of the
+     *            {@link Pedestrian}
+     * @param directionX the x component of the normalized direction of the {@link Pedestrian}
+     * @param directionY the y component of the normalized direction of the {@link Pedestrian}
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      * @param forceModel object of the {@link ForceModel}
-     *
-     * @return the {@link Vector2D} vector which describes the force resulting of
-     *         pedestrian-geometry interaction
+     * @param force the buffer of {@link ForceModel#forceBufferLength} elements, to which the force
+     *            resulting of pedestrian-geometry interaction is added
      */
-    private Vector2D interactBoundaries(Vector2D currentPosition, List<Boundary> boundaries,
-        ForceModel forceModel)
+    private void interactBoundaries(double currentPositionX, double currentPositionY,
+        double directionX, double directionY, BoundaryIndex boundaries, ForceModel forceModel,
+        double[] force)
     {
-        Vector2D resultingForce = new Vector2D(0, 0);
-
-        if (boundaries != null && !boundaries.isEmpty())
+        if (boundaries != null && boundaries.getDistanceField() != null)
+        {
+            // precomputed distance to the nearest boundary
+            forceModel.interactBoundary(currentPositionX, currentPositionY, directionX, directionY,
+                boundaries.getDistanceField(), force);
+        }
+        else if (boundaries != null && !boundaries.isEmpty())
         {
-            for (Boundary boundary : boundaries)
+            // only boundaries whose (expanded) bounding box contains the position can interact
+            List<Boundary> candidates = boundaries.getBoundaries(currentPositionX,
+                currentPositionY);
+            for (int i = 0; i < candidates.size(); i++ )
             {
                 // original calculation method
-                resultingForce = resultingForce.plus(forceModel.interactBoundary(currentPosition,
-                    wayFindingModel.getNormalizedDirectionVector(), boundary));
+                forceModel.interactBoundary(currentPositionX, currentPositionY, directionX,
+                    directionY, candidates.get(i), force);
             }
         }
-
-        return resultingForce;
     }
 
     /**
@@ -697,55 +901,178 @@ public class Pedestrian implements Clusterable, Cloneable
      *
      * @param currentTime is the current system time stamp
      * @param pedestrians is a {@link List} which contains all {@link Pedestrian}s
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      * @param forceModel object of the {@link ForceModel}
      *
      * @return the resulting force out of all involved forces as an {@link Vector2D}
      */
     public Vector2D getForces(long currentTime, List<Pedestrian> pedestrians,
-        List<Boundary> boundaries, ForceModel forceModel)
+        BoundaryIndex boundaries, ForceModel forceModel)
     {
-        return this.getForces(getCurrentPosition(), getCurrentVelocity(), currentTime, pedestrians,
-            boundaries, forceModel);
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        updateForces(currentTime, pedestrians, boundaries, forceModel);
+        return new Vector2D(stateStore.getForceX(slot), stateStore.getForceY(slot));
     }
 
     /**
      * Computes and adds the resulting forces out of all forces which influence the behavior of the
      * {@link Pedestrian}s. Part of this forces are the own forces to go with a certain velocity and
      * the two repulsive forces in dependency of the {@code boundaries} and other
-     * {@link Pedestrian}s.
+     * {@link Pedestrian}s. All forces are stored in the {@link PedestrianStateStore} of this
+     * {@link Pedestrian}.
      *
      * @param currentPosition describes the current position of a {@link Pedestrian}
      * @param currentVelocity the current velocity of the {@link Pedestrian}
      * @param currentTime is the current system time stamp
      * @param pedestrians is a {@link List} which contains all {@link Pedestrian}s
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      * @param forceModel object of the {@link ForceModel}
      *
      * @return the resulting force out of all involved forces as an {@link Vector2D}
      */
     public Vector2D getForces(Vector2D currentPosition, Vector2D currentVelocity, long currentTime,
-        List<Pedestrian> pedestrians, List<Boundary> boundaries, ForceModel forceModel)
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        updateForces(currentPosition.x(), currentPosition.y(), currentVelocity.x(),
+            currentVelocity.y(), currentTime, pedestrians, boundaries, forceModel);
+        return new Vector2D(stateStore.getForceX(slot), stateStore.getForceY(slot));
+    }
+
+    /**
+     * Computes the resulting forces at the current position and velocity of this
+     * {@link Pedestrian} (cf. {@link #getForces(long, List, BoundaryIndex, ForceModel)}) and stores
+     * them in the {@link PedestrianStateStore} of this {@link Pedestrian} without creating any
+     * objects.
+     *
+     * @param currentTime is the current system time stamp
+     * @param pedestrians is a {@link List} which contains all {@link Pedestrian}s
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
+     * @param forceModel object of the {@link ForceModel}
+     */
+    public void updateForces(long currentTime, List<Pedestrian> pedestrians,
+        BoundaryIndex boundaries, ForceModel forceModel)
     {
+        StateSlot state = this.state;
+        PedestrianStateStore stateStore = state.stateStore;
+        int slot = state.slot;
+        updateForces(stateStore.getPositionX(slot), stateStore.getPositionY(slot),
+            stateStore.getVelocityX(slot), stateStore.getVelocityY(slot), currentTime, pedestrians,
+            boundaries, forceModel);
+    }
+
+    /**
+     * Computes the resulting forces at the given position and velocity (cf.
+     * {@link #getForces(Vector2D, Vector2D, long, List, BoundaryIndex, ForceModel)}) and stores
+     * them in the {@link PedestrianStateStore} of this {@link Pedestrian}. No objects are created,
+     * except for the computation of the average velocity on the route of the
+     * {@link WayFindingModel}.
+     *
+     * @param currentPositionX the x component of the current position of the {@link Pedestrian}
+     * @param currentPositionY the y component of the current position of the {@link Pedestrian}
+     * @param currentVelocityX the x component of the current velocity of the {@link Pedestrian}
+     * @param currentVelocityY the y component of the current velocity of the {@link Pedestrian}
+     * @param currentTime is the current system time stamp
+     * @param pedestrians is a {@link List} which contains all {@link Pedestrian}s
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
+     * @param forceModel object of the {@link ForceModel}
+     */
+    public void updateForces(double currentPositionX, double currentPositionY,
+        double currentVelocityX, double currentVelocityY, long currentTime,
+        List<Pedestrian> pedestrians, BoundaryIndex boundaries, ForceModel forceModel)
+    {
+        StateSlot state = this.state;
+        if (forceBuffer == null)
+            forceBuffer = new double[ForceModel.forceBufferLength];
+        double[] force = forceBuffer;
+        Vector2D direction = wayFindingModel.getNormalizedDirectionVector();
+        double directionX = direction.x();
+        double directionY = direction.y();
+
         // "self-interaction" to reach desired velocity
-        Vector2D intrinsicForce = intrinsicForce(currentPosition, currentVelocity, currentTime,
-            forceModel);
+        force[0] = 0;
+        force[1] = 0;
+        intrinsicForce(currentPositionX, currentPositionY, currentVelocityX, currentVelocityY,
+            directionX, directionY, currentTime, forceModel, force);
+        double intrinsicForceX = force[0];
+        double intrinsicForceY = force[1];
 
         // interaction with other pedestrians
-        forceInteractionWithPedestrians = interactPedestrians(currentPosition, pedestrians,
-            forceModel);
+        force[0] = 0;
+        force[1] = 0;
+        interactPedestrians(currentPositionX, currentPositionY, directionX, directionY,
+            pedestrians, forceModel, force);
+        double pedestrianForceX = force[0];
+        double pedestrianForceY = force[1];
 
         // interaction with boundaries
-        forceInteractionWithBoundaries = interactBoundaries(currentPosition, boundaries,
-            forceModel);
-
-        // total extrinsic forces
-        totalExtrinsicForces = forceInteractionWithPedestrians.plus(forceInteractionWithBoundaries);
+        force[0] = 0;
+        force[1] = 0;
+        interactBoundaries(currentPositionX, currentPositionY, directionX, directionY, boundaries,
+            forceModel, force);
 
         // total acceleration on current pedestrian
-        totalForce = intrinsicForce.plus(totalExtrinsicForces);
+        state.stateStore.setForces(state.slot, intrinsicForceX, intrinsicForceY, pedestrianForceX,
+            pedestrianForceY, force[0], force[1]);
+    }
 
-        return totalForce;
+    /**
+     * Sets the sums of the pedestrian-pedestrian interaction, which have been computed pair by pair
+     * for the position {@code positionX}, {@code positionY}. They are used instead of computing
+     * the interaction with each of the other {@link Pedestrian}s, as long as the forces are
+     * computed at this position, until {@link #clearPairwiseInteraction()} is called.
+     *
+     * @param positionX the x component of the position, for which the sums have been computed
+     * @param positionY the y component of the position, for which the sums have been computed
+     * @param sums the sums (cf.
+     *            {@link HelbingModel#interactPedestrians(double, double, double[], int, double[])})
+     * @param offset the index of the first sum in {@code sums}
+     */
+    public void setPairwiseInteraction(double positionX, double positionY, double[] sums,
+        int offset)
+    {
+        if (pairwiseInteraction == null)
+            pairwiseInteraction = new double[2 + PedestrianPairForces.sumsPerPedestrian];
+        pairwiseInteraction[0] = positionX;
+        pairwiseInteraction[1] = positionY;
+        System.arraycopy(sums, offset, pairwiseInteraction, 2,
+            PedestrianPairForces.sumsPerPedestrian);
+    }
+
+    /**
+     * Invalidates the sums of the pedestrian-pedestrian interaction set by
+     * {@link #setPairwiseInteraction(double, double, double[], int)}.
+     */
+    public void clearPairwiseInteraction()
+    {
+        if (pairwiseInteraction != null)
+            pairwiseInteraction[0] = Double.NaN;
+    }
+
+    /**
+     * Gets the state of the {@link NumericIntegrator}, which is specific for this
+     * {@link Pedestrian} and kept between two simulation steps.
+     *
+     * @return the state of the {@link NumericIntegrator} or {@code null}, if it has not been set
+     */
+    public Object getIntegratorState()
+    {
+        return integratorState;
+    }
+
+    /**
+     * Sets the state of the {@link NumericIntegrator}, which is specific for this
+     * {@link Pedestrian} and kept between two simulation steps.
+     *
+     * @param integratorState the state of the {@link NumericIntegrator}
+     */
+    public void setIntegratorState(Object integratorState)
+    {
+        this.integratorState = integratorState;
     }
 
     /**
@@ -763,4 +1090,33 @@ public class Pedestrian implements Clusterable, Cloneable
     {
         this.wayFindingModel = wayFindingModel;
     }
+
+    /**
+     * An immutable pair of a {@link PedestrianStateStore} and a slot allocated in it, which
+     * together hold the current position, the current velocity and the current forces of a
+     * {@link Pedestrian}.
+     */
+    private static class StateSlot
+    {
+        /**
+         * The {@link PedestrianStateStore} containing the state.
+         */
+        private final PedestrianStateStore stateStore;
+
+        /**
+         * The slot in {@link #stateStore}.
+         */
+        private final int                  slot;
+
+        /**
+         * Creates a new {@link StateSlot} and allocates a new slot in {@code stateStore}.
+         *
+         * @param stateStore the {@link PedestrianStateStore} to allocate the slot in
+         */
+        private StateSlot(PedestrianStateStore stateStore)
+        {
+            this.stateStore = stateStore;
+            this.slot = stateStore.allocate();
+        }
+    }
 }
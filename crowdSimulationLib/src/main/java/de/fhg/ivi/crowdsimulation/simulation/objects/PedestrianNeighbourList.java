@@ -0,0 +1,403 @@
+package de.fhg.ivi.crowdsimulation.simulation.objects;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.RungeKuttaIntegrator;
+
+/**
+ * A {@link PedestrianNeighbourList} stores for each {@link Pedestrian} the {@link Pedestrian}s
+ * within the interaction distance ({@link ForceModel#getMaxPedestrianInteractionDistance()}) plus
+ * an additional {@link #skinDistance} (Verlet list).
+ * <p>
+ * As long as no {@link Pedestrian} has moved more than half of the {@link #skinDistance} since the
+ * last rebuild, no pair of {@link Pedestrian}s can have come closer than the interaction distance
+ * without being contained in the stored lists. Hence, the lists can be reused for several
+ * simulation steps and for all force evaluations within one step (e.g. the 4 stages of the
+ * {@link RungeKuttaIntegrator}). Rebuilding uses a {@link PedestrianSpatialHash} with cells of the
+ * size of the interaction distance plus {@link #skinDistance}.
+ * <p>
+ * The lists refer to slots, i.e. indices of the {@link List} of all {@link Pedestrian}s given to
+ * {@link #update(List)}. Since this {@link List} is a new copy in each simulation step, the
+ * {@link Pedestrian} objects are resolved using the {@link List} of the last call of
+ * {@link #update(List)}. If the number or the order of the {@link Pedestrian}s changes, the lists
+ * are rebuilt immediately.
+ *
+ * @author hahmann/meinert
+ */
+public class PedestrianNeighbourList
+{
+    /**
+     * The default value of {@link #skinDistance}. Given in meters.
+     */
+    public static final double     defaultSkinDistance = 0.5d;
+
+    /**
+     * Additional distance (besides the interaction distance) within which {@link Pedestrian}s are
+     * stored as neighbours. Given in meters. The larger this value, the less often the lists need
+     * to be rebuilt, but the more {@link Pedestrian}s are contained in each list. If {@code 0}, the
+     * lists are rebuilt in each simulation step.
+     */
+    private double                 skinDistance;
+
+    /**
+     * The interaction distance used at the last rebuild. Given in meters.
+     */
+    private double                 interactionDistance;
+
+    /**
+     * The {@link PedestrianSpatialHash} used to rebuild the lists.
+     */
+    private PedestrianSpatialHash  spatialHash;
+
+    /**
+     * The {@link List} of all {@link Pedestrian}s given at the last call of {@link #update(List)}.
+     */
+    private List<Pedestrian>       pedestrians;
+
+    /**
+     * The number of {@link Pedestrian}s at the last rebuild.
+     */
+    private int                    size;
+
+    /**
+     * The ids of all {@link Pedestrian}s at the last rebuild in the order of their slots.
+     */
+    private int[]                  ids;
+
+    /**
+     * The x components of the positions of all {@link Pedestrian}s at the last rebuild.
+     */
+    private double[]               referenceX;
+
+    /**
+     * The y components of the positions of all {@link Pedestrian}s at the last rebuild.
+     */
+    private double[]               referenceY;
+
+    /**
+     * For each slot the index of its first neighbour in {@link #neighbourSlots}. Has the length of
+     * the number of {@link Pedestrian}s plus 1.
+     */
+    private int[]                  neighbourStart;
+
+    /**
+     * The slots of the neighbours of all {@link Pedestrian}s, stored consecutively for each slot.
+     */
+    private int[]                  neighbourSlots;
+
+    /**
+     * Read-only {@link List} views on the neighbours of each slot, cf. {@link #getNeighbours(int)}
+     */
+    private List<List<Pedestrian>> neighbourViews;
+
+    /**
+     * The largest distance any {@link Pedestrian} has moved between the last rebuild and the last
+     * call of {@link #update(List)}. Given in meters.
+     */
+    private double                 maximumDisplacement;
+
+    /**
+     * The total number of rebuilds of this {@link PedestrianNeighbourList}.
+     */
+    private long                   rebuildCount;
+
+    /**
+     * Creates a new, empty {@link PedestrianNeighbourList}.
+     *
+     * @param interactionDistance the maximum distance of interaction between two
+     *            {@link Pedestrian}s, cf. {@link ForceModel#getMaxPedestrianInteractionDistance()}.
+     *            Given in meters.
+     * @param skinDistance the additional distance within which {@link Pedestrian}s are stored as
+     *            neighbours. Given in meters.
+     */
+    public PedestrianNeighbourList(double interactionDistance, double skinDistance)
+    {
+        this.interactionDistance = interactionDistance;
+        this.skinDistance = skinDistance;
+        this.spatialHash = new PedestrianSpatialHash(interactionDistance + skinDistance);
+        this.pedestrians = Collections.emptyList();
+        this.ids = new int[0];
+        this.referenceX = new double[0];
+        this.referenceY = new double[0];
+        this.neighbourStart = new int[1];
+        this.neighbourSlots = new int[0];
+        this.neighbourViews = new ArrayList<>();
+    }
+
+    /**
+     * Gets the {@link #skinDistance}. Given in meters.
+     *
+     * @return the {@link #skinDistance}
+     */
+    public double getSkinDistance()
+    {
+        return skinDistance;
+    }
+
+    /**
+     * Sets the {@link #skinDistance}. Given in meters. Forces a rebuild at the next call of
+     * {@link #update(List)}.
+     *
+     * @param skinDistance the additional distance within which {@link Pedestrian}s are stored as
+     *            neighbours, must not be negative
+     */
+    public void setSkinDistance(double skinDistance)
+    {
+        if (skinDistance < 0)
+            skinDistance = 0;
+        this.skinDistance = skinDistance;
+        this.size = -1;
+    }
+
+    /**
+     * Sets the maximum distance of interaction between two {@link Pedestrian}s. Given in meters.
+     * Forces a rebuild at the next call of {@link #update(List)}, if the value has changed.
+     *
+     * @param interactionDistance the maximum distance of interaction between two
+     *            {@link Pedestrian}s, cf. {@link ForceModel#getMaxPedestrianInteractionDistance()}
+     */
+    public void setInteractionDistance(double interactionDistance)
+    {
+        if (this.interactionDistance != interactionDistance)
+        {
+            this.interactionDistance = interactionDistance;
+            this.size = -1;
+        }
+    }
+
+    /**
+     * Gets the total number of rebuilds of this {@link PedestrianNeighbourList}.
+     *
+     * @return the number of rebuilds
+     */
+    public long getRebuildCount()
+    {
+        return rebuildCount;
+    }
+
+    /**
+     * Gets the distance, within which the neighbour lists contain all other {@link Pedestrian}s at
+     * their positions given to the last call of {@link #update(List)}. This is the interaction
+     * distance plus the {@link #skinDistance} minus twice the largest distance any
+     * {@link Pedestrian} has moved since the last rebuild, i.e. at least the interaction distance.
+     * Given in meters.
+     *
+     * @return the distance, within which the neighbour lists are complete
+     */
+    public double getCompleteDistance()
+    {
+        return interactionDistance + skinDistance - 2 * maximumDisplacement;
+    }
+
+    /**
+     * Sets the {@link List} of all {@link Pedestrian}s of the current simulation step and rebuilds
+     * all neighbour lists, if the {@link Pedestrian}s have changed or any {@link Pedestrian} has
+     * moved more than half of the {@link #skinDistance} since the last rebuild. Must be called once
+     * per simulation step before any call of {@link #getNeighbours(int)}.
+     *
+     * @param pedestrians the {@link List} of all {@link Pedestrian}s of the current simulation
+     *            step
+     */
+    public void update(List<Pedestrian> pedestrians)
+    {
+        this.pedestrians = pedestrians;
+        if (isRebuildNecessary(pedestrians))
+            rebuild(pedestrians);
+    }
+
+    /**
+     * Gets the neighbours of the {@link Pedestrian} at {@code slot}, i.e. all {@link Pedestrian}s
+     * of the {@link List} given to {@link #update(List)}, which have been within the interaction
+     * distance plus {@link #skinDistance} at the last rebuild. The {@link Pedestrian} at
+     * {@code slot} itself is not contained.
+     *
+     * @param slot the index of the {@link Pedestrian} in the {@link List} given to
+     *            {@link #update(List)}
+     *
+     * @return a read-only {@link List} of the neighbours of the {@link Pedestrian} at {@code slot}
+     */
+    public List<Pedestrian> getNeighbours(int slot)
+    {
+        return neighbourViews.get(slot);
+    }
+
+    /**
+     * Gets the index of the first neighbour of the {@link Pedestrian} at {@code slot} (inclusive).
+     *
+     * @param slot the index of the {@link Pedestrian} in the {@link List} given to
+     *            {@link #update(List)}
+     * @return the index of the first neighbour of {@code slot}, cf. {@link #getNeighbourSlot(int)}
+     */
+    public int getNeighbourStart(int slot)
+    {
+        return neighbourStart[slot];
+    }
+
+    /**
+     * Gets the index after the last neighbour of the {@link Pedestrian} at {@code slot}
+     * (exclusive).
+     *
+     * @param slot the index of the {@link Pedestrian} in the {@link List} given to
+     *            {@link #update(List)}
+     * @return the index after the last neighbour of {@code slot}, cf.
+     *         {@link #getNeighbourSlot(int)}
+     */
+    public int getNeighbourEnd(int slot)
+    {
+        return neighbourStart[slot + 1];
+    }
+
+    /**
+     * Gets the slot of the neighbour at {@code index}, i.e. the index of the neighbouring
+     * {@link Pedestrian} in the {@link List} given to {@link #update(List)}. Since the neighbour
+     * relation is symmetric, each pair of {@link Pedestrian}s is contained twice.
+     *
+     * @param index the index of the neighbour between {@link #getNeighbourStart(int)} and
+     *            {@link #getNeighbourEnd(int)}
+     * @return the slot of the neighbour
+     */
+    public int getNeighbourSlot(int index)
+    {
+        return neighbourSlots[index];
+    }
+
+    /**
+     * Tests, if the neighbour lists need to be rebuilt for the given {@code pedestrians}.
+     *
+     * @param pedestrians the {@link List} of all {@link Pedestrian}s of the current simulation
+     *            step
+     * @return {@code true}, if the number or order of {@link Pedestrian}s has changed or any
+     *         {@link Pedestrian} has moved more than half of the {@link #skinDistance} since the
+     *         last rebuild, {@code false} otherwise
+     */
+    private boolean isRebuildNecessary(List<Pedestrian> pedestrians)
+    {
+        if (pedestrians.size() != size)
+            return true;
+
+        double maxDisplacementSquared = skinDistance * skinDistance / 4d;
+        double displacementSquared = 0;
+        for (int i = 0; i < size; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            if (pedestrian.getId() != ids[i])
+                return true;
+            double dx = pedestrian.getCurrentPositionX() - referenceX[i];
+            double dy = pedestrian.getCurrentPositionY() - referenceY[i];
+            // also true, if position is NaN
+            if ( !(dx * dx + dy * dy <= maxDisplacementSquared))
+                return true;
+            displacementSquared = Math.max(displacementSquared, dx * dx + dy * dy);
+        }
+        maximumDisplacement = Math.sqrt(displacementSquared);
+        return false;
+    }
+
+    /**
+     * Rebuilds all neighbour lists based on the current positions of the given
+     * {@code pedestrians}.
+     *
+     * @param pedestrians the {@link List} of all {@link Pedestrian}s of the current simulation
+     *            step
+     */
+    private void rebuild(List<Pedestrian> pedestrians)
+    {
+        int newSize = pedestrians.size();
+        if (ids.length < newSize)
+        {
+            ids = new int[newSize];
+            referenceX = new double[newSize];
+            referenceY = new double[newSize];
+            neighbourStart = new int[newSize + 1];
+        }
+        for (int i = 0; i < newSize; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            ids[i] = pedestrian.getId();
+            referenceX[i] = pedestrian.getCurrentPositionX();
+            referenceY[i] = pedestrian.getCurrentPositionY();
+        }
+
+        double cutoff = interactionDistance + skinDistance;
+        double cutoffSquared = cutoff * cutoff;
+        spatialHash.setCellSize(cutoff);
+        spatialHash.rebuild(pedestrians);
+
+        int[] buckets = new int[9];
+        int count = 0;
+        for (int i = 0; i < newSize; i++ )
+        {
+            neighbourStart[i] = count;
+            int bucketCount = spatialHash.getNeighbourBuckets(referenceX[i], referenceY[i],
+                buckets);
+            for (int b = 0; b < bucketCount; b++ )
+            {
+                for (int e = spatialHash.getBucketStart(buckets[b]); e < spatialHash
+                    .getBucketEnd(buckets[b]); e++ )
+                {
+                    int j = spatialHash.getSlot(e);
+                    if (j == i)
+                        continue;
+                    double dx = referenceX[j] - referenceX[i];
+                    double dy = referenceY[j] - referenceY[i];
+                    if (dx * dx + dy * dy > cutoffSquared)
+                        continue;
+                    if (count == neighbourSlots.length)
+                    {
+                        int[] grown = new int[Math.max(16, 2 * count)];
+                        System.arraycopy(neighbourSlots, 0, grown, 0, count);
+                        neighbourSlots = grown;
+                    }
+                    neighbourSlots[count++ ] = j;
+                }
+            }
+        }
+        neighbourStart[newSize] = count;
+
+        while (neighbourViews.size() < newSize)
+            neighbourViews.add(new NeighbourView(neighbourViews.size()));
+
+        size = newSize;
+        maximumDisplacement = 0;
+        rebuildCount++ ;
+    }
+
+    /**
+     * Read-only {@link List} of the neighbours of a single slot, which resolves the stored slots
+     * using the {@link List} of {@link Pedestrian}s of the current simulation step.
+     */
+    private class NeighbourView extends AbstractList<Pedestrian> implements RandomAccess
+    {
+        /**
+         * The slot of the {@link Pedestrian}, whose neighbours are represented by this view.
+         */
+        private final int slot;
+
+        /**
+         * Creates a new view on the neighbours of {@code slot}.
+         *
+         * @param slot the slot of the {@link Pedestrian}
+         */
+        private NeighbourView(int slot)
+        {
+            this.slot = slot;
+        }
+
+        @Override
+        public Pedestrian get(int index)
+        {
+            return pedestrians.get(neighbourSlots[neighbourStart[slot] + index]);
+        }
+
+        @Override
+        public int size()
+        {
+            return neighbourStart[slot + 1] - neighbourStart[slot];
+        }
+    }
+}
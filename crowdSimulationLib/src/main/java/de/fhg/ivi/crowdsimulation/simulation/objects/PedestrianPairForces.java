@@ -0,0 +1,343 @@
+package de.fhg.ivi.crowdsimulation.simulation.objects;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.HelbingModel;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator;
+import de.fhg.ivi.crowdsimulation.simulation.tools.ParallelTools;
+
+/**
+ * Computes the pedestrian-pedestrian interaction of the {@link HelbingModel} pair by pair, i.e.
+ * each pair of neighbouring {@link Pedestrian}s (cf. {@link PedestrianNeighbourList}) is computed
+ * only once and the resulting force is applied to both {@link Pedestrian}s with opposite signs
+ * (Newton's third law).
+ * <p>
+ * Since the anisotropic part of the interaction depends on the direction of each
+ * {@link Pedestrian}, only the direction-independent sums described in
+ * {@link HelbingModel#interactPedestrians(double, double, double[], int, double[])} are
+ * accumulated per {@link Pedestrian}. The force itself is computed from these sums, when the
+ * {@link NumericIntegrator} evaluates the forces at the position the sums have been computed for
+ * (cf. {@link Pedestrian#setPairwiseInteraction(double, double, double[], int)}). Force evaluations
+ * at other positions (e.g. the later stages of a Runge-Kutta step) compute the interaction with
+ * each of the other {@link Pedestrian}s as usual.
+ * <p>
+ * The slots of the {@link PedestrianNeighbourList} are split into {@link #partitionCount}
+ * contiguous partitions, which are processed concurrently. Each partition owns the sums of its
+ * slots and computes all pairs, whose lower slot it owns. The sums of the higher slot of a pair
+ * are added directly, if the partition owns the higher slot as well, or are appended to a
+ * {@link HaloBuffer} of the partition owning the higher slot otherwise. Afterwards, each partition
+ * adds the {@link HaloBuffer}s addressed to it in a fixed order. Hence, no synchronization is
+ * necessary, the memory grows with the number of pairs crossing partitions (which is small, if the
+ * {@link Pedestrian}s are sorted, cf. {@link Crowd#sortPedestrians()}) instead of the number of
+ * partitions, and the results are the same for any number of threads.
+ *
+ * @author hahmann/meinert
+ */
+public class PedestrianPairForces
+{
+    /**
+     * The number of sums accumulated per {@link Pedestrian}, cf.
+     * {@link HelbingModel#interactPedestrians(double, double, double[], int, double[])}.
+     */
+    public static final int  sumsPerPedestrian = 7;
+
+    /**
+     * The number of partitions of the slots, each of which owns the sums of its slots.
+     */
+    private final int        partitionCount;
+
+    /**
+     * The {@link HaloBuffer}s of the sums, which partition {@code p} computes for slots owned by
+     * partition {@code q}, at index {@code p * partitionCount + q}. Created on demand.
+     */
+    private HaloBuffer[]     haloBuffers;
+
+    /**
+     * The sums of all slots, {@link #sumsPerPedestrian} per slot.
+     */
+    private double[]         sums;
+
+    /**
+     * Creates a new {@link PedestrianPairForces} with one partition per available processor.
+     */
+    public PedestrianPairForces()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new {@link PedestrianPairForces}.
+     *
+     * @param partitionCount the number of partitions of the slots, which are processed
+     *            concurrently. Should be at least the number of threads.
+     */
+    public PedestrianPairForces(int partitionCount)
+    {
+        if (partitionCount < 1)
+            throw new IllegalArgumentException("partitionCount must be at least 1");
+        this.partitionCount = partitionCount;
+        this.haloBuffers = new HaloBuffer[partitionCount * partitionCount];
+        this.sums = new double[0];
+    }
+
+    /**
+     * Gets the number of partitions of the slots, each of which owns the sums of its slots.
+     *
+     * @return the number of partitions
+     */
+    public int getPartitionCount()
+    {
+        return partitionCount;
+    }
+
+    /**
+     * Computes the pedestrian-pedestrian interaction of all pairs of neighbouring
+     * {@link Pedestrian}s at their positions in {@code allPedestrians} and passes the resulting
+     * sums to the {@link Pedestrian}s of {@code crowds} using
+     * {@link Pedestrian#setPairwiseInteraction(double, double, double[], int)}.
+     *
+     * @param allPedestrians the {@link List} of all {@link Pedestrian}s last given to
+     *            {@link PedestrianNeighbourList#update(List)}, i.e. the copies of the
+     *            {@link Pedestrian}s of all {@code crowds} in the same order
+     * @param neighbourList the {@link PedestrianNeighbourList} providing the pairs
+     * @param crowds the {@link List} of all {@link Crowd}s
+     * @param forceModel the {@link HelbingModel} computing the interaction of each pair
+     * @param threadPool the {@link ExecutorService} used for parallel processing, may be
+     *            {@code null}
+     */
+    public void update(final List<Pedestrian> allPedestrians,
+        final PedestrianNeighbourList neighbourList, List<Crowd> crowds,
+        final HelbingModel forceModel, ExecutorService threadPool)
+    {
+        final int size = allPedestrians.size();
+        if (sums.length < size * sumsPerPedestrian)
+            sums = new double[size * sumsPerPedestrian];
+
+        // accumulate each pair once by the partition owning its lower slot
+        ParallelTools.invokeChunked(threadPool, partitionCount, 1, new ParallelTools.ChunkTask()
+            {
+                @Override
+                public void run(int start, int end)
+                {
+                    for (int p = start; p < end; p++ )
+                    {
+                        accumulate(allPedestrians, neighbourList, forceModel, p, size);
+                    }
+                }
+            });
+
+        // add the sums computed by other partitions in a fixed order
+        ParallelTools.invokeChunked(threadPool, partitionCount, 1, new ParallelTools.ChunkTask()
+            {
+                @Override
+                public void run(int start, int end)
+                {
+                    for (int q = start; q < end; q++ )
+                    {
+                        for (int p = 0; p < q; p++ )
+                        {
+                            HaloBuffer haloBuffer = haloBuffers[p * partitionCount + q];
+                            if (haloBuffer != null)
+                                haloBuffer.addTo(sums);
+                        }
+                    }
+                }
+            });
+
+        // the copies in allPedestrians are in the order of the crowds and their pedestrians
+        int slot = 0;
+        for (Crowd crowd : crowds)
+        {
+            List<Pedestrian> pedestrians = crowd.getPedestrians();
+            for (int i = 0; i < pedestrians.size() && slot < size; i++ )
+            {
+                Pedestrian copy = allPedestrians.get(slot);
+                pedestrians.get(i).setPairwiseInteraction(copy.getCurrentPositionX(),
+                    copy.getCurrentPositionY(), sums, slot * sumsPerPedestrian);
+                slot++ ;
+            }
+        }
+    }
+
+    /**
+     * Gets the first slot of partition {@code partition}.
+     *
+     * @param partition the partition, may be {@link #partitionCount} to get the number of slots
+     * @param size the number of slots
+     * @return the first slot of {@code partition}
+     */
+    private int getPartitionStart(int partition, int size)
+    {
+        return (int) ((long) size * partition / partitionCount);
+    }
+
+    /**
+     * Gets the partition owning {@code slot}.
+     *
+     * @param slot the slot
+     * @param size the number of slots
+     * @return the partition owning {@code slot}
+     */
+    private int getPartition(int slot, int size)
+    {
+        int partition = (int) ((long) slot * partitionCount / size);
+        while (partition + 1 < partitionCount && getPartitionStart(partition + 1, size) <= slot)
+            partition++ ;
+        while (getPartitionStart(partition, size) > slot)
+            partition-- ;
+        return partition;
+    }
+
+    /**
+     * Accumulates the interaction of all pairs of neighbouring {@link Pedestrian}s, whose lower
+     * slot is owned by {@code partition}, into the {@link #sums} of its slots and into its
+     * {@link #haloBuffers}.
+     *
+     * @param allPedestrians the {@link List} of all {@link Pedestrian}s
+     * @param neighbourList the {@link PedestrianNeighbourList} providing the pairs
+     * @param forceModel the {@link HelbingModel} computing the interaction of each pair
+     * @param partition the partition
+     * @param size the number of slots
+     */
+    private void accumulate(List<Pedestrian> allPedestrians,
+        PedestrianNeighbourList neighbourList, HelbingModel forceModel, int partition, int size)
+    {
+        int start = getPartitionStart(partition, size);
+        int end = getPartitionStart(partition + 1, size);
+        Arrays.fill(sums, start * sumsPerPedestrian, end * sumsPerPedestrian, 0d);
+        for (int q = partition + 1; q < partitionCount; q++ )
+        {
+            HaloBuffer haloBuffer = haloBuffers[partition * partitionCount + q];
+            if (haloBuffer != null)
+                haloBuffer.clear();
+        }
+
+        double[] strengths = new double[3];
+        double[] pairSums = new double[sumsPerPedestrian];
+        for (int i = start; i < end; i++ )
+        {
+            Pedestrian pedestrian = allPedestrians.get(i);
+            double positionX = pedestrian.getCurrentPositionX();
+            double positionY = pedestrian.getCurrentPositionY();
+            int offsetI = i * sumsPerPedestrian;
+            for (int k = neighbourList.getNeighbourStart(i); k < neighbourList
+                .getNeighbourEnd(i); k++ )
+            {
+                int j = neighbourList.getNeighbourSlot(k);
+                // each pair only once
+                if (j < i)
+                    continue;
+                Pedestrian other = allPedestrians.get(j);
+                if (pedestrian.equals(other))
+                    continue;
+                double dx = positionX - other.getCurrentPositionX();
+                double dy = positionY - other.getCurrentPositionY();
+                if ( !forceModel.interactPedestrianPair(dx, dy, strengths))
+                    continue;
+
+                // n points from j to i, i.e. i is pushed along n and j along -n
+                double nX = dx / strengths[2];
+                double nY = dy / strengths[2];
+                pairSums[0] = nX * strengths[0];
+                pairSums[1] = nY * strengths[0];
+                pairSums[2] = nX * strengths[1];
+                pairSums[3] = nY * strengths[1];
+                pairSums[4] = nX * pairSums[2];
+                pairSums[5] = nY * pairSums[2];
+                pairSums[6] = nY * pairSums[3];
+                for (int n = 0; n < sumsPerPedestrian; n++ )
+                {
+                    sums[offsetI + n] += pairSums[n];
+                }
+                // the vectors are opposite for j, the tensor n * n^T is the same
+                pairSums[0] = -pairSums[0];
+                pairSums[1] = -pairSums[1];
+                pairSums[2] = -pairSums[2];
+                pairSums[3] = -pairSums[3];
+                if (j < end)
+                {
+                    int offsetJ = j * sumsPerPedestrian;
+                    for (int n = 0; n < sumsPerPedestrian; n++ )
+                    {
+                        sums[offsetJ + n] += pairSums[n];
+                    }
+                }
+                else
+                {
+                    int index = partition * partitionCount + getPartition(j, size);
+                    if (haloBuffers[index] == null)
+                        haloBuffers[index] = new HaloBuffer();
+                    haloBuffers[index].add(j, pairSums);
+                }
+            }
+        }
+    }
+
+    /**
+     * The sums of a single partition for the slots owned by another partition, stored as one entry
+     * per pair of {@link Pedestrian}s. The arrays are reused in each simulation step.
+     */
+    private static class HaloBuffer
+    {
+        /**
+         * The slot of each entry.
+         */
+        private int[]    slots  = new int[16];
+
+        /**
+         * The {@link #sumsPerPedestrian} sums of each entry.
+         */
+        private double[] values = new double[16 * sumsPerPedestrian];
+
+        /**
+         * The number of entries.
+         */
+        private int      count;
+
+        /**
+         * Removes all entries.
+         */
+        private void clear()
+        {
+            count = 0;
+        }
+
+        /**
+         * Appends an entry.
+         *
+         * @param slot the slot
+         * @param pairSums the {@link #sumsPerPedestrian} sums to be added to {@code slot}
+         */
+        private void add(int slot, double[] pairSums)
+        {
+            if (count == slots.length)
+            {
+                slots = Arrays.copyOf(slots, 2 * count);
+                values = Arrays.copyOf(values, 2 * count * sumsPerPedestrian);
+            }
+            slots[count] = slot;
+            System.arraycopy(pairSums, 0, values, count * sumsPerPedestrian, sumsPerPedestrian);
+            count++ ;
+        }
+
+        /**
+         * Adds all entries to {@code sums} in the order they have been appended.
+         *
+         * @param sums the sums of all slots, {@link #sumsPerPedestrian} per slot
+         */
+        private void addTo(double[] sums)
+        {
+            for (int e = 0; e < count; e++ )
+            {
+                int offset = slots[e] * sumsPerPedestrian;
+                int valueOffset = e * sumsPerPedestrian;
+                for (int n = 0; n < sumsPerPedestrian; n++ )
+                {
+                    sums[offset + n] += values[valueOffset + n];
+                }
+            }
+        }
+    }
+}
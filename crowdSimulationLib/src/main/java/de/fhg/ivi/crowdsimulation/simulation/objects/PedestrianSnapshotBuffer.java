@@ -0,0 +1,191 @@
+package de.fhg.ivi.crowdsimulation.simulation.objects;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.fhg.ivi.crowdsimulation.simulation.CrowdSimulator;
+
+/**
+ * A {@link PedestrianSnapshotBuffer} provides a consistent read-only copy of all {@link Pedestrian}s
+ * of all {@link Crowd}s, which is taken at the beginning of each simulation step (cf.
+ * {@link CrowdSimulator#moveCrowds(long)}). While the {@link Crowd}s are moved, all
+ * pedestrian-pedestrian interactions are computed using this copy, so that the result does not
+ * depend on the order in which the {@link Pedestrian}s are moved.
+ * <p>
+ * The buffer consists of two snapshots. Each call of {@link #update(List)} writes the current
+ * state of all {@link Pedestrian}s into the snapshot, which is currently not readable, and swaps
+ * both snapshots afterwards. As long as the {@link Pedestrian}s of the {@link Crowd}s remain the
+ * same, the {@link Pedestrian} copies and their {@link PedestrianStateStore} of each snapshot are
+ * reused, i.e. only the states are copied and no objects are created. Only if {@link Pedestrian}s
+ * are added, removed or reordered, a snapshot is rebuilt using {@link Pedestrian#clone()}.
+ * <p>
+ * The {@link List} returned by {@link #getPedestrians()} remains unchanged until the next but one
+ * call of {@link #update(List)}.
+ *
+ * @author hahmann/meinert
+ */
+public class PedestrianSnapshotBuffer
+{
+    /**
+     * The snapshot, which has been written at the last call of {@link #update(List)} and can be
+     * read.
+     */
+    private volatile Snapshot readSnapshot;
+
+    /**
+     * The snapshot, which is written at the next call of {@link #update(List)}.
+     */
+    private Snapshot          writeSnapshot;
+
+    /**
+     * The total number of rebuilds of any of both snapshots.
+     */
+    private long              rebuildCount;
+
+    /**
+     * Creates a new {@link PedestrianSnapshotBuffer} containing two empty snapshots.
+     */
+    public PedestrianSnapshotBuffer()
+    {
+        this.readSnapshot = new Snapshot();
+        this.writeSnapshot = new Snapshot();
+    }
+
+    /**
+     * Copies the current state of all {@link Pedestrian}s of all {@code crowds} into the snapshot,
+     * which is currently not readable, and makes it readable afterwards. Must not be called while
+     * a simulation step is computed.
+     *
+     * @param crowds the {@link List} of all {@link Crowd}s
+     */
+    public synchronized void update(List<Crowd> crowds)
+    {
+        Snapshot snapshot = writeSnapshot;
+        if ( !snapshot.copy(crowds))
+        {
+            snapshot.rebuild(crowds);
+            rebuildCount++ ;
+        }
+
+        // swap both snapshots
+        writeSnapshot = readSnapshot;
+        readSnapshot = snapshot;
+    }
+
+    /**
+     * Gets the copies of all {@link Pedestrian}s of all {@link Crowd}s in the order of the
+     * {@link Crowd}s, which have been taken at the last call of {@link #update(List)}.
+     *
+     * @return the read-only {@link List} of copies of all {@link Pedestrian}s
+     */
+    public List<Pedestrian> getPedestrians()
+    {
+        return readSnapshot.view;
+    }
+
+    /**
+     * Gets the total number of rebuilds of any of both snapshots, i.e. the number of calls of
+     * {@link #update(List)}, which needed to create new {@link Pedestrian} copies.
+     *
+     * @return the number of rebuilds
+     */
+    public long getRebuildCount()
+    {
+        return rebuildCount;
+    }
+
+    /**
+     * One of both snapshots of a {@link PedestrianSnapshotBuffer}.
+     */
+    private static class Snapshot
+    {
+        /**
+         * The {@link Pedestrian}s, from which {@link #copies} have been created, i.e. the
+         * {@link Pedestrian}s of the {@link Crowd}s.
+         */
+        private Pedestrian[]         originals;
+
+        /**
+         * The copies of {@link #originals}, which are stored in {@link #stateStore}.
+         */
+        private List<Pedestrian>     copies;
+
+        /**
+         * Read-only view of {@link #copies}.
+         */
+        private List<Pedestrian>     view;
+
+        /**
+         * The {@link PedestrianStateStore} containing the states of all {@link #copies}.
+         */
+        private PedestrianStateStore stateStore;
+
+        /**
+         * Creates a new, empty snapshot.
+         */
+        private Snapshot()
+        {
+            this.originals = new Pedestrian[0];
+            this.copies = new ArrayList<>();
+            this.view = Collections.unmodifiableList(copies);
+            this.stateStore = new PedestrianStateStore(1);
+        }
+
+        /**
+         * Copies the current states of all {@link Pedestrian}s of {@code crowds} into the existing
+         * {@link #copies}, if the {@link Pedestrian}s are still the same as {@link #originals}.
+         *
+         * @param crowds the {@link List} of all {@link Crowd}s
+         * @return {@code true}, if the states have been copied, {@code false} if the snapshot
+         *         needs to be rebuilt
+         */
+        private boolean copy(List<Crowd> crowds)
+        {
+            int size = 0;
+            for (Crowd crowd : crowds)
+            {
+                size += crowd.getSize();
+            }
+            if (size != originals.length)
+                return false;
+
+            int index = 0;
+            for (Crowd crowd : crowds)
+            {
+                List<Pedestrian> pedestrians = crowd.getPedestrians();
+                for (int i = 0; i < pedestrians.size(); i++ )
+                {
+                    Pedestrian pedestrian = pedestrians.get(i);
+                    if (originals[index] != pedestrian)
+                        return false;
+                    copies.get(index).copyState(pedestrian);
+                    index++ ;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Creates new copies of all {@link Pedestrian}s of {@code crowds}, whose states are stored
+         * in a new {@link PedestrianStateStore}.
+         *
+         * @param crowds the {@link List} of all {@link Crowd}s
+         */
+        private void rebuild(List<Crowd> crowds)
+        {
+            List<Pedestrian> pedestrians = new ArrayList<>();
+            for (Crowd crowd : crowds)
+            {
+                pedestrians.addAll(crowd.getPedestrians());
+            }
+            originals = pedestrians.toArray(new Pedestrian[pedestrians.size()]);
+            stateStore = new PedestrianStateStore(originals.length);
+            copies.clear();
+            for (Pedestrian pedestrian : originals)
+            {
+                copies.add(pedestrian.clone(stateStore));
+            }
+        }
+    }
+}
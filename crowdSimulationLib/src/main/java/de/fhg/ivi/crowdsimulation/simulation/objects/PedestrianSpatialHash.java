@@ -0,0 +1,285 @@
+package de.fhg.ivi.crowdsimulation.simulation.objects;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import math.geom2d.Vector2D;
+
+/**
+ * A {@link PedestrianSpatialHash} is a cell list of {@link Pedestrian} objects that allows to find
+ * all {@link Pedestrian}s that are potentially within the interaction distance of a given position
+ * without testing every {@link Pedestrian} of the simulation.
+ * <p>
+ * The plane is divided into square cells of {@link #cellSize}, which should be equal to (or larger
+ * than) {@link ForceModel#getMaxPedestrianInteractionDistance()}. In this case all
+ * {@link Pedestrian}s interacting with a given position are contained in the cell of the position
+ * and its 8 neighbouring cells, i.e. 3x3 cells need to be visited.
+ * <p>
+ * Since the area covered by the {@link Pedestrian}s is unbounded, cells are not stored as a dense
+ * raster but hashed into a table of buckets, whose size only depends on the number of
+ * {@link Pedestrian}s. Two cells sharing the same bucket merely cause some more candidates to be
+ * tested, since the distance check in {@link ForceModel#interactPedestrian(Vector2D, Vector2D,
+ * Pedestrian)} is done anyway.
+ * <p>
+ * The {@link PedestrianSpatialHash} is intended to be rebuild once per simulation step by calling
+ * {@link #rebuild(List)} with the (copied) list of all {@link Pedestrian}s of all {@link Crowd}s.
+ * All queries refer to the state of the {@link Pedestrian}s at the time of the last rebuild. The
+ * candidates of a position are queried without creating any objects:
+ * {@link #getNeighbourBuckets(double, double, int[])} writes the buckets to be visited into a
+ * buffer of the caller, whose entries are then iterated from {@link #getBucketStart(int)} to
+ * {@link #getBucketEnd(int)}.
+ *
+ * @author hahmann/meinert
+ */
+public class PedestrianSpatialHash
+{
+    /**
+     * The minimum number of buckets of the hash table.
+     */
+    private static final int MIN_BUCKETS = 16;
+
+    /**
+     * The edge length of a single (square) cell. Given in meters. If this value is not positive,
+     * all {@link Pedestrian}s are assigned to a single bucket, which equals the behavior of testing
+     * every {@link Pedestrian}.
+     */
+    private double           cellSize;
+
+    /**
+     * The {@link List} of {@link Pedestrian}s given at the last call of {@link #rebuild(List)}.
+     * The slots stored in {@link #bucketEntries} refer to this {@link List}.
+     */
+    private List<Pedestrian> pedestrians;
+
+    /**
+     * For each bucket the index of its first entry in {@link #bucketEntries}. Has the length of the
+     * number of buckets plus 1, so that the entries of bucket {@code b} are found between
+     * {@code bucketStart[b]} (inclusive) and {@code bucketStart[b + 1]} (exclusive).
+     */
+    private int[]            bucketStart;
+
+    /**
+     * The slots (i.e. the indices in {@link #pedestrians}) of all {@link Pedestrian}s sorted by
+     * their bucket.
+     */
+    private int[]            bucketEntries;
+
+    /**
+     * The bucket of each {@link Pedestrian} computed during the last {@link #rebuild(List)}.
+     */
+    private int[]            bucketOfPedestrian;
+
+    /**
+     * Bit mask to map a hash value to a bucket. The number of buckets is always a power of 2.
+     */
+    private int              bucketMask;
+
+    /**
+     * Creates a new, empty {@link PedestrianSpatialHash}.
+     *
+     * @param cellSize the edge length of a single (square) cell. Given in meters. Should be equal
+     *            to {@link ForceModel#getMaxPedestrianInteractionDistance()}.
+     */
+    public PedestrianSpatialHash(double cellSize)
+    {
+        this.cellSize = cellSize;
+        this.pedestrians = Collections.emptyList();
+        this.bucketStart = new int[MIN_BUCKETS + 1];
+        this.bucketEntries = new int[0];
+        this.bucketOfPedestrian = new int[0];
+        this.bucketMask = MIN_BUCKETS - 1;
+    }
+
+    /**
+     * Gets the edge length of a single (square) cell. Given in meters.
+     *
+     * @return the edge length of a single cell
+     */
+    public double getCellSize()
+    {
+        return cellSize;
+    }
+
+    /**
+     * Sets the edge length of a single (square) cell. Given in meters. Takes effect with the next
+     * call of {@link #rebuild(List)}.
+     *
+     * @param cellSize the edge length of a single cell
+     */
+    public void setCellSize(double cellSize)
+    {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Gets the {@link List} of {@link Pedestrian}s given at the last call of
+     * {@link #rebuild(List)}.
+     *
+     * @return the indexed {@link List} of {@link Pedestrian}s
+     */
+    public List<Pedestrian> getPedestrians()
+    {
+        return pedestrians;
+    }
+
+    /**
+     * Sorts all {@code pedestrians} into the buckets of this {@link PedestrianSpatialHash} using a
+     * counting sort, i.e. in linear time. Arrays are only reallocated, if the number of
+     * {@link Pedestrian}s has grown since the last call.
+     *
+     * @param pedestrians the {@link List} of all {@link Pedestrian}s to be indexed
+     */
+    public void rebuild(List<Pedestrian> pedestrians)
+    {
+        this.pedestrians = pedestrians;
+        int size = pedestrians.size();
+
+        int buckets = MIN_BUCKETS;
+        while (buckets < 2 * size)
+            buckets <<= 1;
+        if (bucketStart.length != buckets + 1)
+            bucketStart = new int[buckets + 1];
+        else
+            Arrays.fill(bucketStart, 0);
+        bucketMask = buckets - 1;
+
+        if (bucketEntries.length < size)
+        {
+            bucketEntries = new int[size];
+            bucketOfPedestrian = new int[size];
+        }
+
+        // count pedestrians per bucket
+        for (int i = 0; i < size; i++ )
+        {
+            Pedestrian pedestrian = pedestrians.get(i);
+            int bucket = getBucket(getCell(pedestrian.getCurrentPositionX()),
+                getCell(pedestrian.getCurrentPositionY()));
+            bucketOfPedestrian[i] = bucket;
+            bucketStart[bucket + 1]++ ;
+        }
+        // prefix sum
+        for (int b = 0; b < buckets; b++ )
+        {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+        // scatter slots into buckets (bucketStart is temporarily used as insert position)
+        for (int i = 0; i < size; i++ )
+        {
+            bucketEntries[bucketStart[bucketOfPedestrian[i]]++ ] = i;
+        }
+        // restore bucket start positions
+        for (int b = buckets; b > 0; b-- )
+        {
+            bucketStart[b] = bucketStart[b - 1];
+        }
+        bucketStart[0] = 0;
+    }
+
+    /**
+     * Writes the distinct buckets of the cell of the position {@code x}, {@code y} and its 8
+     * neighbouring cells into {@code buckets}. Since different cells can share the same bucket,
+     * duplicates are removed, so that each {@link Pedestrian} is only visited once.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     * @param buckets an array of at least 9 elements, which receives the buckets
+     *
+     * @return the number of distinct buckets written into {@code buckets}
+     */
+    public int getNeighbourBuckets(double x, double y, int[] buckets)
+    {
+        if ( !(cellSize > 0))
+        {
+            buckets[0] = 0;
+            return 1;
+        }
+        int cellX = getCell(x);
+        int cellY = getCell(y);
+        int bucketCount = 0;
+        for (int dx = -1; dx <= 1; dx++ )
+        {
+            for (int dy = -1; dy <= 1; dy++ )
+            {
+                int bucket = getBucket(cellX + dx, cellY + dy);
+                boolean isDuplicate = false;
+                for (int i = 0; i < bucketCount; i++ )
+                {
+                    if (buckets[i] == bucket)
+                    {
+                        isDuplicate = true;
+                        break;
+                    }
+                }
+                if ( !isDuplicate)
+                    buckets[bucketCount++ ] = bucket;
+            }
+        }
+        return bucketCount;
+    }
+
+    /**
+     * Gets the index of the first entry of {@code bucket} (inclusive).
+     *
+     * @param bucket the bucket
+     * @return the index of the first entry of {@code bucket}, cf. {@link #getSlot(int)}
+     */
+    public int getBucketStart(int bucket)
+    {
+        return bucketStart[bucket];
+    }
+
+    /**
+     * Gets the index after the last entry of {@code bucket} (exclusive).
+     *
+     * @param bucket the bucket
+     * @return the index after the last entry of {@code bucket}, cf. {@link #getSlot(int)}
+     */
+    public int getBucketEnd(int bucket)
+    {
+        return bucketStart[bucket + 1];
+    }
+
+    /**
+     * Gets the slot, i.e. the index in {@link #getPedestrians()}, of the {@link Pedestrian}
+     * stored at the given {@code entry}.
+     *
+     * @param entry the index of the entry between {@link #getBucketStart(int)} and
+     *            {@link #getBucketEnd(int)}
+     * @return the slot of the {@link Pedestrian}
+     */
+    public int getSlot(int entry)
+    {
+        return bucketEntries[entry];
+    }
+
+    /**
+     * Computes the cell index of the given coordinate component.
+     *
+     * @param coordinate the x or y component of a position
+     * @return the cell index
+     */
+    private int getCell(double coordinate)
+    {
+        if ( !(cellSize > 0))
+            return 0;
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    /**
+     * Maps the cell {@code cellX}, {@code cellY} to a bucket of the hash table.
+     *
+     * @param cellX the cell index in x direction
+     * @param cellY the cell index in y direction
+     * @return the bucket
+     */
+    private int getBucket(int cellX, int cellY)
+    {
+        int hash = (cellX * 73856093) ^ (cellY * 19349663);
+        // spread higher bits, since the number of buckets is a power of 2
+        hash ^= (hash >>> 16);
+        return hash & bucketMask;
+    }
+}
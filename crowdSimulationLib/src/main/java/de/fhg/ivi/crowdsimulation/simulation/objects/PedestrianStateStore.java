@@ -0,0 +1,477 @@
+package de.fhg.ivi.crowdsimulation.simulation.objects;
+
+import java.util.Arrays;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator;
+import math.geom2d.Vector2D;
+
+/**
+ * A {@link PedestrianStateStore} stores the dynamic state of a number of {@link Pedestrian}s, i.e.
+ * their positions, velocities and forces, in contiguous arrays of primitive {@code double} values
+ * (structure of arrays). Each {@link Pedestrian} occupies one slot, i.e. one index of all arrays,
+ * and acts as a view onto its slot (cf. {@link Pedestrian#getStateStore()} and
+ * {@link Pedestrian#getSlot()}). Hence, the state of all {@link Pedestrian}s of a {@link Crowd}
+ * is stored closely together in memory and the {@link NumericIntegrator}s and {@link ForceModel}s
+ * are able to read and update it without creating {@link Vector2D} objects.
+ * <p>
+ * A force component of {@link Double#NaN} denotes a force, which has not been computed yet.
+ * <p>
+ * Different slots can be read and written concurrently. However, slots must only be allocated
+ * (cf. {@link #allocate()}) or released (cf. {@link #release(int)}) while no simulation step is
+ * computed, since allocating may replace all arrays by larger copies.
+ *
+ * @author hahmann/meinert
+ */
+public class PedestrianStateStore
+{
+    /**
+     * The default initial number of slots of a {@link PedestrianStateStore}.
+     */
+    public static final int defaultCapacity = 16;
+
+    /**
+     * The x components of the positions of all slots.
+     */
+    private double[]        positionsX;
+
+    /**
+     * The y components of the positions of all slots.
+     */
+    private double[]        positionsY;
+
+    /**
+     * The x components of the velocities of all slots.
+     */
+    private double[]        velocitiesX;
+
+    /**
+     * The y components of the velocities of all slots.
+     */
+    private double[]        velocitiesY;
+
+    /**
+     * The x components of the total forces of all slots.
+     */
+    private double[]        forcesX;
+
+    /**
+     * The y components of the total forces of all slots.
+     */
+    private double[]        forcesY;
+
+    /**
+     * The x components of the forces resulting from the interaction with other {@link Pedestrian}s
+     * of all slots.
+     */
+    private double[]        pedestrianForcesX;
+
+    /**
+     * The y components of the forces resulting from the interaction with other {@link Pedestrian}s
+     * of all slots.
+     */
+    private double[]        pedestrianForcesY;
+
+    /**
+     * The x components of the forces resulting from the interaction with {@link Boundary} objects
+     * of all slots.
+     */
+    private double[]        boundaryForcesX;
+
+    /**
+     * The y components of the forces resulting from the interaction with {@link Boundary} objects
+     * of all slots.
+     */
+    private double[]        boundaryForcesY;
+
+    /**
+     * The number of slots, which have ever been allocated, i.e. all allocated slots are smaller
+     * than this value.
+     */
+    private int             size;
+
+    /**
+     * Stack of released slots, which are reused by {@link #allocate()} before new slots are
+     * appended.
+     */
+    private int[]           freeSlots;
+
+    /**
+     * The number of elements of {@link #freeSlots}.
+     */
+    private int             freeSlotCount;
+
+    /**
+     * Creates a new, empty {@link PedestrianStateStore} with {@link #defaultCapacity}.
+     */
+    public PedestrianStateStore()
+    {
+        this(defaultCapacity);
+    }
+
+    /**
+     * Creates a new, empty {@link PedestrianStateStore}.
+     *
+     * @param capacity the initial number of slots, which can be allocated without growing the
+     *            arrays
+     */
+    public PedestrianStateStore(int capacity)
+    {
+        capacity = Math.max(1, capacity);
+        this.positionsX = new double[capacity];
+        this.positionsY = new double[capacity];
+        this.velocitiesX = new double[capacity];
+        this.velocitiesY = new double[capacity];
+        this.forcesX = new double[capacity];
+        this.forcesY = new double[capacity];
+        this.pedestrianForcesX = new double[capacity];
+        this.pedestrianForcesY = new double[capacity];
+        this.boundaryForcesX = new double[capacity];
+        this.boundaryForcesY = new double[capacity];
+        this.freeSlots = new int[0];
+    }
+
+    /**
+     * Allocates a new slot. All values of the slot are initialized with {@code 0} except the force
+     * components, which are initialized with {@link Double#NaN}, i.e. not computed yet.
+     *
+     * @return the allocated slot
+     */
+    public synchronized int allocate()
+    {
+        int slot;
+        if (freeSlotCount > 0)
+        {
+            slot = freeSlots[ --freeSlotCount];
+        }
+        else
+        {
+            if (size == positionsX.length)
+                grow(2 * size);
+            slot = size++ ;
+        }
+        positionsX[slot] = 0;
+        positionsY[slot] = 0;
+        velocitiesX[slot] = 0;
+        velocitiesY[slot] = 0;
+        clearForces(slot);
+        return slot;
+    }
+
+    /**
+     * Releases {@code slot}, so that it can be reused by {@link #allocate()}.
+     *
+     * @param slot the slot to be released
+     */
+    public synchronized void release(int slot)
+    {
+        if (freeSlotCount == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, Math.max(4, 2 * freeSlotCount));
+        freeSlots[freeSlotCount++ ] = slot;
+    }
+
+    /**
+     * Gets the number of slots, which have ever been allocated, i.e. all allocated slots are
+     * smaller than this value. Note that released slots are included.
+     *
+     * @return the number of slots
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Copies the complete state of slot {@code sourceSlot} of {@code source} to slot
+     * {@code targetSlot} of this {@link PedestrianStateStore}.
+     *
+     * @param targetSlot the slot of this {@link PedestrianStateStore} to be overwritten
+     * @param source the {@link PedestrianStateStore} to copy from
+     * @param sourceSlot the slot of {@code source} to copy from
+     */
+    public void copy(int targetSlot, PedestrianStateStore source, int sourceSlot)
+    {
+        positionsX[targetSlot] = source.positionsX[sourceSlot];
+        positionsY[targetSlot] = source.positionsY[sourceSlot];
+        velocitiesX[targetSlot] = source.velocitiesX[sourceSlot];
+        velocitiesY[targetSlot] = source.velocitiesY[sourceSlot];
+        forcesX[targetSlot] = source.forcesX[sourceSlot];
+        forcesY[targetSlot] = source.forcesY[sourceSlot];
+        pedestrianForcesX[targetSlot] = source.pedestrianForcesX[sourceSlot];
+        pedestrianForcesY[targetSlot] = source.pedestrianForcesY[sourceSlot];
+        boundaryForcesX[targetSlot] = source.boundaryForcesX[sourceSlot];
+        boundaryForcesY[targetSlot] = source.boundaryForcesY[sourceSlot];
+    }
+
+    /**
+     * Gets the x component of the position of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the x component of the position
+     */
+    public double getPositionX(int slot)
+    {
+        return positionsX[slot];
+    }
+
+    /**
+     * Gets the y component of the position of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the y component of the position
+     */
+    public double getPositionY(int slot)
+    {
+        return positionsY[slot];
+    }
+
+    /**
+     * Sets the position of {@code slot}.
+     *
+     * @param slot the slot
+     * @param x the x component of the position
+     * @param y the y component of the position
+     */
+    public void setPosition(int slot, double x, double y)
+    {
+        positionsX[slot] = x;
+        positionsY[slot] = y;
+    }
+
+    /**
+     * Gets the x component of the velocity of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the x component of the velocity
+     */
+    public double getVelocityX(int slot)
+    {
+        return velocitiesX[slot];
+    }
+
+    /**
+     * Gets the y component of the velocity of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the y component of the velocity
+     */
+    public double getVelocityY(int slot)
+    {
+        return velocitiesY[slot];
+    }
+
+    /**
+     * Sets the velocity of {@code slot}.
+     *
+     * @param slot the slot
+     * @param x the x component of the velocity
+     * @param y the y component of the velocity
+     */
+    public void setVelocity(int slot, double x, double y)
+    {
+        velocitiesX[slot] = x;
+        velocitiesY[slot] = y;
+    }
+
+    /**
+     * Gets the x component of the total force of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the x component of the total force or {@link Double#NaN}, if it has not been
+     *         computed yet
+     */
+    public double getForceX(int slot)
+    {
+        return forcesX[slot];
+    }
+
+    /**
+     * Gets the y component of the total force of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the y component of the total force or {@link Double#NaN}, if it has not been
+     *         computed yet
+     */
+    public double getForceY(int slot)
+    {
+        return forcesY[slot];
+    }
+
+    /**
+     * Gets the x component of the force resulting from the interaction with other
+     * {@link Pedestrian}s of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the x component of the force or {@link Double#NaN}, if it has not been computed yet
+     */
+    public double getPedestrianForceX(int slot)
+    {
+        return pedestrianForcesX[slot];
+    }
+
+    /**
+     * Gets the y component of the force resulting from the interaction with other
+     * {@link Pedestrian}s of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the y component of the force or {@link Double#NaN}, if it has not been computed yet
+     */
+    public double getPedestrianForceY(int slot)
+    {
+        return pedestrianForcesY[slot];
+    }
+
+    /**
+     * Gets the x component of the force resulting from the interaction with {@link Boundary}
+     * objects of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the x component of the force or {@link Double#NaN}, if it has not been computed yet
+     */
+    public double getBoundaryForceX(int slot)
+    {
+        return boundaryForcesX[slot];
+    }
+
+    /**
+     * Gets the y component of the force resulting from the interaction with {@link Boundary}
+     * objects of {@code slot}.
+     *
+     * @param slot the slot
+     * @return the y component of the force or {@link Double#NaN}, if it has not been computed yet
+     */
+    public double getBoundaryForceY(int slot)
+    {
+        return boundaryForcesY[slot];
+    }
+
+    /**
+     * Sets all forces of {@code slot}. The total force is the sum of the intrinsic force, the
+     * force resulting from the interaction with other {@link Pedestrian}s and the force resulting
+     * from the interaction with {@link Boundary} objects.
+     *
+     * @param slot the slot
+     * @param intrinsicForceX the x component of the intrinsic force
+     * @param intrinsicForceY the y component of the intrinsic force
+     * @param pedestrianForceX the x component of the force resulting from the interaction with
+     *            other {@link Pedestrian}s
+     * @param pedestrianForceY the y component of the force resulting from the interaction with
+     *            other {@link Pedestrian}s
+     * @param boundaryForceX the x component of the force resulting from the interaction with
+     *            {@link Boundary} objects
+     * @param boundaryForceY the y component of the force resulting from the interaction with
+     *            {@link Boundary} objects
+     */
+    public void setForces(int slot, double intrinsicForceX, double intrinsicForceY,
+        double pedestrianForceX, double pedestrianForceY, double boundaryForceX,
+        double boundaryForceY)
+    {
+        pedestrianForcesX[slot] = pedestrianForceX;
+        pedestrianForcesY[slot] = pedestrianForceY;
+        boundaryForcesX[slot] = boundaryForceX;
+        boundaryForcesY[slot] = boundaryForceY;
+        forcesX[slot] = intrinsicForceX + (pedestrianForceX + boundaryForceX);
+        forcesY[slot] = intrinsicForceY + (pedestrianForceY + boundaryForceY);
+    }
+
+    /**
+     * Resets all forces of {@code slot} to {@link Double#NaN}, i.e. not computed yet.
+     *
+     * @param slot the slot
+     */
+    public void clearForces(int slot)
+    {
+        forcesX[slot] = Double.NaN;
+        forcesY[slot] = Double.NaN;
+        pedestrianForcesX[slot] = Double.NaN;
+        pedestrianForcesY[slot] = Double.NaN;
+        boundaryForcesX[slot] = Double.NaN;
+        boundaryForcesY[slot] = Double.NaN;
+    }
+
+    /**
+     * Gets the array of the x components of the positions of all slots for bulk operations. The
+     * array is replaced, when the {@link PedestrianStateStore} grows (cf. {@link #allocate()}).
+     *
+     * @return the x components of the positions
+     */
+    public double[] getPositionsX()
+    {
+        return positionsX;
+    }
+
+    /**
+     * Gets the array of the y components of the positions of all slots for bulk operations. The
+     * array is replaced, when the {@link PedestrianStateStore} grows (cf. {@link #allocate()}).
+     *
+     * @return the y components of the positions
+     */
+    public double[] getPositionsY()
+    {
+        return positionsY;
+    }
+
+    /**
+     * Gets the array of the x components of the velocities of all slots for bulk operations. The
+     * array is replaced, when the {@link PedestrianStateStore} grows (cf. {@link #allocate()}).
+     *
+     * @return the x components of the velocities
+     */
+    public double[] getVelocitiesX()
+    {
+        return velocitiesX;
+    }
+
+    /**
+     * Gets the array of the y components of the velocities of all slots for bulk operations. The
+     * array is replaced, when the {@link PedestrianStateStore} grows (cf. {@link #allocate()}).
+     *
+     * @return the y components of the velocities
+     */
+    public double[] getVelocitiesY()
+    {
+        return velocitiesY;
+    }
+
+    /**
+     * Gets the array of the x components of the total forces of all slots for bulk operations. The
+     * array is replaced, when the {@link PedestrianStateStore} grows (cf. {@link #allocate()}).
+     *
+     * @return the x components of the total forces
+     */
+    public double[] getForcesX()
+    {
+        return forcesX;
+    }
+
+    /**
+     * Gets the array of the y components of the total forces of all slots for bulk operations. The
+     * array is replaced, when the {@link PedestrianStateStore} grows (cf. {@link #allocate()}).
+     *
+     * @return the y components of the total forces
+     */
+    public double[] getForcesY()
+    {
+        return forcesY;
+    }
+
+    /**
+     * Increases the number of slots, which can be allocated without growing the arrays, to
+     * {@code capacity}.
+     *
+     * @param capacity the new capacity
+     */
+    private void grow(int capacity)
+    {
+        positionsX = Arrays.copyOf(positionsX, capacity);
+        positionsY = Arrays.copyOf(positionsY, capacity);
+        velocitiesX = Arrays.copyOf(velocitiesX, capacity);
+        velocitiesY = Arrays.copyOf(velocitiesY, capacity);
+        forcesX = Arrays.copyOf(forcesX, capacity);
+        forcesY = Arrays.copyOf(forcesY, capacity);
+        pedestrianForcesX = Arrays.copyOf(pedestrianForcesX, capacity);
+        pedestrianForcesY = Arrays.copyOf(pedestrianForcesY, capacity);
+        boundaryForcesX = Arrays.copyOf(boundaryForcesX, capacity);
+        boundaryForcesY = Arrays.copyOf(boundaryForcesY, capacity);
+    }
+}
@@ -0,0 +1,89 @@
+package de.fhg.ivi.crowdsimulation.simulation.tools;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+
+/**
+ * Lookup table for the exponential function {@code e^x}, which is used in the fast math mode of
+ * the {@link ForceModel}s (cf. {@link ForceModel#setFastMath(boolean)}).
+ * <p>
+ * The values of {@code e^x} are tabulated with a spacing of {@code h = 1 / }{@link #stepsPerUnit}
+ * between {@link #minArgument} and {@link #maxArgument} and linearly interpolated in between.
+ * Since the second derivative of {@code e^x} equals {@code e^x}, the relative error of the linear
+ * interpolation is bounded by {@code h^2 / 8 * e^h}, i.e. less than {@code 2e-6} for
+ * {@code h = 1/256}. Outside of the tabulated range {@link Math#exp(double)} is used.
+ * <p>
+ * The repulsive terms of the Social Force Model {@code A * e^((r - d) / B)} are only computed for
+ * distances {@code d}, at which the force is larger than {@link ForceModel#limitResultingForce},
+ * so the arguments are usually between about {@code -10} and {@code 4}.
+ *
+ * @author hahmann/meinert
+ */
+public final class ExpLookupTable
+{
+    /**
+     * The smallest argument, which is looked up in the {@link #table}.
+     */
+    public static final int       minArgument  = -24;
+
+    /**
+     * The largest argument, which is looked up in the {@link #table}.
+     */
+    public static final int       maxArgument  = 8;
+
+    /**
+     * The number of tabulated values per unit of the argument.
+     */
+    public static final int       stepsPerUnit = 256;
+
+    /**
+     * The maximum relative error of {@link #exp(double)} compared with {@link Math#exp(double)}
+     * within the tabulated range, i.e. {@code h^2 / 8 * e^h} with {@code h = 1 / stepsPerUnit}.
+     */
+    public static final double    maximumRelativeError;
+
+    /**
+     * The tabulated values of {@code e^x}. Contains one additional value at the end, so that the
+     * interpolation never exceeds the array.
+     */
+    private static final double[] table;
+
+    static
+    {
+        int length = (maxArgument - minArgument) * stepsPerUnit + 2;
+        table = new double[length];
+        for (int i = 0; i < length; i++ )
+        {
+            table[i] = Math.exp(minArgument + i / (double) stepsPerUnit);
+        }
+        double h = 1d / stepsPerUnit;
+        maximumRelativeError = h * h / 8d * Math.exp(h);
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private ExpLookupTable()
+    {
+    }
+
+    /**
+     * Returns Euler's number <i>e</i> raised to the power of {@code x}. Within the range of
+     * {@link #minArgument} and {@link #maxArgument} the result is linearly interpolated in the
+     * {@link #table} with a relative error of at most {@link #maximumRelativeError}, otherwise
+     * {@link Math#exp(double)} is used.
+     *
+     * @param x the exponent
+     * @return the value <i>e</i><sup>{@code x}</sup>
+     */
+    public static double exp(double x)
+    {
+        // also false for NaN
+        if ( !(x >= minArgument && x < maxArgument))
+            return Math.exp(x);
+        double position = (x - minArgument) * stepsPerUnit;
+        int index = (int) position;
+        double fraction = position - index;
+        double lower = table[index];
+        return lower + (table[index + 1] - lower) * fraction;
+    }
+}
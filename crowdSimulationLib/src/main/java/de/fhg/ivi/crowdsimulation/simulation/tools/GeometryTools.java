@@ -32,6 +32,7 @@ import com.vividsolutions.jts.geom.TopologyException;
 import com.vividsolutions.jts.operation.linemerge.LineMerger;
 
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
 import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
 import math.geom2d.Vector2D;
@@ -52,6 +53,8 @@ import math.geom2d.Vector2D;
  * <li>Creating an convex or concave outline around a set of {@link MultiPoint}s</li>
  * <li>Extract a {@link List} of {@link Coordinate}s out of a {@link List} of
  * {@link Pedestrian}s</li>
+ * <li>Allocation-free nearest point and intersection tests of line segments given by their
+ * coordinates</li>
  *
  * <p>
  *
@@ -62,7 +65,33 @@ public class GeometryTools
     /**
      * Uses the object logger for printing specific messages in the console.
      */
-    private static final Logger logger = LoggerFactory.getLogger(GeometryTools.class);
+    private static final Logger logger              = LoggerFactory.getLogger(GeometryTools.class);
+
+    /**
+     * Result of {@link #segmentsIntersect(double, double, double, double, double, double, double,
+     * double)}, if the line segments are disjoint.
+     */
+    public static final int     SEGMENTS_DISJOINT   = 0;
+
+    /**
+     * Result of {@link #segmentsIntersect(double, double, double, double, double, double, double,
+     * double)}, if the line segments intersect in a single point, which is not an end point of any
+     * of them.
+     */
+    public static final int     SEGMENTS_INTERSECT  = 1;
+
+    /**
+     * Result of {@link #segmentsIntersect(double, double, double, double, double, double, double,
+     * double)}, if the line segments touch, overlap or are too close to decide robustly. An
+     * accurate check (e.g. using {@link Geometry#intersects(Geometry)}) is needed in this case.
+     */
+    public static final int     SEGMENTS_UNCERTAIN  = 2;
+
+    /**
+     * Relative error bound of the floating point computation of the orientation of 3 points, cf.
+     * {@link #orientationIndex(double, double, double, double, double, double)}
+     */
+    private static final double ORIENTATION_EPSILON = 1e-15;
 
     /**
      * Calculates a {@link Coordinate} on a {@link Geometry} object based on the shortest distance
@@ -492,39 +521,16 @@ public class GeometryTools
      *
      * @param start start {@link Coordinate}
      * @param target target {@link Coordinate}
-     * @param boundaries {@link List} that contains all {@link Boundary} objects
+     * @param boundaries {@link BoundaryIndex} that contains all {@link Boundary} objects
      * @return {@code true} if there is a direct line of sight between start and target,
      *         {@code false} otherwise
-     * 
-     *         Code similar to method in FollowWayPointsMentalModel class of mentalmodal package
      */
     public static boolean isTargetVisible(Coordinate start, Coordinate target,
-        List<Boundary> boundaries)
+        BoundaryIndex boundaries)
     {
-
-        // computes LineString between start and target
-        Coordinate[] coordinates = new Coordinate[] { start, target };
-        LineString lineOfSight = JTSFactoryFinder.getGeometryFactory()
-            .createLineString(coordinates);
-
-        // checks if the Pedestrian sees the its next Waypoint.
-        boolean lineOfSightIntersectsBoundary = false;
-        if (boundaries != null)
-        {
-            Envelope boundingBoxLineOfSight = lineOfSight.getEnvelopeInternal();
-            for (Boundary boundary : boundaries)
-            {
-                // quick check
-                if (boundingBoxLineOfSight.intersects(boundary.getBoundingBox()))
-                {
-                    // accurate check
-                    lineOfSightIntersectsBoundary = lineOfSight.intersects(boundary.getGeometry());
-                    if (lineOfSightIntersectsBoundary)
-                        break;
-                }
-            }
-        }
-        return !lineOfSightIntersectsBoundary;
+        if (boundaries == null)
+            return true;
+        return boundaries.isTargetVisible(start, target);
     }
 
     /**
@@ -554,4 +560,147 @@ public class GeometryTools
         return transformedGeometry;
     }
 
+    /**
+     * Computes the point on the line segment between {@code x0}, {@code y0} and {@code x1},
+     * {@code y1} that is nearest to the position {@code x}, {@code y} without creating any objects.
+     * The result is the same as of {@link LineSegment#closestPoint(Coordinate)}.
+     *
+     * @param x the x component of the position
+     * @param y the y component of the position
+     * @param x0 the x component of the start point of the line segment
+     * @param y0 the y component of the start point of the line segment
+     * @param x1 the x component of the end point of the line segment
+     * @param y1 the y component of the end point of the line segment
+     * @param nearestPoint an array, which receives the x and y component of the nearest point at
+     *            {@code offset} and {@code offset + 1}
+     * @param offset the index of the x component of the nearest point in {@code nearestPoint}
+     *
+     * @return the squared distance between the position and the nearest point
+     */
+    public static double getNearestPointOnSegment(double x, double y, double x0, double y0,
+        double x1, double y1, double[] nearestPoint, int offset)
+    {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double projectionFactor;
+        if (x == x0 && y == y0)
+            projectionFactor = 0;
+        else if (x == x1 && y == y1)
+            projectionFactor = 1;
+        else
+            projectionFactor = ((x - x0) * dx + (y - y0) * dy) / (dx * dx + dy * dy);
+
+        if (projectionFactor > 0 && projectionFactor < 1)
+        {
+            nearestPoint[offset] = x0 + projectionFactor * dx;
+            nearestPoint[offset + 1] = y0 + projectionFactor * dy;
+        }
+        // same comparison as in LineSegment#closestPoint(Coordinate)
+        else if (Math.sqrt((x0 - x) * (x0 - x) + (y0 - y) * (y0 - y)) < Math
+            .sqrt((x1 - x) * (x1 - x) + (y1 - y) * (y1 - y)))
+        {
+            nearestPoint[offset] = x0;
+            nearestPoint[offset + 1] = y0;
+        }
+        else
+        {
+            nearestPoint[offset] = x1;
+            nearestPoint[offset + 1] = y1;
+        }
+        return (x - nearestPoint[offset]) * (x - nearestPoint[offset])
+            + (y - nearestPoint[offset + 1]) * (y - nearestPoint[offset + 1]);
+    }
+
+    /**
+     * Tests, whether the line segment between {@code ax0}, {@code ay0} and {@code ax1},
+     * {@code ay1} intersects the line segment between {@code bx0}, {@code by0} and {@code bx1},
+     * {@code by1} without creating any objects.
+     * <p>
+     * The test is only conclusive, if the line segments are disjoint or intersect in a single
+     * point, which is not an end point of any of them. In all other cases (touching, overlapping,
+     * numerically not decidable) {@link #SEGMENTS_UNCERTAIN} is returned.
+     *
+     * @param ax0 the x component of the start point of the first line segment
+     * @param ay0 the y component of the start point of the first line segment
+     * @param ax1 the x component of the end point of the first line segment
+     * @param ay1 the y component of the end point of the first line segment
+     * @param bx0 the x component of the start point of the second line segment
+     * @param by0 the y component of the start point of the second line segment
+     * @param bx1 the x component of the end point of the second line segment
+     * @param by1 the y component of the end point of the second line segment
+     *
+     * @return {@link #SEGMENTS_DISJOINT}, {@link #SEGMENTS_INTERSECT} or
+     *         {@link #SEGMENTS_UNCERTAIN}
+     */
+    public static int segmentsIntersect(double ax0, double ay0, double ax1, double ay1,
+        double bx0, double by0, double bx1, double by1)
+    {
+        // quick check of the bounding boxes
+        if (Math.min(ax0, ax1) > Math.max(bx0, bx1) || Math.max(ax0, ax1) < Math.min(bx0, bx1)
+            || Math.min(ay0, ay1) > Math.max(by0, by1) || Math.max(ay0, ay1) < Math.min(by0, by1))
+            return SEGMENTS_DISJOINT;
+
+        // orientation of the points of the first line segment relative to the second one
+        int orientationA0 = orientationIndex(bx0, by0, bx1, by1, ax0, ay0);
+        int orientationA1 = orientationIndex(bx0, by0, bx1, by1, ax1, ay1);
+        if (orientationA0 == orientationA1 && orientationA0 != 0 && orientationA0 != 2)
+            return SEGMENTS_DISJOINT;
+
+        // orientation of the points of the second line segment relative to the first one
+        int orientationB0 = orientationIndex(ax0, ay0, ax1, ay1, bx0, by0);
+        int orientationB1 = orientationIndex(ax0, ay0, ax1, ay1, bx1, by1);
+        if (orientationB0 == orientationB1 && orientationB0 != 0 && orientationB0 != 2)
+            return SEGMENTS_DISJOINT;
+
+        if (orientationA0 * orientationA1 == -1 && orientationB0 * orientationB1 == -1)
+            return SEGMENTS_INTERSECT;
+        return SEGMENTS_UNCERTAIN;
+    }
+
+    /**
+     * Computes the orientation of the point {@code x}, {@code y} relative to the directed line
+     * from {@code x0}, {@code y0} to {@code x1}, {@code y1} using a floating point filter similar
+     * to the one of JTS.
+     *
+     * @param x0 the x component of the start point of the line
+     * @param y0 the y component of the start point of the line
+     * @param x1 the x component of the end point of the line
+     * @param y1 the y component of the end point of the line
+     * @param x the x component of the point
+     * @param y the y component of the point
+     *
+     * @return {@code 1}, if the point is left of the line, {@code -1}, if it is right of the line,
+     *         {@code 0}, if it is collinear and {@code 2}, if the orientation cannot be decided
+     *         robustly
+     */
+    private static int orientationIndex(double x0, double y0, double x1, double y1, double x,
+        double y)
+    {
+        double detLeft = (x0 - x) * (y1 - y);
+        double detRight = (y0 - y) * (x1 - x);
+        double det = detLeft - detRight;
+
+        double detSum;
+        if (detLeft > 0)
+        {
+            if (detRight <= 0)
+                return (int) Math.signum(det);
+            detSum = detLeft + detRight;
+        }
+        else if (detLeft < 0)
+        {
+            if (detRight >= 0)
+                return (int) Math.signum(det);
+            detSum = -detLeft - detRight;
+        }
+        else
+        {
+            return (int) Math.signum(det);
+        }
+
+        double errorBound = ORIENTATION_EPSILON * detSum;
+        if (det >= errorBound || -det >= errorBound)
+            return (int) Math.signum(det);
+        return 2;
+    }
 }
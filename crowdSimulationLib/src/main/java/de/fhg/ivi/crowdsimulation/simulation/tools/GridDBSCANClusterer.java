@@ -0,0 +1,387 @@
+package de.fhg.ivi.crowdsimulation.simulation.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.ml.clustering.DBSCANClusterer;
+
+/**
+ * Density-based clustering of points (DBSCAN) working on primitive coordinate arrays, whose
+ * neighbourhood queries use a uniform grid of cells with an edge length of {@link #epsilon}.
+ * <p>
+ * The neighbours of a point within the distance {@link #epsilon} are only searched in the cells
+ * covering the circle around the point (usually 3x3 cells), instead of testing all points as the
+ * {@link DBSCANClusterer} of Apache Commons Math does. This reduces the effort from quadratic to
+ * nearly linear in the number of points, as long as the density of points is bounded.
+ * <p>
+ * Apart from that, the algorithm is the same as the one of {@link DBSCANClusterer}: the points
+ * are visited in the given order, the neighbours of a point are processed in ascending order and
+ * a point is a core point, if it has at least {@link #minPts} neighbours (not counting the point
+ * itself). Hence, the resulting clusters and the order of the points within each cluster are
+ * identical to those of {@link DBSCANClusterer}, if each point is a distinct object (e.g. a
+ * {@link de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian}).
+ * <p>
+ * As in a {@link de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianSpatialHash}, the cells
+ * are hashed into a table of buckets, whose size only depends on the number of points, so that
+ * the area covered by the points is unbounded.
+ *
+ * @author hahmann/meinert
+ */
+public class GridDBSCANClusterer
+{
+    /**
+     * The minimum number of buckets of the hash table.
+     */
+    private static final int    MIN_BUCKETS     = 16;
+
+    /**
+     * Relative margin added to {@link #epsilon} when determining the cells to be searched, so that
+     * rounding errors cannot exclude a cell containing a neighbour.
+     */
+    private static final double cellMargin      = 1e-9;
+
+    /**
+     * The status of a point, which has not been visited yet.
+     */
+    private static final byte   UNVISITED       = 0;
+
+    /**
+     * The status of a point, which has been visited, but is not part of a cluster (yet).
+     */
+    private static final byte   NOISE           = 1;
+
+    /**
+     * The status of a point, which is part of a cluster.
+     */
+    private static final byte   PART_OF_CLUSTER = 2;
+
+    /**
+     * The maximum distance between two points to be neighbours and the edge length of the cells.
+     */
+    private final double        epsilon;
+
+    /**
+     * The minimum number of neighbours of a core point (not counting the point itself).
+     */
+    private final int           minPts;
+
+    /**
+     * Creates a new {@link GridDBSCANClusterer}.
+     *
+     * @param epsilon the maximum distance between two points to be neighbours
+     * @param minPts the minimum number of neighbours of a core point (not counting the point
+     *            itself)
+     */
+    public GridDBSCANClusterer(double epsilon, int minPts)
+    {
+        if ( !(epsilon >= 0))
+            throw new IllegalArgumentException("epsilon must not be negative: " + epsilon);
+        if (minPts < 0)
+            throw new IllegalArgumentException("minPts must not be negative: " + minPts);
+        this.epsilon = epsilon;
+        this.minPts = minPts;
+    }
+
+    /**
+     * Gets the maximum distance between two points to be neighbours.
+     *
+     * @return the maximum distance between two points to be neighbours
+     */
+    public double getEpsilon()
+    {
+        return epsilon;
+    }
+
+    /**
+     * Gets the minimum number of neighbours of a core point (not counting the point itself).
+     *
+     * @return the minimum number of neighbours of a core point
+     */
+    public int getMinPts()
+    {
+        return minPts;
+    }
+
+    /**
+     * Clusters the points given by {@code x} and {@code y}. Points, which are not part of any
+     * cluster (noise), are omitted.
+     *
+     * @param x the x components of the points
+     * @param y the y components of the points
+     * @param count the number of points
+     * @return the {@link List} of clusters, each given as array of the indices of its points
+     */
+    public List<int[]> cluster(double[] x, double[] y, int count)
+    {
+        Index index = new Index(x, y, count);
+        byte[] status = new byte[count];
+        boolean[] isSeed = new boolean[count];
+        IntList neighbours = new IntList();
+        IntList currentNeighbours = new IntList();
+        IntList seeds = new IntList();
+        IntList members = new IntList();
+
+        List<int[]> clusters = new ArrayList<>();
+        for (int i = 0; i < count; i++ )
+        {
+            if (status[i] != UNVISITED)
+                continue;
+            index.getNeighbours(i, neighbours);
+            if (neighbours.size < minPts)
+            {
+                status[i] = NOISE;
+                continue;
+            }
+
+            // expand the cluster of the core point i
+            members.size = 0;
+            members.add(i);
+            status[i] = PART_OF_CLUSTER;
+            seeds.size = 0;
+            for (int k = 0; k < neighbours.size; k++ )
+            {
+                seeds.add(neighbours.values[k]);
+                isSeed[neighbours.values[k]] = true;
+            }
+            for (int k = 0; k < seeds.size; k++ )
+            {
+                int current = seeds.values[k];
+                byte currentStatus = status[current];
+                // only unvisited points can be core points, whose neighbours are added
+                if (currentStatus == UNVISITED)
+                {
+                    index.getNeighbours(current, currentNeighbours);
+                    if (currentNeighbours.size >= minPts)
+                    {
+                        for (int l = 0; l < currentNeighbours.size; l++ )
+                        {
+                            int neighbour = currentNeighbours.values[l];
+                            if ( !isSeed[neighbour])
+                            {
+                                seeds.add(neighbour);
+                                isSeed[neighbour] = true;
+                            }
+                        }
+                    }
+                }
+                if (currentStatus != PART_OF_CLUSTER)
+                {
+                    status[current] = PART_OF_CLUSTER;
+                    members.add(current);
+                }
+            }
+            for (int k = 0; k < seeds.size; k++ )
+            {
+                isSeed[seeds.values[k]] = false;
+            }
+            clusters.add(Arrays.copyOf(members.values, members.size));
+        }
+        return clusters;
+    }
+
+    /**
+     * A growable array of {@code int} values.
+     */
+    private static class IntList
+    {
+        /**
+         * The values, of which only the first {@link #size} are valid.
+         */
+        private int[] values = new int[16];
+
+        /**
+         * The number of valid {@link #values}.
+         */
+        private int   size;
+
+        /**
+         * Appends {@code value}.
+         *
+         * @param value the value to be appended
+         */
+        private void add(int value)
+        {
+            if (size == values.length)
+                values = Arrays.copyOf(values, 2 * size);
+            values[size++ ] = value;
+        }
+    }
+
+    /**
+     * The grid of cells containing the points to be clustered, whose cells are hashed into a
+     * table of buckets. The points are sorted by their bucket using a counting sort, so that the
+     * points of each bucket are stored in ascending order.
+     */
+    private class Index
+    {
+        /**
+         * The x components of the points.
+         */
+        private final double[] x;
+
+        /**
+         * The y components of the points.
+         */
+        private final double[] y;
+
+        /**
+         * For each bucket the index of its first entry in {@link #bucketEntries}.
+         */
+        private final int[]    bucketStart;
+
+        /**
+         * The indices of all points sorted by their bucket.
+         */
+        private final int[]    bucketEntries;
+
+        /**
+         * Bit mask to map a hash value to a bucket. The number of buckets is always a power of 2.
+         */
+        private final int      bucketMask;
+
+        /**
+         * Buffer for the distinct buckets to be searched by {@link #getNeighbours(int, IntList)}.
+         */
+        private final int[]    buckets = new int[16];
+
+        /**
+         * Sorts the points into the buckets.
+         *
+         * @param x the x components of the points
+         * @param y the y components of the points
+         * @param count the number of points
+         */
+        private Index(double[] x, double[] y, int count)
+        {
+            this.x = x;
+            this.y = y;
+            int bucketCount = MIN_BUCKETS;
+            while (bucketCount < 2 * count)
+                bucketCount <<= 1;
+            bucketMask = bucketCount - 1;
+            bucketStart = new int[bucketCount + 1];
+            bucketEntries = new int[count];
+
+            int[] bucketOfPoint = new int[count];
+            for (int i = 0; i < count; i++ )
+            {
+                int bucket = getBucket(getCell(x[i]), getCell(y[i]));
+                bucketOfPoint[i] = bucket;
+                bucketStart[bucket + 1]++ ;
+            }
+            for (int b = 0; b < bucketCount; b++ )
+            {
+                bucketStart[b + 1] += bucketStart[b];
+            }
+            int[] insertPosition = Arrays.copyOf(bucketStart, bucketCount);
+            for (int i = 0; i < count; i++ )
+            {
+                bucketEntries[insertPosition[bucketOfPoint[i]]++ ] = i;
+            }
+        }
+
+        /**
+         * Writes the indices of all points within the distance {@link #epsilon} of the point
+         * {@code point} (excluding the point itself) in ascending order into {@code neighbours}.
+         *
+         * @param point the index of the point
+         * @param neighbours the {@link IntList} receiving the indices of the neighbours
+         */
+        private void getNeighbours(int point, IntList neighbours)
+        {
+            neighbours.size = 0;
+            double pointX = x[point];
+            double pointY = y[point];
+            int bucketCount = getBuckets(pointX, pointY);
+            for (int b = 0; b < bucketCount; b++ )
+            {
+                for (int e = bucketStart[buckets[b]]; e < bucketStart[buckets[b] + 1]; e++ )
+                {
+                    int neighbour = bucketEntries[e];
+                    if (neighbour == point)
+                        continue;
+                    // the same computation as org.apache.commons.math3.util.MathArrays#distance
+                    double dx = x[neighbour] - pointX;
+                    double dy = y[neighbour] - pointY;
+                    if (Math.sqrt(dx * dx + dy * dy) <= epsilon)
+                        neighbours.add(neighbour);
+                }
+            }
+            // the points of each bucket are in ascending order, but not those of several buckets
+            if (bucketCount > 1)
+                Arrays.sort(neighbours.values, 0, neighbours.size);
+        }
+
+        /**
+         * Writes the distinct buckets of all cells intersecting the square of twice
+         * {@link #epsilon} around the position {@code x}, {@code y} into {@link #buckets}.
+         *
+         * @param positionX the x component of the position
+         * @param positionY the y component of the position
+         * @return the number of distinct buckets
+         */
+        private int getBuckets(double positionX, double positionY)
+        {
+            if ( !(epsilon > 0))
+            {
+                buckets[0] = getBucket(getCell(positionX), getCell(positionY));
+                return 1;
+            }
+            double distance = epsilon * (1 + cellMargin);
+            int minCellX = getCell(positionX - distance);
+            int maxCellX = getCell(positionX + distance);
+            int minCellY = getCell(positionY - distance);
+            int maxCellY = getCell(positionY + distance);
+            int bucketCount = 0;
+            // long, so that the loops terminate for cells at the limits of int
+            for (long cellX = minCellX; cellX <= maxCellX; cellX++ )
+            {
+                for (long cellY = minCellY; cellY <= maxCellY; cellY++ )
+                {
+                    int bucket = getBucket((int) cellX, (int) cellY);
+                    boolean isDuplicate = false;
+                    for (int i = 0; i < bucketCount; i++ )
+                    {
+                        if (buckets[i] == bucket)
+                        {
+                            isDuplicate = true;
+                            break;
+                        }
+                    }
+                    if ( !isDuplicate)
+                        buckets[bucketCount++ ] = bucket;
+                }
+            }
+            return bucketCount;
+        }
+
+        /**
+         * Computes the cell index of the given coordinate component.
+         *
+         * @param coordinate the x or y component of a position
+         * @return the cell index
+         */
+        private int getCell(double coordinate)
+        {
+            if ( !(epsilon > 0))
+                return (int) Math.floor(coordinate);
+            return (int) Math.floor(coordinate / epsilon);
+        }
+
+        /**
+         * Maps the cell {@code cellX}, {@code cellY} to a bucket of the hash table.
+         *
+         * @param cellX the cell index in x direction
+         * @param cellY the cell index in y direction
+         * @return the bucket
+         */
+        private int getBucket(int cellX, int cellY)
+        {
+            int hash = (cellX * 73856093) ^ (cellY * 19349663);
+            // spread higher bits, since the number of buckets is a power of 2
+            hash ^= (hash >>> 16);
+            return hash & bucketMask;
+        }
+    }
+}
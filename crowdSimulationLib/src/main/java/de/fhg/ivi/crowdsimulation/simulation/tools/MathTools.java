@@ -160,6 +160,22 @@ public class MathTools
         return hypot(dx, dy, FAST_MATH);
     }
 
+    /**
+     * Computes the 2-dimensional Euclidean distance between the locations {@code x1}, {@code y1}
+     * and {@code x2}, {@code y2}.
+     *
+     * @param x1 the x component of the first location
+     * @param y1 the y component of the first location
+     * @param x2 the x component of the second location
+     * @param y2 the y component of the second location
+     *
+     * @return the 2-dimensional Euclidean distance between the locations
+     */
+    public static double distance(double x1, double y1, double x2, double y2)
+    {
+        return hypot(x1 - x2, y1 - y2, FAST_MATH);
+    }
+
     /**
      * Computes the 2-dimensional Euclidean distance between 2 {@link Point} objects. The Z-ordinate
      * is ignored.
@@ -310,7 +326,9 @@ public class MathTools
                 break;
         }
         // for testing the actual range of input values to this function
-        logger.trace("MathTools.normalized(), result=" + value + ", input=" + Math.pow(value, 2));
+        if (logger.isTraceEnabled())
+            logger.trace(
+                "MathTools.normalized(), result=" + value + ", input=" + Math.pow(value, 2));
         return value;
     }
 
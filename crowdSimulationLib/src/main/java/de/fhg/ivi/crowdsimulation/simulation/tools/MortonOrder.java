@@ -0,0 +1,130 @@
+package de.fhg.ivi.crowdsimulation.simulation.tools;
+
+import java.util.Arrays;
+
+import de.fhg.ivi.crowdsimulation.simulation.objects.Crowd;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+
+/**
+ * Provides methods to order positions along a Z-order curve (Morton order), e.g. to sort the
+ * {@link Pedestrian}s of a {@link Crowd}, so that {@link Pedestrian}s being close to each other in
+ * space are mostly close to each other in memory as well.
+ * <p>
+ * The positions are quantized to a raster of {@code 2^}{@link #bitsPerAxis} cells per axis
+ * spanning the bounding box of all positions. The Morton code of a position is obtained by
+ * interleaving the bits of its column and its row.
+ *
+ * @author hahmann/meinert
+ */
+public final class MortonOrder
+{
+    /**
+     * The number of bits of the column and the row of a quantized position.
+     */
+    public static final int  bitsPerAxis = 16;
+
+    /**
+     * The largest column and row of a quantized position.
+     */
+    private static final int maxCell     = (1 << bitsPerAxis) - 1;
+
+    /**
+     * Not instantiable.
+     */
+    private MortonOrder()
+    {
+    }
+
+    /**
+     * Computes the Morton code of a cell by interleaving the lower {@link #bitsPerAxis} bits of
+     * {@code column} (even bits) and {@code row} (odd bits).
+     *
+     * @param column the column of the cell
+     * @param row the row of the cell
+     * @return the Morton code of the cell
+     */
+    public static long encode(int column, int row)
+    {
+        return spread(column) | (spread(row) << 1);
+    }
+
+    /**
+     * Computes the order of the given positions along the Z-order curve. Positions with the same
+     * Morton code keep their relative order.
+     *
+     * @param positionsX the x components of the positions
+     * @param positionsY the y components of the positions
+     * @param count the number of positions
+     * @return an array of {@code count} indices of the positions in the order of their Morton
+     *         codes, i.e. the element {@code i} is the index of the {@code i}-th position
+     */
+    public static int[] sort(double[] positionsX, double[] positionsY, int count)
+    {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++ )
+        {
+            // comparisons instead of Math.min/max to ignore NaN
+            if (positionsX[i] < minX)
+                minX = positionsX[i];
+            if (positionsY[i] < minY)
+                minY = positionsY[i];
+            if (positionsX[i] > maxX)
+                maxX = positionsX[i];
+            if (positionsY[i] > maxY)
+                maxY = positionsY[i];
+        }
+        double extent = Math.max(maxX - minX, maxY - minY);
+        double scale = extent > 0 && extent < Double.POSITIVE_INFINITY ? maxCell / extent : 0;
+
+        // the Morton code in the upper bits and the index in the lower bits yields a stable order
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++ )
+        {
+            int column = quantize((positionsX[i] - minX) * scale);
+            int row = quantize((positionsY[i] - minY) * scale);
+            keys[i] = (encode(column, row) << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++ )
+        {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    /**
+     * Converts a scaled coordinate into a column or row between {@code 0} and {@link #maxCell}.
+     * Invalid coordinates (e.g. {@link Double#NaN}) are put into the last cell.
+     *
+     * @param value the scaled coordinate
+     * @return the column or row
+     */
+    private static int quantize(double value)
+    {
+        if ( !(value >= 0))
+            return maxCell;
+        return (int) Math.min(value, maxCell);
+    }
+
+    /**
+     * Spreads the lower {@link #bitsPerAxis} bits of {@code value}, so that a zero bit is inserted
+     * between each two bits.
+     *
+     * @param value the value to be spread
+     * @return the spread value
+     */
+    private static long spread(int value)
+    {
+        long x = value & maxCell;
+        x = (x | (x << 8)) & 0x00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0FL;
+        x = (x | (x << 2)) & 0x33333333L;
+        x = (x | (x << 1)) & 0x55555555L;
+        return x;
+    }
+}
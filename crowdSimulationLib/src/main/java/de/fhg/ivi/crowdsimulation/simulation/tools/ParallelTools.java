@@ -0,0 +1,119 @@
+package de.fhg.ivi.crowdsimulation.simulation.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhg.ivi.crowdsimulation.simulation.objects.Crowd;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+
+/**
+ * Provides methods for the parallel processing of a range of indices (e.g. the {@link Pedestrian}s
+ * of a {@link Crowd}) in chunks of consecutive indices using an {@link ExecutorService}.
+ * <p>
+ * Processing chunks instead of single indices reduces the overhead of creating and scheduling
+ * tasks. The calling thread is blocked until all chunks have been processed (cf.
+ * {@link ExecutorService#invokeAll(java.util.Collection)}), i.e. no polling is needed to wait
+ * for the completion.
+ *
+ * @author hahmann/meinert
+ */
+public class ParallelTools
+{
+    /**
+     * Uses the object logger for printing specific messages in the console.
+     */
+    private static final Logger logger           = LoggerFactory.getLogger(ParallelTools.class);
+
+    /**
+     * The default number of consecutive indices processed by a single task.
+     */
+    public static final int     defaultChunkSize = 32;
+
+    /**
+     * A task processing a chunk of consecutive indices.
+     */
+    public interface ChunkTask
+    {
+        /**
+         * Processes all indices from {@code start} (inclusive) to {@code end} (exclusive).
+         *
+         * @param start the first index of the chunk
+         * @param end the index after the last index of the chunk
+         */
+        void run(int start, int end);
+    }
+
+    /**
+     * Processes all indices from {@code 0} (inclusive) to {@code size} (exclusive) by
+     * {@code task} in chunks of {@code chunkSize} consecutive indices and returns, when all chunks
+     * have been processed. If {@code threadPool} is {@code null} or there is only a single chunk,
+     * all indices are processed by the calling thread.
+     * <p>
+     * If any chunk fails, the {@link RuntimeException} or {@link Error} is rethrown after all
+     * chunks have finished. If the calling thread is interrupted, the remaining chunks are
+     * cancelled and the interrupted status is restored.
+     *
+     * @param threadPool the {@link ExecutorService} used for parallel processing, may be
+     *            {@code null}
+     * @param size the number of indices to be processed
+     * @param chunkSize the maximum number of consecutive indices processed by a single task
+     * @param task the {@link ChunkTask} processing the chunks
+     */
+    public static void invokeChunked(ExecutorService threadPool, int size, int chunkSize,
+        final ChunkTask task)
+    {
+        if (chunkSize < 1)
+            chunkSize = 1;
+        if (threadPool == null || size <= chunkSize)
+        {
+            if (size > 0)
+                task.run(0, size);
+            return;
+        }
+
+        List<Callable<Void>> chunks = new ArrayList<>((size + chunkSize - 1) / chunkSize);
+        for (int start = 0; start < size; start += chunkSize)
+        {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(size, start + chunkSize);
+            chunks.add(new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        task.run(chunkStart, chunkEnd);
+                        return null;
+                    }
+                });
+        }
+
+        try
+        {
+            for (Future<Void> future : threadPool.invokeAll(chunks))
+            {
+                future.get();
+            }
+        }
+        catch (InterruptedException e)
+        {
+            logger.debug("ParallelTools.invokeChunked(), interrupted", e);
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
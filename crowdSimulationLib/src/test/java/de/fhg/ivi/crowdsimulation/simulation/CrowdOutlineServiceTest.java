@@ -0,0 +1,138 @@
+package de.fhg.ivi.crowdsimulation.simulation;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.HelbingBuznaModel;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.SemiImplicitEulerIntegrator;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Crowd;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
+import math.geom2d.Vector2D;
+
+/**
+ * Tests the publication of the outlines computed by a {@link CrowdOutlineService}.
+ *
+ * @author hahmann/meinert
+ */
+public class CrowdOutlineServiceTest
+{
+    /**
+     * The {@link CrowdOutlineService} under test.
+     */
+    private CrowdOutlineService crowdOutlineService;
+
+    /**
+     * The {@link Crowd}, whose outlines are computed.
+     */
+    private Crowd               crowd;
+
+    /**
+     * Creates a {@link CrowdOutlineService} with an update interval of 200 ms and a {@link Crowd}
+     * of 4 {@link Pedestrian}s.
+     */
+    @Before
+    public void setUp()
+    {
+        crowdOutlineService = new CrowdOutlineService(200);
+        ForceModel forceModel = new HelbingBuznaModel();
+        crowd = new Crowd("0", new SemiImplicitEulerIntegrator(), forceModel,
+            new BoundaryIndex(new ArrayList<Boundary>()), null, null, null);
+        crowd.setUpdatingCrowdOutline(true);
+        crowd.setCrowdOutlineConvex(true);
+
+        Geometry noBoundaries = JTSFactoryFinder.getGeometryFactory()
+            .createGeometryCollection(new Geometry[0]);
+        List<WayPoint> wayPoints = new ArrayList<>();
+        wayPoints.add(new WayPoint(new Coordinate(100, 10), new Coordinate(0, 10), 0, noBoundaries,
+            forceModel, false));
+        for (int i = 0; i < 4; i++ )
+        {
+            crowd.getPedestrians().add(new Pedestrian(i + 1, 10 + i % 2, 10 + i / 2, 1.2f, 1.6f,
+                1000L, wayPoints));
+        }
+    }
+
+    /**
+     * Shuts the {@link CrowdOutlineService} down.
+     */
+    @After
+    public void tearDown()
+    {
+        crowdOutlineService.shutdown();
+    }
+
+    /**
+     * Requests an update, moves all {@link Pedestrian}s and requests another update within the
+     * update interval. Without any further request, the outlines must catch up with the moved
+     * {@link Pedestrian}s once the update interval has elapsed.
+     *
+     * @throws InterruptedException if the test is interrupted while waiting
+     */
+    @Test(timeout = 10000)
+    public void testThrottledRequestIsComputedLater() throws InterruptedException
+    {
+        crowdOutlineService.requestUpdate(crowd);
+        for (Pedestrian pedestrian : crowd.getPedestrians())
+        {
+            pedestrian.setCurrentPosition(new Vector2D(pedestrian.getCurrentPositionX() + 50,
+                pedestrian.getCurrentPositionY()));
+        }
+        crowdOutlineService.requestUpdate(crowd);
+
+        Envelope moved = new Envelope(60, 61, 10, 11);
+        while ( !coversExactly(crowd.getCrowdOutlines(), moved))
+        {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Outlines computed from positions copied before the outlines have been cleared must not be
+     * published.
+     */
+    @Test
+    public void testOutdatedOutlinesAreDiscarded()
+    {
+        int generation = crowd.getCrowdOutlineGeneration();
+        List<Geometry> outlines = crowd.createCrowdOutlines(new Coordinate[] {
+            new Coordinate(0, 0), new Coordinate(1, 0), new Coordinate(0, 1) }, null);
+        crowd.clear();
+        assertFalse(crowd.setCrowdOutlines(outlines, generation));
+        assertNull(crowd.getCrowdOutlines());
+
+        assertTrue(crowd.setCrowdOutlines(outlines, crowd.getCrowdOutlineGeneration()));
+        assertNotNull(crowd.getCrowdOutlines());
+    }
+
+    /**
+     * Tests, if {@code outlines} consist of a single {@link Geometry} with the given
+     * {@code envelope}.
+     *
+     * @param outlines the outlines, may be {@code null}
+     * @param envelope the expected {@link Envelope}
+     * @return {@code true}, if {@code outlines} match {@code envelope}
+     */
+    private static boolean coversExactly(List<Geometry> outlines, Envelope envelope)
+    {
+        return outlines != null && outlines.size() == 1
+            && outlines.get(0).getEnvelopeInternal().equals(envelope);
+    }
+}
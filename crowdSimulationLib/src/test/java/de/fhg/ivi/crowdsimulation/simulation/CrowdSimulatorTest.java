@@ -0,0 +1,221 @@
+package de.fhg.ivi.crowdsimulation.simulation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Crowd;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
+import hcu.csl.agentbasedmodeling.PedestrianAgent;
+
+/**
+ * Tests the deterministic mode of the {@link CrowdSimulator} (cf.
+ * {@link CrowdSimulator#setDeterministic(boolean)}) and the pacing of its simulation steps in real
+ * time (cf. {@link CrowdSimulator#run()}).
+ *
+ * @author hahmann/meinert
+ */
+public class CrowdSimulatorTest
+{
+    /**
+     * The number of {@link Pedestrian}s of each of the two {@link Crowd}s.
+     */
+    private static final int pedestriansPerCrowd = 150;
+
+    /**
+     * The number of simulation steps.
+     */
+    private static final int steps               = 100;
+
+    /**
+     * A {@link Crowd} added by {@link CrowdSimulator#addAgentCrowd(List)} must be moved
+     * deterministically, if the {@link CrowdSimulator} is deterministic.
+     */
+    @Test
+    public void testAddedCrowdIsDeterministic()
+    {
+        CrowdSimulator crowdSimulator = new CrowdSimulator(null);
+        crowdSimulator.setDeterministic(true);
+        crowdSimulator.addAgentCrowd(new ArrayList<PedestrianAgent>());
+        assertTrue(crowdSimulator.getCrowds().get(0).isDeterministic());
+    }
+
+    /**
+     * The positions of all {@link Pedestrian}s after {@link #steps} simulation steps must be
+     * bit-identical for a single thread and for several threads.
+     */
+    @Test
+    public void testResultIsIndependentOfThreadCount()
+    {
+        double[] expected = simulate(1);
+        double[] actual = simulate(4);
+        assertArrayEquals(expected, actual, 0);
+    }
+
+    /**
+     * Delays the first simulation step of {@link CrowdSimulator#run()} by several refresh
+     * intervals. The deadlines missed meanwhile must be caught up by simulation steps started
+     * without waiting and only these steps must be recorded by the {@link StepPacer}.
+     *
+     * @throws InterruptedException if the test is interrupted while waiting for the simulation
+     *             thread
+     */
+    @Test(timeout = 10000)
+    public void testOverrunIsCaughtUp() throws InterruptedException
+    {
+        final int refreshInterval = 20;
+        final int stepCount = 8;
+        final long[] stepTimes = new long[stepCount];
+        final CrowdSimulator crowdSimulator = new CrowdSimulator(null)
+            {
+                /**
+                 * The number of simulation steps started so far.
+                 */
+                private int steps;
+
+                @Override
+                public void moveCrowds(long currentTime, double simulationUpdateInterval)
+                {
+                    stepTimes[steps] = System.nanoTime();
+                    steps++ ;
+                    if (steps == 1)
+                    {
+                        // overrun of 4 refresh intervals
+                        try
+                        {
+                            Thread.sleep(5 * refreshInterval - refreshInterval / 2);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    if (steps == stepCount)
+                        setSimulationThreadRunning(false);
+                }
+            };
+        crowdSimulator.setRefreshInterval(refreshInterval);
+        crowdSimulator.setSimulationThreadRunning(true);
+        Thread simulationThread = new Thread(crowdSimulator);
+        simulationThread.start();
+        simulationThread.join();
+
+        // the steps of the 4 missed deadlines are started immediately one after another
+        long catchUpTime = stepTimes[4] - stepTimes[1];
+        assertTrue("catch up took " + catchUpTime + " ns",
+            catchUpTime < TimeUnit.MILLISECONDS.toNanos(refreshInterval));
+        StepPacer stepPacer = crowdSimulator.getStepPacer();
+        assertEquals(stepCount, stepPacer.getStepCount());
+        assertTrue(stepPacer.getOverrunCount() >= 3);
+    }
+
+    /**
+     * Simulates two {@link Crowd}s walking towards each other through a corridor with some
+     * obstacles in deterministic mode.
+     *
+     * @param threadCount the number of threads of the thread pool
+     * @return the x and y components of the final positions of all {@link Pedestrian}s
+     */
+    private static double[] simulate(int threadCount)
+    {
+        ExecutorService threadPool = Executors.newFixedThreadPool(threadCount);
+        try
+        {
+            CrowdSimulator crowdSimulator = new CrowdSimulator(threadPool);
+            // use many chunks, so that the threads really interleave
+            crowdSimulator.setChunkSize(8);
+            ForceModel forceModel = crowdSimulator.getForceModel();
+            GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+
+            List<Boundary> boundaries = new ArrayList<>();
+            boundaries.add(new Boundary(geometryFactory.toGeometry(new Envelope(-10, 110, 20, 25)),
+                forceModel.getMaxBoundaryInteractionDistance()));
+            boundaries.add(new Boundary(geometryFactory.toGeometry(new Envelope(-10, 110, -5, 0)),
+                forceModel.getMaxBoundaryInteractionDistance()));
+            for (int i = 0; i < 20; i++ )
+            {
+                Envelope obstacle = new Envelope(40 + i, 40.3 + i, 2 + i * 7 % 16,
+                    2.3 + i * 7 % 16);
+                boundaries.add(new Boundary(geometryFactory.toGeometry(obstacle),
+                    forceModel.getMaxBoundaryInteractionDistance()));
+            }
+            crowdSimulator.setBoundaries(boundaries);
+            Geometry unionOfAllBoundaries = crowdSimulator.getUnionOfAllBoundaries();
+
+            Random random = new Random(42);
+            int id = 1;
+            for (int c = 0; c < 2; c++ )
+            {
+                Crowd crowd = new Crowd(String.valueOf(c), crowdSimulator.getNumericIntegrator(),
+                    forceModel, new BoundaryIndex(boundaries), unionOfAllBoundaries, threadPool,
+                    null);
+                List<WayPoint> wayPoints = new ArrayList<>();
+                wayPoints.add(new WayPoint(new Coordinate(c == 0 ? 100 : 0, 10),
+                    new Coordinate(c == 0 ? 0 : 100, 10), 0, unionOfAllBoundaries, forceModel,
+                    false));
+                for (int i = 0; i < pedestriansPerCrowd; i++ )
+                {
+                    double x = (c == 0 ? 2 : 70) + random.nextDouble() * 28;
+                    double y = 1 + random.nextDouble() * 18;
+                    Pedestrian pedestrian = new Pedestrian(id++ , x, y, 1.2f, 1.6f, 1000L,
+                        wayPoints);
+                    pedestrian.setStateStore(crowd.getStateStore());
+                    crowd.getPedestrians().add(pedestrian);
+                }
+                crowdSimulator.getCrowds().add(crowd);
+            }
+            crowdSimulator.setDeterministic(true);
+            crowdSimulator.setBoundingBox(Collections
+                .singletonList(geometryFactory.toGeometry(new Envelope(-10, 110, -5, 25))));
+
+            long time = 1000;
+            crowdSimulator.setLastSimulationTime(time);
+            for (int i = 0; i < steps; i++ )
+            {
+                time += 50;
+                crowdSimulator.moveCrowds(time);
+                crowdSimulator.setLastSimulationTime(time);
+            }
+
+            List<Double> positions = new ArrayList<>();
+            for (Crowd crowd : crowdSimulator.getCrowds())
+            {
+                for (Pedestrian pedestrian : crowd.getPedestrians())
+                {
+                    positions.add(pedestrian.getCurrentPositionX());
+                    positions.add(pedestrian.getCurrentPositionY());
+                }
+            }
+            double[] result = new double[positions.size()];
+            for (int i = 0; i < result.length; i++ )
+            {
+                result[i] = positions.get(i);
+            }
+            return result;
+        }
+        finally
+        {
+            threadPool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package de.fhg.ivi.crowdsimulation.simulation.forcemodel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.PedestrianPairForces;
+
+/**
+ * Tests, that the pedestrian-pedestrian interaction of the {@link HelbingModel} is the same, if it
+ * is computed for each {@link Pedestrian} or pair by pair (cf. {@link PedestrianPairForces}).
+ *
+ * @author hahmann/meinert
+ */
+public class HelbingModelTest
+{
+    /**
+     * Compares {@link HelbingModel#interactPedestrian(double, double, double, double, double,
+     * double, double[])} with the sums of
+     * {@link HelbingModel#interactPedestrianPair(double, double, double[])} for random relative
+     * positions and directions, including {@link Pedestrian}s lying exactly on top of each other.
+     */
+    @Test
+    public void testPairwiseInteractionMatchesSingleInteraction()
+    {
+        Random random = new Random(42);
+        HelbingModel[] forceModels = { new HelbingBuznaModel(), new HelbingJohanssonModel() };
+        for (HelbingModel forceModel : forceModels)
+        {
+            double range = forceModel.getMaxPedestrianInteractionDistance() * 1.2;
+            for (int i = 0; i < 1000; i++ )
+            {
+                double dx = i == 0 ? 0 : (random.nextDouble() * 2 - 1) * range;
+                double dy = i == 0 ? 0 : (random.nextDouble() * 2 - 1) * range;
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double directionX = Math.cos(angle);
+                double directionY = Math.sin(angle);
+
+                double[] expected = new double[ForceModel.forceBufferLength];
+                forceModel.interactPedestrian(dx, dy, directionX, directionY, 0, 0, expected);
+
+                double[] sums = new double[PedestrianPairForces.sumsPerPedestrian];
+                double[] strengths = new double[3];
+                if (forceModel.interactPedestrianPair(dx, dy, strengths))
+                {
+                    double nX = dx / strengths[2];
+                    double nY = dy / strengths[2];
+                    sums[0] = nX * strengths[0];
+                    sums[1] = nY * strengths[0];
+                    sums[2] = nX * strengths[1];
+                    sums[3] = nY * strengths[1];
+                    sums[4] = nX * sums[2];
+                    sums[5] = nY * sums[2];
+                    sums[6] = nY * sums[3];
+                }
+                double[] actual = new double[ForceModel.forceBufferLength];
+                forceModel.interactPedestrians(directionX, directionY, sums, 0, actual);
+
+                double tolerance = 1e-9 * (1 + Math.abs(expected[0]) + Math.abs(expected[1]));
+                assertEquals(expected[0], actual[0], tolerance);
+                assertEquals(expected[1], actual[1], tolerance);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package de.fhg.ivi.crowdsimulation.simulation.numericintegration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.junit.Test;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.ForceModel;
+import de.fhg.ivi.crowdsimulation.simulation.forcemodel.HelbingBuznaModel;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
+import de.fhg.ivi.crowdsimulation.simulation.objects.BoundaryIndex;
+import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
+import de.fhg.ivi.crowdsimulation.simulation.objects.WayPoint;
+
+/**
+ * Tests the step size control of the {@link AdaptiveRungeKuttaIntegrator}.
+ *
+ * @author hahmann/meinert
+ */
+public class AdaptiveRungeKuttaIntegratorTest
+{
+    /**
+     * The smallest allowed sub step of the tested {@link AdaptiveRungeKuttaIntegrator}. Given in
+     * seconds.
+     */
+    private static final double minimumStep = 0.001d;
+
+    /**
+     * Moves two strongly overlapping {@link Pedestrian}s with tolerances, which can never be met,
+     * over simulation intervals just above {@link #minimumStep}. Each call of
+     * {@link AdaptiveRungeKuttaIntegrator#move(long, double, Pedestrian, List, BoundaryIndex,
+     * ForceModel)} must terminate and use at most two sub steps, since the remainder cannot be
+     * split into more sub steps of at least {@link #minimumStep}.
+     */
+    @Test(timeout = 10000)
+    public void testMoveTerminatesForIntervalsJustAboveMinimumStep()
+    {
+        AdaptiveRungeKuttaIntegrator integrator = new AdaptiveRungeKuttaIntegrator(1e-15, 1e-15,
+            minimumStep);
+        ForceModel forceModel = new HelbingBuznaModel();
+        List<Pedestrian> pedestrians = createPedestrians(forceModel);
+        BoundaryIndex boundaries = new BoundaryIndex(new ArrayList<Boundary>());
+
+        double[] intervals = { minimumStep * 1.0001, minimumStep * 1.5, minimumStep * 1.9999,
+            minimumStep * 2, minimumStep * 2.5, minimumStep * 3.7 };
+        long time = 1000;
+        for (double interval : intervals)
+        {
+            long acceptedStepCount = integrator.getAcceptedStepCount();
+            for (Pedestrian pedestrian : pedestrians)
+            {
+                integrator.move(time, interval, pedestrian, pedestrians, boundaries, forceModel);
+                assertTrue(Double.isFinite(pedestrian.getCurrentPositionX()));
+                assertTrue(Double.isFinite(pedestrian.getCurrentPositionY()));
+            }
+            long subSteps = (integrator.getAcceptedStepCount() - acceptedStepCount)
+                / pedestrians.size();
+            assertTrue("sub steps for " + interval + ": " + subSteps,
+                subSteps <= Math.max(1, (long) Math.floor(interval / minimumStep)));
+            time += 1;
+        }
+    }
+
+    /**
+     * Moves a {@link Pedestrian} without any contacts and with loose tolerances, so that a single
+     * sub step of the whole simulation interval is accepted.
+     */
+    @Test(timeout = 10000)
+    public void testMoveWithoutContactsUsesSingleStep()
+    {
+        AdaptiveRungeKuttaIntegrator integrator = new AdaptiveRungeKuttaIntegrator(1, 1,
+            minimumStep);
+        ForceModel forceModel = new HelbingBuznaModel();
+        List<Pedestrian> pedestrians = createPedestrians(forceModel).subList(0, 1);
+        BoundaryIndex boundaries = new BoundaryIndex(new ArrayList<Boundary>());
+
+        integrator.move(1000, 0.05, pedestrians.get(0), pedestrians, boundaries, forceModel);
+        assertEquals(1, integrator.getAcceptedStepCount());
+        assertEquals(0, integrator.getRejectedStepCount());
+    }
+
+    /**
+     * Creates two {@link Pedestrian}s walking towards the same {@link WayPoint}, which almost
+     * share the same position.
+     *
+     * @param forceModel the {@link ForceModel} used to create the {@link WayPoint}
+     * @return the {@link List} of {@link Pedestrian}s
+     */
+    private static List<Pedestrian> createPedestrians(ForceModel forceModel)
+    {
+        Geometry noBoundaries = JTSFactoryFinder.getGeometryFactory().createGeometryCollection(
+            new Geometry[0]);
+        List<WayPoint> wayPoints = new ArrayList<>();
+        wayPoints.add(new WayPoint(new Coordinate(100, 10), new Coordinate(0, 10), 0, noBoundaries,
+            forceModel, false));
+        List<Pedestrian> pedestrians = new ArrayList<>();
+        pedestrians.add(new Pedestrian(1, 10, 10, 1.2f, 1.6f, 1000L, wayPoints));
+        pedestrians.add(new Pedestrian(2, 10.05, 10.02, 1.2f, 1.6f, 1000L, wayPoints));
+        return pedestrians;
+    }
+}
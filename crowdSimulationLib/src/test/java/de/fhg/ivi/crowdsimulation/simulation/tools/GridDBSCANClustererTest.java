@@ -0,0 +1,173 @@
+package de.fhg.ivi.crowdsimulation.simulation.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.math3.ml.clustering.Cluster;
+import org.apache.commons.math3.ml.clustering.Clusterable;
+import org.apache.commons.math3.ml.clustering.DBSCANClusterer;
+import org.junit.Test;
+
+/**
+ * Tests, that the {@link GridDBSCANClusterer} finds the same clusters with the same order of
+ * points as the {@link DBSCANClusterer} of Apache Commons Math.
+ *
+ * @author hahmann/meinert
+ */
+public class GridDBSCANClustererTest
+{
+    /**
+     * Compares both clusterers for random points, which partly form dense groups, partly are
+     * scattered, and partly are duplicates of or exactly {@code epsilon} apart from the previous
+     * point.
+     */
+    @Test
+    public void testRandomPoints()
+    {
+        Random random = new Random(42);
+        double[] epsilons = { 1, 0.5, 0.3, 2.5 };
+        int[] minPtsValues = { 0, 1, 2, 4 };
+        for (int test = 0; test < 40; test++ )
+        {
+            double epsilon = epsilons[test % epsilons.length];
+            int minPts = minPtsValues[test / epsilons.length % minPtsValues.length];
+            int count = 50 + random.nextInt(500);
+            double[] x = new double[count];
+            double[] y = new double[count];
+            for (int i = 0; i < count; i++ )
+            {
+                int mode = random.nextInt(4);
+                if (i > 0 && mode == 0)
+                {
+                    // duplicate or exactly epsilon apart along one axis
+                    x[i] = x[i - 1] + (random.nextBoolean() ? epsilon : 0);
+                    y[i] = y[i - 1];
+                }
+                else if (mode == 1)
+                {
+                    x[i] = (random.nextDouble() - 0.5) * 100 * epsilon;
+                    y[i] = (random.nextDouble() - 0.5) * 100 * epsilon;
+                }
+                else
+                {
+                    x[i] = mode * 10 * epsilon + random.nextGaussian() * 3 * epsilon;
+                    y[i] = -mode * 10 * epsilon + random.nextGaussian() * 3 * epsilon;
+                }
+            }
+            assertSameClusters(x, y, epsilon, minPts);
+        }
+    }
+
+    /**
+     * Compares both clusterers for points on a lattice with a spacing of exactly {@code epsilon},
+     * so that all points lie on cell borders of the {@link GridDBSCANClusterer} and horizontal or
+     * vertical neighbours are exactly {@code epsilon} apart. The lattice covers negative and
+     * positive coordinates and some points are removed, so that clusters are separated.
+     */
+    @Test
+    public void testPointsOnCellBorders()
+    {
+        Random random = new Random(7);
+        double[] epsilons = { 1, 0.5, 0.1, 0.3, 0.7 };
+        for (double epsilon : epsilons)
+        {
+            for (int minPts = 1; minPts <= 4; minPts++ )
+            {
+                List<double[]> points = new ArrayList<>();
+                for (int column = -15; column < 15; column++ )
+                {
+                    for (int row = -15; row < 15; row++ )
+                    {
+                        if (random.nextInt(3) > 0)
+                            points.add(new double[] { column * epsilon, row * epsilon });
+                    }
+                }
+                // shuffle, so that the order of the points differs from the order of the cells
+                Collections.shuffle(points, random);
+                double[] x = new double[points.size()];
+                double[] y = new double[points.size()];
+                for (int i = 0; i < points.size(); i++ )
+                {
+                    x[i] = points.get(i)[0];
+                    y[i] = points.get(i)[1];
+                }
+                assertSameClusters(x, y, epsilon, minPts);
+            }
+        }
+    }
+
+    /**
+     * Clusters the given points with both clusterers and asserts, that the clusters and the order
+     * of their points are identical.
+     *
+     * @param x the x components of the points
+     * @param y the y components of the points
+     * @param epsilon the maximum distance between two points to be neighbours
+     * @param minPts the minimum number of neighbours of a core point
+     */
+    private static void assertSameClusters(double[] x, double[] y, double epsilon, int minPts)
+    {
+        List<IndexedPoint> points = new ArrayList<>();
+        for (int i = 0; i < x.length; i++ )
+        {
+            points.add(new IndexedPoint(x[i], y[i], i));
+        }
+        List<Cluster<IndexedPoint>> expected = new DBSCANClusterer<IndexedPoint>(epsilon, minPts)
+            .cluster(points);
+        List<int[]> actual = new GridDBSCANClusterer(epsilon, minPts).cluster(x, y, x.length);
+
+        String message = "epsilon=" + epsilon + ", minPts=" + minPts;
+        assertEquals(message, expected.size(), actual.size());
+        for (int c = 0; c < expected.size(); c++ )
+        {
+            List<IndexedPoint> expectedPoints = expected.get(c).getPoints();
+            int[] expectedIndices = new int[expectedPoints.size()];
+            for (int i = 0; i < expectedIndices.length; i++ )
+            {
+                expectedIndices[i] = expectedPoints.get(i).index;
+            }
+            assertArrayEquals(message + ", cluster " + c, expectedIndices, actual.get(c));
+        }
+    }
+
+    /**
+     * A point, which knows its index and is a distinct object even if its position equals the
+     * position of another point.
+     */
+    private static class IndexedPoint implements Clusterable
+    {
+        /**
+         * The position of the point.
+         */
+        private final double[] point;
+
+        /**
+         * The index of the point in the arrays passed to the {@link GridDBSCANClusterer}.
+         */
+        private final int      index;
+
+        /**
+         * Creates a new {@link IndexedPoint}.
+         *
+         * @param x the x component of the position
+         * @param y the y component of the position
+         * @param index the index of the point
+         */
+        private IndexedPoint(double x, double y, int index)
+        {
+            this.point = new double[] { x, y };
+            this.index = index;
+        }
+
+        @Override
+        public double[] getPoint()
+        {
+            return point;
+        }
+    }
+}
@@ -224,6 +224,7 @@ public class CrowdSimulation extends JFrame
                     stopGraphicsThread();
                     stopInfoThread();
                     stopSimulationThread();
+                    crowdSimulator.shutdown();
                     if (threadPool != null)
                         threadPool.shutdown();
                     System.exit(0);
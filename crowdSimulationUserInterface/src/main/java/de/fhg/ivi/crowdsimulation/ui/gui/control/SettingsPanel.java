@@ -29,10 +29,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.fhg.ivi.crowdsimulation.simulation.CrowdSimulator;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.AdaptiveRungeKuttaIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.NumericIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.RungeKuttaIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.SemiImplicitEulerIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.numericintegration.SimpleEulerIntegrator;
+import de.fhg.ivi.crowdsimulation.simulation.numericintegration.VelocityVerletIntegrator;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Boundary;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Crowd;
 import de.fhg.ivi.crowdsimulation.simulation.objects.Pedestrian;
@@ -448,6 +450,20 @@ public class SettingsPanel extends JPanel implements ActionListener, ChangeListe
      */
     private JRadioButton radioButtonRungeKutta                = new JRadioButton("Runge Kutta");
 
+    /**
+     * {@link JRadioButton} for setting {@link NumericIntegrator} of {@link CrowdSimulator} to
+     * {@link AdaptiveRungeKuttaIntegrator}
+     */
+    private JRadioButton radioButtonAdaptiveRungeKutta        = new JRadioButton(
+        "Adaptive Runge Kutta");
+
+    /**
+     * {@link JRadioButton} for setting {@link NumericIntegrator} of {@link CrowdSimulator} to
+     * {@link VelocityVerletIntegrator}
+     */
+    private JRadioButton radioButtonVelocityVerlet            = new JRadioButton(
+        "Velocity Verlet");
+
     /**
      * Constructor. Adds {@link JCheckBox}, {@link JRadioButton} and {@link JSlider} elements to
      * this {@link JPanel}, sets its initial states according to {@link MapPanel} and
@@ -588,6 +604,10 @@ public class SettingsPanel extends JPanel implements ActionListener, ChangeListe
                 crowdSimulator.getNumericIntegrator() instanceof SemiImplicitEulerIntegrator);
             radioButtonRungeKutta
                 .setSelected(crowdSimulator.getNumericIntegrator() instanceof RungeKuttaIntegrator);
+            radioButtonAdaptiveRungeKutta.setSelected(
+                crowdSimulator.getNumericIntegrator() instanceof AdaptiveRungeKuttaIntegrator);
+            radioButtonVelocityVerlet.setSelected(
+                crowdSimulator.getNumericIntegrator() instanceof VelocityVerletIntegrator);
         }
     }
 
@@ -623,6 +643,8 @@ public class SettingsPanel extends JPanel implements ActionListener, ChangeListe
         radioButtonSimpleEuler.addActionListener(this);
         radioButtonSemiImplicitEuler.addActionListener(this);
         radioButtonRungeKutta.addActionListener(this);
+        radioButtonAdaptiveRungeKutta.addActionListener(this);
+        radioButtonVelocityVerlet.addActionListener(this);
 
         // add ChangeListener to all JSliders
         meanNormalDesiredVelocitySlider.addChangeListener(this);
@@ -697,11 +719,15 @@ public class SettingsPanel extends JPanel implements ActionListener, ChangeListe
         numericIntegratorChooser.add(radioButtonSimpleEuler);
         numericIntegratorChooser.add(radioButtonSemiImplicitEuler);
         numericIntegratorChooser.add(radioButtonRungeKutta);
+        numericIntegratorChooser.add(radioButtonAdaptiveRungeKutta);
+        numericIntegratorChooser.add(radioButtonVelocityVerlet);
         JPanel numericIntegratorsPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
         numericIntegratorsPanel.add(radioButtonSimpleEuler);
         numericIntegratorsPanel.add(radioButtonSemiImplicitEuler);
         numericIntegratorsPanel.add(radioButtonRungeKutta);
-        numericIntegratorsPanel.setMaximumSize(new Dimension(300, 30));
+        numericIntegratorsPanel.add(radioButtonAdaptiveRungeKutta);
+        numericIntegratorsPanel.add(radioButtonVelocityVerlet);
+        numericIntegratorsPanel.setMaximumSize(new Dimension(550, 30));
         numericIntegratorsPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
         add(numericIntegratorsPanel);
 
@@ -956,6 +982,16 @@ public class SettingsPanel extends JPanel implements ActionListener, ChangeListe
         {
             crowdSimulator.setNumericIntegrator(new RungeKuttaIntegrator());
         }
+
+        if (actionEvent.getSource() == radioButtonAdaptiveRungeKutta)
+        {
+            crowdSimulator.setNumericIntegrator(new AdaptiveRungeKuttaIntegrator());
+        }
+
+        if (actionEvent.getSource() == radioButtonVelocityVerlet)
+        {
+            crowdSimulator.setNumericIntegrator(new VelocityVerletIntegrator());
+        }
         mapPanel.repaint();
     }
 
@@ -1261,8 +1261,7 @@ public class MapPanel extends JPanel
         if ( !gridVisible && !gridLabelsVisible)
             return;
         Grid grid = crowdSimulator.getGrid();
-        Map<Envelope, Integer> gridCells = grid.getGridCells();
-        if (gridCells == null || gridCells.isEmpty())
+        if (grid.getGridCells() == null || grid.getGridCells().isEmpty())
             return;
 
         // get defaults
@@ -1270,35 +1269,42 @@ public class MapPanel extends JPanel
         Color defaultColor = g2.getColor();
         Font defaultFont = g2.getFont();
 
-        for (Map.Entry<Envelope, Integer> gridCell : gridCells.entrySet())
+        double cellSize = grid.getCellSize();
+        for (int row = 0; row < grid.getRows(); row++ )
         {
-            // skip empty cells
-            if (gridCell.getValue() == 0)
-                continue;
+            for (int column = 0; column < grid.getColumns(); column++ )
+            {
+                int value = grid.getCellValue(column, row);
 
-            // create rectangle for painting
-            Rectangle2D.Double cell = new Rectangle2D.Double(gridCell.getKey().getMinX(),
-                gridCell.getKey().getMinY(), grid.getCellSize(), grid.getCellSize());
+                // skip empty cells
+                if (value == 0)
+                    continue;
 
-            // crowd density in grid cell (pedestrian / m²)
-            double gridCellCrowdDensity = (double) gridCell.getValue()
-                / (grid.getCellSize() * grid.getCellSize());
+                // create rectangle for painting
+                double cellMinX = grid.getMinX() + column * cellSize;
+                double cellMinY = grid.getMinY() + row * cellSize;
+                Rectangle2D.Double cell = new Rectangle2D.Double(cellMinX, cellMinY, cellSize,
+                    cellSize);
 
-            // paint cells
-            if (gridVisible)
-            {
-                // set color depending on value and paint
-                g2.setColor(getGridCellColor(gridCellCrowdDensity));
-                g2.fill(cell);
-            }
+                // crowd density in grid cell (pedestrian / m²)
+                double gridCellCrowdDensity = (double) value / (cellSize * cellSize);
 
-            // draw cell value as String
-            if (gridLabelsVisible)
-            {
-                g2.setColor(Color.BLACK);
-                g2.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 3));
-                g2.drawString(String.valueOf(MathTools.round(gridCellCrowdDensity, 2)),
-                    (float) gridCell.getKey().getMinX(), (float) gridCell.getKey().getMaxY());
+                // paint cells
+                if (gridVisible)
+                {
+                    // set color depending on value and paint
+                    g2.setColor(getGridCellColor(gridCellCrowdDensity));
+                    g2.fill(cell);
+                }
+
+                // draw cell value as String
+                if (gridLabelsVisible)
+                {
+                    g2.setColor(Color.BLACK);
+                    g2.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 3));
+                    g2.drawString(String.valueOf(MathTools.round(gridCellCrowdDensity, 2)),
+                        (float) cellMinX, (float) (cellMinY + cellSize));
+                }
             }
         }
 